@@ -23,4 +23,12 @@ import com.intellij.util.containers.ImmutableList;
 public interface DataSeries<E> {
 
   ImmutableList<SeriesData<E>> getDataForXRange(Range xRange);
+
+  /**
+   * Returns the data in the given range, reduced to roughly maxPoints points if the series can do so cheaply (e.g. from a precomputed
+   * {@link LongDataPyramid}). Callers typically pass their width in pixels. By default, all the data in range is returned.
+   */
+  default ImmutableList<SeriesData<E>> getDataForXRange(Range xRange, int maxPoints) {
+    return getDataForXRange(xRange);
+  }
 }
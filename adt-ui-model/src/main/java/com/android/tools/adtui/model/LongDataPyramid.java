@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.intellij.util.containers.ImmutableList;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Level-of-detail index over a series of (x, long y) samples, appended in increasing x order. The samples themselves are not copied,
+ * the pyramid reads them from the {@link Samples} it is built over.
+ *
+ * Level 0 is the raw data. Every bucket at level n summarizes {@link #FAN_OUT} buckets of level n - 1, keeping the min, max and sum of
+ * their values as well as where the min and max were found. Levels are updated by {@link #update()} as samples are appended, which costs
+ * O(log n) per sample.
+ *
+ * When queried for a range that holds more samples than the caller can display, the lowest level that fits is picked and each of its
+ * buckets is turned into its min and max points, in x order. That keeps the envelope of the line intact, like the line chart reducer does,
+ * but in time proportional to the number of points returned instead of the number of samples in range.
+ */
+public class LongDataPyramid {
+
+  public static final int FAN_OUT = 4;
+
+  /**
+   * The number of samples after the range returned on top of it, like the sample index buffer of the datastore adapters. The sample
+   * at or before the start of the range is always included.
+   */
+  private static final int TRAILING_SAMPLES = 1;
+
+  /**
+   * The samples a pyramid summarizes, in increasing x order.
+   */
+  public interface Samples {
+    int size();
+
+    long getX(int index);
+
+    long getY(int index);
+  }
+
+  @NotNull private final Samples mySamples;
+
+  /**
+   * Summary levels, myLevels.get(0) being level 1.
+   */
+  @NotNull private final List<Level> myLevels = new ArrayList<>();
+
+  /**
+   * The number of samples summarized so far, samples appended after that are ignored until the next {@link #update()}.
+   */
+  private int mySize;
+
+  public LongDataPyramid(@NotNull Samples samples) {
+    mySamples = samples;
+  }
+
+  /**
+   * Summarizes the samples appended since the last call. If the samples were replaced rather than appended to, call {@link #clear()}
+   * first.
+   */
+  public void update() {
+    for (int size = mySamples.size(); mySize < size; mySize++) {
+      add(mySize);
+    }
+  }
+
+  private void add(int index) {
+    long x = mySamples.getX(index);
+    long y = mySamples.getY(index);
+    assert index == 0 || mySamples.getX(index - 1) <= x;
+
+    int bucketSize = FAN_OUT;
+    for (int level = 0; bucketSize <= index + 1 || level < myLevels.size(); level++, bucketSize *= FAN_OUT) {
+      if (level == myLevels.size()) {
+        // First time we have enough samples for this level, summarize everything so far into its first bucket.
+        Level newLevel = new Level();
+        for (int i = 0; i < index; i++) {
+          newLevel.add(i, mySamples.getX(i), mySamples.getY(i), bucketSize);
+        }
+        myLevels.add(newLevel);
+      }
+      myLevels.get(level).add(index, x, y, bucketSize);
+    }
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public void clear() {
+    myLevels.clear();
+    mySize = 0;
+  }
+
+  /**
+   * Returns the average value of the samples in [fromIndex, toIndex], using the summary levels to avoid visiting every sample.
+   */
+  public double getAverage(int fromIndex, int toIndex) {
+    long sum = 0;
+    int i = fromIndex;
+    while (i <= toIndex) {
+      // Use the largest bucket that starts at i and ends before toIndex.
+      int level = -1;
+      int bucketSize = 1;
+      while (level + 1 < myLevels.size() && i % (bucketSize * FAN_OUT) == 0 && i + bucketSize * FAN_OUT - 1 <= toIndex) {
+        level++;
+        bucketSize *= FAN_OUT;
+      }
+      sum += level < 0 ? mySamples.getY(i) : myLevels.get(level).mySum.get(i / bucketSize);
+      i += bucketSize;
+    }
+    return toIndex < fromIndex ? 0 : (double)sum / (toIndex - fromIndex + 1);
+  }
+
+  /**
+   * Returns at most about maxPoints points covering the given range. If the range holds no more than maxPoints samples, those are
+   * returned as is. The samples right before and right after the range are included, so that lines can be drawn to the edges of
+   * the range.
+   */
+  @NotNull
+  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range xRange, int maxPoints) {
+    if (mySize == 0) {
+      return new PointList(new long[0], new long[0]);
+    }
+    int fromIndex = getNearestXIndex((long)xRange.getMin());
+    int toIndex = Math.min(getNearestXIndex((long)xRange.getMax()) + TRAILING_SAMPLES, mySize - 1);
+    int count = toIndex - fromIndex + 1;
+    if (count <= maxPoints || maxPoints <= 0 || myLevels.isEmpty()) {
+      long[] x = new long[count];
+      long[] y = new long[count];
+      for (int i = 0; i < count; i++) {
+        x[i] = mySamples.getX(fromIndex + i);
+        y[i] = mySamples.getY(fromIndex + i);
+      }
+      return new PointList(x, y);
+    }
+
+    // Every bucket produces up to two points.
+    int level = 0;
+    int bucketSize = FAN_OUT;
+    while (level + 1 < myLevels.size() && count / bucketSize > maxPoints / 2) {
+      level++;
+      bucketSize *= FAN_OUT;
+    }
+    Level summary = myLevels.get(level);
+    int fromBucket = fromIndex / bucketSize;
+    int toBucket = toIndex / bucketSize;
+    TLongArrayList x = new TLongArrayList((toBucket - fromBucket + 1) * 2);
+    TLongArrayList y = new TLongArrayList((toBucket - fromBucket + 1) * 2);
+    for (int bucket = fromBucket; bucket <= toBucket; bucket++) {
+      long minX = summary.myMinX.get(bucket);
+      long maxX = summary.myMaxX.get(bucket);
+      long min = summary.myMin.get(bucket);
+      long max = summary.myMax.get(bucket);
+      if (minX < maxX) {
+        x.add(minX);
+        y.add(min);
+        x.add(maxX);
+        y.add(max);
+      }
+      else if (minX > maxX) {
+        x.add(maxX);
+        y.add(max);
+        x.add(minX);
+        y.add(min);
+      }
+      else {
+        x.add(minX);
+        y.add(min);
+      }
+    }
+    return new PointList(x.toNativeArray(), y.toNativeArray());
+  }
+
+  /**
+   * Same rounding as {@link BaseDataSeries#getNearestXIndex(long)}: the index of the last sample at or before x.
+   */
+  private int getNearestXIndex(long x) {
+    int low = 0;
+    int high = mySize - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midX = mySamples.getX(mid);
+      if (midX < x) {
+        low = mid + 1;
+      }
+      else if (midX > x) {
+        high = mid - 1;
+      }
+      else {
+        return mid;
+      }
+    }
+    return Math.max(0, Math.min(low - 1, mySize - 1));
+  }
+
+  private static final class Level {
+    @NotNull private final TLongArrayList myMin = new TLongArrayList();
+    @NotNull private final TLongArrayList myMax = new TLongArrayList();
+    @NotNull private final TLongArrayList myMinX = new TLongArrayList();
+    @NotNull private final TLongArrayList myMaxX = new TLongArrayList();
+    @NotNull private final TLongArrayList mySum = new TLongArrayList();
+
+    private void add(int index, long x, long y, int bucketSize) {
+      if (index % bucketSize == 0) {
+        myMin.add(y);
+        myMax.add(y);
+        myMinX.add(x);
+        myMaxX.add(x);
+        mySum.add(y);
+        return;
+      }
+      int bucket = myMin.size() - 1;
+      if (y < myMin.get(bucket)) {
+        myMin.set(bucket, y);
+        myMinX.set(bucket, x);
+      }
+      if (y > myMax.get(bucket)) {
+        myMax.set(bucket, y);
+        myMaxX.set(bucket, x);
+      }
+      mySum.set(bucket, mySum.get(bucket) + y);
+    }
+  }
+
+  private static final class PointList extends ImmutableList<SeriesData<Long>> {
+    @NotNull private final long[] myX;
+    @NotNull private final long[] myY;
+
+    private PointList(@NotNull long[] x, @NotNull long[] y) {
+      myX = x;
+      myY = y;
+    }
+
+    @Override
+    public int size() {
+      return myX.length;
+    }
+
+    @Override
+    public SeriesData<Long> get(int index) {
+      return new SeriesData<>(myX[index], myY[index]);
+    }
+  }
+}
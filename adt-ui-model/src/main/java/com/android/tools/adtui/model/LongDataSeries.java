@@ -15,6 +15,7 @@
  */
 package com.android.tools.adtui.model;
 
+import com.intellij.util.containers.ImmutableList;
 import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NotNull;
 
@@ -23,14 +24,41 @@ public class LongDataSeries extends BaseDataSeries<Long> {
   @NotNull
   private final TLongArrayList mY = new TLongArrayList();
 
+  /**
+   * The min/max/sum summaries of the data, used to serve reduced ranges.
+   */
+  @NotNull
+  private final LongDataPyramid mPyramid = new LongDataPyramid(new LongDataPyramid.Samples() {
+    @Override
+    public int size() {
+      return mX.size();
+    }
+
+    @Override
+    public long getX(int index) {
+      return mX.get(index);
+    }
+
+    @Override
+    public long getY(int index) {
+      return mY.get(index);
+    }
+  });
+
   @Override
   public void add(long x, Long y) {
     mX.add(x);
     mY.add(y);
+    mPyramid.update();
   }
 
   @Override
   public Long getY(int index) {
     return mY.get(index);
   }
+
+  @Override
+  public ImmutableList<SeriesData<Long>> getDataForXRange(Range xRange, int maxPoints) {
+    return mPyramid.getDataForXRange(xRange, maxPoints);
+  }
 }
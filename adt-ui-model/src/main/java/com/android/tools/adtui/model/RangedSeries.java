@@ -49,6 +49,15 @@ public class RangedSeries<E> {
     return mSeries.getDataForXRange(mXRange);
   }
 
+  /**
+   * Same as {@link #getSeries()}, but allows the underlying {@link DataSeries} to return a reduced version of the data with about
+   * maxPoints points, see {@link DataSeries#getDataForXRange(Range, int)}.
+   */
+  @NotNull
+  public ImmutableList<SeriesData<E>> getSeries(int maxPoints) {
+    return mSeries.getDataForXRange(mXRange, maxPoints);
+  }
+
   /**
    * @return The {@link Range} object that represents the xRange of this series.
    */
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.intellij.util.containers.ImmutableList;
+import gnu.trove.TLongArrayList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LongDataPyramidTest {
+
+  @Test
+  public void testRawDataWhenItFits() {
+    FakeSamples samples = new FakeSamples();
+    for (int i = 0; i < 10; i++) {
+      samples.add(i * 10, i);
+    }
+    LongDataPyramid pyramid = samples.createPyramid();
+    // The samples right before and right after the range are included.
+    ImmutableList<SeriesData<Long>> data = pyramid.getDataForXRange(new Range(25, 55), 100);
+    assertEquals(5, data.size());
+    for (int i = 0; i < data.size(); i++) {
+      assertEquals((i + 2) * 10, data.get(i).x);
+      assertEquals(i + 2, data.get(i).value.longValue());
+    }
+  }
+
+  @Test
+  public void testReducedDataKeepsMinAndMax() {
+    FakeSamples samples = new FakeSamples();
+    int size = 10000;
+    for (int i = 0; i < size; i++) {
+      // Mostly flat, with a single spike up and down.
+      long value = i == 1234 ? 1000 : (i == 8765 ? -1000 : 0);
+      samples.add(i, value);
+    }
+    LongDataPyramid pyramid = samples.createPyramid();
+    ImmutableList<SeriesData<Long>> data = pyramid.getDataForXRange(new Range(0, size), 100);
+    assertTrue(data.size() <= 100);
+
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    long previousX = Long.MIN_VALUE;
+    for (int i = 0; i < data.size(); i++) {
+      SeriesData<Long> point = data.get(i);
+      assertTrue(point.x >= previousX);
+      previousX = point.x;
+      min = Math.min(min, point.value);
+      max = Math.max(max, point.value);
+      if (point.value == 1000) {
+        assertEquals(1234, point.x);
+      }
+    }
+    assertEquals(-1000, min);
+    assertEquals(1000, max);
+  }
+
+  @Test
+  public void testAverage() {
+    FakeSamples samples = new FakeSamples();
+    for (int i = 0; i < 100; i++) {
+      samples.add(i, i);
+    }
+    LongDataPyramid pyramid = samples.createPyramid();
+    assertEquals(49.5, pyramid.getAverage(0, 99), 0);
+    assertEquals(20, pyramid.getAverage(10, 30), 0);
+    assertEquals(7, pyramid.getAverage(7, 7), 0);
+  }
+
+  @Test
+  public void testClear() {
+    FakeSamples samples = new FakeSamples();
+    for (int i = 0; i < 100; i++) {
+      samples.add(i, i);
+    }
+    LongDataPyramid pyramid = samples.createPyramid();
+    samples.clear();
+    pyramid.clear();
+    assertEquals(0, pyramid.size());
+    assertEquals(0, pyramid.getDataForXRange(new Range(0, 100), 10).size());
+    samples.add(5, 5);
+    pyramid.update();
+    assertEquals(1, pyramid.getDataForXRange(new Range(0, 100), 10).size());
+  }
+
+  @Test
+  public void testUpdateOnlySummarizesNewSamples() {
+    FakeSamples samples = new FakeSamples();
+    LongDataPyramid pyramid = samples.createPyramid();
+    for (int i = 0; i < 1000; i++) {
+      samples.add(i, i % 10 == 0 ? 100 : 0);
+      if (i % 7 == 0) {
+        pyramid.update();
+      }
+    }
+    assertEquals(995, pyramid.size());
+    pyramid.update();
+    assertEquals(1000, pyramid.size());
+    assertEquals(10, pyramid.getAverage(0, 999), 0);
+    ImmutableList<SeriesData<Long>> data = pyramid.getDataForXRange(new Range(0, 1000), 50);
+    assertTrue(data.size() <= 50);
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < data.size(); i++) {
+      max = Math.max(max, data.get(i).value);
+    }
+    assertEquals(100, max);
+  }
+
+  private static class FakeSamples implements LongDataPyramid.Samples {
+    private final TLongArrayList myX = new TLongArrayList();
+    private final TLongArrayList myY = new TLongArrayList();
+
+    private void add(long x, long y) {
+      myX.add(x);
+      myY.add(y);
+    }
+
+    private void clear() {
+      myX.clear();
+      myY.clear();
+    }
+
+    private LongDataPyramid createPyramid() {
+      LongDataPyramid pyramid = new LongDataPyramid(this);
+      pyramid.update();
+      return pyramid;
+    }
+
+    @Override
+    public int size() {
+      return myX.size();
+    }
+
+    @Override
+    public long getX(int index) {
+      return myX.get(index);
+    }
+
+    @Override
+    public long getY(int index) {
+      return myY.get(index);
+    }
+  }
+}
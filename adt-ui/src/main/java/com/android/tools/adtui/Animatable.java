@@ -39,6 +39,16 @@ public interface Animatable {
   default void postAnimate() {
   }
 
+  /**
+   * Whether this {@link Animatable} needs to be animated in the coming frames, e.g. because it is
+   * interpolating towards a target value. The {@link Choreographer} parks itself when none of its
+   * Animatables are dirty. Animatables that read their inputs every frame, without knowing whether
+   * these changed, should keep the default.
+   */
+  default boolean isDirty() {
+    return true;
+  }
+
   /**
    * An auxiliary function to allow an {@link Animatable} to configure its interpolation speed when calling the
    * {@link Choreographer#lerp(float, float, float, float, float)} method.
@@ -16,7 +16,9 @@
 package com.android.tools.adtui;
 
 import com.android.tools.adtui.common.AdtUiUtils;
+import com.android.tools.adtui.model.Range;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
@@ -58,6 +60,17 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
 
   private int mMultiDrawNumFrames;
 
+  /**
+   * The inputs of the subclasses that report whether they are dirty, or {@code null} if this component is always dirty.
+   */
+  @Nullable
+  private RangeChangeTracker mInputs;
+
+  /**
+   * The width of the component as of the last frame, as subclasses use it to decide how much data to read.
+   */
+  private int mAnimatedWidth = -1;
+
   public AnimatedComponent() {
     mDebugInfo = new LinkedList<>();
     mDefaultFontMetrics = getFontMetrics(AdtUiUtils.DEFAULT_FONT);
@@ -147,8 +160,48 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
     g.draw(path);
   }
 
+  /**
+   * Makes this component dirty only when the given ranges or its width changed since its last frame, instead of always. Subclasses
+   * that call this need to track every range they read when they animate, and to call {@link #markDirty()} when their other inputs
+   * change. Can be called several times, e.g. as series are added.
+   */
+  protected final void trackInputs(@NotNull Range... ranges) {
+    if (mInputs == null) {
+      mInputs = new RangeChangeTracker();
+    }
+    mInputs.track(ranges);
+  }
+
+  /**
+   * Stops tracking the ranges given to {@link #trackInputs(Range...)}, e.g. because the series they belong to were removed.
+   */
+  protected final void clearTrackedInputs() {
+    if (mInputs != null) {
+      mInputs.clear();
+    }
+  }
+
+  /**
+   * Makes this component dirty until its next frame, for changes to inputs other than the tracked ranges.
+   */
+  protected final void markDirty() {
+    if (mInputs != null) {
+      mInputs.markChanged();
+    }
+  }
+
+  @Override
+  public boolean isDirty() {
+    return mInputs == null || mInputs.hasChanged() || getWidth() != mAnimatedWidth;
+  }
+
   @Override
   public void animate(float frameLength) {
+    if (mInputs != null) {
+      mInputs.update();
+    }
+    mAnimatedWidth = getWidth();
+
     if (mDrawCount > 1) {
       // draw is expected to be triggered once per component per animation cycle.
       // Otherwise, we are potentially wasting cycles repainting the same data. e.g. This can
@@ -166,6 +166,15 @@ public final class AxisComponent extends AnimatedComponent {
     myStartMargin = builder.myStartMargin;
     myEndMargin = builder.myEndMargin;
 
+    trackInputs(myRange);
+    if (myGlobalRange != null) {
+      trackInputs(myGlobalRange);
+    }
+    if (myParentAxis != null) {
+      // The ticks of the parent axis follow its range.
+      trackInputs(myParentAxis.getRange());
+    }
+
     myMetrics = getFontMetrics(AdtUiUtils.DEFAULT_FONT);
 
     // Only construct and show the axis label if it is set.
@@ -215,6 +224,7 @@ public final class AxisComponent extends AnimatedComponent {
 
   public void setClampToMajorTicks(boolean clamp) {
     myClampToMajorTicks = clamp;
+    markDirty();
   }
 
   public boolean getClampToMajorTicks() {
@@ -226,6 +236,7 @@ public final class AxisComponent extends AnimatedComponent {
    */
   public void setAxisFormatter(BaseAxisFormatter formatter) {
     myFormatter = formatter;
+    markDirty();
   }
 
   @NotNull
@@ -239,6 +250,8 @@ public final class AxisComponent extends AnimatedComponent {
    */
   public void setParentAxis(AxisComponent parent) {
     myParentAxis = parent;
+    trackInputs(parent.getRange());
+    markDirty();
   }
 
   @Nullable
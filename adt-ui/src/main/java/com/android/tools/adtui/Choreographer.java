@@ -17,32 +17,58 @@
 package com.android.tools.adtui;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.event.HierarchyListener;
+import java.awt.event.HierarchyEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
  * An auxiliary object that synchronizes a group of {@link Animatable} via a simple update loop
  * running at a specific frame rate. This ensures all UI components and model classes are reading
  * and displaying consistent information at any given time.
+ *
+ * The loop only runs while the parent container is showing. It also parks itself after a number of
+ * frames in which none of its {@link Animatable} are {@link Animatable#isDirty() dirty}: until one
+ * of them becomes dirty again, or {@link #markDirty()} is called, the timer only checks for that a
+ * few times per second instead of animating and repainting every frame.
+ *
+ * Setting the "adtui.choreographer.profile" system property logs how much time each type of
+ * {@link Animatable} takes per frame.
  */
 public class Choreographer implements ActionListener {
 
   private static final int DEFAULT_FPS = 60;
   private static final float NANOSECONDS_IN_SECOND = 1000000000.0f;
   private static final float DEFAULT_FRAME_LENGTH = 1.0f / DEFAULT_FPS;
+  private static final int PARKED_DELAY_MS = 100;
+  /**
+   * Number of frames in a row in which nothing is dirty before the Choreographer parks, so that it keeps up with interactions that
+   * only change something every few frames, e.g. dragging a selection.
+   */
+  static final int IDLE_FRAMES_BEFORE_PARKING = DEFAULT_FPS / 2;
+  private static final boolean PROFILE_FRAMES = Boolean.getBoolean("adtui.choreographer.profile");
 
   private final List<Animatable> mComponents;
   private List<Animatable> mToRegister;
   private List<Animatable> mToUnregister;
   private final Timer mTimer;
+  private final int mFrameDelayMs;
   private boolean mUpdate;
   private long mFrameTime;
   private boolean mReset;
+  private boolean mStopped;
+  private boolean mParked;
+  private int mIdleFrames;
+  @Nullable private final FrameTimings mFrameTimings;
 
   /**
    * At the end of each update loop, repaint is trigger on the parent container so that all its
@@ -55,7 +81,8 @@ public class Choreographer implements ActionListener {
   private boolean mUpdating;
 
   /**
-   * @param fps    The frame rate that this Choreographer should run at.
+   * @param fps    The frame rate that this Choreographer should run at. A negative value means
+   *               the Choreographer never runs on its own, and is driven through {@link #step()}.
    * @param parent The parent component that contains all {@link AnimatedComponent} registered
    *               with the Choreographer.
    */
@@ -66,10 +93,16 @@ public class Choreographer implements ActionListener {
     mToUnregister = new LinkedList<>();
     mUpdate = true;
     mUpdating = false;
-    mTimer = new Timer(1000 / fps, this);
-    if (fps >= 0) {
-      mTimer.start();
-    }
+    mFrameDelayMs = 1000 / Math.max(1, Math.abs(fps));
+    mTimer = new Timer(mFrameDelayMs, this);
+    mStopped = fps < 0;
+    mFrameTimings = PROFILE_FRAMES ? new FrameTimings() : null;
+    mParentContainer.addHierarchyListener(event -> {
+      if ((event.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+        updateTimer();
+      }
+    });
+    updateTimer();
   }
 
   public Choreographer(@NotNull JComponent parent) {
@@ -82,6 +115,7 @@ public class Choreographer implements ActionListener {
     } else {
       mComponents.add(animatable);
     }
+    markDirty();
   }
 
   public void register(@NotNull List<Animatable> animatables) {
@@ -96,10 +130,37 @@ public class Choreographer implements ActionListener {
     } else {
       mComponents.remove(animatable);
     }
+    markDirty();
   }
 
   public void stop() {
-    if (mTimer.isRunning()) {
+    mStopped = true;
+    updateTimer();
+  }
+
+  /**
+   * Resumes animating every frame if the Choreographer was parked. {@link Animatable}s that are
+   * not dirty, but change in response to something they are not polling for, should call this.
+   */
+  public void markDirty() {
+    mIdleFrames = 0;
+    if (mParked) {
+      mParked = false;
+      mTimer.setDelay(mFrameDelayMs);
+      if (mTimer.isRunning()) {
+        // Don't wait for the pending parked tick.
+        mTimer.restart();
+      }
+    }
+  }
+
+  private void updateTimer() {
+    boolean run = !mStopped && mParentContainer.isShowing();
+    if (run && !mTimer.isRunning()) {
+      mFrameTime = System.nanoTime();
+      mTimer.start();
+    }
+    else if (!run && mTimer.isRunning()) {
       mTimer.stop();
     }
   }
@@ -113,7 +174,36 @@ public class Choreographer implements ActionListener {
     if (!mUpdate) {
       return;
     }
+    if (mParked) {
+      if (!isAnyDirty()) {
+        return;
+      }
+      markDirty();
+    }
     step(frame);
+    if (isAnyDirty()) {
+      mIdleFrames = 0;
+    }
+    else if (++mIdleFrames >= IDLE_FRAMES_BEFORE_PARKING) {
+      mParked = true;
+      mTimer.setDelay(PARKED_DELAY_MS);
+    }
+  }
+
+  private boolean isAnyDirty() {
+    for (Animatable component : mComponents) {
+      if (component.isDirty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether the Choreographer is parked, i.e. running but not animating every frame because none of its {@link Animatable} are dirty.
+   */
+  public boolean isParked() {
+    return mParked;
   }
 
   /**
@@ -123,18 +213,9 @@ public class Choreographer implements ActionListener {
    */
   @Deprecated
   public static void animate(final AnimatedComponent component) {
+    // The Choreographer only runs while the component is showing.
     final Choreographer choreographer = new Choreographer(30, component);
     choreographer.register(component);
-    HierarchyListener listener = event -> {
-      if (choreographer.mTimer.isRunning() && !component.isShowing()) {
-        choreographer.mTimer.stop();
-      }
-      else if (!choreographer.mTimer.isRunning() && component.isShowing()) {
-        choreographer.mTimer.start();
-      }
-    };
-    listener.hierarchyChanged(null);
-    component.addHierarchyListener(listener);
   }
 
   public void setUpdate(boolean update) {
@@ -147,6 +228,7 @@ public class Choreographer implements ActionListener {
 
   public void reset() {
     mReset = true;
+    markDirty();
   }
 
   private void step(float frameLength) {
@@ -156,8 +238,23 @@ public class Choreographer implements ActionListener {
       mReset = false;
     }
 
-    mComponents.forEach(component -> component.animate(frameLength));
-    mComponents.forEach(Animatable::postAnimate);
+    if (mFrameTimings == null) {
+      mComponents.forEach(component -> component.animate(frameLength));
+      mComponents.forEach(Animatable::postAnimate);
+    }
+    else {
+      for (Animatable component : mComponents) {
+        long start = System.nanoTime();
+        component.animate(frameLength);
+        mFrameTimings.add(component, System.nanoTime() - start);
+      }
+      for (Animatable component : mComponents) {
+        long start = System.nanoTime();
+        component.postAnimate();
+        mFrameTimings.add(component, System.nanoTime() - start);
+      }
+      mFrameTimings.frameDone();
+    }
     mUpdating = false;
 
     mToUnregister.forEach(this::unregister);
@@ -208,4 +305,41 @@ public class Choreographer implements ActionListener {
   public static double lerp(double from, double to, float fraction, float frameLength) {
     return lerp(from, to, fraction, frameLength, 0);
   }
+
+  /**
+   * Accumulates the time each type of {@link Animatable} takes to animate, and logs the average
+   * per frame every few seconds, most expensive first.
+   */
+  private static final class FrameTimings {
+    private static final Logger LOG = Logger.getLogger(Choreographer.class.getName());
+    private static final long REPORT_INTERVAL_NS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Map<String, Long> myNanosByType = new HashMap<>();
+    private int myFrames;
+    private long myStartTime = System.nanoTime();
+
+    void add(@NotNull Animatable animatable, long nanos) {
+      myNanosByType.merge(animatable.getClass().getName(), nanos, Long::sum);
+    }
+
+    void frameDone() {
+      myFrames++;
+      long now = System.nanoTime();
+      if (now - myStartTime < REPORT_INTERVAL_NS) {
+        return;
+      }
+
+      List<Map.Entry<String, Long>> entries = new ArrayList<>(myNanosByType.entrySet());
+      entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+      StringBuilder report = new StringBuilder(String.format("Average animation time over %d frames:", myFrames));
+      for (Map.Entry<String, Long> entry : entries) {
+        report.append(String.format("%n  %.3fms %s", entry.getValue() / 1000000.0 / myFrames, entry.getKey()));
+      }
+      LOG.info(report.toString());
+
+      myNanosByType.clear();
+      myFrames = 0;
+      myStartTime = now;
+    }
+  }
 }
@@ -98,6 +98,26 @@ public class LegendComponent extends AnimatedComponent {
     }
   }
 
+  /**
+   * Dirty when the labels are due for an update and the text of one of them changed.
+   */
+  @Override
+  public boolean isDirty() {
+    if (mLegendRenderData == null || System.currentTimeMillis() - mLastUpdate <= mFrequencyMillis) {
+      return false;
+    }
+    for (int i = 0; i < mLegendRenderData.size(); ++i) {
+      if (!getText(mLegendRenderData.get(i)).equals(mLabelsToDraw.get(i).getText())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String getText(LegendRenderData data) {
+    return data.hasData() ? String.format("%s: %s", data.getLabel(), data.getFormattedData()) : data.getLabel();
+  }
+
   @Override
   protected void updateData() {
     long now = System.currentTimeMillis();
@@ -106,12 +126,7 @@ public class LegendComponent extends AnimatedComponent {
       for (int i = 0; i < mLegendRenderData.size(); ++i) {
         LegendRenderData data = mLegendRenderData.get(i);
         JLabel label = mLabelsToDraw.get(i);
-        if (data.hasData()) {
-          label.setText(String.format("%s: %s", data.getLabel(), data.getFormattedData()));
-        }
-        else {
-          label.setText(data.getLabel());
-        }
+        label.setText(getText(data));
         Dimension preferredSize = label.getPreferredSize();
         if (preferredSize.getWidth() < LABEL_MIN_WIDTH_PX) {
           preferredSize.width = LABEL_MIN_WIDTH_PX;
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui;
+
+import com.android.tools.adtui.model.Range;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tells whether any of a set of {@link Range}s changed since {@link #update()} was last called. Ranges do not notify of their changes,
+ * so {@link Animatable}s that read some every frame use this to implement {@link Animatable#isDirty()}: they call {@link #update()}
+ * when they start animating, and are dirty as long as {@link #hasChanged()}, including when a range changes during that same frame.
+ */
+public final class RangeChangeTracker {
+  @NotNull private final List<Range> myRanges = new ArrayList<>();
+  @NotNull private double[] myValues = new double[0];
+  private boolean myChanged = true;
+
+  /**
+   * Adds ranges to track. Ranges that are already tracked are ignored.
+   */
+  public void track(@NotNull Range... ranges) {
+    for (Range range : ranges) {
+      if (!myRanges.contains(range)) {
+        myRanges.add(range);
+        myChanged = true;
+      }
+    }
+  }
+
+  /**
+   * Stops tracking all the ranges.
+   */
+  public void clear() {
+    myRanges.clear();
+    myChanged = true;
+  }
+
+  /**
+   * Makes {@link #hasChanged()} return {@code true} until the next {@link #update()}, for changes to inputs other than the ranges.
+   */
+  public void markChanged() {
+    myChanged = true;
+  }
+
+  public boolean hasChanged() {
+    if (myChanged) {
+      return true;
+    }
+    for (int i = 0; i < myRanges.size(); i++) {
+      Range range = myRanges.get(i);
+      if (range.getMin() != myValues[i * 2] || range.getMax() != myValues[i * 2 + 1]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Remembers the current values of the ranges, which {@link #hasChanged()} compares against from now on.
+   */
+  public void update() {
+    if (myValues.length != myRanges.size() * 2) {
+      myValues = new double[myRanges.size() * 2];
+    }
+    for (int i = 0; i < myRanges.size(); i++) {
+      Range range = myRanges.get(i);
+      myValues[i * 2] = range.getMin();
+      myValues[i * 2 + 1] = range.getMax();
+    }
+    myChanged = false;
+  }
+}
@@ -22,14 +22,22 @@ public class RangedList implements Animatable {
 
   private final RangedListModel myModel;
   private final Range myRange;
+  private final RangeChangeTracker myRangeTracker = new RangeChangeTracker();
 
   public RangedList(Range range, RangedListModel model) {
     myModel = model;
     myRange = range;
+    myRangeTracker.track(myRange);
+  }
+
+  @Override
+  public boolean isDirty() {
+    return myRangeTracker.hasChanged();
   }
 
   @Override
   public void animate(float frameLength) {
+    myRangeTracker.update();
     myModel.update(myRange);
   }
 }
@@ -22,14 +22,22 @@ import org.jetbrains.annotations.NotNull;
 public class RangedTable implements Animatable {
   private final RangedTableModel myModel;
   private final Range myRange;
+  private final RangeChangeTracker myRangeTracker = new RangeChangeTracker();
 
   public RangedTable(@NotNull Range range, @NotNull RangedTableModel model) {
     myModel = model;
     myRange = range;
+    myRangeTracker.track(myRange);
+  }
+
+  @Override
+  public boolean isDirty() {
+    return myRangeTracker.hasChanged();
   }
 
   @Override
   public void animate(float frameLength) {
+    myRangeTracker.update();
     myModel.update(myRange);
   }
 }
@@ -26,14 +26,23 @@ public class RangedTree implements Animatable {
   private final Range myRange;
   @Nullable
   private RangedTreeModel myModel;
+  @NotNull
+  private final RangeChangeTracker myRangeTracker = new RangeChangeTracker();
 
   public RangedTree(@NotNull Range range) {
     myModel = null;
     myRange = range;
+    myRangeTracker.track(myRange);
+  }
+
+  @Override
+  public boolean isDirty() {
+    return myRangeTracker.hasChanged();
   }
 
   @Override
   public void animate(float frameLength) {
+    myRangeTracker.update();
     if (myModel != null) {
       myModel.update(myRange);
     }
@@ -41,5 +50,6 @@ public class RangedTree implements Animatable {
 
   public void setModel(@Nullable RangedTreeModel model) {
     myModel = model;
+    myRangeTracker.markChanged();
   }
 }
@@ -79,6 +79,7 @@ public final class SelectionComponent extends AnimatedComponent {
   public SelectionComponent(@NotNull Range selectionRange, @NotNull Range globalRange) {
     myRange = globalRange;
     mySelectionRange = selectionRange;
+    trackInputs(mySelectionRange, myRange);
     myMode = Mode.NONE;
     setFocusable(true);
     initListeners();
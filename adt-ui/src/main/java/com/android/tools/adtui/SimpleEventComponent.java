@@ -50,6 +50,7 @@ public class SimpleEventComponent<E extends Enum<E>> extends AnimatedComponent {
     mData = data;
     mRenderers = renderers;
     mIconsToDraw = new ArrayList<>();
+    trackInputs(mData.getXRange());
   }
 
   @Override
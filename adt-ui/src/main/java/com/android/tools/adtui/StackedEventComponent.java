@@ -62,6 +62,7 @@ public class StackedEventComponent extends AnimatedComponent {
   public StackedEventComponent(@NotNull RangedSeries<EventAction<EventAction.ActivityAction, String>> data) {
     mData = data;
     setFont(AdtUiUtils.DEFAULT_FONT);
+    trackInputs(mData.getXRange());
   }
 
   @Override
@@ -181,6 +182,7 @@ public class StackedEventComponent extends AnimatedComponent {
 
   public void setLineThickness(float lineThickness) {
     myLineThickness = lineThickness;
+    markDirty();
   }
 
   private static class EventRenderData {
@@ -90,14 +90,18 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
     mRenderMode = RenderMode.BAR;
     myReducer = reducer;
     setFont(AdtUiUtils.DEFAULT_FONT);
+    // Only dirty when the x range of a series moves (see addSeries).
+    trackInputs();
   }
 
   public void setRenderMode(RenderMode mode) {
     mRenderMode = mode;
+    markDirty();
   }
 
   public void addSeries(@NotNull RangedSeries<E> series) {
     mSeriesList.add(series);
+    trackInputs(series.getXRange());
   }
 
   /**
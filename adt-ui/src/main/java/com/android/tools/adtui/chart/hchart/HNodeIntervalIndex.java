@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.hchart;
+
+import com.android.tools.adtui.model.HNode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Indexes the nodes of an {@link HNode} tree by depth, so that {@link HTreeChart} can find the nodes of a row that are in view without
+ * walking the whole tree. Within a row, nodes are sorted by start. Along with that, each row keeps the max end of the nodes up to each
+ * index, which makes finding the first node that ends after a given x a binary search even if nodes of a row overlap.
+ *
+ * The index is a snapshot of the tree: changes made to the tree afterwards are not reflected.
+ */
+final class HNodeIntervalIndex<T> {
+  @NotNull private final List<Row<T>> myRows = new ArrayList<>();
+
+  HNodeIntervalIndex(@Nullable HNode<T> root) {
+    if (root == null) {
+      return;
+    }
+
+    List<List<HNode<T>>> nodesByDepth = new ArrayList<>();
+    // Traverse the tree with a LIFO Stack instead of recursion to limit the depth of the Java call stack.
+    Stack<HNode<T>> stack = new Stack<>();
+    stack.addAll(root.getChildren());
+    while (!stack.isEmpty()) {
+      HNode<T> n = stack.pop();
+      while (nodesByDepth.size() <= n.getDepth()) {
+        nodesByDepth.add(new ArrayList<>());
+      }
+      nodesByDepth.get(n.getDepth()).add(n);
+      stack.addAll(n.getChildren());
+    }
+
+    for (List<HNode<T>> nodes : nodesByDepth) {
+      myRows.add(new Row<>(nodes));
+    }
+  }
+
+  /**
+   * Returns the number of rows, i.e. one more than the max depth of the nodes.
+   */
+  int getRowCount() {
+    return myRows.size();
+  }
+
+  @NotNull
+  Row<T> getRow(int depth) {
+    return myRows.get(depth);
+  }
+
+  static final class Row<T> {
+    @NotNull private final List<HNode<T>> myNodes;
+    @NotNull private final long[] myStarts;
+    @NotNull private final long[] myMaxEnds;
+
+    private Row(@NotNull List<HNode<T>> nodes) {
+      nodes.sort(Comparator.comparingLong(HNode::getStart));
+      myNodes = nodes;
+      myStarts = new long[nodes.size()];
+      myMaxEnds = new long[nodes.size()];
+      long maxEnd = Long.MIN_VALUE;
+      for (int i = 0; i < nodes.size(); i++) {
+        maxEnd = Math.max(maxEnd, nodes.get(i).getEnd());
+        myStarts[i] = nodes.get(i).getStart();
+        myMaxEnds[i] = maxEnd;
+      }
+    }
+
+    int size() {
+      return myNodes.size();
+    }
+
+    @NotNull
+    HNode<T> get(int index) {
+      return myNodes.get(index);
+    }
+
+    /**
+     * Returns the max end of the nodes up to and including the given index.
+     */
+    long getMaxEnd(int index) {
+      return myMaxEnds[index];
+    }
+
+    /**
+     * Returns the index of the first node that ends at or after x, or {@link #size()} if there is none. No node before it overlaps
+     * a range that starts at x.
+     */
+    int firstEndingAtOrAfter(double x) {
+      int low = 0;
+      int high = myMaxEnds.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myMaxEnds[mid] < x) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * Returns the index of the first node that starts at or after x, or {@link #size()} if there is none.
+     */
+    int firstStartingAtOrAfter(double x) {
+      int low = 0;
+      int high = myStarts.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myStarts[mid] < x) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
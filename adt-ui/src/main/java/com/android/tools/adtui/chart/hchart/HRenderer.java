@@ -80,6 +80,20 @@ public abstract class HRenderer<T> {
     g.setFont(prevFont);
   }
 
+  /**
+   * Renders a run of nodes too narrow to be told apart as a single block, in the fill color of the first one. There is no room
+   * for an outline or text.
+   */
+  public void renderMerged(Graphics2D g, T firstNode, Rectangle2D drawingArea) {
+    mRect.x = (float)drawingArea.getX();
+    mRect.y = (float)drawingArea.getY();
+    mRect.width = (float)drawingArea.getWidth();
+    mRect.height = (float)drawingArea.getHeight();
+
+    g.setPaint(getFillColor(firstNode));
+    g.fill(mRect);
+  }
+
   protected abstract String generateFittingText(T node, Rectangle2D rect, FontMetrics fontMetrics);
   protected abstract Color getFillColor(T t);
   protected abstract Color getBordColor(T t);
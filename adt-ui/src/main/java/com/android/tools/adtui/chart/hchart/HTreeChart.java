@@ -27,7 +27,6 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.Rectangle2D;
-import java.util.Stack;
 
 public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListener, MouseListener {
 
@@ -41,12 +40,18 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
   private static final String ACTION_MOVE_LEFT = "move left";
   private static final String ACTION_MOVE_RIGHT = "move right";
   private static final int ACTION_MOVEMENT_FACTOR = 5;
+  /**
+   * Nodes narrower than this, in pixels, are merged with their neighbors into a single block instead of being rendered one by one.
+   */
+  private static final double MIN_NODE_WIDTH = 1;
 
   private Orientation mOrientation;
   @Nullable
   private HRenderer<T> mHRenderer;
   @Nullable
   private HNode<T> mRoot;
+  @NotNull
+  private HNodeIntervalIndex<T> mIndex;
   @Nullable
   private Range mXRange;
   @NotNull
@@ -56,8 +61,10 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
 
   public HTreeChart() {
     mRoot = new HNode<>();
+    mIndex = new HNodeIntervalIndex<>(mRoot);
     mRect = new Rectangle2D.Float();
     mYRange = new Range(0, 0);
+    trackInputs(mYRange);
     addMouseWheelListener(this);
     mOrientation = HTreeChart.Orientation.TOP_DOWN;
     setFocusable(true);
@@ -90,14 +97,53 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
       return;
     }
 
-    // Render using a LIFO Stack instead of recursion to limit the depth of the Java call
-    // stack.
-    Stack<HNode<T>> stack = new Stack<>();
-    stack.addAll(mRoot.getChildren());
-    while (!stack.isEmpty()) {
-      HNode<T> n = stack.pop();
-      renderHNode(g, n);
-      stack.addAll(n.getChildren());
+    // Only look at the rows and nodes in view, so that rendering does not depend on the size of the tree.
+    int rowHeight = mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING;
+    for (int depth = 0; depth < mIndex.getRowCount(); depth++) {
+      double y = rowHeight * depth - getYRange().getMin();
+      if (y + rowHeight < 0 || y > getHeight()) {
+        continue;
+      }
+      renderRow(g, mIndex.getRow(depth), depth);
+    }
+  }
+
+  private void renderRow(Graphics2D g, HNodeIntervalIndex.Row<T> row, int depth) {
+    double xMax = getXRange().getMax();
+    int i = row.firstEndingAtOrAfter(getXRange().getMin());
+    while (i < row.size() && row.get(i).getStart() <= xMax) {
+      HNode<T> n = row.get(i);
+      double left = rangeToPosition(n.getStart());
+      double right = rangeToPosition(n.getEnd());
+      i++;
+      if (right - left >= MIN_NODE_WIDTH) {
+        renderHNode(g, n);
+        continue;
+      }
+
+      // Merge the run of sub-pixel nodes that starts here, until there is a gap of a pixel or a node wide enough to be rendered.
+      double runRight = right;
+      while (i < row.size()) {
+        double nextLeft = rangeToPosition(row.get(i).getStart());
+        if (nextLeft - runRight >= 1 || nextLeft > getWidth()) {
+          break;
+        }
+        // Skip to the last node that starts within the last pixel of the run, if the nodes before it end within that pixel too. That is
+        // the case unless nodes of the row overlap, in which case they are looked at one by one.
+        double pixelEnd = positionToRange(Math.floor(runRight) + 1);
+        int last = row.firstStartingAtOrAfter(pixelEnd) - 1;
+        if (last > i && row.getMaxEnd(last - 1) < pixelEnd) {
+          i = last;
+          nextLeft = rangeToPosition(row.get(i).getStart());
+          runRight = Math.max(runRight, nextLeft);
+        }
+        if (rangeToPosition(row.get(i).getEnd()) - nextLeft >= MIN_NODE_WIDTH) {
+          break;
+        }
+        runRight = Math.max(runRight, rangeToPosition(row.get(i).getEnd()));
+        i++;
+      }
+      renderMergedHNodes(g, n, depth, left, runRight);
     }
   }
 
@@ -122,17 +168,30 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
 
     // 3. Calculate node position and dimension.
     mRect.x = (float)leftEdge;
-    mRect.y = (float)((mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * n.getDepth()
-                      - getYRange().getMin());
     mRect.width = (float)width - BORDER_PLUS_PADDING;
+    setRectRow(n.getDepth());
+
+    // 4. Render node
+    mHRenderer.render(g, n.getData(), mRect);
+  }
+
+  // This method is not thread-safe: It re-uses mRect.
+  private void renderMergedHNodes(Graphics2D g, HNode<T> first, int depth, double leftEdge, double rightEdge) {
+    mRect.x = (float)Math.max(leftEdge, 0);
+    // Keep the block visible, however narrow the run is.
+    mRect.width = (float)Math.max(Math.min(rightEdge, getWidth()) - mRect.x, 1);
+    setRectRow(depth);
+    mHRenderer.renderMerged(g, first.getData(), mRect);
+  }
+
+  private void setRectRow(int depth) {
+    mRect.y = (float)((mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * depth
+                      - getYRange().getMin());
     mRect.height = mDefaultFontMetrics.getHeight();
 
     if (mOrientation == HTreeChart.Orientation.BOTTOM_UP) {
       mRect.y = (float)(getHeight() - mRect.y - mRect.getHeight());
     }
-
-    // 4. Render node
-    mHRenderer.render(g, n.getData(), mRect);
   }
 
   // This could be done with an Axis. But that seems overkill. A simple method will do for now.
@@ -149,10 +208,16 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
   public void setHRenderer(HRenderer<T> r) {
     this.mHRenderer = r;
     this.mHRenderer.setFont(AdtUiUtils.DEFAULT_FONT);
+    markDirty();
   }
 
+  /**
+   * Sets the tree to render. Changes made to the tree afterwards are not rendered until it is set again.
+   */
   public void setHTree(@Nullable HNode<T> root) {
     this.mRoot = root;
+    this.mIndex = new HNodeIntervalIndex<>(root);
+    markDirty();
   }
 
   public Range getXRange() {
@@ -161,6 +226,8 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
 
   public void setXRange(Range XRange) {
     mXRange = XRange;
+    clearTrackedInputs();
+    trackInputs(mXRange, mYRange);
 
     getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_UP, 0), ACTION_ZOOM_IN);
     getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), ACTION_ZOOM_OUT);
@@ -205,24 +272,7 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
   }
 
   public int getMaximumHeight() {
-    if (mRoot == null) {
-      return 0;
-    }
-
-    int maxDepth = -1;
-    // Traverse the tree FIFO instead of recursion to limit the depth of the Java call
-    // stack.
-    Stack<HNode<T>> stack = new Stack<>();
-    stack.addAll(mRoot.getChildren());
-    while (!stack.isEmpty()) {
-      HNode<T> n = stack.pop();
-      if (n.getDepth() > maxDepth) {
-        maxDepth = n.getDepth();
-      }
-      stack.addAll(n.getChildren());
-    }
-    maxDepth += 1;
-    return (mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * maxDepth;
+    return (mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * mIndex.getRowCount();
   }
 
   // TODO we probably want to extract/abstract this logic out later so the zooming behavior
@@ -16,6 +16,7 @@
 package com.android.tools.adtui.chart.linechart;
 
 import com.android.tools.adtui.Animatable;
+import com.android.tools.adtui.RangeChangeTracker;
 import com.android.tools.adtui.common.AdtUiUtils;
 import com.android.tools.adtui.model.*;
 import com.intellij.util.containers.ImmutableList;
@@ -77,6 +78,8 @@ public final class DurationDataRenderer<E extends DurationData> implements Anima
   private Point myMousePosition;
   private boolean myClick;
 
+  @NotNull private final RangeChangeTracker myInputs = new RangeChangeTracker();
+
   public DurationDataRenderer(@NotNull Builder builder) {
     mySeries = builder.mySeries;
     myColor = builder.myColor;
@@ -91,10 +94,24 @@ public final class DurationDataRenderer<E extends DurationData> implements Anima
     myLabelHoveredBgColor = builder.myLabelHoveredBgColor;
     myLabelClickedBgColor = builder.myLabelClickedBgColor;
     myLabelTextColor = builder.myLabelTextColor;
+
+    myInputs.track(mySeries.getXRange());
+    if (myAttachedLineSeries != null) {
+      myInputs.track(myAttachedLineSeries.getYRange());
+    }
+  }
+
+  /**
+   * Dirty when the ranges of the series move, or when the mouse moved over the labels, which are highlighted when hovered.
+   */
+  @Override
+  public boolean isDirty() {
+    return myInputs.hasChanged();
   }
 
   @Override
   public void animate(float frameLength) {
+    myInputs.update();
     // No-op - do everything in postAnimate in case we are attaching to a line series which needs to perform logic in its animate first.
   }
 
@@ -253,6 +270,7 @@ public final class DurationDataRenderer<E extends DurationData> implements Anima
   public boolean handleMouseEvent(@NotNull MouseEvent event) {
     myMousePosition = event.getPoint();
     myClick = event.getClickCount() > 0;
+    myInputs.markChanged();
     if (myClickHandler == null || !myClick) {
       return false;
     }
@@ -56,6 +56,12 @@ public class LineChart extends AnimatedComponent {
   @NotNull
   private final List<LineChartCustomRenderer> myCustomRenderers = new ArrayList<>();
 
+  /**
+   * The reduced points of the series that are not stacked, kept between frames so that only new data needs to be queried.
+   */
+  @NotNull
+  private final Map<RangedContinuousSeries, SeriesPathCache> myPathCaches = new HashMap<>();
+
   /**
    * The color of the next line to be inserted, if not specified, is picked from {@code COLORS}
    * array of {@link LineConfig}. This field holds the color index.
@@ -73,12 +79,11 @@ public class LineChart extends AnimatedComponent {
   public LineChart() {
     myLinePaths = new ArrayList<>();
     myLinePathConfigs = new ArrayList<>();
-    // TODO: Replace with myReducer = new LineChartReducer
-    // Having a real reducer will be important for the final release, but we don't want to risk
-    // unintentional side effects to distract us as we prepare to meet an initial milestone.
-    // (For example, reducing points may make it harder to handle dealing with flickering when
-    // endpoints go off screen). Therefore, we just create a passthru reducer for now.
+    // The paths of series that are not stacked are already reduced to a few points per pixel column when built (see SeriesPathCache),
+    // and stacked series need all their points to line up with each other, so there is nothing left to reduce by default.
     myReducer = (path, config) -> path;
+    // Only dirty when the ranges of a line move (see addLine).
+    trackInputs();
   }
 
   @TestOnly
@@ -105,6 +110,9 @@ public class LineChart extends AnimatedComponent {
    */
   public void addLine(@NotNull RangedContinuousSeries series, @NotNull LineConfig config) {
     myLinesConfig.put(series, config);
+    // New data only shows when these ranges move, e.g. while streaming, or when something else needs a frame.
+    trackInputs(series.getXRange(), series.getYRange());
+    markDirty();
   }
 
   /**
@@ -125,6 +133,7 @@ public class LineChart extends AnimatedComponent {
 
   public void addCustomRenderer(@NotNull LineChartCustomRenderer renderer) {
     myCustomRenderers.add(renderer);
+    markDirty();
   }
 
   @NotNull
@@ -137,7 +146,9 @@ public class LineChart extends AnimatedComponent {
    */
   public void clearConfigs() {
     myLinesConfig.clear();
+    myPathCaches.clear();
     myCustomRenderers.clear();
+    clearTrackedInputs();
   }
 
   @NotNull
@@ -149,17 +160,26 @@ public class LineChart extends AnimatedComponent {
   protected void updateData() {
     Map<Range, Double> max = new HashMap<>();
     // TODO Handle stacked configs
-    for (RangedContinuousSeries ranged : myLinesConfig.keySet()) {
+    for (Map.Entry<RangedContinuousSeries, LineConfig> lineConfig : myLinesConfig.entrySet()) {
+      RangedContinuousSeries ranged = lineConfig.getKey();
       Range range = ranged.getYRange();
       double yMax = Double.MIN_VALUE;
 
-      ImmutableList<SeriesData<Long>> seriesList = ranged.getSeries();
-      for (int i = 0; i < seriesList.size(); i++) {
-        double value = seriesList.get(i).value;
-        if (yMax < value) {
-          yMax = value;
+      if (lineConfig.getValue().isStacked()) {
+        // Reduced data keeps the max of every bucket, so it is enough to find the max value in range.
+        ImmutableList<SeriesData<Long>> seriesList = ranged.getSeries(getWidth() * 2);
+        for (int i = 0; i < seriesList.size(); i++) {
+          double value = seriesList.get(i).value;
+          if (yMax < value) {
+            yMax = value;
+          }
         }
       }
+      else {
+        SeriesPathCache cache = getPathCache(ranged);
+        cache.update(ranged, getWidth());
+        yMax = cache.getMaxValue();
+      }
 
       Double m = max.get(range);
       max.put(range, m == null ? yMax : Math.max(yMax, m));
@@ -178,6 +198,11 @@ public class LineChart extends AnimatedComponent {
     myFirstUpdate = false;
   }
 
+  @NotNull
+  private SeriesPathCache getPathCache(@NotNull RangedContinuousSeries series) {
+    return myPathCaches.computeIfAbsent(series, s -> new SeriesPathCache());
+  }
+
   /**
    * Creates a {@link LegendRenderData} instance. The configruation will be derived based on the {@link LineConfig} associated
    * with the input series used in this {@link LineChart} instance. If the series is not part of the LineChart, defaults will be chosen.
@@ -240,43 +265,51 @@ public class LineChart extends AnimatedComponent {
       // X coordinate of the first point
       double firstXd = 0f;
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
-      for (int i = 0; i < seriesList.size(); i++) {
-        // TODO: refactor to allow different types (e.g. double)
-        SeriesData<Long> seriesData = seriesList.get(i);
-        long currX = seriesData.x;
-        long currY = seriesData.value;
-        double xd = (currX - xMin) / (xMax - xMin);
-        double yd = (currY - yMin) / (yMax - yMin);
-
-        // If the current series is stacked, increment its yd by the yd of the last stacked
-        // series if it's not null.
-        // As the series are constantly populated, the current series might have one more
-        // point than the last stacked series (meaning that the last one was populated in a
-        // prior iteration). In this case, yd of the current series shouldn't change.
-        if (config.isStacked() && lastStackedSeriesY != null &&
-            i < lastStackedSeriesY.size()) {
-          yd += lastStackedSeriesY.get(i);
-        }
-        currentSeriesY.add(yd);
-        // Swing's (0, 0) coordinate is in top-left. As we use bottom-left (0, 0), we need to adjust the y coordinate.
-        float adjustedYd = 1 - (float)yd;
+      if (config.isStacked()) {
+        // Stacked series rely on their points lining up with the previous stacked series, so those always get the raw data.
+        List<SeriesData<Long>> seriesList = ranged.getSeries();
+        for (int i = 0; i < seriesList.size(); i++) {
+          // TODO: refactor to allow different types (e.g. double)
+          SeriesData<Long> seriesData = seriesList.get(i);
+          long currX = seriesData.x;
+          long currY = seriesData.value;
+          double xd = (currX - xMin) / (xMax - xMin);
+          double yd = (currY - yMin) / (yMax - yMin);
+
+          // If the current series is stacked, increment its yd by the yd of the last stacked
+          // series if it's not null.
+          // As the series are constantly populated, the current series might have one more
+          // point than the last stacked series (meaning that the last one was populated in a
+          // prior iteration). In this case, yd of the current series shouldn't change.
+          if (lastStackedSeriesY != null && i < lastStackedSeriesY.size()) {
+            yd += lastStackedSeriesY.get(i);
+          }
+          currentSeriesY.add(yd);
+          // Swing's (0, 0) coordinate is in top-left. As we use bottom-left (0, 0), we need to adjust the y coordinate.
+          float adjustedYd = 1 - (float)yd;
 
-        if (i == 0) {
-          path.moveTo(xd, adjustedYd);
-          firstXd = xd;
-        }
-        else {
-          // If the chart is stepped, a horizontal line should be drawn from the current
-          // point (e.g. (x0, y0)) to the destination's X value (e.g. (x1, y0)) before
-          // drawing a line to the destination point itself (e.g. (x1, y1)).
-          if (config.isStepped()) {
-            float y = (float)path.getCurrentPoint().getY();
-            path.lineTo(xd, y);
+          if (i == 0) {
+            path.moveTo(xd, adjustedYd);
+            firstXd = xd;
+          }
+          else {
+            // If the chart is stepped, a horizontal line should be drawn from the current
+            // point (e.g. (x0, y0)) to the destination's X value (e.g. (x1, y0)) before
+            // drawing a line to the destination point itself (e.g. (x1, y1)).
+            if (config.isStepped()) {
+              float y = (float)path.getCurrentPoint().getY();
+              path.lineTo(xd, y);
+            }
+            path.lineTo(xd, adjustedYd);
           }
-          path.lineTo(xd, adjustedYd);
         }
       }
+      else {
+        // Only queries the data added since updateData, if any.
+        SeriesPathCache cache = getPathCache(ranged);
+        cache.update(ranged, getWidth());
+        firstXd = cache.addToPath(path, config, ranged.getXRange(), ranged.getYRange());
+      }
 
       if (config.isFilled() && path.getCurrentPoint() != null) {
         // If the chart is filled, but not stacked, draw a line from the last point to X
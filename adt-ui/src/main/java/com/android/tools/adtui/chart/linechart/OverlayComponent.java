@@ -39,6 +39,8 @@ public final class OverlayComponent extends AnimatedComponent {
   public OverlayComponent(@NotNull Component dispatchComponent) {
     myDurationRenderers = new ArrayList<>();
     myDispatchComponent = dispatchComponent;
+    // Draws the state of its DurationDataRenderers, which are animated, and report whether they are dirty, on their own.
+    trackInputs();
 
     addMouseListener(new MouseListener() {
       @Override
@@ -82,6 +84,7 @@ public final class OverlayComponent extends AnimatedComponent {
 
   public void addDurationDataRenderer(@NotNull DurationDataRenderer renderer) {
     myDurationRenderers.add(renderer);
+    markDirty();
   }
 
   @Override
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.linechart;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.adtui.model.RangedContinuousSeries;
+import com.android.tools.adtui.model.SeriesData;
+import com.intellij.util.containers.ImmutableList;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.geom.Path2D;
+
+/**
+ * Caches the points of a {@link LineChart} series, reduced to the ones that matter when drawing it one pixel column at a time: the
+ * first, last, min and max points of each column (see {@link com.android.tools.adtui.common.datareducer.LineChartReducer}).
+ *
+ * Columns are aligned to multiples of the column width in data space, so that they stay the same while the view scrolls. When the
+ * view moves forward, only the data after the last cached point is queried and merged into the last columns, and the columns that
+ * scrolled out of view are dropped. The cache is rebuilt from scratch when the view is zoomed, resized or moved backwards. Either way,
+ * the cache holds at most a few points per pixel column, however many samples the series has.
+ */
+final class SeriesPathCache {
+  // Each column is stored as FIELDS consecutive values in myColumns.
+  private static final int INDEX = 0;
+  private static final int FIRST_X = 1;
+  private static final int FIRST_Y = 2;
+  private static final int MIN_X = 3;
+  private static final int MIN_Y = 4;
+  private static final int MAX_X = 5;
+  private static final int MAX_Y = 6;
+  private static final int LAST_X = 7;
+  private static final int LAST_Y = 8;
+  private static final int FIELDS = 9;
+
+  // The order in which the points of a column are drawn, depending on whether its min comes before its max.
+  private static final int[] MIN_FIRST = {FIRST_X, MIN_X, MAX_X, LAST_X};
+  private static final int[] MAX_FIRST = {FIRST_X, MAX_X, MIN_X, LAST_X};
+
+  /**
+   * Relative difference in column width under which the columns are kept. The length of a scrolling range drifts a little because of
+   * rounding, which should not cause a rebuild.
+   */
+  private static final double COLUMN_WIDTH_TOLERANCE = 1e-3;
+
+  @NotNull private final TLongArrayList myColumns = new TLongArrayList();
+  /**
+   * Offset of the first column in {@link #myColumns}. Columns that scroll out of view are dropped by moving the offset, and the array is
+   * compacted once they take up half of it.
+   */
+  private int myStart;
+  private double myColumnWidth;
+  /**
+   * All the data after this x is cached.
+   */
+  private double myCoveredFromX;
+
+  /**
+   * Brings the cache up to date with the data of the series in its current x range, reduced to the given number of pixel columns. A
+   * chart that has not been laid out yet still gets a single column, so that it knows the max value of its data.
+   */
+  void update(@NotNull RangedContinuousSeries series, int columns) {
+    Range xRange = series.getXRange();
+    double xMin = xRange.getMin();
+    double xMax = xRange.getMax();
+    columns = Math.max(columns, 1);
+    if (xMax <= xMin) {
+      clear();
+      return;
+    }
+
+    double columnWidth = (xMax - xMin) / columns;
+    if (isEmpty() ||
+        Math.abs(columnWidth - myColumnWidth) > myColumnWidth * COLUMN_WIDTH_TOLERANCE ||
+        xMin < myCoveredFromX ||
+        get(size() - 1, LAST_X) > xMax + myColumnWidth) {
+      // Zoomed, resized or moved backwards.
+      clear();
+      myColumnWidth = columnWidth;
+      myCoveredFromX = xMin;
+      // The reduced data is enough to fill the columns, as it keeps the min and max of every bucket.
+      addAll(series.getSeries(columns * 2));
+    }
+    else {
+      addAll(series.getDataSeries().getDataForXRange(new Range(get(size() - 1, LAST_X), xMax)));
+    }
+
+    // Keep one column before the range, so that the line enters the view from the left.
+    while (size() > 1 && get(1, FIRST_X) <= xMin) {
+      myStart += FIELDS;
+      myCoveredFromX = get(0, FIRST_X);
+    }
+    if (myStart > myColumns.size() / 2) {
+      myColumns.remove(0, myStart);
+      myStart = 0;
+    }
+  }
+
+  private void addAll(@NotNull ImmutableList<SeriesData<Long>> data) {
+    for (int i = 0; i < data.size(); i++) {
+      SeriesData<Long> point = data.get(i);
+      add(point.x, point.value);
+    }
+  }
+
+  private void add(long x, long y) {
+    int last = size() - 1;
+    if (last >= 0 && x <= get(last, LAST_X)) {
+      // Already cached, e.g. the point right before the queried range.
+      return;
+    }
+
+    long index = (long)Math.floor(x / myColumnWidth);
+    if (last >= 0 && get(last, INDEX) == index) {
+      int offset = myStart + last * FIELDS;
+      if (y < myColumns.get(offset + MIN_Y)) {
+        myColumns.set(offset + MIN_X, x);
+        myColumns.set(offset + MIN_Y, y);
+      }
+      if (y >= myColumns.get(offset + MAX_Y)) {
+        myColumns.set(offset + MAX_X, x);
+        myColumns.set(offset + MAX_Y, y);
+      }
+      myColumns.set(offset + LAST_X, x);
+      myColumns.set(offset + LAST_Y, y);
+    }
+    else {
+      myColumns.add(new long[]{index, x, y, x, y, x, y, x, y});
+    }
+  }
+
+  /**
+   * Returns the maximum value in the cache, or {@link Double#MIN_VALUE} if it is empty.
+   */
+  double getMaxValue() {
+    double max = Double.MIN_VALUE;
+    for (int i = 0; i < size(); i++) {
+      max = Math.max(max, get(i, MAX_Y));
+    }
+    return max;
+  }
+
+  /**
+   * Adds the cached points to the given empty path, normalized to [0, 1] in both directions with y pointing down, the way
+   * {@link LineChart} draws its paths.
+   *
+   * @return the x coordinate of the first point added, or 0 if the cache is empty.
+   */
+  double addToPath(@NotNull Path2D path, @NotNull LineConfig config, @NotNull Range xRange, @NotNull Range yRange) {
+    double xMin = xRange.getMin();
+    double xLength = xRange.getMax() - xMin;
+    double yMin = yRange.getMin();
+    double yLength = yRange.getMax() - yMin;
+
+    double firstXd = 0;
+    for (int i = 0; i < size(); i++) {
+      for (int field : get(i, MIN_X) <= get(i, MAX_X) ? MIN_FIRST : MAX_FIRST) {
+        long x = get(i, field);
+        long y = get(i, field + 1);
+        double xd = (x - xMin) / xLength;
+        float adjustedYd = 1 - (float)((y - yMin) / yLength);
+        if (path.getCurrentPoint() == null) {
+          path.moveTo(xd, adjustedYd);
+          firstXd = xd;
+          continue;
+        }
+        if (path.getCurrentPoint().getX() == (float)xd && path.getCurrentPoint().getY() == adjustedYd) {
+          // Columns with fewer than four distinct points repeat some of them.
+          continue;
+        }
+        if (config.isStepped()) {
+          path.lineTo(xd, path.getCurrentPoint().getY());
+        }
+        path.lineTo(xd, adjustedYd);
+      }
+    }
+    return firstXd;
+  }
+
+  void clear() {
+    myColumns.resetQuick();
+    myStart = 0;
+  }
+
+  private boolean isEmpty() {
+    return size() == 0;
+  }
+
+  private int size() {
+    return (myColumns.size() - myStart) / FIELDS;
+  }
+
+  private long get(int column, int field) {
+    return myColumns.get(myStart + column * FIELDS + field);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui;
+
+import org.junit.Test;
+
+import javax.swing.*;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ChoreographerTest {
+
+  @Test
+  public void testParksWhenNothingIsDirty() throws Exception {
+    Choreographer choreographer = new Choreographer(new JPanel());
+    TestAnimatable animatable = new TestAnimatable();
+    choreographer.register(animatable);
+
+    animatable.myDirty = true;
+    choreographer.actionPerformed(null);
+    assertThat(animatable.myFrames).isEqualTo(1);
+    assertThat(choreographer.isParked()).isFalse();
+
+    // Keeps animating for a few frames after the last change.
+    animatable.myDirty = false;
+    for (int i = 1; i < Choreographer.IDLE_FRAMES_BEFORE_PARKING; i++) {
+      choreographer.actionPerformed(null);
+      assertThat(choreographer.isParked()).isFalse();
+    }
+    choreographer.actionPerformed(null);
+    assertThat(animatable.myFrames).isEqualTo(1 + Choreographer.IDLE_FRAMES_BEFORE_PARKING);
+    assertThat(choreographer.isParked()).isTrue();
+
+    // No frames while parked.
+    choreographer.actionPerformed(null);
+    assertThat(animatable.myFrames).isEqualTo(1 + Choreographer.IDLE_FRAMES_BEFORE_PARKING);
+
+    animatable.myDirty = true;
+    choreographer.actionPerformed(null);
+    assertThat(animatable.myFrames).isEqualTo(2 + Choreographer.IDLE_FRAMES_BEFORE_PARKING);
+    assertThat(choreographer.isParked()).isFalse();
+  }
+
+  @Test
+  public void testMarkDirtyResumesFrames() throws Exception {
+    Choreographer choreographer = new Choreographer(new JPanel());
+    TestAnimatable animatable = new TestAnimatable();
+    choreographer.register(animatable);
+    park(choreographer);
+    int frames = animatable.myFrames;
+
+    choreographer.markDirty();
+    assertThat(choreographer.isParked()).isFalse();
+    choreographer.actionPerformed(null);
+    assertThat(animatable.myFrames).isEqualTo(frames + 1);
+  }
+
+  @Test
+  public void testRegisterResumesFrames() throws Exception {
+    Choreographer choreographer = new Choreographer(new JPanel());
+    TestAnimatable animatable = new TestAnimatable();
+    choreographer.register(animatable);
+    park(choreographer);
+    int frames = animatable.myFrames;
+
+    TestAnimatable other = new TestAnimatable();
+    choreographer.register(other);
+    choreographer.actionPerformed(null);
+    assertThat(animatable.myFrames).isEqualTo(frames + 1);
+    assertThat(other.myFrames).isEqualTo(1);
+  }
+
+  @Test
+  public void testAnimatedRangeIsDirtyUntilTargetIsReached() throws Exception {
+    Choreographer choreographer = new Choreographer(new JPanel());
+    AnimatedRange range = new AnimatedRange(0, 100);
+    range.setLerpFraction(1f);
+    choreographer.register(range);
+    park(choreographer);
+
+    range.setMax(50);
+    assertThat(range.isDirty()).isTrue();
+    choreographer.actionPerformed(null);
+    assertThat(range.getMax()).isWithin(0.001).of(50);
+    assertThat(range.isDirty()).isFalse();
+  }
+
+  /**
+   * Runs frames until the Choreographer parks, failing if it does not within the number of idle frames it waits for.
+   */
+  static void park(Choreographer choreographer) {
+    for (int i = 0; i < Choreographer.IDLE_FRAMES_BEFORE_PARKING && !choreographer.isParked(); i++) {
+      choreographer.actionPerformed(null);
+    }
+    assertThat(choreographer.isParked()).isTrue();
+  }
+
+  private static class TestAnimatable implements Animatable {
+    private boolean myDirty;
+    private int myFrames;
+
+    @Override
+    public void animate(float frameLength) {
+      myFrames++;
+    }
+
+    @Override
+    public boolean isDirty() {
+      return myDirty;
+    }
+  }
+}
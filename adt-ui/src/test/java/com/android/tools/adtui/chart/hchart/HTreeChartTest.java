@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.hchart;
+
+import com.android.tools.adtui.model.HNode;
+import com.android.tools.adtui.model.Range;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class HTreeChartTest {
+
+  @Test
+  public void testIndexRowsAreSortedByStart() throws Exception {
+    // Creates a tree with the following shape:
+    //        A
+    //    B --+-- C
+    //          D-+-E
+    HNode<String> root = new HNode<>();
+    HNode<String> nodeA = createNode(root, "A", 0, 100);
+    HNode<String> nodeC = createNode(nodeA, "C", 50, 100);
+    createNode(nodeA, "B", 0, 40);
+    createNode(nodeC, "E", 80, 90);
+    createNode(nodeC, "D", 60, 70);
+
+    HNodeIntervalIndex<String> index = new HNodeIntervalIndex<>(root);
+    assertThat(index.getRowCount()).isEqualTo(3);
+    assertThat(index.getRow(0).get(0).getData()).isEqualTo("A");
+    assertThat(index.getRow(1).get(0).getData()).isEqualTo("B");
+    assertThat(index.getRow(1).get(1).getData()).isEqualTo("C");
+    assertThat(index.getRow(2).get(0).getData()).isEqualTo("D");
+    assertThat(index.getRow(2).get(1).getData()).isEqualTo("E");
+  }
+
+  @Test
+  public void testIndexFindsNodesInRange() throws Exception {
+    HNode<String> root = new HNode<>();
+    for (int i = 0; i < 10; i++) {
+      createNode(root, "N" + i, i * 10, i * 10 + 5);
+    }
+
+    HNodeIntervalIndex.Row<String> row = new HNodeIntervalIndex<>(root).getRow(0);
+    assertThat(row.firstEndingAtOrAfter(0)).isEqualTo(0);
+    assertThat(row.firstEndingAtOrAfter(25)).isEqualTo(2);
+    assertThat(row.firstEndingAtOrAfter(27)).isEqualTo(3);
+    assertThat(row.firstEndingAtOrAfter(1000)).isEqualTo(10);
+    assertThat(row.firstStartingAtOrAfter(20)).isEqualTo(2);
+    assertThat(row.firstStartingAtOrAfter(21)).isEqualTo(3);
+    assertThat(row.firstStartingAtOrAfter(1000)).isEqualTo(10);
+  }
+
+  @Test
+  public void testIndexOfEmptyTree() throws Exception {
+    assertThat(new HNodeIntervalIndex<String>(null).getRowCount()).isEqualTo(0);
+    assertThat(new HNodeIntervalIndex<>(new HNode<String>()).getRowCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testChartOnlyRendersNodesInView() throws Exception {
+    HNode<String> root = new HNode<>();
+    for (int i = 0; i < 100; i++) {
+      createNode(root, "N" + i, i * 10, i * 10 + 10);
+    }
+    CountingRenderer renderer = new CountingRenderer();
+    HTreeChart<String> chart = createChart(root, renderer, new Range(0, 99));
+
+    render(chart);
+    assertThat(renderer.myRendered).isEqualTo(10);
+    assertThat(renderer.myMerged).isEqualTo(0);
+  }
+
+  @Test
+  public void testChartMergesSubPixelNodes() throws Exception {
+    HNode<String> root = new HNode<>();
+    int[] startsRead = new int[1];
+    for (int i = 0; i < 100000; i++) {
+      CountingNode node = new CountingNode("N" + i, i, i + 1, startsRead);
+      root.addHNode(node);
+    }
+    CountingRenderer renderer = new CountingRenderer();
+    HTreeChart<String> chart = createChart(root, renderer, new Range(0, 100000));
+
+    startsRead[0] = 0;
+    render(chart);
+    assertThat(renderer.myRendered).isEqualTo(0);
+    assertThat(renderer.myMerged).isEqualTo(1);
+    // A few nodes per pixel at most.
+    assertThat(startsRead[0]).isAtMost(1000);
+  }
+
+  @Test
+  public void testChartRendersWideNodeOverlappingSubPixelNodes() throws Exception {
+    HNode<String> root = new HNode<>();
+    for (int i = 0; i < 1000; i++) {
+      createNode(root, "N" + i, i, i + 1);
+    }
+    // Starts among the sub-pixel nodes of the first pixel, but is wide enough to be rendered on its own.
+    createNode(root, "Wide", 500, 50000);
+    CountingRenderer renderer = new CountingRenderer();
+    HTreeChart<String> chart = createChart(root, renderer, new Range(0, 100000));
+
+    render(chart);
+    assertThat(renderer.myRendered).isEqualTo(1);
+  }
+
+  private static HNode<String> createNode(HNode<String> parent, String data, long start, long end) {
+    HNode<String> node = new HNode<>(data, start, end);
+    node.setDepth(parent.getData() == null ? 0 : parent.getDepth() + 1);
+    parent.addHNode(node);
+    return node;
+  }
+
+  private static HTreeChart<String> createChart(HNode<String> root, HRenderer<String> renderer, Range xRange) {
+    HTreeChart<String> chart = new HTreeChart<>();
+    chart.setHRenderer(renderer);
+    chart.setHTree(root);
+    chart.setXRange(xRange);
+    chart.setSize(100, 100);
+    return chart;
+  }
+
+  private static void render(HTreeChart<String> chart) {
+    BufferedImage image = new BufferedImage(chart.getWidth(), chart.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    try {
+      chart.draw(g, chart.getSize());
+    }
+    finally {
+      g.dispose();
+    }
+  }
+
+  private static class CountingNode extends HNode<String> {
+    private final int[] myStartsRead;
+
+    private CountingNode(String data, long start, long end, int[] startsRead) {
+      super(data, start, end);
+      myStartsRead = startsRead;
+    }
+
+    @Override
+    public long getStart() {
+      myStartsRead[0]++;
+      return super.getStart();
+    }
+  }
+
+  private static class CountingRenderer extends HRenderer<String> {
+    private int myRendered;
+    private int myMerged;
+
+    @Override
+    public void render(Graphics2D g, String node, Rectangle2D drawingArea) {
+      myRendered++;
+    }
+
+    @Override
+    public void renderMerged(Graphics2D g, String firstNode, Rectangle2D drawingArea) {
+      myMerged++;
+    }
+
+    @Override
+    protected String generateFittingText(String node, Rectangle2D rect, FontMetrics fontMetrics) {
+      return node;
+    }
+
+    @Override
+    protected Color getFillColor(String node) {
+      return Color.BLUE;
+    }
+
+    @Override
+    protected Color getBordColor(String node) {
+      return Color.BLACK;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.linechart;
+
+import com.android.tools.adtui.model.DefaultDataSeries;
+import com.android.tools.adtui.model.Range;
+import com.android.tools.adtui.model.RangedContinuousSeries;
+import com.android.tools.adtui.model.SeriesData;
+import com.intellij.util.containers.ImmutableList;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class SeriesPathCacheTest {
+
+  @Test
+  public void testReducesToFourPointsPerColumn() throws Exception {
+    CountingDataSeries series = new CountingDataSeries();
+    for (int i = 0; i < 1000; i++) {
+      series.add(i, (long)(i % 7));
+    }
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", new Range(0, 1000), new Range(0, 10), series);
+
+    SeriesPathCache cache = new SeriesPathCache();
+    cache.update(ranged, 10);
+    Path2D path = new Path2D.Float();
+    cache.addToPath(path, new LineConfig(Color.BLUE), ranged.getXRange(), ranged.getYRange());
+
+    assertThat(countPoints(path)).isAtMost(40);
+    assertThat(cache.getMaxValue()).isWithin(0.0).of(6);
+  }
+
+  @Test
+  public void testOnlyQueriesNewDataWhenScrolling() throws Exception {
+    CountingDataSeries series = new CountingDataSeries();
+    for (int i = 0; i <= 100; i++) {
+      series.add(i, (long)i);
+    }
+    Range xRange = new Range(0, 100);
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", xRange, new Range(0, 200), series);
+
+    SeriesPathCache cache = new SeriesPathCache();
+    cache.update(ranged, 100);
+    assertThat(series.myPointsReturned).isEqualTo(101);
+
+    for (int i = 101; i <= 110; i++) {
+      series.add(i, (long)i);
+    }
+    xRange.set(10, 110);
+    series.myPointsReturned = 0;
+    cache.update(ranged, 100);
+    // The last cached point and the ten new ones.
+    assertThat(series.myPointsReturned).isEqualTo(11);
+    assertThat(cache.getMaxValue()).isWithin(0.0).of(110);
+  }
+
+  @Test
+  public void testDropsDataThatScrolledOutOfView() throws Exception {
+    CountingDataSeries series = new CountingDataSeries();
+    series.add(0, 1000L);
+    for (int i = 1; i <= 100; i++) {
+      series.add(i, 1L);
+    }
+    Range xRange = new Range(0, 100);
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", xRange, new Range(0, 10), series);
+
+    SeriesPathCache cache = new SeriesPathCache();
+    cache.update(ranged, 100);
+    assertThat(cache.getMaxValue()).isWithin(0.0).of(1000);
+
+    for (int i = 101; i <= 150; i++) {
+      series.add(i, 1L);
+    }
+    xRange.set(50, 150);
+    cache.update(ranged, 100);
+    assertThat(cache.getMaxValue()).isWithin(0.0).of(1);
+  }
+
+  @Test
+  public void testRebuildsWhenMovingBackwards() throws Exception {
+    CountingDataSeries series = new CountingDataSeries();
+    for (int i = 0; i <= 200; i++) {
+      series.add(i, (long)i);
+    }
+    Range xRange = new Range(100, 200);
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", xRange, new Range(0, 10), series);
+
+    SeriesPathCache cache = new SeriesPathCache();
+    cache.update(ranged, 100);
+    assertThat(cache.getMaxValue()).isWithin(0.0).of(200);
+
+    xRange.set(0, 100);
+    cache.update(ranged, 100);
+    assertThat(cache.getMaxValue()).isWithin(0.0).of(100);
+  }
+
+  @Test
+  public void testRebuildsWhenZooming() throws Exception {
+    CountingDataSeries series = new CountingDataSeries();
+    for (int i = 0; i <= 100; i++) {
+      series.add(i, (long)i);
+    }
+    Range xRange = new Range(0, 100);
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", xRange, new Range(0, 10), series);
+
+    SeriesPathCache cache = new SeriesPathCache();
+    cache.update(ranged, 10);
+    assertThat(cache.getMaxValue()).isWithin(0.0).of(100);
+
+    xRange.set(0, 20);
+    cache.update(ranged, 10);
+    Path2D path = new Path2D.Float();
+    cache.addToPath(path, new LineConfig(Color.BLUE), ranged.getXRange(), ranged.getYRange());
+    assertThat(cache.getMaxValue()).isWithin(0.0).of(20);
+    // The data that is no longer in view is not part of the path.
+    assertThat(path.getBounds2D().getMaxX()).isWithin(0.001).of(1);
+  }
+
+  private static int countPoints(Path2D path) {
+    int count = 0;
+    for (PathIterator it = path.getPathIterator(null); !it.isDone(); it.next()) {
+      count++;
+    }
+    return count;
+  }
+
+  private static class CountingDataSeries extends DefaultDataSeries<Long> {
+    private int myPointsReturned;
+
+    @Override
+    public ImmutableList<SeriesData<Long>> getDataForXRange(Range xRange) {
+      ImmutableList<SeriesData<Long>> data = super.getDataForXRange(xRange);
+      myPointsReturned += data.size();
+      return data;
+    }
+  }
+}
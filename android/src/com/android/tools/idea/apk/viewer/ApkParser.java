@@ -25,7 +25,6 @@ import com.google.common.util.concurrent.MoreExecutors;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.process.ProcessOutput;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -34,15 +33,27 @@ import org.jetbrains.ide.PooledThreadExecutor;
 
 import javax.swing.tree.DefaultMutableTreeNode;
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 import java.util.zip.*;
 
 public class ApkParser {
   private static final ListeningExecutorService ourExecutorService = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
 
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+  private static final int GZIP_BLOCK_SIZE = 1024 * 1024;
+  private static final int GZIP_DICTIONARY_SIZE = 32 * 1024;
+  /** The size of the gzip header and trailer around the deflate stream. */
+  private static final int GZIP_OVERHEAD = 18;
+
   private final VirtualFile myApkRoot;
   private final File myApk;
 
@@ -74,13 +85,11 @@ public class ApkParser {
   public synchronized ListenableFuture<DefaultMutableTreeNode> constructTreeStructureWithCompressedSizes() {
     if (myTreeStructureWithCompressedSizes == null) {
       myTreeStructureWithCompressedSizes = ourExecutorService.submit(() -> {
-        // first obtain the compressed apk
-        File compressedApk = getZipCompressedApk(myApk);
+        // first obtain the size of each file in the apk when it is compressed
+        Map<String, Long> compressedSizes = getCompressedEntrySizes(myApk, CompressedSizeCache.getInstance());
 
-        // then update the existing tree structure with info about size of each file in the apk when it is compressed
-        try (ZipFile zip = new ZipFile(compressedApk)) {
-          return updateTreeStructure(constructTreeStructure().get(), zip);
-        }
+        // then update the existing tree structure with that info
+        return updateTreeStructure(constructTreeStructure().get(), compressedSizes);
       });
     }
 
@@ -109,7 +118,7 @@ public class ApkParser {
   @NotNull
   public synchronized ListenableFuture<Long> getCompressedFullApkSize() {
     if (myCompressedFullApkSize == null) {
-      myCompressedFullApkSize = ourExecutorService.submit(() -> getApkServedByPlay(myApk).length());
+      myCompressedFullApkSize = ourExecutorService.submit(() -> getApkServedByPlaySize(myApk, CompressedSizeCache.getInstance()));
     }
 
     return myCompressedFullApkSize;
@@ -160,7 +169,8 @@ public class ApkParser {
    * Updates and returns the given tree structure with info about the compressed size of each node.
    */
   @NotNull
-  private static DefaultMutableTreeNode updateTreeStructure(@NotNull DefaultMutableTreeNode treeNode, @NotNull ZipFile compressedApk) {
+  private static DefaultMutableTreeNode updateTreeStructure(@NotNull DefaultMutableTreeNode treeNode,
+                                                            @NotNull Map<String, Long> compressedSizes) {
     long compressedSize = 0;
 
     ApkEntry entry = ApkEntry.fromNode(treeNode);
@@ -168,19 +178,15 @@ public class ApkParser {
 
     if (treeNode.getChildCount() > 0) {
       for (int i = 0; i < treeNode.getChildCount(); i++) {
-        DefaultMutableTreeNode childNode = updateTreeStructure((DefaultMutableTreeNode)treeNode.getChildAt(i), compressedApk);
+        DefaultMutableTreeNode childNode = updateTreeStructure((DefaultMutableTreeNode)treeNode.getChildAt(i), compressedSizes);
         compressedSize += ((ApkEntry)childNode.getUserObject()).getCompressedSize();
       }
     }
     else {
-      ZipEntry ze = compressedApk.getEntry(ApkFileSystem.getInstance().getRelativePath(entry.getFile()));
-      if (ze == null) {
-        // happens if such a relative path is not present inside the apk (e.g. zip files such as instant-run.zip are unzipped to a tempfile)
-        compressedSize = -1;
-      }
-      else {
-        compressedSize = ze.getCompressedSize();
-      }
+      Long size = compressedSizes.get(ApkFileSystem.getInstance().getRelativePath(entry.getFile()));
+      // null happens if such a relative path is not present inside the apk (e.g. zip files such as instant-run.zip are unzipped to a
+      // tempfile)
+      compressedSize = size == null ? -1 : size;
     }
 
     entry.setCompressedSize(compressedSize);
@@ -230,89 +236,196 @@ public class ApkParser {
   }
 
   /**
-   * @return the input file compressed using "gzip -9" and saved in a temporary location
+   * @return the size of the input file when compressed using "gzip -9"
    */
-  private static File getApkServedByPlay(@NotNull File apk) {
-    File compressedFile;
-    try {
-      compressedFile =
-        FileUtil.createTempFile("compressed", SdkConstants.DOT_ANDROID_PACKAGE, true);
+  @VisibleForTesting
+  static long getApkServedByPlaySize(@NotNull File apk, @NotNull CompressedSizeCache cache) {
+    // There is a difference between uncompressing the apk, and then compressing again using gzip -9, versus just compressing the apk
+    // itself using gzip -9. But the difference seems to be negligible, and we are only aiming at an estimate of what Play provides, so
+    // this should suffice. This also seems to be the same approach taken by https://github.com/googlesamples/apk-patch-size-estimator
+    long crc;
+    try (ZipFile zip = new ZipFile(apk)) {
+      crc = getEntryTableCrc(zip);
     }
     catch (IOException e) {
       Logger.getInstance(ApkParser.class).warn(e);
-      return apk;
+      return apk.length();
     }
 
-    // There is a difference between uncompressing the apk, and then compressing again using gzip -9, versus just compressing the apk
-    // itself using gzip -9. But the difference seems to be negligible, and we are only aiming at an estimate of what Play provides, so
-    // this should suffice. This also seems to be the same approach taken by https://github.com/googlesamples/apk-patch-size-estimator
+    long compressedSize = cache.getApkSize(crc, apk.length());
+    if (compressedSize >= 0) {
+      return compressedSize;
+    }
 
-    try (GZIPOutputStream zos = new MaxGzipOutputStream(new FileOutputStream(compressedFile))) {
-      Files.copy(apk.toPath(), zos);
-      zos.flush();
+    // Compress the file in independent blocks, in parallel. Like pigz, each block is primed with the tail of the block before it, which
+    // keeps the result within a few bytes per block of what a single deflate stream would produce.
+    long length = apk.length();
+    int blockCount = (int)Math.max(1, (length + GZIP_BLOCK_SIZE - 1) / GZIP_BLOCK_SIZE);
+    try (FileChannel channel = FileChannel.open(apk.toPath(), StandardOpenOption.READ)) {
+      compressedSize = GZIP_OVERHEAD + IntStream.range(0, blockCount).parallel().mapToLong(block -> {
+        try {
+          return getGzipBlockSize(channel, block, block == blockCount - 1);
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }).sum();
     }
-    catch (IOException e) {
+    catch (IOException | UncheckedIOException e) {
       Logger.getInstance(ApkParser.class).warn(e);
-      return apk;
+      return length;
     }
 
-    return compressedFile;
+    cache.putApkSize(crc, length, compressedSize);
+    cache.save();
+    return compressedSize;
   }
 
   /**
-   * Provides a zip archive that is compressed at level 9, but still maintains archive information. This implies that it will be slightly
-   * larger than compressing using gzip (which only compresses a single file, not an archive). But having compression information per file
-   * is sometimes useful to get an approximate idea of how well each file compresses.
-   *
-   * @return the input file compressed using "zip -9" and saved in a temporary location.
+   * Returns the number of bytes the given block of the file takes up in a raw deflate stream compressed at level 9.
    */
-  static File getZipCompressedApk(@NotNull File apk) {
-    File compressedFile;
+  private static long getGzipBlockSize(@NotNull FileChannel channel, int block, boolean last) throws IOException {
+    long start = (long)block * GZIP_BLOCK_SIZE;
+    int dictionarySize = block == 0 ? 0 : GZIP_DICTIONARY_SIZE;
+    ByteBuffer buffer = ByteBuffer.allocate(dictionarySize + GZIP_BLOCK_SIZE);
+    long position = start - dictionarySize;
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, position + buffer.position());
+      if (n < 0) {
+        break;
+      }
+    }
+    byte[] data = buffer.array();
+    int dataLength = buffer.position() - dictionarySize;
+
+    Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
     try {
-      compressedFile =
-        FileUtil.createTempFile(FileUtil.getNameWithoutExtension(apk), SdkConstants.DOT_ANDROID_PACKAGE, true);
+      if (dictionarySize > 0) {
+        deflater.setDictionary(data, 0, dictionarySize);
+      }
+      deflater.setInput(data, dictionarySize, dataLength);
+
+      byte[] output = new byte[COPY_BUFFER_SIZE];
+      long size = 0;
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          size += deflater.deflate(output);
+        }
+      }
+      else {
+        // A sync flush ends the block on a byte boundary, so the compressed blocks could simply be concatenated
+        int n;
+        do {
+          n = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+          size += n;
+        }
+        while (n == output.length);
+      }
+      return size;
     }
-    catch (IOException e) {
-      return apk;
+    finally {
+      deflater.end();
     }
+  }
 
-    // copy entire contents of one zip file to another, where the destination zip is written to with the maximum compression level
-    try (
-      ZipInputStream zis = new ZipInputStream(new FileInputStream(apk));
-      ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(compressedFile))) {
+  /**
+   * Computes the size of each file in the apk when compressed at level 9, as if the apk was re-zipped using "zip -9". This is slightly
+   * larger than compressing using gzip (which only compresses a single file, not an archive), but having compression information per
+   * file is useful to get an approximate idea of how well each file compresses.
+   *
+   * Entries are compressed in parallel, and only if {@code cache} doesn't know the size of an entry with the same contents yet.
+   *
+   * @return the compressed size of each entry, by path within the apk
+   */
+  @NotNull
+  static Map<String, Long> getCompressedEntrySizes(@NotNull File apk, @NotNull CompressedSizeCache cache) {
+    return getCompressedEntrySizes(apk, cache, ApkParser::getDeflatedSize);
+  }
 
-      ZipEntry ze;
-      while ((ze = zis.getNextEntry()) != null) {
-        ZipEntry compressedZe = new ZipEntry(ze.getName());
-        compressedZe.setMethod(ZipEntry.DEFLATED);
-        compressedZe.setTime(ze.getTime());
-        zos.putNextEntry(compressedZe);
+  /**
+   * Same as {@link #getCompressedEntrySizes(File, CompressedSizeCache)}, with {@code deflater} computing the size of the entries
+   * {@code cache} doesn't know.
+   */
+  @VisibleForTesting
+  @NotNull
+  static Map<String, Long> getCompressedEntrySizes(@NotNull File apk,
+                                                   @NotNull CompressedSizeCache cache,
+                                                   @NotNull DeflatedSizeFunction deflater) {
+    try (ZipFile zip = new ZipFile(apk)) {
+      List<? extends ZipEntry> entries = Collections.list(zip.entries());
+      Map<String, Long> sizes = new ConcurrentHashMap<>();
+      entries.parallelStream().forEach(entry -> {
+        // Without its crc and size, an entry can't be told apart from others in the cache
+        boolean cacheable = entry.getCrc() >= 0 && entry.getSize() >= 0;
+        long size = cacheable ? cache.getEntrySize(entry.getCrc(), entry.getSize()) : -1;
+        if (size < 0) {
+          try (InputStream in = zip.getInputStream(entry)) {
+            size = deflater.getSize(in);
+          }
+          catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          if (cacheable) {
+            cache.putEntrySize(entry.getCrc(), entry.getSize(), size);
+          }
+        }
+        sizes.put(entry.getName(), size);
+      });
+      cache.save();
+      return sizes;
+    }
+    catch (IOException | UncheckedIOException e) {
+      Logger.getInstance(ApkParser.class).warn(e);
+      return Collections.emptyMap();
+    }
+  }
 
-        byte[] buf = new byte[4096];
-        int n;
-        while ((n = zis.read(buf)) > 0) {
-          zos.write(buf, 0, n);
+  /**
+   * Returns the number of bytes the given stream takes up in a zip entry compressed at level 9.
+   */
+  @VisibleForTesting
+  static long getDeflatedSize(@NotNull InputStream in) throws IOException {
+    // Zip entries are raw deflate streams, without the zlib header and checksum
+    Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+    try {
+      byte[] input = new byte[COPY_BUFFER_SIZE];
+      byte[] output = new byte[COPY_BUFFER_SIZE];
+      int n;
+      while ((n = in.read(input)) > 0) {
+        deflater.setInput(input, 0, n);
+        while (!deflater.needsInput()) {
+          deflater.deflate(output);
         }
       }
+      deflater.finish();
+      while (!deflater.finished()) {
+        deflater.deflate(output);
+      }
+      return deflater.getBytesWritten();
     }
-    catch (IOException e) {
-      return apk;
+    finally {
+      deflater.end();
     }
-
-    return compressedFile;
   }
 
-  private static final class MaxGzipOutputStream extends GZIPOutputStream {
-    public MaxGzipOutputStream(OutputStream out) throws IOException {
-      super(out);
-      def.setLevel(Deflater.BEST_COMPRESSION); // Currently, Google Play serves an APK that is compressed using gzip -9
+  /**
+   * Returns a CRC over the name, CRC and size of every entry in the zip, which identifies its contents without reading them.
+   */
+  private static long getEntryTableCrc(@NotNull ZipFile zip) {
+    CRC32 crc = new CRC32();
+    ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES);
+    for (ZipEntry entry : Collections.list(zip.entries())) {
+      crc.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+      buffer.clear();
+      buffer.putLong(entry.getCrc()).putLong(entry.getSize());
+      crc.update(buffer.array());
     }
+    return crc.getValue();
   }
 
-  private static final class MaxZipOutputStream extends ZipOutputStream {
-    public MaxZipOutputStream(OutputStream out) throws IOException {
-      super(out);
-      def.setLevel(Deflater.BEST_COMPRESSION);
-    }
+  @VisibleForTesting
+  interface DeflatedSizeFunction {
+    long getSize(@NotNull InputStream in) throws IOException;
   }
 }
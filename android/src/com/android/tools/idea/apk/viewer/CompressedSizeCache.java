@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers how well APK contents compress, across APKs and IDE sessions, so that re-analyzing an APK or analyzing the next build of
+ * it only needs to compress the entries that changed.
+ *
+ * Sizes are keyed by the CRC and the uncompressed size of the compressed data, which a zip file records for each of its entries.
+ * Whole APKs are keyed the same way, with a CRC computed over their entry table (see {@link ApkParser}).
+ *
+ * This class is thread safe.
+ */
+final class CompressedSizeCache {
+  private static final String CACHE_FILE = "apk_analyzer" + File.separator + "compressed_sizes.dat";
+  private static final int CACHE_VERSION = 1;
+
+  /**
+   * The maximum number of entry sizes saved to disk. Sizes used during the current session are saved first.
+   */
+  private static final int MAX_SAVED_ENTRIES = 100000;
+  private static final int MAX_SAVED_APKS = 100;
+
+  private static CompressedSizeCache ourInstance;
+
+  private final File myFile;
+  private final Map<Key, Long> myEntrySizes = new ConcurrentHashMap<>();
+  private final Map<Key, Long> myApkSizes = new ConcurrentHashMap<>();
+  private final Set<Key> myUsedKeys = ConcurrentHashMap.newKeySet();
+  private volatile boolean myModified;
+
+  @NotNull
+  static synchronized CompressedSizeCache getInstance() {
+    if (ourInstance == null) {
+      ourInstance = new CompressedSizeCache(new File(PathManager.getSystemPath(), CACHE_FILE));
+    }
+    return ourInstance;
+  }
+
+  CompressedSizeCache(@NotNull File file) {
+    myFile = file;
+    load();
+  }
+
+  /**
+   * Returns the compressed size of an entry with the given CRC and uncompressed size, or -1 if it isn't known.
+   */
+  long getEntrySize(long crc, long size) {
+    return get(myEntrySizes, new Key(crc, size));
+  }
+
+  void putEntrySize(long crc, long size, long compressedSize) {
+    put(myEntrySizes, new Key(crc, size), compressedSize);
+  }
+
+  /**
+   * Returns the compressed size of an APK with the given entry table CRC and file size, or -1 if it isn't known.
+   */
+  long getApkSize(long crc, long size) {
+    return get(myApkSizes, new Key(crc, size));
+  }
+
+  void putApkSize(long crc, long size, long compressedSize) {
+    put(myApkSizes, new Key(crc, size), compressedSize);
+  }
+
+  private long get(@NotNull Map<Key, Long> sizes, @NotNull Key key) {
+    Long compressedSize = sizes.get(key);
+    if (compressedSize == null) {
+      return -1;
+    }
+    myUsedKeys.add(key);
+    return compressedSize;
+  }
+
+  private void put(@NotNull Map<Key, Long> sizes, @NotNull Key key, long compressedSize) {
+    sizes.put(key, compressedSize);
+    myUsedKeys.add(key);
+    myModified = true;
+  }
+
+  /**
+   * Writes the cache to disk if it changed since it was loaded.
+   */
+  synchronized void save() {
+    if (!myModified) {
+      return;
+    }
+    myModified = false;
+
+    try {
+      FileUtil.createParentDirs(myFile);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile)))) {
+        out.writeInt(CACHE_VERSION);
+        write(out, myEntrySizes, MAX_SAVED_ENTRIES);
+        write(out, myApkSizes, MAX_SAVED_APKS);
+      }
+    }
+    catch (IOException e) {
+      Logger.getInstance(CompressedSizeCache.class).warn("Unable to save compressed APK sizes to " + myFile, e);
+    }
+  }
+
+  private void write(@NotNull DataOutputStream out, @NotNull Map<Key, Long> sizes, int max) throws IOException {
+    int count = Math.min(sizes.size(), max);
+    out.writeInt(count);
+    // Sizes used in this session go first, so that those of old builds are the ones dropped once the cache is full
+    for (boolean used : new boolean[]{true, false}) {
+      for (Map.Entry<Key, Long> entry : sizes.entrySet()) {
+        if (count == 0) {
+          return;
+        }
+        if (myUsedKeys.contains(entry.getKey()) == used) {
+          out.writeLong(entry.getKey().myCrc);
+          out.writeLong(entry.getKey().mySize);
+          out.writeLong(entry.getValue());
+          count--;
+        }
+      }
+    }
+    // The map may have shrunk while we were writing, so pad the remaining records to keep the file readable
+    for (; count > 0; count--) {
+      out.writeLong(-1);
+      out.writeLong(-1);
+      out.writeLong(-1);
+    }
+  }
+
+  private void load() {
+    if (!myFile.isFile()) {
+      return;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)))) {
+      if (in.readInt() != CACHE_VERSION) {
+        return;
+      }
+      read(in, myEntrySizes);
+      read(in, myApkSizes);
+    }
+    catch (IOException e) {
+      // The cache is only an optimization, so start over from an empty one
+      Logger.getInstance(CompressedSizeCache.class).info("Unable to read compressed APK sizes from " + myFile, e);
+      myEntrySizes.clear();
+      myApkSizes.clear();
+    }
+  }
+
+  private static void read(@NotNull DataInputStream in, @NotNull Map<Key, Long> sizes) throws IOException {
+    for (int count = in.readInt(); count > 0; count--) {
+      long crc = in.readLong();
+      long size = in.readLong();
+      long compressedSize = in.readLong();
+      if (compressedSize >= 0) {
+        sizes.put(new Key(crc, size), compressedSize);
+      }
+    }
+  }
+
+  private static final class Key {
+    private final long myCrc;
+    private final long mySize;
+
+    private Key(long crc, long size) {
+      myCrc = crc;
+      mySize = size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key)o;
+      return myCrc == key.myCrc && mySize == key.mySize;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Long.hashCode(myCrc) + Long.hashCode(mySize);
+    }
+  }
+}
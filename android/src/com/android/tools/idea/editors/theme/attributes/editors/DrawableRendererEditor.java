@@ -80,6 +80,8 @@ public class DrawableRendererEditor extends GraphicalResourceRendererEditor {
 
     if (myRenderTask == null || myRenderTask.getModule() != context.getCurrentContextModule()) {
       myRenderTask = configureRenderTask(context.getCurrentContextModule(), context.getConfiguration());
+      // Thumbnails of the attributes table, don't hold up the preview
+      myRenderTask.setPriority(RenderService.RenderingPriority.LOW);
     }
 
     myRenderTask.setMaxRenderSize(iconWidth, iconHeight);
@@ -17,16 +17,21 @@ package com.android.tools.idea.experimental;
 
 import com.android.tools.idea.experimental.codeanalysis.PsiCFGScene;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGClass;
+import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGMethod;
 import com.android.tools.idea.experimental.codeanalysis.utils.PsiCFGAnalysisUtil;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.intellij.analysis.AnalysisScope;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.*;
+import com.intellij.psi.util.PsiModificationTracker;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Set;
 
 public class CodeAnalysisMain {
 
@@ -36,6 +41,11 @@ public class CodeAnalysisMain {
 
   private PsiCFGScene mScene;
 
+  //The state of the project when mScene was last analyzed,
+  //used to only rebuild the CFGs of the files edited since.
+  private long mSceneStructureModificationCount = -1;
+  private Map<PsiFile, Long> mSceneFileModificationStamps = Maps.newHashMap();
+
   private CodeAnalysisMain(Project project) {
     mProject = project;
   }
@@ -55,10 +65,11 @@ public class CodeAnalysisMain {
   public void analyze(@NotNull AnalysisScope scope) {
 
 //    PsiDocumentManager.getInstance(mProject).commitAllDocuments();
-    //Create a mScene for this project.
-    //Each project has its own mScene.
-    mScene = PsiCFGScene.createFreshInstance(mProject);
-    PsiCFGAnalysisUtil AnalysisUtil = mScene.analysisUtil;
+    //Forget the state of the current mScene until this analysis completes.
+    long structureModificationCount =
+      PsiModificationTracker.SERVICE.getInstance(mProject).getJavaStructureModificationCount();
+    long lastStructureModificationCount = mSceneStructureModificationCount;
+    mSceneStructureModificationCount = -1;
 
     //Get list of java files available in this project
     int fileCount = scope.getFileCount();
@@ -67,6 +78,37 @@ public class CodeAnalysisMain {
     //LOG.info("File count in visitor " + allFilesInScope.length);
     //outputFileNames(allFilesInScope);
 
+    Set<PsiFile> changedFiles = null;
+    if (structureModificationCount == lastStructureModificationCount) {
+      changedFiles = findChangedFiles(allFilesInScope);
+    }
+
+    if (changedFiles == null) {
+      analyzeFromScratch(allFilesInScope);
+    }
+    else if (!changedFiles.isEmpty()) {
+      //Only code blocks were edited since the last analysis.
+      //Rebuild the CFGs of the edited files and everything after.
+      PsiCFGAnalysisUtil AnalysisUtil = mScene.analysisUtil;
+      AnalysisUtil.performStage3(changedFiles);
+      AnalysisUtil.performStage4();
+      AnalysisUtil.performStage5();
+      AnalysisUtil.performStage6();
+    }
+
+    mSceneFileModificationStamps.clear();
+    for (PsiFile file : allFilesInScope) {
+      mSceneFileModificationStamps.put(file, file.getModificationStamp());
+    }
+    mSceneStructureModificationCount = structureModificationCount;
+  }
+
+  private void analyzeFromScratch(@NotNull PsiFile[] allFilesInScope) {
+    //Create a mScene for this project.
+    //Each project has its own mScene.
+    mScene = PsiCFGScene.createFreshInstance(mProject);
+    PsiCFGAnalysisUtil AnalysisUtil = mScene.analysisUtil;
+
     //Extract all java classes from java files.
     //Consider these classes are application classes.
     //As they are written by developer
@@ -84,6 +126,50 @@ public class CodeAnalysisMain {
     AnalysisUtil.performStage6();
   }
 
+  /**
+   * Find the files edited since mScene was built, provided that mScene can be updated
+   * by rebuilding the CFGs of these files only.
+   * The caller checks that no class, method or field declaration changed in between.
+   * @return The edited files, or null if mScene needs to be built from scratch.
+   */
+  @Nullable
+  private Set<PsiFile> findChangedFiles(@NotNull PsiFile[] files) {
+    if (mScene == null || mScene != PsiCFGScene.getInstance(mProject)) {
+      return null;
+    }
+    if (files.length != mSceneFileModificationStamps.size()) {
+      return null;
+    }
+
+    Set<PsiFile> changedFiles = Sets.newHashSet();
+    for (PsiFile file : files) {
+      Long modificationStamp = mSceneFileModificationStamps.get(file);
+      if (modificationStamp == null || !file.isValid()) {
+        return null;
+      }
+      if (modificationStamp != file.getModificationStamp()) {
+        changedFiles.add(file);
+      }
+    }
+
+    //The classes and methods of the edited files must still be the ones in mScene
+    for (PsiCFGClass clazz : mScene.getAllApplicationClasses()) {
+      if (clazz.isNested() || !changedFiles.contains(clazz.getDeclearingFile())) {
+        continue;
+      }
+      if (!clazz.getPsiClass().isValid()) {
+        return null;
+      }
+      for (PsiCFGMethod method : clazz.getAllMethods()) {
+        PsiMethod methodRef = method.getMethodRef();
+        if (methodRef != null && !methodRef.isValid()) {
+          return null;
+        }
+      }
+    }
+    return changedFiles;
+  }
+
   private void outputFileNames(PsiFile[] filesArray) {
     for (PsiFile f : filesArray) {
       System.out.println(f.getName());
@@ -19,6 +19,8 @@ import com.android.tools.idea.experimental.codeanalysis.callgraph.Callgraph;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGClass;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGMethod;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.graph.BlockGraph;
+import com.android.tools.idea.experimental.codeanalysis.datastructs.graph.Graph;
+import com.android.tools.idea.experimental.codeanalysis.datastructs.graph.MethodGraph;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.graph.node.GraphNode;
 import com.android.tools.idea.experimental.codeanalysis.utils.CFGUtil;
 import com.android.tools.idea.experimental.codeanalysis.utils.PsiCFGAnalysisUtil;
@@ -57,6 +59,10 @@ public class PsiCFGScene {
 
   protected Callgraph mCallGraph;
 
+  /**
+   * The classes waiting for their control flow graphs to be built.
+   * Guarded by this scene, see {@link #pollWorkingList()}.
+   */
   public Deque<PsiCFGClass> workingList;
 
 
@@ -91,14 +97,64 @@ public class PsiCFGScene {
     return mCallGraph;
   }
 
-  public void addInvocationNode(GraphNode node) {
+  public synchronized void addInvocationNode(GraphNode node) {
     mInvocationNodes.add(node);
   }
 
-  public GraphNode[] getAllInvocationNode() {
+  public synchronized GraphNode[] getAllInvocationNode() {
     return mInvocationNodes.toArray(GraphNode.EMPTY_ARRAY);
   }
 
+  /**
+   * Remove all the classes from the working list.
+   * @return The classes that were in the working list.
+   */
+  public synchronized PsiCFGClass[] pollWorkingList() {
+    PsiCFGClass[] retArray = workingList.toArray(PsiCFGClass.EMPTY_ARRAY);
+    workingList.clear();
+    return retArray;
+  }
+
+  /**
+   * Discard what the construction of the control flow graphs created for the classes
+   * declared in the given files: their nested classes, lambdas and invocation sites.
+   * The classes themselves and the library classes they refer to are kept.
+   * @param files The files whose classes will have their control flow graphs rebuilt.
+   * @return The application classes declared in these files, excluding nested classes and lambdas.
+   */
+  public synchronized PsiCFGClass[] removeControlFlowGraphs(@NotNull Set<PsiFile> files) {
+    ArrayList<PsiCFGClass> retList = Lists.newArrayList();
+    Iterator<PsiCFGClass> classIterator = mAppPsiClassPsiCFGClassMap.values().iterator();
+    while (classIterator.hasNext()) {
+      PsiCFGClass clazz = classIterator.next();
+      if (!files.contains(clazz.getDeclearingFile())) {
+        continue;
+      }
+      if (clazz.isNested()) {
+        classIterator.remove();
+        mAppClassNamePsiMap.values().remove(clazz);
+      }
+      else {
+        clazz.clearDeclaredClasses();
+        retList.add(clazz);
+      }
+    }
+    mLambdaPsiCFGClassMap.values().removeIf(clazz -> files.contains(clazz.getDeclearingFile()));
+    mInvocationNodes.removeIf(node -> {
+      PsiCFGMethod method = getParentMethod(node);
+      return method == null || files.contains(method.getDeclaringClass().getDeclearingFile());
+    });
+    return retList.toArray(PsiCFGClass.EMPTY_ARRAY);
+  }
+
+  private static PsiCFGMethod getParentMethod(GraphNode node) {
+    Graph parentGraph = node.getParentGraph();
+    while (parentGraph != null && !(parentGraph instanceof MethodGraph)) {
+      parentGraph = parentGraph.getParentGraph();
+    }
+    return parentGraph == null ? null : ((MethodGraph)parentGraph).getPsiCFGMethod();
+  }
+
   /**
    * Get the Scene object for this project.
    * The original idea is that the CFG does not need be recreated each time it is used.
@@ -143,7 +199,7 @@ public class PsiCFGScene {
    * Get all PsiClass instances found by visiting all java files in the project.
    * @return A new array of PsiClass instances which are application classes.
    */
-  public PsiClass[] getAllApplicationPsiClasses() {
+  public synchronized PsiClass[] getAllApplicationPsiClasses() {
     PsiClass[] retArray = new PsiClass[mAppClassNamePsiMap.size()];
     int i = 0;
     for (String className : mAppClassNamePsiMap.keySet()) {
@@ -158,7 +214,7 @@ public class PsiCFGScene {
    * Get all PsiCFGClass instances constructed from the application classses.
    * @return A new array of PsiCFGClass instances which are application classes will be returned.
    */
-  public PsiCFGClass[] getAllApplicationClasses() {
+  public synchronized PsiCFGClass[] getAllApplicationClasses() {
     PsiCFGClass[] retArray = new PsiCFGClass[mAppClassNamePsiMap.size()];
     int i = 0;
     for (String className : mAppClassNamePsiMap.keySet()) {
@@ -172,7 +228,7 @@ public class PsiCFGScene {
    * Get the set of PsiCFGClass instances which are application classes.
    * @return A new set of PsiCFGClass instances which are application classes will be returned.
    */
-  public Set<PsiClass> getAllLibraryClassPsiSet() {
+  public synchronized Set<PsiClass> getAllLibraryClassPsiSet() {
     return Sets.newHashSet(this.mLibraryPsiClassPsiCFGClassMap.keySet());
   }
 
@@ -180,7 +236,7 @@ public class PsiCFGScene {
    * Get all PsiCFGClass instances constructed from the library classses.
    * @return A new array of PsiCFGClass instances which are library classes will be returned.
    */
-  public PsiCFGClass[] getAllLibraryClasses() {
+  public synchronized PsiCFGClass[] getAllLibraryClasses() {
     PsiCFGClass[] retArray = new PsiCFGClass[mLibraryClassNamePsiMap.size()];
     int i = 0;
     for (String className : mLibraryClassNamePsiMap.keySet()) {
@@ -195,7 +251,7 @@ public class PsiCFGScene {
    * @return A new array of PsiCFGClass instances which are lambda anonymous classes will be
    * returned.
    */
-  public PsiCFGClass[] getAllLambdaClass() {
+  public synchronized PsiCFGClass[] getAllLambdaClass() {
     PsiCFGClass[] retArray = new PsiCFGClass[mLambdaPsiCFGClassMap.size()];
     int i = 0;
     for (PsiLambdaExpression lbdExpr : mLambdaPsiCFGClassMap.keySet()) {
@@ -211,7 +267,7 @@ public class PsiCFGScene {
    * @param name The qualified name of the class
    * @return The PsiCFGClass instance.
    */
-  public PsiCFGClass getPsiCFGClass(String name) {
+  public synchronized PsiCFGClass getPsiCFGClass(String name) {
     if (mAppClassNamePsiMap.containsKey(name)) {
       return mAppClassNamePsiMap.get(name);
     }
@@ -230,7 +286,7 @@ public class PsiCFGScene {
    * @param name The PsiClass
    * @return The PsiCFGClass instance.
    */
-  public PsiCFGClass getPsiCFGClass(PsiClass psiClazz) {
+  public synchronized PsiCFGClass getPsiCFGClass(PsiClass psiClazz) {
     if (mAppPsiClassPsiCFGClassMap.containsKey(psiClazz)) {
       return mAppPsiClassPsiCFGClassMap.get(psiClazz);
     }
@@ -243,7 +299,7 @@ public class PsiCFGScene {
     }
   }
 
-  public PsiCFGClass getOrCreateCFGClass(PsiClass psiClazz) {
+  public synchronized PsiCFGClass getOrCreateCFGClass(PsiClass psiClazz) {
     PsiCFGClass retClass = getPsiCFGClass(psiClazz);
     if (retClass == null) {
       retClass = createAndParsePsiCFGClassOnTheFly(psiClazz);
@@ -251,7 +307,7 @@ public class PsiCFGScene {
     return retClass;
   }
 
-  public PsiCFGClass createPsiCFGClass(PsiClass psiClass,
+  public synchronized PsiCFGClass createPsiCFGClass(PsiClass psiClass,
                                        PsiFile declaringFile,
                                        boolean bAppClass) {
     String fullClassName = psiClass.getQualifiedName();
@@ -304,7 +360,7 @@ public class PsiCFGScene {
    * @param psiClass
    * @return
    */
-  public PsiCFGClass createAndParsePsiCFGClassOnTheFly(PsiClass psiClass) {
+  public synchronized PsiCFGClass createAndParsePsiCFGClassOnTheFly(PsiClass psiClass) {
     //Sanity check. Make sure the psiClass param is really not in side the App classes.
     if (mAppPsiClassPsiCFGClassMap.containsKey(psiClass)) {
       //Not expected. Print a log
@@ -329,7 +385,7 @@ public class PsiCFGScene {
    * @param clazz
    * @return
    */
-  public PsiCFGClass createLibraryCFGClassesWInnerClasses(PsiClass clazz) {
+  public synchronized PsiCFGClass createLibraryCFGClassesWInnerClasses(PsiClass clazz) {
     ArrayList<PsiClass> classList = Lists.newArrayList();
     retriveClassAndInnerClass(classList, clazz);
     classList.remove(clazz);
@@ -358,7 +414,7 @@ public class PsiCFGScene {
   }
 
 
-  public PsiCFGClass getOrCreateNestedClass(PsiClass nestedClass,
+  public synchronized PsiCFGClass getOrCreateNestedClass(PsiClass nestedClass,
                                             PsiCFGClass parentCFGClass,
                                             PsiCFGMethod declaringMethod,
                                             BlockGraph declaringBlock) {
@@ -409,7 +465,10 @@ public class PsiCFGScene {
 
     PsiCFGMethod wrapperMethod = new PsiCFGMethod(lambdaExpress, overridedMethod, wrapperClass);
     wrapperClass.addMethod(wrapperMethod);
-    mLambdaPsiCFGClassMap.put(lambdaExpress, wrapperClass);
+    synchronized (this) {
+      mLambdaPsiCFGClassMap.put(lambdaExpress, wrapperClass);
+    }
+    //The graph is built outside of the lock, as other classes are built concurrently
     CFGUtil.constructMethodGraphForLambda(this, wrapperMethod);
     return wrapperClass;
   }
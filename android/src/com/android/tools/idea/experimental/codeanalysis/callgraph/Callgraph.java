@@ -102,6 +102,20 @@ public class Callgraph {
 
   public Set<PsiCFGMethod> allMethodsInGraph;
 
+  /**
+   * Add all the edges of another call graph to this one.
+   * Used to merge the call graphs built concurrently for parts of the callsites.
+   */
+  protected void addAll(Callgraph other) {
+    callerNodeToMethodsMap.putAll(other.callerNodeToMethodsMap);
+    calleeMethodToCallerGraphNodeMap.putAll(other.calleeMethodToCallerGraphNodeMap);
+    callerNodeToCalleeNodeMap.putAll(other.callerNodeToCalleeNodeMap);
+    calleeNodeToCallerNodeMap.putAll(other.calleeNodeToCallerNodeMap);
+    callerMethodToCalleeMethodMap.putAll(other.callerMethodToCalleeMethodMap);
+    calleeMethodToCallerMethodReturnMap.putAll(other.calleeMethodToCallerMethodReturnMap);
+    allMethodsInGraph.addAll(other.allMethodsInGraph);
+  }
+
   protected Callgraph() {
     this.callerNodeToMethodsMap = Multimaps.newSetMultimap(
       Maps.newHashMap(), new Supplier<Set<PsiCFGMethod>>() {
@@ -30,6 +30,9 @@ import com.android.tools.idea.experimental.codeanalysis.utils.PsiCFGDebugUtil;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.util.Pair;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiClassType;
@@ -37,6 +40,7 @@ import com.intellij.psi.PsiType;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -57,34 +61,58 @@ public class CallgraphBuilder {
 
   public PsiCFGClass JAVA_LANG_OBJECT;
 
+  private static final int MIN_CHUNK_SIZE = 256;
+
   public CallgraphBuilder(@NotNull PsiCFGScene scene, @NotNull PsiCFGAnalysisUtil analysisUtil) {
     this.mScene = scene;
     this.mAnalysisUtil = analysisUtil;
-    this.mMethodOrderTreeMap = Maps.newHashMap();
+    this.mMethodOrderTreeMap = Maps.newConcurrentMap();
     JAVA_LANG_OBJECT = mScene.getPsiCFGClass("java.lang.Object");
   }
 
   public void build() {
-    //Initiate
-
-    this.mCallGraphInstance = new Callgraph();
-
     //Retrive all callsites
-
     GraphNode[] invocationNodes = mScene.getAllInvocationNode();
-    for (GraphNode invocationNode : invocationNodes) {
 
-      processSingleInvocation(invocationNode);
+    //Split the callsites into chunks that are resolved concurrently,
+    //each into a call graph of its own, and merge these call graphs.
+    int chunkCount = Math.max(1, Math.min(invocationNodes.length / MIN_CHUNK_SIZE,
+                                          4 * Runtime.getRuntime().availableProcessors()));
+    List<Integer> chunks = Lists.newArrayList();
+    for (int i = 0; i < chunkCount; i++) {
+      chunks.add(i);
+    }
+    Callgraph[] chunkCallGraphs = new Callgraph[chunkCount];
+
+    boolean completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(
+      chunks, ProgressManager.getInstance().getProgressIndicator(), true, false, chunk -> {
+        Callgraph callGraph = new Callgraph();
+        int start = (int)((long)invocationNodes.length * chunk / chunkCount);
+        int end = (int)((long)invocationNodes.length * (chunk + 1) / chunkCount);
+        for (int i = start; i < end; i++) {
+          processSingleInvocation(callGraph, invocationNodes[i]);
+        }
+        chunkCallGraphs[chunk] = callGraph;
+        return true;
+      });
+    if (!completed) {
+      throw new ProcessCanceledException();
+    }
+
+    this.mCallGraphInstance = new Callgraph();
+    for (Callgraph chunkCallGraph : chunkCallGraphs) {
+      mCallGraphInstance.addAll(chunkCallGraph);
     }
   }
 
   /**
    * Create call graph edges for a single invocation site
    *
+   * @param callGraph The call graph to add the edges to
    * @param node The node in CFG that contains an invocation
    *             statement.
    */
-  public void processSingleInvocation(GraphNode node) {
+  public void processSingleInvocation(Callgraph callGraph, GraphNode node) {
     Stmt[] stmtWithInvocationArray = node.getStatements();
 
     if (stmtWithInvocationArray.length != 1) {
@@ -101,11 +129,11 @@ public class CallgraphBuilder {
       Value Rop = ((AssignStmt)stmtWithInvocation).getROp();
       if (Rop instanceof InvokeExpr) {
         //It is a invokeExpr
-        processSingleInvocationWithInvokeWxpr(node, (InvokeExpr)Rop);
+        processSingleInvocationWithInvokeWxpr(callGraph, node, (InvokeExpr)Rop);
       }
       else if (Rop instanceof NewExpr) {
         //It is a constructor invocation
-        processSingleInvocationWithConstructorInvoke(node, (NewExpr)Rop);
+        processSingleInvocationWithConstructorInvoke(callGraph, node, (NewExpr)Rop);
       }
       else {
         //Unhandled invocation
@@ -139,30 +167,32 @@ public class CallgraphBuilder {
   /**
    * Add a single target method to the call graph
    *
+   * @param callGraph    The call graph to add the edges to
    * @param callerNode   The node that contains invocation statement
    * @param calleeMethod The target method of this invocation
    */
-  public void addToCallGraph(GraphNode callerNode, PsiCFGMethod calleeMethod) {
-    mCallGraphInstance.callerNodeToMethodsMap.put(callerNode, calleeMethod);
-    mCallGraphInstance.calleeMethodToCallerGraphNodeMap.put(calleeMethod, callerNode);
+  public void addToCallGraph(Callgraph callGraph, GraphNode callerNode, PsiCFGMethod calleeMethod) {
+    callGraph.callerNodeToMethodsMap.put(callerNode, calleeMethod);
+    callGraph.calleeMethodToCallerGraphNodeMap.put(calleeMethod, callerNode);
     PsiCFGMethod callerMethod = retrieveParentMethod(callerNode);
     if (callerMethod != null) {
-      mCallGraphInstance.callerMethodToCalleeMethodMap.put(callerMethod, calleeMethod);
-      mCallGraphInstance.calleeMethodToCallerMethodReturnMap.put(calleeMethod, callerMethod);
-      mCallGraphInstance.allMethodsInGraph.add(callerMethod);
-      mCallGraphInstance.allMethodsInGraph.add(calleeMethod);
+      callGraph.callerMethodToCalleeMethodMap.put(callerMethod, calleeMethod);
+      callGraph.calleeMethodToCallerMethodReturnMap.put(calleeMethod, callerMethod);
+      callGraph.allMethodsInGraph.add(callerMethod);
+      callGraph.allMethodsInGraph.add(calleeMethod);
     }
 
     if (calleeMethod.getControlFlowGraph() != null) {
       GraphNode entryNode = calleeMethod.getControlFlowGraph().getEntryNode();
       GraphNode exitNode = calleeMethod.getControlFlowGraph().getExitNode();
 
-      mCallGraphInstance.callerNodeToCalleeNodeMap.put(callerNode, entryNode);
-      mCallGraphInstance.calleeNodeToCallerNodeMap.put(exitNode, callerNode);
+      callGraph.callerNodeToCalleeNodeMap.put(callerNode, entryNode);
+      callGraph.calleeNodeToCallerNodeMap.put(exitNode, callerNode);
     }
   }
 
-  public void performCHAForInvocationSite(GraphNode node, PsiType receiverType, PsiCFGMethod targetMethod) {
+  public void performCHAForInvocationSite(Callgraph callGraph, GraphNode node, PsiType receiverType,
+                                         PsiCFGMethod targetMethod) {
     //Only Object can perform instance invoke
     if (!(receiverType instanceof PsiClassType)) {
       //The reciever type is not an object
@@ -185,14 +215,14 @@ public class CallgraphBuilder {
       PsiCFGPartialMethodSignature methodSignature = targetMethod.getSignature();
       PsiCFGMethod nearestConcreteMethodFromTop = getNearestConcreteMethod(receiverClass, methodSignature);
       if (nearestConcreteMethodFromTop != null) {
-        addToCallGraph(node, nearestConcreteMethodFromTop);
+        addToCallGraph(callGraph, node, nearestConcreteMethodFromTop);
       }
 
       //Find concrete method to the leaf
       ArrayList<PsiCFGMethod> methodList = Lists.newArrayList();
       recursivelyQueryConcreteMethodFromChildrenWithCache(methodList, receiverClass, methodSignature);
       for (PsiCFGMethod concreteMethodFromSubClass : methodList) {
-        addToCallGraph(node, concreteMethodFromSubClass);
+        addToCallGraph(callGraph, node, concreteMethodFromSubClass);
       }
     }
   }
@@ -228,9 +258,9 @@ public class CallgraphBuilder {
     }
   }
 
-  public void addInvokeExprWithThisRef(GraphNode node, PsiType thisBaseType, PsiCFGMethod method) {
+  public void addInvokeExprWithThisRef(Callgraph callGraph, GraphNode node, PsiType thisBaseType, PsiCFGMethod method) {
     if (!method.isAbstract()) {
-      addToCallGraph(node, method);
+      addToCallGraph(callGraph, node, method);
     }
     else {
       PsiClassType classType = null;
@@ -265,11 +295,11 @@ public class CallgraphBuilder {
     return null;
   }
 
-  public void processSingleInvocationWithInvokeWxpr(GraphNode node, InvokeExpr invokeExpr) {
+  public void processSingleInvocationWithInvokeWxpr(Callgraph callGraph, GraphNode node, InvokeExpr invokeExpr) {
 
     if (invokeExpr instanceof StaticInvokeExpr) {
       //Only 1 target
-      addToCallGraph(node, invokeExpr.getMethod());
+      addToCallGraph(callGraph, node, invokeExpr.getMethod());
     }
     else if (invokeExpr instanceof InstanceInvokeExpr) {
       InstanceInvokeExpr instanceInvokeExpr = (InstanceInvokeExpr)invokeExpr;
@@ -285,18 +315,18 @@ public class CallgraphBuilder {
       }
 
       if (base instanceof ThisRef) {
-        addInvokeExprWithThisRef(node, baseType, targetMethod);
+        addInvokeExprWithThisRef(callGraph, node, baseType, targetMethod);
       }
       else {
-        performCHAForInvocationSite(node, baseType, targetMethod);
+        performCHAForInvocationSite(callGraph, node, baseType, targetMethod);
       }
     }
   }
 
-  public void processSingleInvocationWithConstructorInvoke(GraphNode node, NewExpr newExpr) {
+  public void processSingleInvocationWithConstructorInvoke(Callgraph callGraph, GraphNode node, NewExpr newExpr) {
     PsiCFGMethod constructorMethod = newExpr.getConstructorInvocation();
     if (constructorMethod != null) {
-      addToCallGraph(node, constructorMethod);
+      addToCallGraph(callGraph, node, constructorMethod);
     }
     else {
       PsiCFGDebugUtil.LOG.warning("Constructor in New Expr is null: " + newExpr.getSimpleName());
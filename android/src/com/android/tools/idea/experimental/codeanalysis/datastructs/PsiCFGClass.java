@@ -375,6 +375,16 @@ public class PsiCFGClass implements PsiAnnotationOwner {
     return lambdaClass;
   }
 
+  /**
+   * Forget the nested classes and lambdas declared in the methods of this class,
+   * before the control flow graphs of these methods are rebuilt.
+   */
+  public void clearDeclaredClasses() {
+    this.declaredAnonymousClass.clear();
+    this.declaredLambda.clear();
+    this.nestedInnerClassMap.clear();
+  }
+
   /**
    * For anonymos Class and lambda expression only.
    * @param cfgClass The Super class or interface
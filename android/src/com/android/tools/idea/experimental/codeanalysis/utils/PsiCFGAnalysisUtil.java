@@ -23,11 +23,15 @@ import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGField;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGMethod;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.graph.MethodGraph;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.graph.node.GraphNode;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.psi.*;
 import com.intellij.psi.search.GlobalSearchScope;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 public class PsiCFGAnalysisUtil {
@@ -81,37 +85,66 @@ public class PsiCFGAnalysisUtil {
    * class, including the constructor and the init code
    */
   public void performStage3() {
-    PsiCFGClass[] appClasses = mScene.getAllApplicationClasses();
+    buildControlFlowGraphs(mScene.getAllApplicationClasses());
+  }
 
-    mScene.workingList.clear();
-    mScene.workingList.addAll(Arrays.asList(appClasses));
+  /**
+   * Same as {@link #performStage3()}, but for a scene that was already analyzed:
+   * only the classes declared in the changed files have their CFGs rebuilt.
+   * Stage 4 and 5 still need to run again afterwards.
+   *
+   * @param changedFiles The files edited since the last analysis. Their changes must be
+   *                     limited to code blocks, so that the classes found in Stage 1 and
+   *                     the hierarchy found in Stage 2 are still valid.
+   */
+  public void performStage3(@NotNull Set<PsiFile> changedFiles) {
+    buildControlFlowGraphs(mScene.removeControlFlowGraphs(changedFiles));
+  }
 
-    while (!mScene.workingList.isEmpty()) {
-      //While the working list is not empty
-      //Process the working list
-      PsiCFGClass currentClass = mScene.workingList.removeFirst();
-      PsiCFGMethod[] allMethods = currentClass.getAllMethods();
+  /**
+   * The CFGs of different classes are independent, so the classes are built concurrently,
+   * each in a read action. The nested classes found while building a round of classes
+   * are put into the working list, and built in the next round.
+   */
+  private void buildControlFlowGraphs(@NotNull PsiCFGClass[] classes) {
+    mScene.pollWorkingList();
+    List<PsiCFGClass> currentRound = Arrays.asList(classes);
+
+    while (!currentRound.isEmpty()) {
+      boolean completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(
+        currentRound, ProgressManager.getInstance().getProgressIndicator(), true, false, currentClass -> {
+          buildControlFlowGraphs(currentClass);
+          return true;
+        });
+      if (!completed) {
+        throw new ProcessCanceledException();
+      }
+      currentRound = Arrays.asList(mScene.pollWorkingList());
+    }
+  }
 
-      for (PsiCFGMethod currentMethod : allMethods) {
-        //Abstract method does not have a body
-        //Lambda methods' CFG is created by the time it is decleared
-        if (currentMethod.isAbstract() || currentMethod.isLambda()) {
-          continue;
-        }
+  private void buildControlFlowGraphs(@NotNull PsiCFGClass currentClass) {
+    PsiCFGMethod[] allMethods = currentClass.getAllMethods();
 
-        PsiMethod methodRef = currentMethod.getMethodRef();
-        if (methodRef != null) {
-          PsiCodeBlock codeBlock = methodRef.getBody();
+    for (PsiCFGMethod currentMethod : allMethods) {
+      //Abstract method does not have a body
+      //Lambda methods' CFG is created by the time it is decleared
+      if (currentMethod.isAbstract() || currentMethod.isLambda()) {
+        continue;
+      }
 
-          if (codeBlock == null) {
-            PsiCFGDebugUtil.LOG.info("In " + currentClass.getQualifiedClassName() + "."
-                                     + currentMethod.getName() + "Code block is null");
-            continue;
-          }
+      PsiMethod methodRef = currentMethod.getMethodRef();
+      if (methodRef != null) {
+        PsiCodeBlock codeBlock = methodRef.getBody();
 
-          MethodGraph cfg = CFGUtil.constructMethodGraph(mScene, codeBlock, currentMethod);
-          currentMethod.setControlFlowGraph(cfg);
+        if (codeBlock == null) {
+          PsiCFGDebugUtil.LOG.info("In " + currentClass.getQualifiedClassName() + "."
+                                   + currentMethod.getName() + "Code block is null");
+          continue;
         }
+
+        MethodGraph cfg = CFGUtil.constructMethodGraph(mScene, codeBlock, currentMethod);
+        currentMethod.setControlFlowGraph(cfg);
       }
     }
   }
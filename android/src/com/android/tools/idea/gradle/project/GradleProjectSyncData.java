@@ -24,6 +24,7 @@ import com.android.tools.idea.gradle.project.sync.GradleSyncState;
 import com.android.tools.idea.gradle.util.LocalProperties;
 import com.android.tools.idea.sdk.IdeSdks;
 import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
@@ -38,6 +39,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.*;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.TreeMap;
 
 import static com.android.SdkConstants.*;
 import static com.android.tools.idea.gradle.util.GradleUtil.*;
@@ -318,6 +320,22 @@ public class GradleProjectSyncData implements Serializable {
     return true;
   }
 
+  /**
+   * Returns a hash of the checksums of all the files the persisted external project data depends on, which identifies the state of the
+   * build files the project was last synced with.
+   */
+  @NotNull
+  public byte[] getBuildFilesHash() {
+    Hasher hasher = Hashing.md5().newHasher();
+    hasher.putUnencodedChars(myGradlePluginVersion);
+    // Sort the files so that the hash does not depend on the iteration order of the map.
+    for (Map.Entry<String, byte[]> entry : new TreeMap<>(myFileChecksums).entrySet()) {
+      hasher.putUnencodedChars(entry.getKey());
+      hasher.putBytes(entry.getValue());
+    }
+    return hasher.hash().asBytes();
+  }
+
   public long getLastGradleSyncTimestamp() {
     return myLastGradleSyncTimestamp;
   }
@@ -18,6 +18,7 @@ package com.android.tools.idea.gradle.project.build.invoker;
 import com.android.tools.idea.gradle.project.build.console.view.GradleConsoleView;
 import com.google.common.io.Closeables;
 import com.intellij.execution.ui.ConsoleViewContentType;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.SystemProperties;
 import org.gradle.tooling.BuildLauncher;
 import org.jetbrains.annotations.NotNull;
@@ -27,6 +28,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.function.Consumer;
 
 import static com.intellij.execution.ui.ConsoleViewContentType.ERROR_OUTPUT;
 import static com.intellij.execution.ui.ConsoleViewContentType.NORMAL_OUTPUT;
@@ -38,15 +40,28 @@ class GradleOutputForwarder {
   private static final int SIZE = 2048;
 
   @NotNull private final ByteArrayOutputStream myStdErr;
-  @NotNull private final ByteArrayOutputStream myOutput;
+  @Nullable private final ByteArrayOutputStream myOutput;
   @NotNull private final GradleConsoleView myConsoleView;
+  @Nullable private final Consumer<String> myLineConsumer;
+  @NotNull private final ByteArrayOutputStream myLine = new ByteArrayOutputStream(SIZE / 8);
 
   private ConsoleViewContentType myPreviousContentType;
 
   GradleOutputForwarder(@NotNull GradleConsoleView consoleView) {
+    this(consoleView, null, true);
+  }
+
+  /**
+   * @param lineConsumer if not {@code null}, receives each line of the collected output, without its line separator, as soon as the line
+   *                     is complete
+   * @param keepOutput   whether the whole output is kept, to be returned by {@link #toString()}. When the output is consumed line by line
+   *                     only the current line and the contents of stderr are kept.
+   */
+  GradleOutputForwarder(@NotNull GradleConsoleView consoleView, @Nullable Consumer<String> lineConsumer, boolean keepOutput) {
     myConsoleView = consoleView;
+    myLineConsumer = lineConsumer;
     myStdErr = new ByteArrayOutputStream(SIZE);
-    myOutput = new ByteArrayOutputStream(SIZE * 2);
+    myOutput = keepOutput ? new ByteArrayOutputStream(SIZE * 2) : null;
   }
 
   void attachTo(@NotNull BuildLauncher launcher, @Nullable Listener listener) {
@@ -59,7 +74,9 @@ class GradleOutputForwarder {
 
   void close() {
     try {
-      Closeables.close(myOutput, true /* swallowIOException */);
+      if (myOutput != null) {
+        Closeables.close(myOutput, true /* swallowIOException */);
+      }
       Closeables.close(myStdErr, true /* swallowIOException */);
     } catch (IOException e) {
       // Cannot happen
@@ -83,7 +100,10 @@ class GradleOutputForwarder {
     boolean newLineAdded = false;
     if (addNewLine) {
       byte[] bytes = lineSeparator.getBytes(Charset.forName("UTF-8"));
-      myOutput.write(bytes, 0, bytes.length);
+      if (myOutput != null) {
+        myOutput.write(bytes, 0, bytes.length);
+      }
+      addToLines(bytes, 0, bytes.length);
       myConsoleView.print(lineSeparator, contentType);
       newLineAdded = true;
     }
@@ -91,15 +111,56 @@ class GradleOutputForwarder {
     if (lineSeparator.equals(text) && newLineAdded) {
       return;
     }
-    myOutput.write(b, off, len);
+    if (myOutput != null) {
+      myOutput.write(b, off, len);
+    }
+    addToLines(b, off, len);
     if (contentType == ERROR_OUTPUT) {
       myStdErr.write(b, off, len);
     }
     myConsoleView.print(text, contentType);
   }
 
+  private void addToLines(@NotNull byte[] b, int off, int len) {
+    if (myLineConsumer == null) {
+      return;
+    }
+    int lineStart = off;
+    for (int i = off; i < off + len; i++) {
+      if (b[i] == '\n') {
+        myLine.write(b, lineStart, i - lineStart);
+        passLine();
+        lineStart = i + 1;
+      }
+    }
+    myLine.write(b, lineStart, off + len - lineStart);
+  }
+
+  /**
+   * Passes the last line of output to the line consumer, in case it didn't end with a line separator.
+   */
+  void flushLines() {
+    if (myLineConsumer != null && myLine.size() > 0) {
+      passLine();
+    }
+  }
+
+  private void passLine() {
+    assert myLineConsumer != null;
+    // Decoded the same way as the whole output (see toString)
+    String line = myLine.toString();
+    myLine.reset();
+    myLineConsumer.accept(StringUtil.trimEnd(line, "\r"));
+  }
+
+  /**
+   * Returns the whole output. Only available if this forwarder was created to keep it.
+   */
   @Override
   public String toString() {
+    if (myOutput == null) {
+      throw new IllegalStateException("The output was not kept");
+    }
     return myOutput.toString();
   }
 
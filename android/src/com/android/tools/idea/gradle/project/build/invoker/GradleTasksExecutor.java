@@ -92,6 +92,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Semaphore;
 
@@ -215,6 +216,7 @@ public abstract class GradleTasksExecutor extends Task.Backgroundable {
     @NotNull private volatile ProgressIndicator myProgressIndicator = new EmptyProgressIndicator();
 
     private volatile boolean myMessageViewIsPrepared;
+    private volatile boolean myMessageViewIsOpened;
     private volatile boolean myMessagesAutoActivated;
 
     private CloseListener myCloseListener;
@@ -329,7 +331,18 @@ public abstract class GradleTasksExecutor extends Task.Backgroundable {
         consoleView.print(executingTasksText + SystemProperties.getLineSeparator() + SystemProperties.getLineSeparator(), NORMAL_OUTPUT);
         addToEventLog(executingTasksText, INFO);
 
-        GradleOutputForwarder output = new GradleOutputForwarder(consoleView);
+        // Messages are shown as soon as they are found in the output, unless a GUI test is going to replace the output
+        Application application = ApplicationManager.getApplication();
+        // Filled by the thread that reads the output of Gradle, and read by this one once the build is done.
+        List<Message> parsedMessages = Collections.synchronizedList(new ArrayList<>());
+        BuildOutputParser.StreamingParser outputParser = null;
+        if (!isGuiTestingMode() || isEmpty(application.getUserData(GRADLE_BUILD_OUTPUT_IN_GUI_TEST_KEY))) {
+          outputParser = startParsingOutput(parsedMessages);
+        }
+        // The whole output is only kept if it has to be parsed after the build, or saved by the Instant Run flight recorder.
+        boolean recordBuild = InstantRunSettings.isInstantRunEnabled() && InstantRunSettings.isRecorderEnabled();
+        GradleOutputForwarder output =
+          new GradleOutputForwarder(consoleView, outputParser != null ? outputParser::addLine : null, outputParser == null || recordBuild);
 
         BuildException buildError = null;
         InstantRunBuildProgressListener instantRunProgressListener = null;
@@ -410,7 +423,7 @@ public abstract class GradleTasksExecutor extends Task.Backgroundable {
             });
           }
 
-          if (InstantRunSettings.isInstantRunEnabled() && InstantRunSettings.isRecorderEnabled()) {
+          if (recordBuild) {
             instantRunProgressListener = new InstantRunBuildProgressListener();
             launcher.addProgressListener(instantRunProgressListener);
           }
@@ -425,19 +438,25 @@ public abstract class GradleTasksExecutor extends Task.Backgroundable {
         }
         finally {
           myBuildStopper.remove(id);
-          String gradleOutput = output.toString();
+          if (outputParser != null) {
+            output.flushLines();
+            outputParser.finish();
+          }
           if (instantRunProgressListener != null) {
-            FlightRecorder.get(myProject).saveBuildOutput(gradleOutput, instantRunProgressListener);
+            FlightRecorder.get(myProject).saveBuildOutput(output.toString(), instantRunProgressListener);
           }
-          Application application = ApplicationManager.getApplication();
-          if (isGuiTestingMode()) {
-            String testOutput = application.getUserData(GRADLE_BUILD_OUTPUT_IN_GUI_TEST_KEY);
-            if (isNotEmpty(testOutput)) {
-              gradleOutput = testOutput;
-              application.putUserData(GRADLE_BUILD_OUTPUT_IN_GUI_TEST_KEY, null);
+          String gradleOutput = null;
+          if (outputParser == null) {
+            gradleOutput = output.toString();
+            if (isGuiTestingMode()) {
+              String testOutput = application.getUserData(GRADLE_BUILD_OUTPUT_IN_GUI_TEST_KEY);
+              if (isNotEmpty(testOutput)) {
+                gradleOutput = testOutput;
+                application.putUserData(GRADLE_BUILD_OUTPUT_IN_GUI_TEST_KEY, null);
+              }
             }
           }
-          showGradleOutput(gradleOutput, output, stopwatch, buildError);
+          showGradleOutput(gradleOutput, parsedMessages, output, stopwatch, buildError);
         }
         return null;
       };
@@ -458,14 +477,24 @@ public abstract class GradleTasksExecutor extends Task.Backgroundable {
       myHelper.execute(projectDirPath.getPath(), executionSettings, executeTasksFunction);
     }
 
-    private void showGradleOutput(@NotNull String gradleOutput,
+    /**
+     * @param gradleOutput   the output to parse for messages, or {@code null} if it was parsed while building
+     * @param parsedMessages the messages already found in the output, and shown, while building
+     */
+    private void showGradleOutput(@Nullable String gradleOutput,
+                                  @NotNull List<Message> parsedMessages,
                                   @NotNull GradleOutputForwarder output,
                                   @NotNull Stopwatch stopwatch,
                                   @Nullable BuildException buildError) {
       Application application = ApplicationManager.getApplication();
 
-      List<Message> buildMessages = new ArrayList<>();
-      collectMessages(gradleOutput, buildMessages).doWhenDone(() -> {
+      List<Message> buildMessages;
+      synchronized (parsedMessages) {
+        buildMessages = new ArrayList<>(parsedMessages);
+      }
+      int shownMessageCount = buildMessages.size();
+      ActionCallback messagesCollected = gradleOutput != null ? collectMessages(gradleOutput, buildMessages) : ActionCallback.DONE;
+      messagesCollected.doWhenDone(() -> {
         boolean hasError = false;
         for (Message message : buildMessages) {
           if (message.getKind() == Message.Kind.ERROR) {
@@ -482,7 +511,7 @@ public abstract class GradleTasksExecutor extends Task.Backgroundable {
         output.close();
         stopwatch.stop();
 
-        add(buildMessages);
+        add(new ArrayList<>(buildMessages.subList(shownMessageCount, buildMessages.size())));
 
         if (!myProgressIndicator.isCanceled()) {
           closeView();
@@ -529,10 +558,30 @@ public abstract class GradleTasksExecutor extends Task.Backgroundable {
       return callback;
     }
 
+    /**
+     * Returns a parser for the output of the build, which shows the messages it finds right away and adds them to the given list.
+     */
+    @NotNull
+    private BuildOutputParser.StreamingParser startParsingOutput(@NotNull List<Message> parsedMessages) {
+      Iterable<PatternAwareOutputParser> parsers = JpsServiceManager.getInstance().getExtensions(PatternAwareOutputParser.class);
+      return new BuildOutputParser(parsers).startParsing(true, messages -> {
+        if (messages.isEmpty()) {
+          return;
+        }
+        parsedMessages.addAll(messages);
+        add(messages);
+      });
+    }
+
     private void add(@NotNull List<Message> buildMessages) {
       prepareMessageView();
+      // The view is opened, and brought to the front, with the first messages of the build only.
+      boolean openMessageView = !myMessageViewIsOpened;
+      myMessageViewIsOpened = true;
       Runnable addMessageTask = () -> {
-        openMessageView();
+        if (openMessageView) {
+          openMessageView();
+        }
         for (Message message : buildMessages) {
           incrementErrorOrWarningCount(message);
           if (shouldShow(message)) {
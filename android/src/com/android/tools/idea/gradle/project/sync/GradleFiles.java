@@ -15,20 +15,37 @@
  */
 package com.android.tools.idea.gradle.project.sync;
 
+import com.android.annotations.concurrency.GuardedBy;
 import com.android.tools.idea.gradle.project.model.NdkModuleModel;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.intellij.ProjectTopics;
 import com.intellij.lang.properties.PropertiesFileType;
 import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.ModuleListener;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.*;
 import com.intellij.psi.PsiFile;
+import com.intellij.util.messages.MessageBusConnection;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.groovy.GroovyFileType;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.*;
 
 import static com.android.SdkConstants.*;
 import static com.android.tools.idea.gradle.util.GradleUtil.getGradleBuildFile;
@@ -36,12 +53,48 @@ import static com.android.tools.idea.gradle.util.Projects.getBaseDirPath;
 import static com.intellij.openapi.vfs.VfsUtil.findFileByIoFile;
 import static com.intellij.openapi.vfs.VfsUtilCore.virtualToIoFile;
 
+/**
+ * Tells whether the Gradle files of a project changed since it was last synced.
+ *
+ * The first check after a sync looks at every Gradle file of the project, and remembers the timestamp and a hash of the contents of each
+ * of them. From then on, a VFS listener marks the files it reports changes for as dirty, without reading them, as it runs on the EDT
+ * inside a write action. Later checks for the same sync only hash again the files that are dirty or whose timestamp changed, so changes
+ * that leave a file as it was (e.g. touching it, or undoing an edit) do not require a sync.
+ *
+ * The VFS only reports changes made outside the IDE once it is refreshed, which is why checks still compare the timestamps of the
+ * tracked files: that costs a stat per file, as before tracking was added, but no read.
+ */
 public class GradleFiles {
   private static final Key<Boolean> EXTERNAL_BUILD_FILES_MODIFIED = Key.create("android.gradle.project.external.build.files.modified");
+  private static final HashFunction HASH_FUNCTION = Hashing.goodFastHash(64);
 
   @NotNull private final Project myProject;
   @NotNull private final FileDocumentManager myDocumentManager;
 
+  private final Object myLock = new Object();
+
+  /** The reference time the files are being tracked for, or -1 if the next check needs to look at the files themselves. */
+  @GuardedBy("myLock") private long myReferenceTime = -1;
+
+  /** Whether a Gradle file was saved after the reference time, before the files started being tracked. */
+  @GuardedBy("myLock") private boolean myModifiedBeforeTracking;
+  @GuardedBy("myLock") private boolean myExternalModifiedBeforeTracking;
+
+  /** The hashes of the tracked files, by system-independent path. Files that did not exist are tracked with a {@code null} hash. */
+  @GuardedBy("myLock") private final Map<String, HashCode> myFileHashes = new HashMap<>();
+  /** The timestamps of the tracked files when they were last hashed, 0 for files that did not exist. */
+  @GuardedBy("myLock") private final Map<String, Long> myFileTimestamps = new HashMap<>();
+  @GuardedBy("myLock") private final Set<String> myExternalBuildFiles = new HashSet<>();
+
+  /** The tracked files whose contents no longer match their hash. */
+  @GuardedBy("myLock") private final Set<String> myModifiedFiles = new HashSet<>();
+
+  /** The tracked files the VFS reported a change for since the last check, which need to be hashed again. */
+  @GuardedBy("myLock") private final Set<String> myDirtyFiles = new HashSet<>();
+
+  /** VFS events received while the files are being looked at, before they are tracked; {@code null} at other times. */
+  @GuardedBy("myLock") @Nullable private List<VFileEvent> myEventsWhileSnapshotting;
+
   @NotNull
   public static GradleFiles getInstance(@NotNull Project project) {
     return ServiceManager.getService(project, GradleFiles.class);
@@ -50,6 +103,25 @@ public class GradleFiles {
   public GradleFiles(@NotNull Project project, @NotNull FileDocumentManager documentManager) {
     myProject = project;
     myDocumentManager = documentManager;
+
+    MessageBusConnection connection = project.getMessageBus().connect(project);
+    connection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+      @Override
+      public void after(@NotNull List<? extends VFileEvent> events) {
+        filesChanged(events);
+      }
+    });
+    connection.subscribe(ProjectTopics.MODULES, new ModuleListener() {
+      @Override
+      public void moduleAdded(@NotNull Project project, @NotNull Module module) {
+        stopTracking();
+      }
+
+      @Override
+      public void moduleRemoved(@NotNull Project project, @NotNull Module module) {
+        stopTracking();
+      }
+    });
   }
 
   /**
@@ -72,60 +144,251 @@ public class GradleFiles {
     }
     setExternalBuildFilesModified(false);
 
-    if (areFilesInProjectRootFolderModified(referenceTimeInMillis, FN_GRADLE_PROPERTIES, FN_SETTINGS_GRADLE)) {
+    boolean tracking;
+    synchronized (myLock) {
+      tracking = myReferenceTime == referenceTimeInMillis;
+      if (!tracking) {
+        stopTracking();
+        myEventsWhileSnapshotting = new ArrayList<>();
+      }
+    }
+    if (tracking) {
+      return areTrackedFilesModified(referenceTimeInMillis);
+    }
+
+    // Taking the snapshot may refresh the VFS, so it must not happen while holding the lock the VFS listener needs
+    Snapshot snapshot = takeSnapshot(referenceTimeInMillis);
+
+    synchronized (myLock) {
+      List<VFileEvent> events = myEventsWhileSnapshotting;
+      myEventsWhileSnapshotting = null;
+      // Unless tracking was stopped in the meantime, e.g. because a module was added
+      if (events != null) {
+        myReferenceTime = referenceTimeInMillis;
+        myModifiedBeforeTracking = snapshot.modifiedOnDisk;
+        myExternalModifiedBeforeTracking = snapshot.modifiedOnDisk && snapshot.externalModified;
+        myFileHashes.putAll(snapshot.hashes);
+        myFileTimestamps.putAll(snapshot.timestamps);
+        myExternalBuildFiles.addAll(snapshot.externalBuildFiles);
+        filesChanged(events);
+      }
+    }
+
+    setExternalBuildFilesModified(snapshot.externalModified);
+    return snapshot.modified;
+  }
+
+  private boolean areTrackedFilesModified(long referenceTimeInMillis) {
+    Map<String, Long> timestamps;
+    Set<String> changedPaths;
+    synchronized (myLock) {
+      if (myModifiedBeforeTracking) {
+        setExternalBuildFilesModified(myExternalModifiedBeforeTracking);
+        return true;
+      }
+      timestamps = new HashMap<>(myFileTimestamps);
+      changedPaths = new HashSet<>(myDirtyFiles);
+      myDirtyFiles.clear();
+    }
+
+    // Reading the files must not happen while holding the lock the VFS listener needs
+    for (Map.Entry<String, Long> entry : timestamps.entrySet()) {
+      if (getFile(entry.getKey()).lastModified() != entry.getValue()) {
+        changedPaths.add(entry.getKey());
+      }
+    }
+    Map<String, HashCode> hashes = new HashMap<>();
+    Map<String, Long> newTimestamps = new HashMap<>();
+    for (String path : changedPaths) {
+      File file = getFile(path);
+      newTimestamps.put(path, file.lastModified());
+      hashes.put(path, hash(file));
+    }
+
+    synchronized (myLock) {
+      if (myReferenceTime == referenceTimeInMillis) {
+        for (String path : changedPaths) {
+          myFileTimestamps.put(path, newTimestamps.get(path));
+          if (Objects.equals(myFileHashes.get(path), hashes.get(path))) {
+            myModifiedFiles.remove(path);
+          }
+          else {
+            myModifiedFiles.add(path);
+          }
+        }
+        return isTrackedFileModified();
+      }
+    }
+    // Tracking was stopped while the files were read, e.g. because a module was added, so they need to be looked at again
+    return areGradleFilesModified(referenceTimeInMillis);
+  }
+
+  /**
+   * Tells whether a tracked file was modified, saved or not. Must be called holding {@link #myLock}.
+   */
+  private boolean isTrackedFileModified() {
+    if (!myModifiedFiles.isEmpty()) {
+      setExternalBuildFilesModified(!Collections.disjoint(myModifiedFiles, myExternalBuildFiles));
       return true;
     }
+    for (Document document : myDocumentManager.getUnsavedDocuments()) {
+      VirtualFile file = myDocumentManager.getFile(document);
+      if (file != null && myFileHashes.containsKey(file.getPath())) {
+        setExternalBuildFilesModified(myExternalBuildFiles.contains(file.getPath()));
+        return true;
+      }
+    }
+    return false;
+  }
 
+  /**
+   * Looks at every Gradle file of the project, to tell whether one of them was modified after the given time and to hash their contents.
+   */
+  @NotNull
+  private Snapshot takeSnapshot(long referenceTimeInMillis) {
+    Snapshot snapshot = new Snapshot();
+
+    List<File> files = new ArrayList<>();
+    File rootFolderPath = getBaseDirPath(myProject);
+    files.add(new File(rootFolderPath, FN_GRADLE_PROPERTIES));
+    files.add(new File(rootFolderPath, FN_SETTINGS_GRADLE));
     for (Module module : ModuleManager.getInstance(myProject).getModules()) {
       VirtualFile buildFile = getGradleBuildFile(module);
       if (buildFile != null) {
-        if (myDocumentManager.isFileModified(buildFile)) {
-          return true;
-        }
-        File buildFilePath = virtualToIoFile(buildFile);
-        if (buildFilePath.lastModified() > referenceTimeInMillis) {
-          return true;
-        }
+        files.add(virtualToIoFile(buildFile));
       }
 
       NdkModuleModel ndkModuleModel = NdkModuleModel.get(module);
       if (ndkModuleModel != null) {
         for (File externalBuildFile : ndkModuleModel.getAndroidProject().getBuildFiles()) {
-          if (externalBuildFile.lastModified() > referenceTimeInMillis) {
-            setExternalBuildFilesModified(true);
-            return true;
-          }
-          // TODO find a better way to find a VirtualFile without refreshing the file systerm. It is expensive.
-          VirtualFile virtualFile = findFileByIoFile(externalBuildFile, true);
-          if (virtualFile != null && myDocumentManager.isFileModified(virtualFile)) {
-            setExternalBuildFilesModified(true);
-            return true;
-          }
+          files.add(externalBuildFile);
+          snapshot.externalBuildFiles.add(getTrackedPath(externalBuildFile));
         }
       }
     }
 
-    return false;
+    for (File file : files) {
+      String path = getTrackedPath(file);
+      if (file.lastModified() > referenceTimeInMillis) {
+        // This holds until the next sync, so there is no need to hash the files
+        snapshot.modified = true;
+        snapshot.modifiedOnDisk = true;
+        snapshot.externalModified = snapshot.externalBuildFiles.contains(path);
+        snapshot.hashes.clear();
+        snapshot.timestamps.clear();
+        snapshot.externalBuildFiles.clear();
+        return snapshot;
+      }
+
+      // A file the VFS doesn't know about can't have unsaved changes, so there is no need to refresh it
+      VirtualFile virtualFile = findFileByIoFile(file, false);
+      if (!snapshot.modified && virtualFile != null && myDocumentManager.isFileModified(virtualFile)) {
+        snapshot.modified = true;
+        snapshot.externalModified = snapshot.externalBuildFiles.contains(path);
+      }
+      snapshot.timestamps.put(path, file.lastModified());
+      snapshot.hashes.put(path, hash(file));
+    }
+    return snapshot;
   }
 
-  private boolean areFilesInProjectRootFolderModified(long referenceTimeInMillis, @NotNull String... fileNames) {
-    File rootFolderPath = getBaseDirPath(myProject);
-    for (String fileName : fileNames) {
-      File filePath = new File(rootFolderPath, fileName);
-      if (filePath.exists()) {
-        long modified = filePath.lastModified();
-        if (modified > referenceTimeInMillis) {
-          return true;
+  @NotNull
+  private static String getTrackedPath(@NotNull File file) {
+    // Paths of external build files come from the Gradle model, and may not be in the form the VFS reports events for
+    return FileUtil.toCanonicalPath(file.getPath());
+  }
+
+  @NotNull
+  private static File getFile(@NotNull String trackedPath) {
+    return new File(FileUtil.toSystemDependentName(trackedPath));
+  }
+
+  private void stopTracking() {
+    synchronized (myLock) {
+      myReferenceTime = -1;
+      myModifiedBeforeTracking = false;
+      myExternalModifiedBeforeTracking = false;
+      myFileHashes.clear();
+      myFileTimestamps.clear();
+      myExternalBuildFiles.clear();
+      myModifiedFiles.clear();
+      myDirtyFiles.clear();
+      myEventsWhileSnapshotting = null;
+    }
+  }
+
+  private void filesChanged(@NotNull List<? extends VFileEvent> events) {
+    synchronized (myLock) {
+      if (myEventsWhileSnapshotting != null) {
+        myEventsWhileSnapshotting.addAll(events);
+        return;
+      }
+      if (myFileHashes.isEmpty()) {
+        return;
+      }
+      for (VFileEvent event : events) {
+        fileChanged(event.getPath(), isDirectory(event));
+        if (event instanceof VFileMoveEvent) {
+          VFileMoveEvent moveEvent = (VFileMoveEvent)event;
+          fileChanged(moveEvent.getNewParent().getPath() + "/" + moveEvent.getFile().getName(), moveEvent.getFile().isDirectory());
         }
-        VirtualFile rootFolder = myProject.getBaseDir();
-        assert rootFolder != null;
-        VirtualFile settingsFile = rootFolder.findChild(fileName);
-        if (settingsFile != null && myDocumentManager.isFileModified(settingsFile)) {
-          return true;
+        else if (event instanceof VFilePropertyChangeEvent) {
+          VFilePropertyChangeEvent renameEvent = (VFilePropertyChangeEvent)event;
+          VirtualFile parent = renameEvent.getFile().getParent();
+          if (VirtualFile.PROP_NAME.equals(renameEvent.getPropertyName()) && parent != null) {
+            fileChanged(parent.getPath() + "/" + renameEvent.getNewValue(), renameEvent.getFile().isDirectory());
+          }
         }
       }
     }
-    return false;
+  }
+
+  private static boolean isDirectory(@NotNull VFileEvent event) {
+    if (event instanceof VFileCreateEvent) {
+      return ((VFileCreateEvent)event).isDirectory();
+    }
+    VirtualFile file = event.getFile();
+    return file != null && file.isDirectory();
+  }
+
+  private void fileChanged(@NotNull String path, boolean directory) {
+    if (myFileHashes.containsKey(path)) {
+      myDirtyFiles.add(path);
+    }
+    else if (directory) {
+      // e.g. a module folder was deleted or renamed
+      for (String trackedPath : myFileHashes.keySet()) {
+        if (FileUtil.isAncestor(path, trackedPath, true)) {
+          myDirtyFiles.add(trackedPath);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a hash of the contents of the given file, or {@code null} if it doesn't exist or can't be read.
+   */
+  @Nullable
+  private static HashCode hash(@NotNull File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      return Files.hash(file, HASH_FUNCTION);
+    }
+    catch (IOException e) {
+      Logger.getInstance(GradleFiles.class).info("Unable to read " + file, e);
+      return null;
+    }
+  }
+
+  private static final class Snapshot {
+    @NotNull final Map<String, HashCode> hashes = new HashMap<>();
+    @NotNull final Map<String, Long> timestamps = new HashMap<>();
+    @NotNull final Set<String> externalBuildFiles = new HashSet<>();
+    boolean modified;
+    boolean modifiedOnDisk;
+    boolean externalModified;
   }
 
   private void setExternalBuildFilesModified(boolean changed) {
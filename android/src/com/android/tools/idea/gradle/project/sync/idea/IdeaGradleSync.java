@@ -25,6 +25,7 @@ import com.intellij.openapi.externalSystem.model.DataNode;
 import com.intellij.openapi.externalSystem.model.ExternalSystemDataKeys;
 import com.intellij.openapi.externalSystem.model.project.ProjectData;
 import com.intellij.openapi.externalSystem.service.execution.ProgressExecutionMode;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import com.intellij.util.SystemProperties;
 import org.jetbrains.annotations.NotNull;
@@ -50,7 +51,7 @@ public class IdeaGradleSync implements GradleSync {
       if (syncData != null && syncData.canUseCachedProjectData()) {
         DataNodeCaches dataNodeCaches = DataNodeCaches.getInstance(project);
         DataNode<ProjectData> cache = dataNodeCaches.getCachedProjectData();
-        if (cache != null && !dataNodeCaches.isCacheMissingModels(cache)) {
+        if (cache != null && canUseCache(dataNodeCaches, cache, syncData)) {
           PostSyncProjectSetup.Request setupRequest = new PostSyncProjectSetup.Request();
 
           // @formatter:off
@@ -82,4 +83,16 @@ public class IdeaGradleSync implements GradleSync {
     refreshProject(project, GRADLE_SYSTEM_ID, externalProjectPath, setUpTask, false /* resolve dependencies */,
                    executionMode, true /* always report import errors */);
   }
+
+  private static boolean canUseCache(@NotNull DataNodeCaches dataNodeCaches,
+                                     @NotNull DataNode<ProjectData> cache,
+                                     @NotNull GradleProjectSyncData syncData) {
+    try {
+      return dataNodeCaches.restoreModelsFromSnapshot(cache, syncData) || !dataNodeCaches.isCacheMissingModels(cache);
+    }
+    catch (ProcessCanceledException e) {
+      // Reading the snapshot of the models was interrupted, sync with Gradle instead.
+      return false;
+    }
+  }
 }
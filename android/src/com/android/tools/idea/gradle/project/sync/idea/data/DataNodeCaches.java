@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.gradle.project.sync.idea.data;
 
+import com.android.tools.idea.gradle.project.GradleProjectSyncData;
 import com.android.tools.idea.gradle.project.facet.gradle.GradleFacet;
 import com.android.tools.idea.gradle.project.facet.java.JavaFacet;
 import com.android.tools.idea.gradle.project.facet.ndk.NdkFacet;
@@ -22,10 +23,12 @@ import com.android.tools.idea.gradle.project.model.AndroidModuleModel;
 import com.android.tools.idea.gradle.project.model.GradleModuleModel;
 import com.android.tools.idea.gradle.project.model.JavaModuleModel;
 import com.android.tools.idea.gradle.project.model.NdkModuleModel;
+import com.android.tools.idea.gradle.project.sync.idea.data.ModuleModelsSnapshot.ModuleModels;
 import com.google.common.collect.Maps;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.externalSystem.model.DataNode;
 import com.intellij.openapi.externalSystem.model.ExternalProjectInfo;
+import com.intellij.openapi.externalSystem.model.Key;
 import com.intellij.openapi.externalSystem.model.project.ModuleData;
 import com.intellij.openapi.externalSystem.model.project.ProjectData;
 import com.intellij.openapi.externalSystem.service.project.ProjectDataManager;
@@ -67,6 +70,90 @@ public class DataNodeCaches {
     return projectInfo != null ? projectInfo.getExternalProjectStructure() : null;
   }
 
+  /**
+   * Saves a snapshot of the models of all modules, to be restored by {@link #restoreModelsFromSnapshot} when the project is reopened with
+   * the same build files. Needs to be called after {@link GradleProjectSyncData#save(Project)}. The snapshot is written in a pooled thread.
+   */
+  public void saveModelsSnapshot() {
+    GradleProjectSyncData syncData = GradleProjectSyncData.getInstance(myProject);
+    if (syncData != null) {
+      ModuleModelsSnapshot.save(myProject, syncData.getBuildFilesHash());
+    }
+  }
+
+  /**
+   * Replaces the models in the given cache with the ones saved by {@link #saveModelsSnapshot()}, provided they were saved for the build
+   * files described by the given sync data.
+   * <p/>
+   * The snapshot only holds the models: the module nodes, and the rest of the project structure, still come from the cache kept by the
+   * external system, so there is nothing to restore without it.
+   *
+   * @return {@code true} if the snapshot had the models of every module in the project, in which case there is no need to check the cache
+   * with {@link #isCacheMissingModels(DataNode)}.
+   */
+  public boolean restoreModelsFromSnapshot(@NotNull DataNode<ProjectData> cache, @NotNull GradleProjectSyncData syncData) {
+    Collection<DataNode<ModuleData>> moduleDataNodes = findAll(cache, MODULE);
+    if (moduleDataNodes.isEmpty()) {
+      return false;
+    }
+    ModuleModelsSnapshot snapshot = ModuleModelsSnapshot.load(myProject, syncData.getBuildFilesHash());
+    if (snapshot == null) {
+      return false;
+    }
+
+    Map<String, DataNode<ModuleData>> moduleDataNodesByName = indexByModuleName(moduleDataNodes);
+    for (Module module : ModuleManager.getInstance(myProject).getModules()) {
+      DataNode<ModuleData> moduleDataNode = moduleDataNodesByName.get(module.getName());
+      ModuleModels models = snapshot.getModels(module.getName());
+      if (moduleDataNode == null) {
+        if (GradleFacet.getInstance(module) != null) {
+          return false;
+        }
+      }
+      else if (models == null || isSnapshotMissingModels(models, module)) {
+        // Modules that are neither Gradle nor NDK modules have no models to restore.
+        if (isCacheMissingModels(moduleDataNode, module)) {
+          return false;
+        }
+      }
+      else {
+        replaceModel(moduleDataNode, GRADLE_MODULE_MODEL, models.myGradleModuleModel);
+        replaceModel(moduleDataNode, ANDROID_MODEL, models.myAndroidModuleModel);
+        replaceModel(moduleDataNode, NDK_MODEL, models.myNdkModuleModel);
+        replaceModel(moduleDataNode, JAVA_MODULE_MODEL, models.myJavaModuleModel);
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSnapshotMissingModels(@NotNull ModuleModels models, @NotNull Module module) {
+    if (GradleFacet.getInstance(module) != null) {
+      if (models.myGradleModuleModel == null) {
+        return true;
+      }
+      if (AndroidFacet.getInstance(module) != null) {
+        if (models.myAndroidModuleModel == null) {
+          return true;
+        }
+      }
+      else if (JavaFacet.getInstance(module) != null && models.myJavaModuleModel == null) {
+        return true;
+      }
+    }
+    return NdkFacet.getInstance(module) != null && models.myNdkModuleModel == null;
+  }
+
+  private static <T> void replaceModel(@NotNull DataNode<ModuleData> moduleDataNode, @NotNull Key<T> key, @Nullable T model) {
+    if (model == null) {
+      return;
+    }
+    DataNode<T> dataNode = find(moduleDataNode, key);
+    if (dataNode != null) {
+      dataNode.clear(true);
+    }
+    moduleDataNode.createChild(key, model);
+  }
+
   public boolean isCacheMissingModels(@NotNull DataNode<ProjectData> cache) {
     Collection<DataNode<ModuleData>> moduleDataNodes = findAll(cache, MODULE);
     if (!moduleDataNodes.isEmpty()) {
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.project.sync.idea.data;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.tools.idea.gradle.project.GradleProjectSyncData;
+import com.android.tools.idea.gradle.project.facet.gradle.GradleFacet;
+import com.android.tools.idea.gradle.project.facet.java.JavaFacet;
+import com.android.tools.idea.gradle.project.model.AndroidModuleModel;
+import com.android.tools.idea.gradle.project.model.GradleModuleModel;
+import com.android.tools.idea.gradle.project.model.JavaModuleModel;
+import com.android.tools.idea.gradle.project.model.NdkModuleModel;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationInfo;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A compact binary snapshot of the models obtained from the last Gradle sync of a project, so that reopening a project whose build
+ * files did not change can set up its modules without asking Gradle for them again.
+ * <p/>
+ * The snapshot is only valid for the build files (see {@link GradleProjectSyncData#getBuildFilesHash()}) and the IDE build it was
+ * written with. As the model interfaces only change with the IDE, the proxies in the restored models do not need to be checked again.
+ * Each module is written as a separately compressed record, so that modules can be read concurrently.
+ */
+class ModuleModelsSnapshot {
+  private static final String FILE_NAME = "module_models.bin";
+  private static final int VERSION = 1;
+
+  private static final Logger LOG = Logger.getInstance(ModuleModelsSnapshot.class);
+
+  // Guards the snapshot files, which are written in pooled threads.
+  private static final Object ourFileLock = new Object();
+
+  @NotNull private final Map<String, ModuleModels> myModelsByModuleName;
+
+  private ModuleModelsSnapshot(@NotNull Map<String, ModuleModels> modelsByModuleName) {
+    myModelsByModuleName = modelsByModuleName;
+  }
+
+  @Nullable
+  ModuleModels getModels(@NotNull String moduleName) {
+    return myModelsByModuleName.get(moduleName);
+  }
+
+  /**
+   * Writes the models of all the modules in the given project, replacing any existing snapshot. The models are collected in the calling
+   * thread, but serialized and written in a pooled thread, so that this does not delay the end of sync.
+   */
+  static void save(@NotNull Project project, @NotNull byte[] buildFilesHash) {
+    File file = getSnapshotFile(project);
+    String ideBuild = getIdeBuild();
+    Map<String, ModuleModels> modelsByModuleName = new LinkedHashMap<>();
+    for (Module module : ModuleManager.getInstance(project).getModules()) {
+      ModuleModels models = ModuleModels.create(module);
+      if (models != null) {
+        modelsByModuleName.put(module.getName(), models);
+      }
+    }
+
+    Runnable task = () -> {
+      synchronized (ourFileLock) {
+        try {
+          save(file, ideBuild, buildFilesHash, modelsByModuleName);
+        }
+        catch (IOException e) {
+          LOG.info(String.format("Error while saving the models of project '%1$s'", project.getName()), e);
+          FileUtil.delete(file);
+        }
+      }
+    };
+    Application application = ApplicationManager.getApplication();
+    if (application.isUnitTestMode()) {
+      task.run();
+    }
+    else {
+      application.executeOnPooledThread(task);
+    }
+  }
+
+  @VisibleForTesting
+  static void save(@NotNull File file,
+                   @NotNull String ideBuild,
+                   @NotNull byte[] buildFilesHash,
+                   @NotNull Map<String, ModuleModels> modelsByModuleName) throws IOException {
+    FileUtil.createParentDirs(file);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(VERSION);
+      out.writeUTF(ideBuild);
+      out.writeInt(buildFilesHash.length);
+      out.write(buildFilesHash);
+      out.writeInt(modelsByModuleName.size());
+      for (Map.Entry<String, ModuleModels> entry : modelsByModuleName.entrySet()) {
+        byte[] record = entry.getValue().toBytes();
+        out.writeUTF(entry.getKey());
+        out.writeInt(record.length);
+        out.write(record);
+      }
+    }
+  }
+
+  /**
+   * Reads the snapshot of the given project.
+   *
+   * @return the snapshot, or {@code null} if there is none, or if it was written for other build files or by another IDE build.
+   * @throws ProcessCanceledException if the current progress indicator was canceled while reading the snapshot.
+   */
+  @Nullable
+  static ModuleModelsSnapshot load(@NotNull Project project, @NotNull byte[] buildFilesHash) {
+    File file = getSnapshotFile(project);
+    try {
+      return load(file, getIdeBuild(), buildFilesHash);
+    }
+    catch (IOException e) {
+      LOG.info(String.format("Cannot recover the models of project '%1$s', sync will be needed.", project.getName()), e);
+      synchronized (ourFileLock) {
+        FileUtil.delete(file);
+      }
+      return null;
+    }
+  }
+
+  @VisibleForTesting
+  @Nullable
+  static ModuleModelsSnapshot load(@NotNull File file, @NotNull String ideBuild, @NotNull byte[] buildFilesHash) throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+
+    Map<String, byte[]> recordsByModuleName = new LinkedHashMap<>();
+    // The snapshot may be being written by the previous sync.
+    synchronized (ourFileLock) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        if (in.readInt() != VERSION || !in.readUTF().equals(ideBuild)) {
+          return null;
+        }
+        byte[] hash = new byte[in.readInt()];
+        in.readFully(hash);
+        if (!Arrays.equals(hash, buildFilesHash)) {
+          return null;
+        }
+        for (int count = in.readInt(); count > 0; count--) {
+          String moduleName = in.readUTF();
+          byte[] record = new byte[in.readInt()];
+          in.readFully(record);
+          recordsByModuleName.put(moduleName, record);
+        }
+      }
+    }
+
+    // Deserializing the models is what takes most of the time in large projects, so modules are read concurrently.
+    Map<String, ModuleModels> modelsByModuleName = new ConcurrentHashMap<>();
+    List<Map.Entry<String, byte[]>> records = new ArrayList<>(recordsByModuleName.entrySet());
+    AtomicReference<IOException> error = new AtomicReference<>();
+    boolean completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(
+      records, ProgressManager.getInstance().getProgressIndicator(), false, false, record -> {
+        try {
+          modelsByModuleName.put(record.getKey(), ModuleModels.fromBytes(record.getValue()));
+          return true;
+        }
+        catch (IOException e) {
+          error.compareAndSet(null, e);
+          return false;
+        }
+      });
+    if (error.get() != null) {
+      throw error.get();
+    }
+    if (!completed) {
+      // Only happens if the progress indicator was canceled.
+      throw new ProcessCanceledException();
+    }
+    return new ModuleModelsSnapshot(modelsByModuleName);
+  }
+
+  @NotNull
+  private static File getSnapshotFile(@NotNull Project project) {
+    // Lives next to the checksums of the build files kept by GradleProjectSyncData.
+    return new File(PathManager.getSystemPath(),
+                    FileUtil.join("external_build_system", "Projects", project.getLocationHash(), FILE_NAME));
+  }
+
+  @NotNull
+  private static String getIdeBuild() {
+    return ApplicationInfo.getInstance().getBuild().asString();
+  }
+
+  /**
+   * The models of a single module. Any of them may be {@code null}, depending on the type of the module.
+   */
+  static final class ModuleModels {
+    @Nullable final GradleModuleModel myGradleModuleModel;
+    @Nullable final AndroidModuleModel myAndroidModuleModel;
+    @Nullable final NdkModuleModel myNdkModuleModel;
+    @Nullable final JavaModuleModel myJavaModuleModel;
+
+    ModuleModels(@Nullable GradleModuleModel gradleModuleModel,
+                 @Nullable AndroidModuleModel androidModuleModel,
+                 @Nullable NdkModuleModel ndkModuleModel,
+                 @Nullable JavaModuleModel javaModuleModel) {
+      myGradleModuleModel = gradleModuleModel;
+      myAndroidModuleModel = androidModuleModel;
+      myNdkModuleModel = ndkModuleModel;
+      myJavaModuleModel = javaModuleModel;
+    }
+
+    @Nullable
+    static ModuleModels create(@NotNull Module module) {
+      GradleFacet gradleFacet = GradleFacet.getInstance(module);
+      JavaFacet javaFacet = JavaFacet.getInstance(module);
+      ModuleModels models = new ModuleModels(gradleFacet != null ? gradleFacet.getGradleModuleModel() : null,
+                                             AndroidModuleModel.get(module),
+                                             NdkModuleModel.get(module),
+                                             javaFacet != null ? javaFacet.getJavaModuleModel() : null);
+      if (models.myGradleModuleModel == null && models.myNdkModuleModel == null) {
+        return null;
+      }
+      return models;
+    }
+
+    @NotNull
+    private byte[] toBytes() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(new DeflaterOutputStream(bytes))) {
+        out.writeObject(myGradleModuleModel);
+        out.writeObject(myAndroidModuleModel);
+        out.writeObject(myNdkModuleModel);
+        out.writeObject(myJavaModuleModel);
+      }
+      return bytes.toByteArray();
+    }
+
+    @NotNull
+    private static ModuleModels fromBytes(@NotNull byte[] bytes) throws IOException {
+      try (ObjectInputStream in = new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)))) {
+        return new ModuleModels((GradleModuleModel)in.readObject(),
+                                (AndroidModuleModel)in.readObject(),
+                                (NdkModuleModel)in.readObject(),
+                                (JavaModuleModel)in.readObject());
+      }
+      catch (ClassNotFoundException | ClassCastException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+}
@@ -23,6 +23,7 @@ import com.android.tools.idea.gradle.project.build.GradleProjectBuilder;
 import com.android.tools.idea.gradle.project.sync.GradleSyncInvoker;
 import com.android.tools.idea.gradle.project.sync.GradleSyncState;
 import com.android.tools.idea.gradle.project.sync.compatibility.VersionCompatibilityChecker;
+import com.android.tools.idea.gradle.project.sync.idea.data.DataNodeCaches;
 import com.android.tools.idea.gradle.project.sync.messages.SyncMessages;
 import com.android.tools.idea.gradle.project.sync.setup.module.common.DependencySetupErrors;
 import com.android.tools.idea.gradle.project.sync.setup.post.project.DisposedModules;
@@ -205,6 +206,7 @@ public class PostSyncProjectSetup {
     else {
       mySyncState.syncEnded();
       GradleProjectSyncData.save(myProject);
+      DataNodeCaches.getInstance(myProject).saveModelsSnapshot();
     }
   }
 
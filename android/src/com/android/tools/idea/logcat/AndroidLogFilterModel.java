@@ -93,9 +93,17 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
   }
 
   public final void updateLogcatFilter(@Nullable AndroidLogcatFilter filter) {
+    setLogcatFilter(filter);
+    fireTextFilterChange();
+  }
+
+  /**
+   * Like {@link #updateLogcatFilter(AndroidLogcatFilter)}, but without asking the console to reprocess the lines it already has.
+   * Use this when the caller replays the log itself, for example from the indexed buffer of {@link AndroidLogcatService}.
+   */
+  public final void setLogcatFilter(@Nullable AndroidLogcatFilter filter) {
     saveConfiguredFilterName(filter != null ? filter.getName() : "");
     myConfiguredFilter = filter;
-    fireTextFilterChange();
   }
 
   protected abstract void saveConfiguredFilterName(String filterName);
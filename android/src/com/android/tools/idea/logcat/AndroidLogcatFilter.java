@@ -34,4 +34,25 @@ public interface AndroidLogcatFilter {
    * Returns {@code true} if the current logcat message should be accepted, {@code false} otherwise.
    */
   boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String pkg, int pid, @NotNull Log.LogLevel logLevel);
+
+  /**
+   * Returns {@code false} if no message with the given log level can be accepted by this filter. This and the other header checks
+   * below let an indexed log buffer skip messages without calling {@link #isApplicable} on each of them, so they must never reject
+   * a header which {@link #isApplicable} could accept.
+   */
+  default boolean isApplicableLogLevel(@NotNull Log.LogLevel logLevel) {
+    return true;
+  }
+
+  default boolean isApplicableTag(@NotNull String tag) {
+    return true;
+  }
+
+  default boolean isApplicablePackage(@NotNull String pkg) {
+    return true;
+  }
+
+  default boolean isApplicablePid(int pid) {
+    return true;
+  }
 }
@@ -53,25 +53,10 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return Logger.getInstance(AndroidLogcatService.class);
   }
 
-  private static class LogcatBuffer {
-    private int myBufferSize;
-    private final LinkedList<LogCatMessage> myMessages = new LinkedList<>();
-
-    public void addMessage(@NotNull LogCatMessage message) {
-      myMessages.add(message);
-      myBufferSize += message.getMessage().length();
-      if (ConsoleBuffer.useCycleBuffer()) {
-        while (myBufferSize > ConsoleBuffer.getCycleBufferSize()) {
-          myBufferSize -= myMessages.removeFirst().getMessage().length();
-        }
-      }
-    }
-
-    @NotNull
-    public List<LogCatMessage> getMessages() {
-      return myMessages;
-    }
-  }
+  /**
+   * The number of messages kept per device, on top of the character limit of the console cycle buffer.
+   */
+  private static final int MAX_BUFFERED_MESSAGES = 1 << 17;
 
   public interface LogcatListener {
     default void onLogLineReceived(@NotNull LogCatMessage line) {}
@@ -80,6 +65,13 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
 
   private final Object myLock = new Object();
 
+  /**
+   * One lock per device, held while a message from the device is handed to its listeners and buffered, so that a replay of the
+   * buffered messages only holds up that device. It is always taken before {@link #myLock}, never while holding it.
+   */
+  @GuardedBy("myLock")
+  private final Map<IDevice, Object> myDeviceLocks = new HashMap<>();
+
   @GuardedBy("myLock")
   private final Map<IDevice, List<LogcatListener>> myListeners = new HashMap<>();
 
@@ -115,7 +107,7 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
       connect(device);
       final AndroidLogcatReceiver receiver = createReceiver(device);
       myLogReceivers.put(device, receiver);
-      myLogBuffers.put(device, new LogcatBuffer());
+      myLogBuffers.put(device, createBuffer());
       ExecutorService executor = myExecutors.get(device);
       executor.submit((() -> {
         try {
@@ -132,19 +124,29 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     }
   }
 
+  @NotNull
+  private static LogcatBuffer createBuffer() {
+    int maxCharacters = ConsoleBuffer.useCycleBuffer() ? ConsoleBuffer.getCycleBufferSize() : Integer.MAX_VALUE;
+    return new LogcatBuffer(MAX_BUFFERED_MESSAGES, maxCharacters);
+  }
+
   @NotNull
   private AndroidLogcatReceiver createReceiver(@NotNull final IDevice device) {
     final LogcatListener logcatListener = new LogcatListener() {
       @Override
       public void onLogLineReceived(@NotNull LogCatMessage line) {
-        synchronized (myLock) {
-          if (myListeners.containsKey(device)) {
-            for (LogcatListener listener : myListeners.get(device)) {
-              listener.onLogLineReceived(line);
-            }
+        synchronized (getDeviceLock(device)) {
+          List<LogcatListener> listeners;
+          LogcatBuffer buffer;
+          synchronized (myLock) {
+            listeners = getListeners(device);
+            buffer = myLogBuffers.get(device);
+          }
+          for (LogcatListener listener : listeners) {
+            listener.onLogLineReceived(line);
           }
-          if (myLogBuffers.containsKey(device)) {
-            myLogBuffers.get(device).addMessage(line);
+          if (buffer != null) {
+            buffer.addMessage(line);
           }
         }
       }
@@ -152,6 +154,23 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return new AndroidLogcatReceiver(device, logcatListener);
   }
 
+  @NotNull
+  private Object getDeviceLock(@NotNull IDevice device) {
+    synchronized (myLock) {
+      return myDeviceLocks.computeIfAbsent(device, d -> new Object());
+    }
+  }
+
+  /**
+   * Returns a copy of the listeners of the device, to be notified without holding {@link #myLock}.
+   */
+  @GuardedBy("myLock")
+  @NotNull
+  private List<LogcatListener> getListeners(@NotNull IDevice device) {
+    List<LogcatListener> listeners = myListeners.get(device);
+    return listeners == null ? Collections.emptyList() : new ArrayList<>(listeners);
+  }
+
   private void connect(@NotNull IDevice device) {
     synchronized (myLock) {
       if (!myExecutors.containsKey(device)) {
@@ -204,11 +223,13 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
               .showErrorDialog(project, "Error: " + e.getMessage(), AndroidBundle.message("android.logcat.error.dialog.title")));
           }
 
-          synchronized (myLock) {
-            if (myListeners.containsKey(device)) {
-              for (LogcatListener listener : myListeners.get(device)) {
-                listener.onCleared();
-              }
+          synchronized (getDeviceLock(device)) {
+            List<LogcatListener> listeners;
+            synchronized (myLock) {
+              listeners = getListeners(device);
+            }
+            for (LogcatListener listener : listeners) {
+              listener.onCleared();
             }
           }
         });
@@ -229,21 +250,26 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
    * to a UI thread. For example, don't directly invoke a runnable on the UI thread per line, but consider batching many log lines first.
    */
   public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, boolean addOldLogs) {
-    synchronized (myLock) {
-      if (addOldLogs && myLogBuffers.containsKey(device)) {
-        for (LogCatMessage line : myLogBuffers.get(device).getMessages()) {
-          listener.onLogLineReceived(line);
-        }
+    // The device lock keeps new messages from slipping in between the old logs and the listener being added
+    synchronized (getDeviceLock(device)) {
+      LogcatBuffer buffer;
+      synchronized (myLock) {
+        buffer = myLogBuffers.get(device);
       }
-
-      if (!myListeners.containsKey(device)) {
-        myListeners.put(device, new ArrayList<>());
+      if (addOldLogs && buffer != null) {
+        buffer.forEach(listener::onLogLineReceived);
       }
 
-      myListeners.get(device).add(listener);
+      synchronized (myLock) {
+        if (!myListeners.containsKey(device)) {
+          myListeners.put(device, new ArrayList<>());
+        }
 
-      if (device.isOnline()) {
-        startReceiving(device);
+        myListeners.get(device).add(listener);
+
+        if (device.isOnline()) {
+          startReceiving(device);
+        }
       }
     }
   }
@@ -255,6 +281,27 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     addListener(device, listener, false);
   }
 
+  /**
+   * Calls {@link LogcatListener#onCleared()} on {@code listener}, then notifies it of the messages received so far from the specified
+   * device whose header may be accepted by {@code filter}. The buffered messages are indexed by header, so this is much cheaper than
+   * replaying every message, but the listener is still responsible for checking the message text against the filter.
+   * New messages from the device wait until the replay is done, so none of them is lost or shown twice by a listener that clears
+   * its output and shows the replay instead. This should be called from a background thread, and the listener may throw
+   * {@link com.intellij.openapi.progress.ProcessCanceledException} to end the replay early.
+   */
+  public void clearAndReplayLogs(@NotNull IDevice device, @NotNull LogcatListener listener, @NotNull AndroidLogcatFilter filter) {
+    synchronized (getDeviceLock(device)) {
+      LogcatBuffer buffer;
+      synchronized (myLock) {
+        buffer = myLogBuffers.get(device);
+      }
+      listener.onCleared();
+      if (buffer != null) {
+        buffer.forEach(filter, listener::onLogLineReceived);
+      }
+    }
+  }
+
   public void removeListener(@NotNull IDevice device, @NotNull LogcatListener listener) {
     synchronized (myLock) {
       if (myListeners.containsKey(device)) {
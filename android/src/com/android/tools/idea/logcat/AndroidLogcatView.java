@@ -18,6 +18,7 @@ package com.android.tools.idea.logcat;
 import com.android.ddmlib.Client;
 import com.android.ddmlib.ClientData;
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.tools.idea.actions.BrowserHelpAction;
 import com.android.tools.idea.ddms.DeviceContext;
 import com.intellij.diagnostic.logging.LogConsoleBase;
@@ -30,6 +31,7 @@ import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.progress.impl.BackgroundableProcessIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.ComboBox;
 import com.intellij.openapi.util.Disposer;
@@ -73,6 +75,11 @@ public abstract class AndroidLogcatView implements Disposable {
   private final FormattedLogcatReceiver myLogcatReceiver;
   private final AndroidLogFilterModel myLogFilterModel;
 
+  /**
+   * The progress of the replay started by the last filter change, canceled when the filter changes again before it is done.
+   */
+  @Nullable private ProgressIndicator myReplayIndicator;
+
   private final IDevice myPreselectedDevice;
 
   /**
@@ -343,12 +350,42 @@ public abstract class AndroidLogcatView implements Disposable {
   private void applySelectedFilter() {
     final Object filter = myFilterComboBoxModel.getSelectedItem();
     if (filter instanceof AndroidLogcatFilter) {
-      ProgressManager.getInstance().run(new Task.Backgroundable(myProject, LogConsoleBase.APPLYING_FILTER_TITLE) {
+      myLogFilterModel.setLogcatFilter((AndroidLogcatFilter)filter);
+      if (myDevice == null) {
+        // Nothing is shown yet, the log is replayed with this filter once a device gets selected
+        return;
+      }
+
+      // Rather than having the console rescan every line it holds, clear it and replay only the messages whose header may be
+      // accepted by the filter, which the service looks up in its per-device index. The service clears the console and replays
+      // while holding back new lines from the device, so they are neither shown twice nor out of order.
+      if (myReplayIndicator != null) {
+        myReplayIndicator.cancel();
+      }
+      final IDevice device = myDevice;
+      Task.Backgroundable task = new Task.Backgroundable(myProject, LogConsoleBase.APPLYING_FILTER_TITLE) {
         @Override
         public void run(@NotNull ProgressIndicator indicator) {
-          myLogFilterModel.updateLogcatFilter((AndroidLogcatFilter)filter);
+          AndroidLogcatService.getInstance().clearAndReplayLogs(device, new AndroidLogcatService.LogcatListener() {
+            @Override
+            public void onLogLineReceived(@NotNull LogCatMessage line) {
+              // Stop replaying as soon as another filter is selected, its replay starts from a cleared console
+              indicator.checkCanceled();
+              myLogcatReceiver.onLogLineReceived(line);
+            }
+
+            @Override
+            public void onCleared() {
+              // We check for null, because myLogConsole.clear() depends on myLogConsole.getConsole() not being null
+              if (myLogConsole.getConsole() != null) {
+                myLogConsole.clear();
+              }
+            }
+          }, (AndroidLogcatFilter)filter);
         }
-      });
+      };
+      myReplayIndicator = new BackgroundableProcessIndicator(task);
+      ProgressManager.getInstance().runProcessWithProgressAsynchronously(task, myReplayIndicator);
     }
   }
 
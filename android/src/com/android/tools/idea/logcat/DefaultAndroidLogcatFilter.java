@@ -99,7 +99,7 @@ public final class DefaultAndroidLogcatFilter implements AndroidLogcatFilter {
 
   @Override
   public boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String pkg, int pid, @NotNull Log.LogLevel logLevel) {
-    if (myLogLevel != null && (logLevel.getPriority() < myLogLevel.getPriority())) {
+    if (!isApplicableLogLevel(logLevel)) {
       return false;
     }
 
@@ -107,20 +107,28 @@ public final class DefaultAndroidLogcatFilter implements AndroidLogcatFilter {
       return false;
     }
 
-    if (myTagPattern != null && !myTagPattern.matcher(tag).find()) {
-      return false;
-    }
+    return isApplicableTag(tag) && isApplicablePackage(pkg) && isApplicablePid(pid);
+  }
 
-    if (myPkgNamePattern != null && !myPkgNamePattern.matcher(pkg).find()) {
-      return false;
-    }
+  @Override
+  public boolean isApplicableLogLevel(@NotNull Log.LogLevel logLevel) {
+    return myLogLevel == null || logLevel.getPriority() >= myLogLevel.getPriority();
+  }
 
-    // TODO: If we're always checking against an int pid anyway, why let myPid be a string?
-    if ((myPid != null && myPid.length() > 0) && !myPid.equals(Integer.toString(pid))) {
-      return false;
-    }
+  @Override
+  public boolean isApplicableTag(@NotNull String tag) {
+    return myTagPattern == null || myTagPattern.matcher(tag).find();
+  }
+
+  @Override
+  public boolean isApplicablePackage(@NotNull String pkg) {
+    return myPkgNamePattern == null || myPkgNamePattern.matcher(pkg).find();
+  }
 
-    return true;
+  @Override
+  public boolean isApplicablePid(int pid) {
+    // TODO: If we're always checking against an int pid anyway, why let myPid be a string?
+    return myPid == null || myPid.isEmpty() || myPid.equals(Integer.toString(pid));
   }
 
   @Override
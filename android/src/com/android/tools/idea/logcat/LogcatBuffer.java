@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A bounded buffer of the most recent logcat messages received from a device.
+ *
+ * Messages are kept in a ring of arrays, so adding a message to a full buffer overwrites the oldest one instead of allocating. Next to
+ * the messages, the buffer keeps a bitmap of the slots holding each log level, tag, package and pid. Selecting the messages a filter
+ * may accept is then a matter of testing each distinct header value once and intersecting the matching bitmaps, instead of checking
+ * the filter against every message.
+ *
+ * This class is not thread safe.
+ */
+final class LogcatBuffer {
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final Log.LogLevel[] LOG_LEVELS = Log.LogLevel.values();
+
+  private final int myMaxMessages;
+  private final int myMaxCharacters;
+
+  private LogCatMessage[] myMessages;
+  private int myHead;
+  private int mySize;
+  private int myCharacters;
+
+  private byte[] myLevels;
+  private int[] myTags;
+  private int[] myPackages;
+  private int[] myPids;
+
+  private final BitSet[] myLevelSlots = new BitSet[LOG_LEVELS.length];
+  private final StringIndex myTagIndex = new StringIndex();
+  private final StringIndex myPackageIndex = new StringIndex();
+  private final TIntObjectHashMap<BitSet> myPidSlots = new TIntObjectHashMap<>();
+
+  /**
+   * @param maxMessages   the number of messages after which the oldest ones are dropped, rounded up to a power of two
+   * @param maxCharacters the total message length after which the oldest messages are dropped
+   */
+  LogcatBuffer(int maxMessages, int maxCharacters) {
+    myMaxMessages = Integer.highestOneBit(Math.max(1, maxMessages - 1)) << 1;
+    myMaxCharacters = maxCharacters;
+    allocate(Math.min(INITIAL_CAPACITY, myMaxMessages));
+    for (int i = 0; i < myLevelSlots.length; i++) {
+      myLevelSlots[i] = new BitSet();
+    }
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  /**
+   * Returns the number of distinct tags of the buffered messages.
+   */
+  int getTagCount() {
+    return myTagIndex.size();
+  }
+
+  public void addMessage(@NotNull LogCatMessage message) {
+    if (mySize == myMessages.length) {
+      if (mySize < myMaxMessages) {
+        grow();
+      }
+      else {
+        removeFirst();
+      }
+    }
+
+    int slot = (myHead + mySize) & (myMessages.length - 1);
+    mySize++;
+    set(slot, message);
+
+    myCharacters += message.getMessage().length();
+    while (myCharacters > myMaxCharacters && mySize > 1) {
+      removeFirst();
+    }
+  }
+
+  /**
+   * Passes every buffered message to {@code consumer}, oldest first.
+   */
+  public void forEach(@NotNull Consumer<LogCatMessage> consumer) {
+    for (int i = 0; i < mySize; i++) {
+      consumer.accept(myMessages[(myHead + i) & (myMessages.length - 1)]);
+    }
+  }
+
+  /**
+   * Passes the buffered messages whose header may be accepted by {@code filter} to {@code consumer}, oldest first. As only the
+   * headers are checked, the consumer still needs to call {@link AndroidLogcatFilter#isApplicable} to check the message text.
+   */
+  public void forEach(@NotNull AndroidLogcatFilter filter, @NotNull Consumer<LogCatMessage> consumer) {
+    BitSet selected = intersect(null, selectLevels(filter));
+    selected = intersect(selected, myTagIndex.select(filter::isApplicableTag));
+    selected = intersect(selected, myPackageIndex.select(filter::isApplicablePackage));
+    selected = intersect(selected, selectPids(filter));
+    if (selected == null) {
+      forEach(consumer);
+      return;
+    }
+
+    // The oldest messages live in [myHead, capacity) and the newest ones wrap around into [0, myHead)
+    int end = myHead + mySize;
+    int capacity = myMessages.length;
+    for (int slot = selected.nextSetBit(myHead); slot >= 0 && slot < Math.min(end, capacity); slot = selected.nextSetBit(slot + 1)) {
+      consumer.accept(myMessages[slot]);
+    }
+    if (end > capacity) {
+      for (int slot = selected.nextSetBit(0); slot >= 0 && slot < end - capacity; slot = selected.nextSetBit(slot + 1)) {
+        consumer.accept(myMessages[slot]);
+      }
+    }
+  }
+
+  /**
+   * Returns a bitmap of the slots whose log level is accepted by {@code filter}, or {@code null} if every level is accepted.
+   */
+  @Nullable
+  private BitSet selectLevels(@NotNull AndroidLogcatFilter filter) {
+    BitSet selected = new BitSet();
+    boolean all = true;
+    for (Log.LogLevel level : LOG_LEVELS) {
+      if (filter.isApplicableLogLevel(level)) {
+        selected.or(myLevelSlots[level.ordinal()]);
+      }
+      else {
+        all = false;
+      }
+    }
+    return all ? null : selected;
+  }
+
+  @Nullable
+  private BitSet selectPids(@NotNull AndroidLogcatFilter filter) {
+    BitSet selected = new BitSet();
+    boolean[] all = {true};
+    myPidSlots.forEachEntry((pid, slots) -> {
+      if (filter.isApplicablePid(pid)) {
+        selected.or(slots);
+      }
+      else {
+        all[0] = false;
+      }
+      return true;
+    });
+    return all[0] ? null : selected;
+  }
+
+  /**
+   * Intersects two slot bitmaps, where {@code null} stands for all slots. Modifies and returns {@code a} when both are set.
+   */
+  @Nullable
+  private static BitSet intersect(@Nullable BitSet a, @Nullable BitSet b) {
+    if (a == null) {
+      return b;
+    }
+    if (b != null) {
+      a.and(b);
+    }
+    return a;
+  }
+
+  private void set(int slot, @NotNull LogCatMessage message) {
+    LogCatHeader header = message.getHeader();
+    myMessages[slot] = message;
+    myLevels[slot] = (byte)header.getLogLevel().ordinal();
+    myTags[slot] = myTagIndex.add(header.getTag(), slot);
+    myPackages[slot] = myPackageIndex.add(header.getAppName(), slot);
+    myPids[slot] = header.getPid();
+
+    myLevelSlots[myLevels[slot]].set(slot);
+    BitSet pidSlots = myPidSlots.get(header.getPid());
+    if (pidSlots == null) {
+      pidSlots = new BitSet();
+      myPidSlots.put(header.getPid(), pidSlots);
+    }
+    pidSlots.set(slot);
+  }
+
+  private void removeFirst() {
+    int slot = myHead;
+    myCharacters -= myMessages[slot].getMessage().length();
+    myMessages[slot] = null;
+    myLevelSlots[myLevels[slot]].clear(slot);
+    myTagIndex.remove(myTags[slot], slot);
+    myPackageIndex.remove(myPackages[slot], slot);
+    BitSet pidSlots = myPidSlots.get(myPids[slot]);
+    pidSlots.clear(slot);
+    if (pidSlots.isEmpty()) {
+      myPidSlots.remove(myPids[slot]);
+    }
+
+    myHead = (myHead + 1) & (myMessages.length - 1);
+    mySize--;
+  }
+
+  /**
+   * Doubles the capacity of the ring. Moving the messages changes their slots, so the bitmaps are rebuilt from scratch.
+   */
+  private void grow() {
+    LogCatMessage[] messages = myMessages;
+    int head = myHead;
+    int size = mySize;
+
+    allocate(messages.length * 2);
+    for (BitSet slots : myLevelSlots) {
+      slots.clear();
+    }
+    myTagIndex.clear();
+    myPackageIndex.clear();
+    myPidSlots.clear();
+
+    for (int i = 0; i < size; i++) {
+      set(i, messages[(head + i) & (messages.length - 1)]);
+    }
+    myHead = 0;
+    mySize = size;
+  }
+
+  private void allocate(int capacity) {
+    myMessages = new LogCatMessage[capacity];
+    myLevels = new byte[capacity];
+    myTags = new int[capacity];
+    myPackages = new int[capacity];
+    myPids = new int[capacity];
+  }
+
+  /**
+   * Interns the values of a string column and keeps a bitmap of the slots holding each of them. A value is dropped, and its id
+   * reused, once the last slot holding it is removed, so tags and packages that are no longer in the buffer don't pile up.
+   */
+  private static final class StringIndex {
+    private final TObjectIntHashMap<String> myIds = new TObjectIntHashMap<>();
+    private final List<String> myValues = new ArrayList<>();
+    private final List<BitSet> mySlots = new ArrayList<>();
+    private final TIntArrayList myFreeIds = new TIntArrayList();
+
+    int add(@NotNull String value, int slot) {
+      int id;
+      if (myIds.containsKey(value)) {
+        id = myIds.get(value);
+      }
+      else if (!myFreeIds.isEmpty()) {
+        id = myFreeIds.remove(myFreeIds.size() - 1);
+        myIds.put(value, id);
+        myValues.set(id, value);
+      }
+      else {
+        id = myValues.size();
+        myIds.put(value, id);
+        myValues.add(value);
+        mySlots.add(new BitSet());
+      }
+      mySlots.get(id).set(slot);
+      return id;
+    }
+
+    void remove(int id, int slot) {
+      BitSet slots = mySlots.get(id);
+      slots.clear(slot);
+      if (slots.isEmpty()) {
+        myIds.remove(myValues.get(id));
+        myValues.set(id, null);
+        myFreeIds.add(id);
+      }
+    }
+
+    void clear() {
+      myIds.clear();
+      myValues.clear();
+      mySlots.clear();
+      myFreeIds.clear();
+    }
+
+    /**
+     * Returns the number of distinct values currently in the buffer.
+     */
+    int size() {
+      return myIds.size();
+    }
+
+    /**
+     * Returns a bitmap of the slots holding a value accepted by {@code predicate}, or {@code null} if every value is accepted.
+     */
+    @Nullable
+    BitSet select(@NotNull Predicate<String> predicate) {
+      BitSet selected = new BitSet();
+      boolean all = true;
+      for (int id = 0; id < myValues.size(); id++) {
+        BitSet slots = mySlots.get(id);
+        if (slots.isEmpty()) {
+          continue;
+        }
+        if (predicate.test(myValues.get(id))) {
+          selected.or(slots);
+        }
+        else {
+          all = false;
+        }
+      }
+      return all ? null : selected;
+    }
+  }
+}
@@ -28,6 +28,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 
@@ -39,12 +40,14 @@ public class AndroidMonitorToolWindow implements Disposable {
   private final StudioProfilers myProfilers;
   @NotNull
   private final Project myProject;
+  @NotNull
+  private final StudioProfilerDeviceManager myManager;
 
   public AndroidMonitorToolWindow(@NotNull final Project project) {
     try {
       myProject = project;
-      StudioProfilerDeviceManager manager = new StudioProfilerDeviceManager(project);
-      myProfilers = new StudioProfilers(manager.getClient());
+      myManager = new StudioProfilerDeviceManager(project);
+      myProfilers = new StudioProfilers(myManager.getClient());
       myProfilers.setPreferredProcessName(getPreferredProcessName(project));
       StudioProfilersView view = new StudioProfilersView(myProfilers);
       myComponent = view.getComponent();
@@ -68,8 +71,16 @@ public class AndroidMonitorToolWindow implements Disposable {
     }
   }
 
+  /**
+   * Saves the data collected from the connected devices to a session file. Does IO, so it must not be called on the EDT.
+   */
+  public void exportSession(@NotNull File file) throws IOException {
+    myManager.exportSession(file);
+  }
+
   @Override
   public void dispose() {
+    myProfilers.stop();
   }
 
   public JComponent getComponent() {
@@ -19,6 +19,7 @@ import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.openapi.wm.ex.ToolWindowEx;
 import com.intellij.ui.content.Content;
 import com.intellij.ui.content.ContentFactory;
 import org.jetbrains.annotations.NotNull;
@@ -32,7 +33,11 @@ public class AndroidMonitorToolWindowFactory implements DumbAware, ToolWindowFac
 
     ContentFactory contentFactory = ContentFactory.SERVICE.getInstance();
     Content content = contentFactory.createContent(view.getComponent(), "", false);
+    content.setCloseable(false);
+    content.setDisposer(view);
     toolWindow.getContentManager().addContent(content);
+
+    ((ToolWindowEx)toolWindow).setTitleActions(new ExportSessionAction(view), new ImportSessionAction(toolWindow));
   }
 }
 
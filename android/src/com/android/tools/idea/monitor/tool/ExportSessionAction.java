@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.monitor.tool;
+
+import com.android.tools.datastore.session.SessionFileWriter;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Saves the data collected by the profilers so far to a session file.
+ */
+public class ExportSessionAction extends DumbAwareAction {
+  @NotNull private final AndroidMonitorToolWindow myToolWindow;
+
+  public ExportSessionAction(@NotNull AndroidMonitorToolWindow toolWindow) {
+    super("Export Session...", "Save the data collected so far to a session file", AllIcons.Actions.Menu_saveall);
+    myToolWindow = toolWindow;
+  }
+
+  @Override
+  public void actionPerformed(AnActionEvent e) {
+    Project project = e.getProject();
+    if (project == null) {
+      return;
+    }
+
+    FileSaverDescriptor descriptor =
+      new FileSaverDescriptor("Export Session", "Select a location for the session file", SessionFileWriter.FILE_EXTENSION);
+    VirtualFileWrapper fileWrapper =
+      FileChooserFactory.getInstance().createSaveFileDialog(descriptor, project).save(null, "session." + SessionFileWriter.FILE_EXTENSION);
+    if (fileWrapper == null) {
+      return;
+    }
+
+    File file = fileWrapper.getFile();
+    new Task.Backgroundable(project, "Exporting Profiler Session", false) {
+      private IOException myError;
+
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        try {
+          myToolWindow.exportSession(file);
+        }
+        catch (IOException ex) {
+          myError = ex;
+        }
+      }
+
+      @Override
+      public void onSuccess() {
+        if (myError != null) {
+          Messages.showErrorDialog(project, "Unable to export the session: " + myError.getMessage(), "Export Session");
+        }
+      }
+    }.queue();
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.monitor.tool;
+
+import com.android.tools.datastore.DataStoreService;
+import com.android.tools.datastore.session.SessionFileWriter;
+import com.android.tools.profilers.ProfilerClient;
+import com.android.tools.profilers.StudioProfilers;
+import com.android.tools.profilers.StudioProfilersView;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptor;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens a session file saved with {@link ExportSessionAction} in a tab of its own. Each imported session is served by its own datastore,
+ * so the profilers of the connected devices keep running next to it.
+ */
+public class ImportSessionAction extends DumbAwareAction {
+  private static final AtomicInteger ourSessionCount = new AtomicInteger();
+
+  @NotNull private final ToolWindow myToolWindow;
+
+  public ImportSessionAction(@NotNull ToolWindow toolWindow) {
+    super("Import Session...", "Open a session file saved earlier", AllIcons.Actions.Menu_open);
+    myToolWindow = toolWindow;
+  }
+
+  @Override
+  public void actionPerformed(AnActionEvent e) {
+    Project project = e.getProject();
+    if (project == null) {
+      return;
+    }
+
+    FileChooserDescriptor descriptor = FileChooserDescriptorFactory.createSingleFileDescriptor()
+      .withDescription("Select the session file to open")
+      .withFileFilter(file -> SessionFileWriter.FILE_EXTENSION.equals(file.getExtension()));
+    VirtualFile virtualFile = FileChooser.chooseFile(descriptor, project, null);
+    if (virtualFile == null) {
+      return;
+    }
+
+    File file = VfsUtilCore.virtualToIoFile(virtualFile);
+    String name = "ImportedSession" + ourSessionCount.incrementAndGet();
+    new Task.Backgroundable(project, "Importing Profiler Session", false) {
+      private DataStoreService myDataStore;
+      private IOException myError;
+
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        myDataStore = new DataStoreService(name);
+        try {
+          myDataStore.importSession(file);
+        }
+        catch (IOException ex) {
+          myError = ex;
+        }
+      }
+
+      @Override
+      public void onSuccess() {
+        if (myError != null) {
+          myDataStore.shutdown();
+          Messages.showErrorDialog(project, "Unable to import the session: " + myError.getMessage(), "Import Session");
+          return;
+        }
+
+        StudioProfilers profilers = new StudioProfilers(new ProfilerClient(name));
+        StudioProfilersView view = new StudioProfilersView(profilers);
+        Content content = ContentFactory.SERVICE.getInstance().createContent(view.getComponent(), file.getName(), false);
+        content.setCloseable(true);
+        DataStoreService dataStore = myDataStore;
+        content.setDisposer(() -> {
+          profilers.stop();
+          dataStore.shutdown();
+        });
+        myToolWindow.getContentManager().addContent(content);
+        myToolWindow.getContentManager().setSelectedContent(content);
+      }
+    }.queue();
+  }
+}
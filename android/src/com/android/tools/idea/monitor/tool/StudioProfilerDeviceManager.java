@@ -163,6 +163,13 @@ class StudioProfilerDeviceManager implements AndroidDebugBridge.IClientChangeLis
     return myClient;
   }
 
+  /**
+   * Saves everything the profilers have collected so far to a session file, which can later be opened with {@link ImportSessionAction}.
+   */
+  public void exportSession(@NotNull File file) throws IOException {
+    myDataStoreService.exportSession(file);
+  }
+
   private void spawnPerfd(@NonNull IDevice device) {
     PerfdThread thread = new PerfdThread(device, myClient);
     thread.start();
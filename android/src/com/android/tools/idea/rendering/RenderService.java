@@ -16,6 +16,7 @@
 package com.android.tools.idea.rendering;
 
 import com.android.annotations.NonNull;
+import com.android.annotations.VisibleForTesting;
 import com.android.ide.common.rendering.LayoutLibrary;
 import com.android.ide.common.rendering.api.Features;
 import com.android.ide.common.rendering.api.MergeCookie;
@@ -59,6 +60,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.android.SdkConstants.TAG_PREFERENCE_SCREEN;
@@ -74,29 +76,56 @@ public class RenderService {
 
   /** Number of ms that we will wait for the rendering thread to return before timing out */
   private static final long DEFAULT_RENDER_THREAD_TIMEOUT_MS = Integer.getInteger("layoutlib.thread.timeout", 6000);
+  /** Number of ms that we will wait for a render action, from the time it is queued, before timing out */
+  private static final long DEFAULT_RENDER_ACTION_TIMEOUT_MS = Integer.getInteger("layoutlib.action.timeout", 30000);
   /** Number of ms that we will keep the render thread alive when idle */
   private static final long RENDER_THREAD_IDLE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
 
-  private static final AtomicReference<Thread> ourRenderingThread = new AtomicReference<>();
-  private static final ExecutorService ourRenderingExecutor = new ThreadPoolExecutor(0, 1,
-                                                                                     RENDER_THREAD_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS,
-                                                                                     new LinkedBlockingQueue<>(),
-                                                                                     (Runnable r) -> {
-                                                                                       Thread renderingThread =
-                                                                                         new Thread(null, r, "Layoutlib Render Thread");
-                                                                                       renderingThread.setDaemon(true);
-                                                                                       ourRenderingThread.set(renderingThread);
-
-                                                                                       return renderingThread;
-                                                                                     });
+  /** Number of ms that a queued render action waits before it goes ahead of the actions of the next higher priority */
+  private static final long RENDER_ACTION_AGING_MS = 1000;
+
+  /**
+   * Priority of a render action. Actions with a higher priority run first, actions with the same priority run in submission order.
+   * Actions that have been waiting for long enough still go ahead of higher priority ones submitted later, so that they can't starve.
+   */
+  public enum RenderingPriority {
+    /** Renders for the editor the user is looking at */
+    HIGH,
+    NORMAL,
+    /** Background renders, like previews and thumbnails */
+    LOW
+  }
+
+  private static final AtomicLong ourRenderActionCount = new AtomicLong(0);
+  /** The render action being run. Layoutlib keeps session state in statics and thread locals, so there is a single render thread. */
+  private static final AtomicReference<RenderAction<?>> ourRunningAction = new AtomicReference<>();
+  private static final ThreadPoolExecutor ourRenderingExecutor = new ThreadPoolExecutor(1, 1,
+                                                                                        RENDER_THREAD_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS,
+                                                                                        new PriorityBlockingQueue<>(),
+                                                                                        RenderService::createRenderingThread) {
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+      return new RenderAction<>(callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+      return new RenderAction<>(Executors.callable(runnable, value));
+    }
+  };
   private static final AtomicInteger ourTimeoutExceptionCounter = new AtomicInteger(0);
 
+  @NotNull
+  private static Thread createRenderingThread(@NotNull Runnable runnable) {
+    Thread renderingThread = new Thread(null, runnable, "Layoutlib Render Thread");
+    renderingThread.setDaemon(true);
+    return renderingThread;
+  }
+
   static {
+    ourRenderingExecutor.allowCoreThreadTimeOut(true);
     // Register the executor to be shutdown on close
-    ShutDownTracker.getInstance().registerShutdownTask(() -> {
-      ourRenderingExecutor.shutdownNow();
-      ourRenderingThread.set(null);
-    });
+    ShutDownTracker.getInstance().registerShutdownTask(ourRenderingExecutor::shutdownNow);
   }
 
   private static final String JDK_INSTALL_URL = "https://developer.android.com/preview/setup-sdk.html#java8";
@@ -395,14 +424,28 @@ public class RenderService {
    * method.
    */
   public static <T> T runRenderAction(@NotNull Callable<T> callable) throws Exception {
+    return runRenderAction(callable, RenderingPriority.NORMAL);
+  }
+
+  /**
+   * Runs a action that requires the rendering lock, ahead of the pending actions that have a lower priority.
+   *
+   * @see #runRenderAction(Callable)
+   */
+  public static <T> T runRenderAction(@NotNull Callable<T> callable, @NotNull RenderingPriority priority) throws Exception {
+    RenderAction<T> action = null;
     try {
       // If the number of timeouts exceeds a certain threshold, stop waiting so the caller doesn't block. We try to submit a task that
       // clean-up the timeout counter instead. If it goes through, it means the queue is free.
       if (ourTimeoutExceptionCounter.get() > 3) {
-        ourRenderingExecutor.submit(() -> ourTimeoutExceptionCounter.set(0)).get(50, TimeUnit.MILLISECONDS);
+        ourRenderingExecutor.submit(new PrioritizedCallable<>(() -> {
+          ourTimeoutExceptionCounter.set(0);
+          return null;
+        }, priority)).get(50, TimeUnit.MILLISECONDS);
       }
 
-      T result = ourRenderingExecutor.submit(callable).get(DEFAULT_RENDER_THREAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      action = (RenderAction<T>)ourRenderingExecutor.submit(new PrioritizedCallable<>(callable, priority));
+      T result = waitForResult(action);
       // The executor seems to be taking tasks so reset the counter
       ourTimeoutExceptionCounter.set(0);
 
@@ -411,7 +454,9 @@ public class RenderService {
     catch (TimeoutException e) {
       ourTimeoutExceptionCounter.incrementAndGet();
 
-      Thread renderingThread = ourRenderingThread.get();
+      // The action that timed out, or the one stuck ahead of it in the queue
+      RenderAction<?> runningAction = ourRunningAction.get();
+      Thread renderingThread = runningAction != null ? runningAction.myThread : null;
       TimeoutException timeoutException = new TimeoutException("Preview timed out while rendering the layout.\n" +
                                                                "This typically happens when there is an infinite loop or unbounded recursion in one of the custom views.");
       if (renderingThread != null) {
@@ -422,6 +467,122 @@ public class RenderService {
     }
   }
 
+  /**
+   * Waits for the given action to complete. The timeout starts once the action runs, so the time it spends queued doesn't count, unless
+   * the action running ahead of it has itself exceeded the timeout. In any case the wait ends {@link #DEFAULT_RENDER_ACTION_TIMEOUT_MS}
+   * after the action was queued. An action that is still queued when the wait times out is cancelled, as nobody wants its result.
+   */
+  private static <T> T waitForResult(@NotNull RenderAction<T> action) throws Exception {
+    long deadlineNs = action.myQueueTimeNs + TimeUnit.MILLISECONDS.toNanos(DEFAULT_RENDER_ACTION_TIMEOUT_MS);
+    while (true) {
+      long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadlineNs - System.nanoTime());
+      long startTimeNs = action.myStartTimeNs;
+      if (startTimeNs != 0) {
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeNs);
+        return action.get(Math.max(0, Math.min(DEFAULT_RENDER_THREAD_TIMEOUT_MS - elapsedMs, remainingMs)), TimeUnit.MILLISECONDS);
+      }
+      if (remainingMs <= 0) {
+        if (cancelIfQueued(action)) {
+          throw new TimeoutException();
+        }
+        // The action has just been taken from the queue, it only gets what is left of the deadline
+        return action.get(0, TimeUnit.MILLISECONDS);
+      }
+      try {
+        return action.get(Math.min(DEFAULT_RENDER_THREAD_TIMEOUT_MS, remainingMs), TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException e) {
+        RenderAction<?> runningAction = ourRunningAction.get();
+        long runningStartTimeNs = runningAction != null ? runningAction.myStartTimeNs : 0;
+        if (runningAction != action && runningStartTimeNs != 0 &&
+            System.nanoTime() - runningStartTimeNs > TimeUnit.MILLISECONDS.toNanos(DEFAULT_RENDER_THREAD_TIMEOUT_MS)) {
+          cancelIfQueued(action);
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the given action from the rendering queue, if it hasn't been taken yet, and cancels it.
+   *
+   * @return whether the action was still queued
+   */
+  private static boolean cancelIfQueued(@NotNull RenderAction<?> action) {
+    if (!ourRenderingExecutor.remove(action)) {
+      return false;
+    }
+    action.cancel(false);
+    return true;
+  }
+
+  /**
+   * Returns the number of render actions waiting for the render thread.
+   */
+  @VisibleForTesting
+  static int getQueuedRenderActionCount() {
+    return ourRenderingExecutor.getQueue().size();
+  }
+
+  private static final class PrioritizedCallable<T> implements Callable<T> {
+    @NotNull private final Callable<T> myCallable;
+    @NotNull private final RenderingPriority myPriority;
+
+    private PrioritizedCallable(@NotNull Callable<T> callable, @NotNull RenderingPriority priority) {
+      myCallable = callable;
+      myPriority = priority;
+    }
+
+    @Override
+    public T call() throws Exception {
+      return myCallable.call();
+    }
+  }
+
+  /**
+   * A render action waiting in, or taken from, the rendering queue. Remembers when it started and the thread running it, so that a time
+   * out can report where rendering is stuck.
+   */
+  private static final class RenderAction<T> extends FutureTask<T> implements Comparable<RenderAction<?>> {
+    /**
+     * When the action is due: its submission time, pushed back by {@link #RENDER_ACTION_AGING_MS} per priority level below
+     * {@link RenderingPriority#HIGH}. Unlike an age computed when comparing, this keeps the order of queued actions stable.
+     */
+    private final long myDueTimeNs;
+    private final long myQueueTimeNs = System.nanoTime();
+    private final long mySequence = ourRenderActionCount.getAndIncrement();
+    private volatile long myStartTimeNs;
+    @Nullable private volatile Thread myThread;
+
+    private RenderAction(@NotNull Callable<T> callable) {
+      super(callable);
+      RenderingPriority priority =
+        callable instanceof PrioritizedCallable ? ((PrioritizedCallable<T>)callable).myPriority : RenderingPriority.NORMAL;
+      myDueTimeNs = myQueueTimeNs + TimeUnit.MILLISECONDS.toNanos(priority.ordinal() * RENDER_ACTION_AGING_MS);
+    }
+
+    @Override
+    public void run() {
+      myThread = Thread.currentThread();
+      myStartTimeNs = System.nanoTime();
+      ourRunningAction.set(this);
+      try {
+        super.run();
+      }
+      finally {
+        ourRunningAction.set(null);
+        myThread = null;
+      }
+    }
+
+    @Override
+    public int compareTo(@NotNull RenderAction<?> other) {
+      // Due times are compared by difference, as System.nanoTime() can overflow
+      long result = myDueTimeNs - other.myDueTimeNs;
+      return result != 0 ? Long.signum(result) : Long.compare(mySequence, other.mySequence);
+    }
+  }
+
   /**
    * Given a {@link ViewInfo} from a layoutlib rendering, checks that the view info provides
    * valid bounds. This is normally the case. However, there are known scenarios, where
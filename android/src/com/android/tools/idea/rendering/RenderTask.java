@@ -148,6 +148,7 @@ public class RenderTask implements IImageFactory {
 
   private boolean isSecurityManagerEnabled = true;
   private CrashReporter myCrashReporter;
+  @NotNull private RenderService.RenderingPriority myPriority = RenderService.RenderingPriority.NORMAL;
 
   /**
    * Don't create this task directly; obtain via {@link com.android.tools.idea.rendering.RenderService}
@@ -226,6 +227,18 @@ public class RenderTask implements IImageFactory {
     myFolderType = folderType;
   }
 
+  /**
+   * Sets the priority of the render actions of this task, relative to the ones of other tasks. The default is
+   * {@link RenderService.RenderingPriority#NORMAL}.
+   */
+  public void setPriority(@NotNull RenderService.RenderingPriority priority) {
+    myPriority = priority;
+  }
+
+  private <T> T runRenderAction(@NotNull Callable<T> callable) throws Exception {
+    return RenderService.runRenderAction(callable, myPriority);
+  }
+
   @NotNull
   public Module getModule() {
     return myRenderService.getModule();
@@ -677,7 +690,7 @@ public class RenderTask implements IImageFactory {
     }
 
     try {
-      return RenderService.runRenderAction(() -> createRenderSession((width, height) -> {
+      return runRenderAction(() -> createRenderSession((width, height) -> {
         if (myImageFactoryDelegate != null) {
           return myImageFactoryDelegate.getImage(width, height);
         }
@@ -704,7 +717,7 @@ public class RenderTask implements IImageFactory {
       return null;
     }
     try {
-      return RenderService.runRenderAction(() -> {
+      return runRenderAction(() -> {
         myRenderSession.measure();
         return RenderResult.create(this, myRenderSession, myPsiFile, myLogger, ImagePool.NULL_POOLED_IMAGE);
       });
@@ -748,7 +761,7 @@ public class RenderTask implements IImageFactory {
     assert myPsiFile != null;
 
     try {
-      return RenderService.runRenderAction(() -> {
+      return runRenderAction(() -> {
         myRenderSession.render();
         RenderResult result =
           RenderResult.create(this, myRenderSession, myPsiFile, myLogger, myImagePool.copyOf(myRenderSession.getImage()));
@@ -852,7 +865,7 @@ public class RenderTask implements IImageFactory {
     params.setAssetRepository(myAssetRepository);
 
     try {
-      Result result = RenderService.runRenderAction(new Callable<Result>() {
+      Result result = runRenderAction(new Callable<Result>() {
         @Override
         public Result call() throws Exception {
           return myLayoutLib.renderDrawable(params);
@@ -901,7 +914,7 @@ public class RenderTask implements IImageFactory {
     }
 
     try {
-      Result result = RenderService.runRenderAction(new Callable<Result>() {
+      Result result = runRenderAction(new Callable<Result>() {
         @Override
         public Result call() throws Exception {
           return myLayoutLib.renderDrawable(params);
@@ -1033,7 +1046,7 @@ public class RenderTask implements IImageFactory {
     Map<XmlTag, ViewInfo> map = Maps.newHashMap();
     RenderSession session = null;
     try {
-      session = RenderService.runRenderAction(() -> measure(modelParser));
+      session = runRenderAction(() -> measure(modelParser));
     }
     catch (Exception ignored) {
     }
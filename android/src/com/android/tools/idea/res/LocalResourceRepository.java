@@ -190,9 +190,17 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
   }
 
   protected void invalidateItemCaches(@Nullable ResourceType... types) {
+    invalidateParentCaches(this, types);
+  }
+
+  /**
+   * Notifies the parents that the items of the given repository, which is either this repository or one of
+   * its descendants, have changed for the given types (empty means all)
+   */
+  void invalidateParentCaches(@NotNull LocalResourceRepository changed, @Nullable ResourceType... types) {
     if (myParents != null) {
       for (MultiResourceRepository parent : myParents) {
-        parent.invalidateCache(this, types);
+        parent.invalidateCache(this, changed, types);
       }
     }
   }
@@ -28,6 +28,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,7 +40,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
   protected List<? extends LocalResourceRepository> myChildren;
   private long[] myModificationCounts;
   private Map<ResourceType, ListMultimap<String, ResourceItem>> myItems = Maps.newEnumMap(ResourceType.class);
-  private final Map<ResourceType, ListMultimap<String, ResourceItem>> myCachedTypeMaps = Maps.newEnumMap(ResourceType.class);
+  private final Map<ResourceType, MergedItems> myCachedTypeMaps = Maps.newEnumMap(ResourceType.class);
   private final Map<ResourceType, Boolean> myCachedHasResourcesOfType = Maps.newEnumMap(ResourceType.class);
   private Map<String, DataBindingInfo> myDataBindingResourceFiles = Maps.newHashMap();
   private long myDataBindingResourceFilesModificationCount = Long.MIN_VALUE;
@@ -164,9 +165,9 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
   protected ListMultimap<String, ResourceItem> getMap(ResourceType type, boolean create) {
     // Should I assert !create here? If we try to manipulate the cache it won't work right...
     synchronized (this) {
-      ListMultimap<String, ResourceItem> map = myCachedTypeMaps.get(type);
-      if (map != null) {
-        return map;
+      MergedItems merged = myCachedTypeMaps.get(type);
+      if (merged != null) {
+        return merged.myItems;
       }
     }
 
@@ -184,13 +185,37 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
     // Merge all items of the given type
     merge(visited, type, seenQualifiers, map);
 
+    List<LocalResourceRepository> leaves = Lists.newArrayList();
+    collectLeaves(this, Sets.newHashSet(), leaves);
+    MergedItems merged = new MergedItems(type, leaves, map);
     synchronized (this) {
-      myCachedTypeMaps.put(type, map);
+      myCachedTypeMaps.put(type, merged);
     }
 
     return map;
   }
 
+  /**
+   * Collects the repositories that hold items, as opposed to merging other repositories, in the order
+   * {@link #doMerge} visits them.
+   */
+  private static void collectLeaves(@NotNull LocalResourceRepository repository,
+                                    @NotNull Set<LocalResourceRepository> visited,
+                                    @NotNull List<LocalResourceRepository> leaves) {
+    if (!visited.add(repository)) {
+      return;
+    }
+    if (repository instanceof MultiResourceRepository) {
+      List<? extends LocalResourceRepository> children = ((MultiResourceRepository)repository).myChildren;
+      for (int i = children.size() - 1; i >= 0; i--) {
+        collectLeaves(children.get(i), visited, leaves);
+      }
+    }
+    else {
+      leaves.add(repository);
+    }
+  }
+
   @NonNull
   @Override
   protected ListMultimap<String, ResourceItem> getMap(ResourceType type) {
@@ -260,16 +285,43 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
    * resources of the given types (empty means all)
    */
   public void invalidateCache(@NotNull LocalResourceRepository repository, @Nullable ResourceType... types) {
+    invalidateCache(repository, repository, types);
+  }
+
+  /**
+   * Notifies this delegating repository that the given dependent repository has invalidated resources of
+   * the given types (empty means all) because the items of the changed repository, which is either the
+   * dependent repository or one of its descendants, have changed.
+   * <p>
+   * When the changed repository holds items itself, the merged maps are updated by merging again only the
+   * names whose items it changed. Otherwise there is no telling what changed, and the merged maps are dropped.
+   */
+  void invalidateCache(@NotNull LocalResourceRepository repository,
+                       @NotNull LocalResourceRepository changed,
+                       @Nullable ResourceType... types) {
     assert myChildren.contains(repository) : repository;
 
+    boolean incremental = !(changed instanceof MultiResourceRepository);
     synchronized (this) {
       if (types == null || types.length == 0) {
-        myCachedTypeMaps.clear();
+        if (incremental) {
+          for (Iterator<MergedItems> iterator = myCachedTypeMaps.values().iterator(); iterator.hasNext(); ) {
+            if (!iterator.next().update(changed)) {
+              iterator.remove();
+            }
+          }
+        }
+        else {
+          myCachedTypeMaps.clear();
+        }
         myCachedHasResourcesOfType.clear();
       }
       else {
         for (ResourceType type : types) {
-          myCachedTypeMaps.remove(type);
+          MergedItems merged = myCachedTypeMaps.get(type);
+          if (merged != null && !(incremental && merged.update(changed))) {
+            myCachedTypeMaps.remove(type);
+          }
           myCachedHasResourcesOfType.remove(type);
         }
       }
@@ -277,7 +329,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
     myItems = null;
     myGeneration = ourModificationCounter.incrementAndGet();
 
-    invalidateItemCaches(types);
+    invalidateParentCaches(changed, types);
   }
 
   @Override
@@ -318,4 +370,111 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
     }
     return result;
   }
+
+  /**
+   * The merged items of one type, along with the items each repository that holds items contributed, by name.
+   * Since items are merged name by name, a change in one of those repositories only requires merging again the
+   * names whose items changed, rather than all the items of all the children.
+   * <p>
+   * Like the maps of the repositories that hold items, the merged map is updated in place, while the changed
+   * resources are being applied. Only the names whose merged items changed are replaced, and the items recorded
+   * for the changed repository are only copied for the names it changed.
+   */
+  private static final class MergedItems {
+    @NotNull private final ResourceType myType;
+    @NotNull private final List<LocalResourceRepository> myLeaves;
+    @NotNull private final ListMultimap<String, ResourceItem> myItems;
+    @NotNull private final Map<LocalResourceRepository, Map<String, List<ResourceItem>>> myLeafItems = Maps.newHashMap();
+
+    private MergedItems(@NotNull ResourceType type,
+                        @NotNull List<LocalResourceRepository> leaves,
+                        @NotNull ListMultimap<String, ResourceItem> items) {
+      myType = type;
+      myLeaves = leaves;
+      myItems = items;
+      for (LocalResourceRepository leaf : leaves) {
+        Map<String, List<ResourceItem>> leafItems = Maps.newHashMap();
+        ListMultimap<String, ResourceItem> map = leaf.getMap(myType, false);
+        if (map != null) {
+          for (String name : map.keySet()) {
+            leafItems.put(name, ImmutableList.copyOf(map.get(name)));
+          }
+        }
+        myLeafItems.put(leaf, leafItems);
+      }
+    }
+
+    /**
+     * Updates the merged items after the items of the given repository have changed.
+     *
+     * @return false if the repository isn't one this was merged from, in which case the merged items must be dropped
+     */
+    private boolean update(@NotNull LocalResourceRepository leaf) {
+      Map<String, List<ResourceItem>> leafItems = myLeafItems.get(leaf);
+      if (leafItems == null) {
+        return false;
+      }
+
+      Set<String> changedNames = Sets.newHashSet();
+      ListMultimap<String, ResourceItem> map = leaf.getMap(myType, false);
+      if (map != null) {
+        for (String name : map.keySet()) {
+          List<ResourceItem> items = map.get(name);
+          List<ResourceItem> oldItems = leafItems.get(name);
+          if (oldItems == null || !isSameItems(oldItems, items)) {
+            leafItems.put(name, ImmutableList.copyOf(items));
+            changedNames.add(name);
+          }
+        }
+      }
+      for (Iterator<String> iterator = leafItems.keySet().iterator(); iterator.hasNext(); ) {
+        String name = iterator.next();
+        if (map == null || !map.containsKey(name)) {
+          iterator.remove();
+          changedNames.add(name);
+        }
+      }
+
+      for (String name : changedNames) {
+        mergeName(name);
+      }
+      return true;
+    }
+
+    /**
+     * Merges the items of the given name the same way {@link LocalResourceRepository#doMerge} does, and
+     * replaces the merged items of that name if they differ from the current ones.
+     */
+    private void mergeName(@NotNull String name) {
+      List<ResourceItem> merged = Lists.newArrayList();
+      Set<String> seenQualifiers = Sets.newHashSet();
+      for (LocalResourceRepository leaf : myLeaves) {
+        ListMultimap<String, ResourceItem> items = leaf.getMap(myType, false);
+        if (items == null) {
+          continue;
+        }
+        for (ResourceItem item : items.get(name)) {
+          if (myType == ResourceType.ID || seenQualifiers.add(item.getQualifiers())) {
+            merged.add(item);
+          }
+        }
+      }
+
+      if (!isSameItems(myItems.get(name), merged)) {
+        myItems.replaceValues(name, merged);
+      }
+    }
+
+    private static boolean isSameItems(@NotNull List<ResourceItem> items1, @NotNull List<ResourceItem> items2) {
+      if (items1.size() != items2.size()) {
+        return false;
+      }
+      for (int i = 0; i < items1.size(); i++) {
+        if (items1.get(i) != items2.get(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
 }
@@ -60,7 +60,9 @@ import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.android.SdkConstants.*;
 import static com.android.resources.ResourceFolderType.*;
@@ -96,6 +98,16 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
   @VisibleForTesting
   static int ourFullRescans;
 
+  /**
+   * Upper bound on the number of resource sets a cached merger may hold before it is considered stale.
+   */
+  private static final int MAX_CACHED_RESOURCE_SETS = 32;
+
+  /**
+   * Below this many XML files per thread, the initial scan parses files on the calling thread.
+   */
+  private static final int MIN_FILES_PER_PARSING_TASK = 16;
+
   private ResourceFolderRepository(@NotNull AndroidFacet facet, @NotNull VirtualFile resourceDir, @Nullable String libraryName) {
     super(resourceDir.getName());
     myFacet = facet;
@@ -105,7 +117,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     myLibraryName = libraryName;
 
     ResourceMerger merger = loadPreviousStateIfExists();
-    myInitialScanState = new InitialScanState(merger, VfsUtilCore.virtualToIoFile(myResourceDir));
+    myInitialScanState = new InitialScanState(merger, VfsUtilCore.virtualToIoFile(myResourceDir), myLibraryName);
     scanRemainingFiles();
     Application app = ApplicationManager.getApplication();
     // For now, automatically save the state. We may want to move this out to a separate task.
@@ -191,27 +203,40 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
       LOG.warn("failed to loadPreviousStateIfExists " + blobRoot, e);
       return createFreshResourceMerger();
     }
-    // This temp resourceFiles set is just to avoid calling VfsUtil#findFileByIoFile a ton.
-    Set<ResourceFile> resourceFiles = Sets.newHashSet();
+    // There is one resource set per chunk of files parsed in parallel, see InitialScanState#preloadFiles.
     List<ResourceSet> resourceSets = merger.getDataSets();
-    if (resourceSets.size() != 1) {
-      LOG.error("Expecting exactly one resource set, but found " + resourceSets.size());
+    if (resourceSets.isEmpty()) {
+      LOG.error("Expecting at least one resource set, but found none");
       return createFreshResourceMerger();
     }
-    ResourceSet dataSet = resourceSets.get(0);
-    List<File> sourceFiles = dataSet.getSourceFiles();
-    if (sourceFiles.size() != 1) {
-      LOG.error("Expecting exactly source files (res/ directories), but found " + sourceFiles.size());
+    if (resourceSets.size() > MAX_CACHED_RESOURCE_SETS) {
+      // Each save may add sets, start over rather than let them pile up.
       return createFreshResourceMerger();
     }
     File myResourceDirFile = VfsUtilCore.virtualToIoFile(myResourceDir);
-    // Check that the dataSet we're loading actually corresponds to this resource directory.
-    // This could happen if there's a hash collision in naming the cache directory.
-    if (!FileUtil.filesEqual(sourceFiles.get(0), myResourceDirFile)) {
-      LOG.warn(String.format("source file %1$s, does not match resource dir %2$s",
-                             sourceFiles.get(0), myResourceDirFile));
-      return createFreshResourceMerger();
+    for (ResourceSet dataSet : resourceSets) {
+      List<File> sourceFiles = dataSet.getSourceFiles();
+      if (sourceFiles.size() != 1) {
+        LOG.error("Expecting exactly source files (res/ directories), but found " + sourceFiles.size());
+        return createFreshResourceMerger();
+      }
+      // Check that the dataSet we're loading actually corresponds to this resource directory.
+      // This could happen if there's a hash collision in naming the cache directory.
+      if (!FileUtil.filesEqual(sourceFiles.get(0), myResourceDirFile)) {
+        LOG.warn(String.format("source file %1$s, does not match resource dir %2$s",
+                               sourceFiles.get(0), myResourceDirFile));
+        return createFreshResourceMerger();
+      }
+    }
+    // This temp resourceFiles set is just to avoid calling VfsUtil#findFileByIoFile a ton.
+    Set<ResourceFile> resourceFiles = Sets.newHashSet();
+    for (ResourceSet dataSet : resourceSets) {
+      loadItems(dataSet, resourceFiles);
     }
+    return merger;
+  }
+
+  private void loadItems(@NotNull ResourceSet dataSet, @NotNull Set<ResourceFile> resourceFiles) {
     for (Map.Entry<String, ResourceItem> entry : dataSet.getDataMap().entries()) {
       ResourceItem item = entry.getValue();
       ResourceFile file = item.getSource();
@@ -233,7 +258,6 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
         item.setIgnoredFromDiskMerge(true);
       }
     }
-    return merger;
   }
 
   private ResourceMerger createFreshResourceMerger() {
@@ -272,18 +296,26 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     final ResourceSet myResourceSet;
     final ILogger myILogger;
     final File myResourceDir;
+    @Nullable final String myLibraryName;
     final Collection<PsiFileResourceQueueEntry> myPsiFileResourceQueue = new ArrayList<>();
     final Collection<PsiValueResourceQueueEntry> myPsiValueResourceQueue = new ArrayList<>();
+    /** Files already parsed by {@link #preloadFiles}, along with the result of parsing them. */
+    final Map<VirtualFile, PreloadedFile> myPreloadedFiles = Maps.newHashMap();
 
-    public InitialScanState(ResourceMerger merger, File resourceDir) {
+    public InitialScanState(ResourceMerger merger, File resourceDir, @Nullable String libraryName) {
       myResourceMerger = merger;
-      assert myResourceMerger.getDataSets().size() == 1;
+      assert !myResourceMerger.getDataSets().isEmpty();
       myResourceSet = myResourceMerger.getDataSets().get(0);
-      myResourceSet.setShouldParseResourceIds(true);
-      myResourceSet.setDontNormalizeQualifiers(true);
-      myResourceSet.setTrackSourcePositions(false);
+      configure(myResourceSet);
       myILogger = new LogWrapper(LOG);
       myResourceDir = resourceDir;
+      myLibraryName = libraryName;
+    }
+
+    private static void configure(@NotNull ResourceSet resourceSet) {
+      resourceSet.setShouldParseResourceIds(true);
+      resourceSet.setDontNormalizeQualifiers(true);
+      resourceSet.setTrackSourcePositions(false);
     }
 
     public void countCacheHit() {
@@ -303,8 +335,62 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
      * @throws MergingException
      */
     @Nullable
-    ResourceFile loadFile(File file) throws MergingException {
-      return myResourceSet.loadFile(myResourceDir, file, myILogger);
+    ResourceFile loadFile(VirtualFile file) throws MergingException {
+      PreloadedFile preloaded = myPreloadedFiles.remove(file);
+      if (preloaded != null) {
+        if (preloaded.myException != null) {
+          throw preloaded.myException;
+        }
+        return preloaded.myResourceFile;
+      }
+      return myResourceSet.loadFile(myResourceDir, VfsUtilCore.virtualToIoFile(file), myILogger);
+    }
+
+    /**
+     * Parses the given XML files on the fork-join pool, so that {@link #loadFile} later returns right away.
+     * <p>
+     * Resource sets aren't thread safe, so each task loads its share of the files into a resource set of its own.
+     * Those sets are added to the merger, so that saving the state still covers every file.
+     */
+    void preloadFiles(@NotNull List<VirtualFile> files) {
+      int tasks = Math.min(ForkJoinPool.getCommonPoolParallelism(), files.size() / MIN_FILES_PER_PARSING_TASK);
+      if (tasks <= 1) {
+        // Not worth it, loadFile will parse them as they come.
+        return;
+      }
+      List<ResourceSet> resourceSets = Lists.newArrayListWithCapacity(tasks);
+      resourceSets.add(myResourceSet);
+      for (int i = 1; i < tasks; i++) {
+        ResourceSet resourceSet = new ResourceSet(myResourceDir.getName(), myLibraryName, false /* validateEnabled */);
+        resourceSet.addSource(myResourceDir);
+        configure(resourceSet);
+        resourceSets.add(resourceSet);
+      }
+      PreloadedFile[] preloaded = new PreloadedFile[files.size()];
+      boolean[] used = new boolean[tasks];
+      IntStream.range(0, tasks).parallel().forEach(task -> {
+        ResourceSet resourceSet = resourceSets.get(task);
+        // Interleave files, so that each task gets a similar mix of folders.
+        for (int i = task; i < files.size(); i += tasks) {
+          File file = VfsUtilCore.virtualToIoFile(files.get(i));
+          try {
+            ResourceFile resourceFile = resourceSet.loadFile(myResourceDir, file, myILogger);
+            preloaded[i] = new PreloadedFile(resourceFile, null);
+            used[task] |= resourceFile != null;
+          }
+          catch (MergingException e) {
+            preloaded[i] = new PreloadedFile(null, e);
+          }
+        }
+      });
+      for (int i = 0; i < preloaded.length; i++) {
+        myPreloadedFiles.put(files.get(i), preloaded[i]);
+      }
+      for (int i = 1; i < tasks; i++) {
+        if (used[i]) {
+          myResourceMerger.addDataSet(resourceSets.get(i));
+        }
+      }
     }
 
     public void queuePsiFileResourceScan(PsiFileResourceQueueEntry data) {
@@ -316,6 +402,19 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     }
   }
 
+  /**
+   * The result of parsing a file ahead of the initial scan.
+   */
+  private static class PreloadedFile {
+    @Nullable public final ResourceFile myResourceFile;
+    @Nullable public final MergingException myException;
+
+    public PreloadedFile(@Nullable ResourceFile resourceFile, @Nullable MergingException exception) {
+      myResourceFile = resourceFile;
+      myException = exception;
+    }
+  }
+
   /**
    * Tracks file-based resources where init via VirtualFile failed. We retry init via PSI for these files.
    */
@@ -416,6 +515,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
   }
 
   private void scanResFolder(@NotNull VirtualFile resDir) {
+    myInitialScanState.preloadFiles(findXmlFilesToParse(resDir));
+
     for (VirtualFile subDir : resDir.getChildren()) {
       if (subDir.isValid() && subDir.isDirectory()) {
         String name = subDir.getName();
@@ -435,6 +536,34 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
         }
       }
     }
+    myInitialScanState.myPreloadedFiles.clear();
+  }
+
+  /**
+   * Returns the XML files that {@link #scanValueFile} and {@link #scanFileResourceFile} parse with the
+   * resource set, i.e. those that weren't loaded from the file cache.
+   */
+  @NotNull
+  private List<VirtualFile> findXmlFilesToParse(@NotNull VirtualFile resDir) {
+    List<VirtualFile> files = Lists.newArrayList();
+    for (VirtualFile subDir : resDir.getChildren()) {
+      if (subDir.isValid() && subDir.isDirectory()) {
+        String name = subDir.getName();
+        ResourceFolderType folderType = getFolderType(name);
+        if (folderType == null || FolderConfiguration.getConfigForFolder(name) == null) {
+          continue;
+        }
+        if (folderType != VALUES && !FolderTypeRelationship.isIdGeneratingFolderType(folderType)) {
+          continue;
+        }
+        for (VirtualFile file : subDir.getChildren()) {
+          if (file.isValid() && !file.isDirectory() && file.getFileType() == StdFileTypes.XML && !myResourceFiles.containsKey(file)) {
+            files.add(file);
+          }
+        }
+      }
+    }
+    return files;
   }
 
   private static String getQualifiers(String dirName) {
@@ -505,7 +634,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
         return;
       }
       try {
-        resourceFile = myInitialScanState.loadFile(VfsUtilCore.virtualToIoFile(file));
+        resourceFile = myInitialScanState.loadFile(file);
         if (resourceFile == null) {
           // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
           // Don't count Psi items in myInitialScanState.numXml, because they are never cached.
@@ -894,9 +1023,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
         myInitialScanState.countCacheHit();
         return;
       }
-      File file = VfsUtilCore.virtualToIoFile(virtualFile);
       try {
-        ResourceFile resourceFile = myInitialScanState.loadFile(file);
+        ResourceFile resourceFile = myInitialScanState.loadFile(virtualFile);
         if (resourceFile == null) {
           // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
           myInitialScanState.queuePsiValueResourceScan(new PsiValueResourceQueueEntry(virtualFile, qualifiers, folderConfiguration));
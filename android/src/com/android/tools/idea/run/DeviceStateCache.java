@@ -27,6 +27,8 @@ import org.jetbrains.annotations.Nullable;
 /**
  * {@link DeviceStateCache} is a simple cache of package and device specific data.
  * Entries corresponding to a device are automatically cleared if the device is disconnected.
+ *
+ * This class is thread safe.
  */
 public class DeviceStateCache<T> implements AndroidDebugBridge.IDeviceChangeListener, Disposable {
   /** Maps from device serial -> package name -> cached data */
@@ -43,13 +45,29 @@ public class DeviceStateCache<T> implements AndroidDebugBridge.IDeviceChangeList
   }
 
   @Nullable
-  public T get(@NotNull IDevice device, @NotNull String pkgName) {
+  public synchronized T get(@NotNull IDevice device, @NotNull String pkgName) {
     return myCache.get(device.getSerialNumber(), pkgName);
   }
 
   @Nullable
   public T put(@NotNull IDevice device, @NotNull String pkgName, @NotNull T data) {
-    return myCache.put(device.getSerialNumber(), pkgName, data);
+    return put(device.getSerialNumber(), pkgName, data);
+  }
+
+  /**
+   * Caches data for a device that may not be connected yet, e.g. when restoring data saved in a previous session.
+   */
+  @Nullable
+  public synchronized T put(@NotNull String serial, @NotNull String pkgName, @NotNull T data) {
+    return myCache.put(serial, pkgName, data);
+  }
+
+  /**
+   * Returns a copy of the cached data, by device serial and package name.
+   */
+  @NotNull
+  public synchronized Table<String, String, T> getEntries() {
+    return HashBasedTable.create(myCache);
   }
 
   @Override
@@ -57,7 +75,7 @@ public class DeviceStateCache<T> implements AndroidDebugBridge.IDeviceChangeList
   }
 
   @Override
-  public void deviceDisconnected(IDevice device) {
+  public synchronized void deviceDisconnected(IDevice device) {
     myCache.row(device.getSerialNumber()).clear();
   }
 
@@ -18,34 +18,73 @@ package com.android.tools.idea.run;
 import com.android.annotations.VisibleForTesting;
 import com.android.ddmlib.*;
 import com.google.common.base.Splitter;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.Set;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Remembers which APKs have been installed on which devices, so that launching an APK that is already installed can skip installing it.
+ *
+ * The install state of each device and package is saved to disk together with the hashes of the installed APKs, so that it survives
+ * IDE restarts. An APK is only hashed again once its size or modification time changes, so that launching on several devices, or
+ * launching again without rebuilding, hashes it at most once.
+ *
+ * This class is thread safe.
+ */
 public class InstalledApkCache implements Disposable {
+  private static final String CACHE_FILE = "android" + File.separator + "installed_apks.dat";
+  private static final int CACHE_VERSION = 1;
+  private static final int MAX_SAVED_STATES = 1000;
+
+  /** Unlike {@link Hashing#goodFastHash}, which is seeded anew on every start, this gives the same hashes across IDE sessions. */
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
   private final DeviceStateCache<CacheData> myCache;
+  /** Maps from the absolute path of an APK to its latest known hash */
+  private final Map<String, ApkHash> myHashes = new ConcurrentHashMap<>();
+  @Nullable private final File myFile;
+  private volatile boolean myModified;
 
-  /** Diagnostic output set by {@link #getLastUpdateTime(com.android.ddmlib.IDevice, String)} */
-  private String myDiagnosticOutput;
+  /**
+   * Diagnostic output set by {@link #getInstallState(IDevice, String)}. Installs on several devices may run at once, so each thread
+   * has its own.
+   */
+  private final ThreadLocal<String> myDiagnosticOutput = new ThreadLocal<>();
 
   public InstalledApkCache() {
+    this(new File(PathManager.getSystemPath(), CACHE_FILE));
+  }
+
+  /**
+   * @param file the file the cache is saved to and restored from, or {@code null} to keep the cache in memory only
+   */
+  @VisibleForTesting
+  InstalledApkCache(@Nullable File file) {
     myCache = new DeviceStateCache<CacheData>(this);
+    myFile = file;
+    load();
   }
 
   @Override
   public void dispose() {
+    save();
   }
 
   public boolean isInstalled(
@@ -71,7 +110,7 @@ public class InstalledApkCache implements Disposable {
       // set installed should be called only after the package has been installed
       // If this error happens, look at the output of "dumpsys package <name>", and see why the parser did not identify the install state.
       String msg = String.format("Unexpected error: package manager reports that package %1$s has not been installed: %2$s", pkgName,
-                                 StringUtil.notNullize(myDiagnosticOutput));
+                                 StringUtil.notNullize(myDiagnosticOutput.get()));
 
       // We used to log an error, but see https://code.google.com/p/android/issues/detail?id=79778 for a case where this doesn't work
       // on custom Android systems. So we just log a warning: the impact is that these users won't have any benefits of caching - the apk
@@ -81,11 +120,147 @@ public class InstalledApkCache implements Disposable {
     }
 
     myCache.put(device, pkgName, new CacheData(installState, hash(apk)));
+    myModified = true;
+    // Saving right away keeps the state of this install should the IDE not shut down cleanly, and is cheap next to the install itself
+    save();
   }
 
+  /**
+   * Returns the hash of the given APK, reusing the last hash computed for it unless its size or modification time changed since.
+   * Concurrent calls for the same APK wait for a single computation.
+   */
   @NotNull
-  private static HashCode hash(@NotNull File apk) throws IOException {
-    return Files.hash(apk, Hashing.goodFastHash(32));
+  private HashCode hash(@NotNull File apk) throws IOException {
+    long size = apk.length();
+    long lastModified = apk.lastModified();
+    try {
+      return myHashes.compute(apk.getAbsolutePath(), (path, hash) -> {
+        if (hash != null && hash.isFor(size, lastModified)) {
+          return hash;
+        }
+        try {
+          myModified = true;
+          return new ApkHash(size, lastModified, Files.hash(apk, HASH_FUNCTION));
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }).hash;
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Writes the cache to disk if it changed since it was last loaded or saved.
+   */
+  private synchronized void save() {
+    if (myFile == null || !myModified) {
+      return;
+    }
+    myModified = false;
+
+    try {
+      FileUtil.createParentDirs(myFile);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile)))) {
+        out.writeInt(CACHE_VERSION);
+
+        // Only the hashes that are still up to date are worth keeping
+        Map<String, ApkHash> hashes = new HashMap<>();
+        for (Map.Entry<String, ApkHash> entry : myHashes.entrySet()) {
+          File apk = new File(entry.getKey());
+          if (entry.getValue().isFor(apk.length(), apk.lastModified())) {
+            hashes.put(entry.getKey(), entry.getValue());
+          }
+        }
+        out.writeInt(hashes.size());
+        for (Map.Entry<String, ApkHash> entry : hashes.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeLong(entry.getValue().size);
+          out.writeLong(entry.getValue().lastModified);
+          writeHash(out, entry.getValue().hash);
+        }
+
+        // Without a last update time, an install state can't tell whether the package was reinstalled by someone else in the meantime
+        List<Table.Cell<String, String, CacheData>> states = new ArrayList<>();
+        for (Table.Cell<String, String, CacheData> cell : myCache.getEntries().cellSet()) {
+          if (!cell.getValue().installState.lastUpdateTime.isEmpty() && states.size() < MAX_SAVED_STATES) {
+            states.add(cell);
+          }
+        }
+        out.writeInt(states.size());
+        for (Table.Cell<String, String, CacheData> cell : states) {
+          CacheData data = cell.getValue();
+          out.writeUTF(cell.getRowKey());
+          out.writeUTF(cell.getColumnKey());
+          out.writeUTF(data.installState.lastUpdateTime);
+          out.writeInt(data.installState.users.size());
+          for (int user : data.installState.users) {
+            out.writeInt(user);
+          }
+          writeHash(out, data.hash);
+        }
+      }
+    }
+    catch (IOException e) {
+      Logger.getInstance(InstalledApkCache.class).warn("Unable to save installed APK state to " + myFile, e);
+    }
+  }
+
+  private void load() {
+    if (myFile == null || !myFile.isFile()) {
+      return;
+    }
+
+    Map<String, ApkHash> hashes = new HashMap<>();
+    Table<String, String, CacheData> states = HashBasedTable.create();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)))) {
+      if (in.readInt() != CACHE_VERSION) {
+        return;
+      }
+
+      for (int count = in.readInt(); count > 0; count--) {
+        String path = in.readUTF();
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        hashes.put(path, new ApkHash(size, lastModified, readHash(in)));
+      }
+
+      for (int count = in.readInt(); count > 0; count--) {
+        String serial = in.readUTF();
+        String pkgName = in.readUTF();
+        String lastUpdateTime = in.readUTF();
+        Set<Integer> users = Sets.newHashSet();
+        for (int userCount = in.readInt(); userCount > 0; userCount--) {
+          users.add(in.readInt());
+        }
+        states.put(serial, pkgName, new CacheData(new InstallState(lastUpdateTime, users), readHash(in)));
+      }
+    }
+    catch (IOException e) {
+      // The cache is only an optimization, so start over from an empty one
+      Logger.getInstance(InstalledApkCache.class).info("Unable to read installed APK state from " + myFile, e);
+      return;
+    }
+
+    myHashes.putAll(hashes);
+    for (Table.Cell<String, String, CacheData> cell : states.cellSet()) {
+      myCache.put(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+    }
+  }
+
+  private static void writeHash(@NotNull DataOutputStream out, @NotNull HashCode hash) throws IOException {
+    byte[] bytes = hash.asBytes();
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  @NotNull
+  private static HashCode readHash(@NotNull DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return HashCode.fromBytes(bytes);
   }
 
   @VisibleForTesting
@@ -100,14 +275,14 @@ public class InstalledApkCache implements Disposable {
   @Nullable
   public InstallState getInstallState(@NotNull IDevice device, @NotNull String pkgName) {
     boolean deviceHasPackage = false;
-    myDiagnosticOutput = null;
+    myDiagnosticOutput.remove();
 
     String output;
     try {
       output = executeShellCommand(device, "dumpsys package " + pkgName, 500, TimeUnit.MILLISECONDS);
     }
     catch (Exception e) {
-      myDiagnosticOutput = String.format("Error executing 'dumpsys package %1$s:\n%2$s'", pkgName, e.getMessage());
+      myDiagnosticOutput.set(String.format("Error executing 'dumpsys package %1$s:\n%2$s'", pkgName, e.getMessage()));
       return null;
     }
 
@@ -130,7 +305,7 @@ public class InstalledApkCache implements Disposable {
     }
 
     if (!deviceHasPackage) {
-      myDiagnosticOutput = String.format("Expected string 'Package [%1$s]' not found in output: %2$s", pkgName, output);
+      myDiagnosticOutput.set(String.format("Expected string 'Package [%1$s]' not found in output: %2$s", pkgName, output));
       return null;
     }
 
@@ -173,6 +348,22 @@ public class InstalledApkCache implements Disposable {
     }
   }
 
+  private static class ApkHash {
+    private final long size;
+    private final long lastModified;
+    @NotNull private final HashCode hash;
+
+    private ApkHash(long size, long lastModified, @NotNull HashCode hash) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+
+    private boolean isFor(long size, long lastModified) {
+      return this.size == size && this.lastModified == lastModified;
+    }
+  }
+
   private static class CacheData {
     @NotNull private final InstallState installState;
     @NotNull private final HashCode hash;
@@ -23,6 +23,7 @@ import com.android.tools.idea.run.tasks.LaunchTasksProvider;
 import com.android.tools.idea.run.util.LaunchStatus;
 import com.android.tools.idea.run.util.LaunchUtils;
 import com.android.tools.idea.run.util.ProcessHandlerLaunchStatus;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.intellij.execution.process.ProcessHandler;
 import com.intellij.notification.NotificationType;
@@ -30,24 +31,38 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 public class LaunchTaskRunner extends Task.Backgroundable {
+  /**
+   * The maximum number of devices launched on at once. Installing on more devices at a time mostly adds contention on adb.
+   */
+  private static final int MAX_CONCURRENT_DEVICES = 8;
+
   @NotNull private final String myConfigName;
   @NotNull private final LaunchInfo myLaunchInfo;
   @NotNull private final ProcessHandler myProcessHandler;
   @NotNull private final DeviceFutures myDeviceFutures;
   @NotNull private final LaunchTasksProvider myLaunchTasksProvider;
 
+  /**
+   * Held while performing a task that isn't {@link LaunchTask#isConcurrentSafe() safe} to perform on several devices at once.
+   */
+  private final Object myConcurrentUnsafeTaskLock = new Object();
+
   @Nullable private String myError;
 
   public LaunchTaskRunner(@NotNull Project project,
@@ -90,64 +105,195 @@ public class LaunchTaskRunner extends Task.Backgroundable {
     DateFormat dateFormat = new SimpleDateFormat("MM/dd HH:mm:ss");
     consolePrinter.stdout("\n" + dateFormat.format(new Date()) + ": Launching " + myConfigName);
 
-    for (ListenableFuture<IDevice> deviceFuture : listenableDeviceFutures) {
-      indicator.setText("Waiting for target device to come online");
-      IDevice device = waitForDevice(deviceFuture, indicator, launchStatus);
+    if (listenableDeviceFutures.size() == 1) {
+      LaunchProgress progress = new LaunchProgress() {
+        @Override
+        public void setText(@NotNull String text) {
+          indicator.setText(text);
+        }
+
+        @Override
+        public void setFraction(double fraction) {
+          indicator.setFraction(fraction);
+        }
+
+        @Override
+        public boolean isCanceled() {
+          return indicator.isCanceled();
+        }
+      };
+      IDevice device = launch(listenableDeviceFutures.get(0), progress, launchStatus, consolePrinter, debugSessionTask);
       if (device == null) {
         return;
       }
 
-      List<LaunchTask> launchTasks = null;
+      if (debugSessionTask != null) {
+        debugSessionTask
+          .perform(myLaunchInfo, device, (ProcessHandlerLaunchStatus)launchStatus, (ProcessHandlerConsolePrinter)consolePrinter);
+      }
+      else {
+        addTargetDevice(device);
+      }
+    }
+    else {
+      launchConcurrently(listenableDeviceFutures, indicator, launchStatus, consolePrinter);
+    }
+  }
+
+  /**
+   * Launches on several devices at once, so that the launch takes about as long as on the slowest device. Each device has its own
+   * launch status, and a console printer that prefixes its output with the name of the device. A failure on one device then only
+   * stops the launch on that device.
+   */
+  private void launchConcurrently(@NotNull List<ListenableFuture<IDevice>> deviceFutures,
+                                  @NotNull ProgressIndicator indicator,
+                                  @NotNull LaunchStatus launchStatus,
+                                  @NotNull ConsolePrinter consolePrinter) {
+    List<AndroidDevice> devices = myDeviceFutures.getDevices();
+    MultiDeviceProgress progress = new MultiDeviceProgress(indicator, deviceFutures.size());
+    BoundedTaskExecutor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, MAX_CONCURRENT_DEVICES);
+
+    List<DeviceLaunchStatus> deviceStatuses = Lists.newArrayList();
+    List<Future<IDevice>> launches = Lists.newArrayList();
+    for (int i = 0; i < deviceFutures.size(); i++) {
+      String name = devices.get(i).getName();
+      DeviceConsolePrinter devicePrinter = new DeviceConsolePrinter(name, consolePrinter);
+      DeviceLaunchStatus deviceStatus = new DeviceLaunchStatus(launchStatus, devicePrinter);
+      LaunchProgress deviceProgress = progress.forDevice(i, name);
+      ListenableFuture<IDevice> deviceFuture = deviceFutures.get(i);
+
+      deviceStatuses.add(deviceStatus);
+      launches.add(executor.submit(() -> {
+        IDevice device = launch(deviceFuture, deviceProgress, deviceStatus, devicePrinter, null);
+        if (device != null) {
+          addTargetDevice(device);
+          deviceProgress.setText("Launched");
+        }
+        return device;
+      }));
+    }
+
+    int launched = 0;
+    for (Future<IDevice> launch : launches) {
       try {
-        launchTasks = myLaunchTasksProvider.getTasks(device, launchStatus, consolePrinter);
+        if (launch.get() != null) {
+          launched++;
+        }
       }
-      catch (com.intellij.execution.ExecutionException e) {
-        launchStatus.terminateLaunch(e.getMessage());
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        launchStatus.terminateLaunch("Interrupted while launching");
         return;
       }
-      catch (IllegalStateException e) {
-        launchStatus.terminateLaunch(e.getMessage());
-        Logger.getInstance(LaunchTaskRunner.class).error(e);
-        return;
+      catch (ExecutionException e) {
+        Logger.getInstance(LaunchTaskRunner.class).error(e.getCause());
       }
+    }
 
-      int totalDuration = listenableDeviceFutures.size() * getTotalDuration(launchTasks, debugSessionTask);
-      int elapsed = 0;
+    if (launched == deviceStatuses.size()) {
+      return;
+    }
+    for (int i = 0; i < deviceStatuses.size(); i++) {
+      String error = deviceStatuses.get(i).getError();
+      if (error != null) {
+        myError = devices.get(i).getName() + ": " + error;
+        break;
+      }
+    }
+    if (launched == 0 && !launchStatus.isLaunchTerminated()) {
+      launchStatus.terminateLaunch("Unable to launch on any device");
+    }
+  }
 
-      for (LaunchTask task : launchTasks) {
-        // perform each task
-        indicator.setText(task.getDescription());
-        if (!task.perform(device, launchStatus, consolePrinter)) {
-          myError = "Error " + task.getDescription();
-          launchStatus.terminateLaunch("Error while " + task.getDescription());
-          return;
-        }
+  /**
+   * Waits for the given device to come online, and performs the launch tasks on it.
+   *
+   * @return the device, or null if the launch failed or was cancelled
+   */
+  @Nullable
+  private IDevice launch(@NotNull ListenableFuture<IDevice> deviceFuture,
+                         @NotNull LaunchProgress progress,
+                         @NotNull LaunchStatus launchStatus,
+                         @NotNull ConsolePrinter consolePrinter,
+                         @Nullable DebugConnectorTask debugSessionTask) {
+    progress.setText("Waiting for target device to come online");
+    IDevice device = waitForDevice(deviceFuture, progress, launchStatus);
+    if (device == null) {
+      return null;
+    }
 
-        // update progress
-        elapsed += task.getDuration();
-        indicator.setFraction((double)elapsed / totalDuration);
+    List<LaunchTask> launchTasks = null;
+    try {
+      // the tasks provider isn't meant to be called from several threads at once
+      synchronized (myLaunchTasksProvider) {
+        launchTasks = myLaunchTasksProvider.getTasks(device, launchStatus, consolePrinter);
+      }
+    }
+    catch (com.intellij.execution.ExecutionException e) {
+      launchStatus.terminateLaunch(e.getMessage());
+      return null;
+    }
+    catch (IllegalStateException e) {
+      launchStatus.terminateLaunch(e.getMessage());
+      Logger.getInstance(LaunchTaskRunner.class).error(e);
+      return null;
+    }
 
-        // check for cancellation via progress bar
-        if (indicator.isCanceled()) {
-          launchStatus.terminateLaunch("User cancelled launch");
-          return;
-        }
+    int totalDuration = getTotalDuration(launchTasks, debugSessionTask);
+    int elapsed = 0;
 
-        // check for cancellation via stop button
-        if (launchStatus.isLaunchTerminated()) {
-          return;
+    for (LaunchTask task : launchTasks) {
+      // perform each task
+      progress.setText(task.getDescription());
+      if (!perform(task, device, launchStatus, consolePrinter)) {
+        if (launchStatus instanceof DeviceLaunchStatus) {
+          ((DeviceLaunchStatus)launchStatus).setError("Error " + task.getDescription());
+        }
+        else {
+          myError = "Error " + task.getDescription();
         }
+        launchStatus.terminateLaunch("Error while " + task.getDescription());
+        return null;
       }
 
-      if (debugSessionTask != null) {
-        debugSessionTask
-          .perform(myLaunchInfo, device, (ProcessHandlerLaunchStatus)launchStatus, (ProcessHandlerConsolePrinter)consolePrinter);
+      // update progress
+      elapsed += task.getDuration();
+      progress.setFraction((double)elapsed / totalDuration);
+
+      // check for cancellation via progress bar
+      if (progress.isCanceled()) {
+        launchStatus.terminateLaunch("User cancelled launch");
+        return null;
       }
-      else { // we only need to inform the process handler if certain scenarios
-        if (myLaunchTasksProvider.createsNewProcess() // we are not doing a hot swap (in which case we are creating a new process)
-            && myProcessHandler instanceof AndroidProcessHandler) { // we aren't debugging (in which case its a DebugProcessHandler)
-          ((AndroidProcessHandler)myProcessHandler).addTargetDevice(device);
-        }
+
+      // check for cancellation via stop button
+      if (launchStatus.isLaunchTerminated()) {
+        return null;
+      }
+    }
+
+    return device;
+  }
+
+  private boolean perform(@NotNull LaunchTask task,
+                          @NotNull IDevice device,
+                          @NotNull LaunchStatus launchStatus,
+                          @NotNull ConsolePrinter consolePrinter) {
+    if (task.isConcurrentSafe()) {
+      return task.perform(device, launchStatus, consolePrinter);
+    }
+    synchronized (myConcurrentUnsafeTaskLock) {
+      return task.perform(device, launchStatus, consolePrinter);
+    }
+  }
+
+  private void addTargetDevice(@NotNull IDevice device) {
+    // we only need to inform the process handler if certain scenarios
+    if (myLaunchTasksProvider.createsNewProcess() // we are not doing a hot swap (in which case we are creating a new process)
+        && myProcessHandler instanceof AndroidProcessHandler) { // we aren't debugging (in which case its a DebugProcessHandler)
+      // devices launched concurrently finish at the same time, and the process handler isn't thread safe
+      synchronized (myProcessHandler) {
+        ((AndroidProcessHandler)myProcessHandler).addTargetDevice(device);
       }
     }
   }
@@ -163,7 +309,7 @@ public class LaunchTaskRunner extends Task.Backgroundable {
 
   @Nullable
   private static IDevice waitForDevice(@NotNull ListenableFuture<IDevice> deviceFuture,
-                                       @NotNull ProgressIndicator indicator,
+                                       @NotNull LaunchProgress progress,
                                        @NotNull LaunchStatus launchStatus) {
     while (true) {
       try {
@@ -180,7 +326,7 @@ public class LaunchTaskRunner extends Task.Backgroundable {
         return null;
       }
 
-      if (indicator.isCanceled()) {
+      if (progress.isCanceled()) {
         launchStatus.terminateLaunch("User cancelled launch");
         return null;
       }
@@ -204,4 +350,132 @@ public class LaunchTaskRunner extends Task.Backgroundable {
 
     return total;
   }
+
+  /**
+   * The part of a {@link ProgressIndicator} a launch on a single device reports to.
+   */
+  private interface LaunchProgress {
+    void setText(@NotNull String text);
+
+    void setFraction(double fraction);
+
+    boolean isCanceled();
+  }
+
+  /**
+   * Shows the progress of the launches on several devices in a single indicator: the average of their fractions, and the status of
+   * the device that reported last.
+   */
+  private static class MultiDeviceProgress {
+    @NotNull private final ProgressIndicator myIndicator;
+    @NotNull private final double[] myFractions;
+
+    MultiDeviceProgress(@NotNull ProgressIndicator indicator, int deviceCount) {
+      myIndicator = indicator;
+      myFractions = new double[deviceCount];
+      myIndicator.setText("Launching on " + deviceCount + " devices");
+    }
+
+    @NotNull
+    LaunchProgress forDevice(int index, @NotNull String name) {
+      return new LaunchProgress() {
+        @Override
+        public void setText(@NotNull String text) {
+          myIndicator.setText2(name + ": " + text);
+        }
+
+        @Override
+        public void setFraction(double fraction) {
+          myIndicator.setFraction(update(index, fraction));
+        }
+
+        @Override
+        public boolean isCanceled() {
+          return myIndicator.isCanceled();
+        }
+      };
+    }
+
+    private synchronized double update(int index, double fraction) {
+      myFractions[index] = fraction;
+      double total = 0;
+      for (double deviceFraction : myFractions) {
+        total += deviceFraction;
+      }
+      return total / myFractions.length;
+    }
+  }
+
+  /**
+   * Prints the output of the launch on one of several devices as it arrives, with each line prefixed by the name of the device, so
+   * that the output of the devices can be told apart in the console they share.
+   */
+  private static class DeviceConsolePrinter implements ConsolePrinter {
+    @NotNull private final String myDeviceName;
+    @NotNull private final ConsolePrinter myDelegate;
+
+    DeviceConsolePrinter(@NotNull String deviceName, @NotNull ConsolePrinter delegate) {
+      myDeviceName = deviceName;
+      myDelegate = delegate;
+    }
+
+    @Override
+    public void stdout(@NotNull String message) {
+      print(message, myDelegate::stdout);
+    }
+
+    @Override
+    public void stderr(@NotNull String message) {
+      print(message, myDelegate::stderr);
+    }
+
+    private void print(@NotNull String message, @NotNull Consumer<String> printer) {
+      // The printers of the other devices print to the same console, the lines of a message are kept together
+      synchronized (myDelegate) {
+        for (String line : message.split("\n")) {
+          if (!line.isEmpty()) {
+            printer.accept(myDeviceName + ": " + line);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The launch status of one of several devices launched at once. Terminating it only stops the launch on that device, while
+   * terminating the whole launch (e.g. with the stop button) stops all the devices.
+   */
+  private static class DeviceLaunchStatus implements LaunchStatus {
+    @NotNull private final LaunchStatus myLaunchStatus;
+    @NotNull private final ConsolePrinter myConsolePrinter;
+    private volatile boolean myTerminated;
+    @Nullable private volatile String myError;
+
+    DeviceLaunchStatus(@NotNull LaunchStatus launchStatus, @NotNull ConsolePrinter consolePrinter) {
+      myLaunchStatus = launchStatus;
+      myConsolePrinter = consolePrinter;
+    }
+
+    @Override
+    public boolean isLaunchTerminated() {
+      return myTerminated || myLaunchStatus.isLaunchTerminated();
+    }
+
+    @Override
+    public void terminateLaunch(@Nullable String reason) {
+      if (!myTerminated) {
+        myTerminated = true;
+        myConsolePrinter.stderr(String.valueOf(reason));
+      }
+    }
+
+    @Nullable
+    String getError() {
+      return myError;
+    }
+
+    void setError(@NotNull String error) {
+      myError = error;
+    }
+  }
 }
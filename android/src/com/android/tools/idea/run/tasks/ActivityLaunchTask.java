@@ -60,6 +60,11 @@ public abstract class ActivityLaunchTask implements LaunchTask {
     return ShellCommandLauncher.execute(command, device, launchStatus, printer, 15, TimeUnit.SECONDS);
   }
 
+  @Override
+  public boolean isConcurrentSafe() {
+    return true;
+  }
+
   @Nullable
   protected abstract String getQualifiedActivityName(@NotNull IDevice device, @NotNull ConsolePrinter printer);
 }
@@ -62,6 +62,11 @@ public class AndroidDeepLinkLaunchTask implements LaunchTask {
     return ShellCommandLauncher.execute(command, device, launchStatus, printer, 5, TimeUnit.SECONDS);
   }
 
+  @Override
+  public boolean isConcurrentSafe() {
+    return true;
+  }
+
   @NotNull
   public static String getLaunchDeepLinkCommand(@NotNull String deepLink,
                                                 @NotNull String extraFlags) {
@@ -100,6 +100,12 @@ public class DeployApkTask implements LaunchTask {
     return true;
   }
 
+  @Override
+  public boolean isConcurrentSafe() {
+    // Instant Run deploys update the build info shared by the launch
+    return myInstantRunContext == null;
+  }
+
   public static void cacheManifestInstallationData(@NotNull IDevice device, @NotNull InstantRunContext context) {
     InstalledPatchCache patchCache = ServiceManager.getService(InstalledPatchCache.class);
     patchCache.setInstalledManifestResourcesHash(device, context.getApplicationId(), context.getManifestResourcesHash());
@@ -38,4 +38,9 @@ public class DismissKeyguardTask implements LaunchTask {
     LaunchUtils.initiateDismissKeyguard(device);
     return true;
   }
+
+  @Override
+  public boolean isConcurrentSafe() {
+    return true;
+  }
 }
@@ -27,4 +27,12 @@ public interface LaunchTask {
   int getDuration();
 
   boolean perform(@NotNull IDevice device, @NotNull LaunchStatus launchStatus, @NotNull ConsolePrinter printer);
+
+  /**
+   * Returns whether this task may be performed on several devices at once, from different threads. Tasks that share state across
+   * devices (e.g. Instant Run build info, or the IDE's UI) must not be, and are then performed on one device at a time.
+   */
+  default boolean isConcurrentSafe() {
+    return false;
+  }
 }
@@ -15,7 +15,7 @@
  */
 package com.android.tools.idea.apk.viewer;
 
-import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.android.AndroidTestCase;
@@ -24,6 +24,13 @@ import org.jetbrains.annotations.NotNull;
 import javax.swing.tree.DefaultMutableTreeNode;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class ApkParserTest extends AndroidTestCase {
   public void testTreeCreation() throws IOException {
@@ -39,23 +46,39 @@ public class ApkParserTest extends AndroidTestCase {
                  "      fade.xml 6\n", dumpTree(treeNode));
   }
 
-  public void testRezipHasSameContents() throws IOException {
+  public void testCompressedEntrySizes() throws IOException {
     VirtualFile virtualFile = myFixture.copyFileToProject("apk/1.apk");
+    File apk = VfsUtilCore.virtualToIoFile(virtualFile);
+    File cacheFile = new File(FileUtil.createTempDirectory("apk", null), "sizes.dat");
 
-    File compressedFile = ApkParser.getZipCompressedApk(VfsUtilCore.virtualToIoFile(virtualFile));
-    VirtualFile compressedVirtualFile = VfsUtil.findFileByIoFile(compressedFile, true);
-    assertNotNull(compressedVirtualFile);
+    AtomicInteger deflatedEntries = new AtomicInteger();
+    ApkParser.DeflatedSizeFunction deflater = in -> {
+      deflatedEntries.incrementAndGet();
+      return ApkParser.getDeflatedSize(in);
+    };
 
-    VirtualFile uncompressedRoot = ApkFileSystem.getInstance().getRootByLocal(virtualFile);
-    VirtualFile compressedRoot = ApkFileSystem.getInstance().getRootByLocal(compressedVirtualFile);
+    CompressedSizeCache cache = new CompressedSizeCache(cacheFile);
+    Map<String, Long> sizes = ApkParser.getCompressedEntrySizes(apk, cache, deflater);
 
-    String compressedTree = dumpTree(ApkParser.createTreeNode(compressedRoot));
-    String uncompressedTree = dumpTree(ApkParser.createTreeNode(uncompressedRoot));
+    Set<String> entryNames = new HashSet<>();
+    try (ZipFile zip = new ZipFile(apk)) {
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        entryNames.add(entry.getName());
+        assertEquals(sizes.get(entry.getName()).longValue(), cache.getEntrySize(entry.getCrc(), entry.getSize()));
+      }
+    }
+    assertEquals(entryNames, sizes.keySet());
+    assertEquals(entryNames.size(), deflatedEntries.get());
+
+    // Both the same cache and a new one that reads the sizes back from disk know every entry, so nothing is compressed again
+    assertEquals(sizes, ApkParser.getCompressedEntrySizes(apk, cache, deflater));
+    CompressedSizeCache reloadedCache = new CompressedSizeCache(cacheFile);
+    assertEquals(sizes, ApkParser.getCompressedEntrySizes(apk, reloadedCache, deflater));
+    assertEquals(entryNames.size(), deflatedEntries.get());
 
-    // skip the first line in both versions since they will be different due to file names being different
-    compressedTree = compressedTree.substring(compressedTree.indexOf('\n'));
-    uncompressedTree = uncompressedTree.substring(uncompressedTree.indexOf('\n'));
-    assertEquals(compressedTree, uncompressedTree);
+    long apkSize = ApkParser.getApkServedByPlaySize(apk, cache);
+    assertTrue(apkSize > 0);
+    assertEquals(apkSize, ApkParser.getApkServedByPlaySize(apk, new CompressedSizeCache(cacheFile)));
   }
 
   public void testApkWithZip() throws IOException {
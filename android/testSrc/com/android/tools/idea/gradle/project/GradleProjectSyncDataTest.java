@@ -21,6 +21,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.util.PathUtil;
 
 import java.io.*;
+import java.util.Arrays;
 import java.util.Map;
 
 import static com.android.tools.idea.testing.TestProjectPaths.PROJECT_WITH_APPAND_LIB;
@@ -47,6 +48,7 @@ public class GradleProjectSyncDataTest extends AndroidGradleTestCase {
     ois.close();
 
     verifyGradleProjectSyncData(newData, previousSyncTime);
+    assertTrue(Arrays.equals(data.getBuildFilesHash(), newData.getBuildFilesHash()));
   }
 
   private static void verifyGradleProjectSyncData(GradleProjectSyncData data, long previousSyncTime) {
@@ -16,8 +16,13 @@
 package com.android.tools.idea.gradle.project.sync;
 
 import com.android.tools.idea.testing.AndroidGradleTestCase;
+import com.intellij.openapi.application.Result;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.impl.PsiManagerEx;
@@ -36,6 +41,7 @@ import static com.intellij.openapi.util.io.FileUtilRt.createIfNotExists;
 import static com.intellij.openapi.vfs.VfsUtil.findFileByIoFile;
 import static com.intellij.openapi.vfs.VfsUtilCore.virtualToIoFile;
 import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -136,6 +142,62 @@ public class GradleFilesTest extends AndroidGradleTestCase {
     assertTrue(filesModified);
   }
 
+  public void testAreGradleFilesModifiedWithTouchedBuildDotGradleFile() throws Exception {
+    loadSimpleApplication();
+    when(myDocumentManager.getUnsavedDocuments()).thenReturn(new Document[0]);
+    long syncTime = System.currentTimeMillis();
+    assertFalse(myGradleFiles.areGradleFilesModified(syncTime));
+
+    // Saving the same contents again doesn't need a sync
+    VirtualFile buildFile = getAppBuildFile();
+    String text = VfsUtilCore.loadText(buildFile);
+    saveText(buildFile, text);
+    assertFalse(myGradleFiles.areGradleFilesModified(syncTime));
+
+    saveText(buildFile, text + SystemProperties.getLineSeparator());
+    assertTrue(myGradleFiles.areGradleFilesModified(syncTime));
+
+    // Undoing the change doesn't need a sync either
+    saveText(buildFile, text);
+    assertFalse(myGradleFiles.areGradleFilesModified(syncTime));
+  }
+
+  public void testAreGradleFilesModifiedWithUnmodifiedChangesAfterFirstCheck() throws Exception {
+    loadSimpleApplication();
+    when(myDocumentManager.getUnsavedDocuments()).thenReturn(new Document[0]);
+    long syncTime = System.currentTimeMillis();
+    assertFalse(myGradleFiles.areGradleFilesModified(syncTime));
+
+    VirtualFile buildFile = getAppBuildFile();
+    Document document = mock(Document.class);
+    when(myDocumentManager.getUnsavedDocuments()).thenReturn(new Document[]{document});
+    when(myDocumentManager.getFile(document)).thenReturn(buildFile);
+    assertTrue(myGradleFiles.areGradleFilesModified(syncTime));
+  }
+
+  public void testAreGradleFilesModifiedWithBuildDotGradleFileChangedOutsideTheIde() throws Exception {
+    loadSimpleApplication();
+    when(myDocumentManager.getUnsavedDocuments()).thenReturn(new Document[0]);
+    long syncTime = System.currentTimeMillis();
+    assertFalse(myGradleFiles.areGradleFilesModified(syncTime));
+
+    // The VFS is not refreshed, so there is no event for this change
+    File buildFile = virtualToIoFile(getAppBuildFile());
+    long timestamp = buildFile.lastModified();
+    appendToFile(buildFile, SystemProperties.getLineSeparator());
+    assertTrue(buildFile.setLastModified(timestamp + MINUTES.toMillis(1)));
+    assertTrue(myGradleFiles.areGradleFilesModified(syncTime));
+  }
+
+  private static void saveText(@NotNull VirtualFile file, @NotNull String text) {
+    new WriteAction() {
+      @Override
+      protected void run(@NotNull Result result) throws Throwable {
+        VfsUtil.saveText(file, text);
+      }
+    }.execute();
+  }
+
   @NotNull
   private VirtualFile getAppBuildFile() {
     Module appModule = myModules.getAppModule();
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.project.sync.idea.data;
+
+import com.android.tools.idea.gradle.project.model.AndroidModuleModel;
+import com.android.tools.idea.gradle.project.sync.idea.data.ModuleModelsSnapshot.ModuleModels;
+import com.android.tools.idea.testing.AndroidGradleTestCase;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.util.io.FileUtil;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.android.tools.idea.gradle.util.ProxyUtil.isValidProxyObject;
+import static com.android.tools.idea.testing.TestProjectPaths.PROJECT_WITH_APPAND_LIB;
+
+/**
+ * Tests for {@link ModuleModelsSnapshot}.
+ */
+public class ModuleModelsSnapshotTest extends AndroidGradleTestCase {
+  private static final byte[] BUILD_FILES_HASH = {1, 2, 3, 4};
+
+  private File mySnapshotFile;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    mySnapshotFile = FileUtil.createTempFile("module_models", ".bin");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(mySnapshotFile);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testSaveAndLoad() throws Exception {
+    loadProject(PROJECT_WITH_APPAND_LIB);
+    ModuleModelsSnapshot.save(mySnapshotFile, "1.0", BUILD_FILES_HASH, getModuleModels());
+
+    ModuleModelsSnapshot snapshot = ModuleModelsSnapshot.load(mySnapshotFile, "1.0", BUILD_FILES_HASH);
+    assertNotNull(snapshot);
+
+    ModuleModels appModels = snapshot.getModels("app");
+    assertNotNull(appModels);
+    assertNotNull(appModels.myGradleModuleModel);
+    assertEquals("app", appModels.myGradleModuleModel.getModuleName());
+
+    AndroidModuleModel androidModel = appModels.myAndroidModuleModel;
+    assertNotNull(androidModel);
+    assertEquals(AndroidModuleModel.get(myAndroidFacet).getSelectedVariant().getName(), androidModel.getSelectedVariant().getName());
+    assertTrue(isValidProxyObject(androidModel.getAndroidProject()));
+
+    ModuleModels libModels = snapshot.getModels("lib");
+    assertNotNull(libModels);
+    assertNotNull(libModels.myAndroidModuleModel);
+  }
+
+  public void testLoadWithDifferentBuildFiles() throws Exception {
+    loadProject(PROJECT_WITH_APPAND_LIB);
+    ModuleModelsSnapshot.save(mySnapshotFile, "1.0", BUILD_FILES_HASH, getModuleModels());
+
+    assertNull(ModuleModelsSnapshot.load(mySnapshotFile, "1.0", new byte[]{1, 2, 3, 5}));
+  }
+
+  public void testLoadWithDifferentIdeBuild() throws Exception {
+    loadProject(PROJECT_WITH_APPAND_LIB);
+    ModuleModelsSnapshot.save(mySnapshotFile, "1.0", BUILD_FILES_HASH, getModuleModels());
+
+    assertNull(ModuleModelsSnapshot.load(mySnapshotFile, "1.1", BUILD_FILES_HASH));
+  }
+
+  private Map<String, ModuleModels> getModuleModels() {
+    Map<String, ModuleModels> modelsByModuleName = new LinkedHashMap<>();
+    for (Module module : ModuleManager.getInstance(getProject()).getModules()) {
+      ModuleModels models = ModuleModels.create(module);
+      if (models != null) {
+        modelsByModuleName.put(module.getName(), models);
+      }
+    }
+    return modelsByModuleName;
+  }
+}
@@ -22,9 +22,16 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 public class AndroidLogcatServiceTest {
@@ -263,4 +270,69 @@ public class AndroidLogcatServiceTest {
     verify(mockDevice, times(2)).executeShellCommand(any(), any(), anyLong(), any());
     verifyNoMoreInteractions(mockDevice);
   }
+
+  /**
+   * Tests {@link AndroidLogcatService#clearAndReplayLogs} to make sure the listener is cleared before the buffered messages accepted
+   * by the filter are replayed
+   */
+  @Test
+  public void testClearAndReplayLogs() throws Exception {
+    when(mockDevice.isOnline()).thenReturn(true);
+    myLogcatService.deviceConnected(mockDevice);
+    myExecuteShellCommandLatch.await();
+
+    List<String> received = new ArrayList<>();
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("second").setTagPattern(Pattern.compile("DummySecond")).build();
+    myLogcatService.clearAndReplayLogs(mockDevice, new AndroidLogcatService.LogcatListener() {
+      @Override
+      public void onLogLineReceived(@NotNull LogCatMessage line) {
+        received.add(line.toString());
+      }
+
+      @Override
+      public void onCleared() {
+        received.add("cleared");
+      }
+    }, filter);
+
+    assertEquals(Arrays.asList("cleared", "09-20 16:39:11.439: W/DummySecond(1493): Second Line1"), received);
+  }
+
+  /**
+   * Tests {@link AndroidLogcatService#clearAndReplayLogs} to make sure a replay only holds back the messages of its own device
+   */
+  @Test
+  public void testReplayDoesNotBlockOtherDevices() throws Exception {
+    IDevice otherDevice = mock(IDevice.class);
+    CountDownLatch otherDeviceLatch = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      AndroidLogcatReceiver receiver = (AndroidLogcatReceiver)invocation.getArguments()[1];
+      receiver.processNewLine("[ 10-20 16:39:11.439 1493:1595 W/DummyOther     ]");
+      receiver.processNewLine("Other Line1");
+      receiver.cancel();
+      otherDeviceLatch.countDown();
+      return null;
+    }).when(otherDevice).executeShellCommand(any(), any(), anyLong(), any());
+    when(otherDevice.isOnline()).thenReturn(true);
+    when(mockDevice.isOnline()).thenReturn(true);
+    myLogcatService.deviceConnected(mockDevice);
+    myExecuteShellCommandLatch.await();
+
+    AtomicBoolean otherDeviceReceived = new AtomicBoolean();
+    myLogcatService.clearAndReplayLogs(mockDevice, new AndroidLogcatService.LogcatListener() {
+      @Override
+      public void onCleared() {
+        // Messages from the other device are received while this device is being replayed
+        myLogcatService.deviceConnected(otherDevice);
+        try {
+          otherDeviceReceived.set(otherDeviceLatch.await(10, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    }, new DefaultAndroidLogcatFilter.Builder("all").build());
+
+    assertTrue(otherDeviceReceived.get());
+  }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class LogcatBufferTest {
+
+  @Test
+  public void testDropsOldestMessagesWhenFull() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(4, Integer.MAX_VALUE);
+    for (int i = 0; i < 6; i++) {
+      buffer.addMessage(createMessage(LogLevel.INFO, 1, "Tag", "Message " + i));
+    }
+
+    assertEquals(4, buffer.size());
+    assertEquals("Message 2,Message 3,Message 4,Message 5", getMessages(buffer, null));
+  }
+
+  @Test
+  public void testDropsOldestMessagesOverCharacterLimit() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(1024, 10);
+    buffer.addMessage(createMessage(LogLevel.INFO, 1, "Tag", "12345"));
+    buffer.addMessage(createMessage(LogLevel.INFO, 1, "Tag", "12345"));
+    buffer.addMessage(createMessage(LogLevel.INFO, 1, "Tag", "abc"));
+
+    assertEquals("12345,abc", getMessages(buffer, null));
+  }
+
+  @Test
+  public void testFilterByHeader() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(1024, Integer.MAX_VALUE);
+    buffer.addMessage(createMessage(LogLevel.DEBUG, 1, "First", "a"));
+    buffer.addMessage(createMessage(LogLevel.ERROR, 1, "Second", "b"));
+    buffer.addMessage(createMessage(LogLevel.ERROR, 2, "First", "c"));
+    buffer.addMessage(createMessage(LogLevel.WARN, 1, "FirstToo", "d"));
+
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("test")
+      .setTagPattern(Pattern.compile("First"))
+      .setLogLevel(LogLevel.WARN)
+      .build();
+    assertEquals("c,d", getMessages(buffer, filter));
+
+    filter = new DefaultAndroidLogcatFilter.Builder("test").setPid(1).build();
+    assertEquals("a,b,d", getMessages(buffer, filter));
+
+    // Message patterns are left to the caller, as only headers are indexed
+    filter = new DefaultAndroidLogcatFilter.Builder("test").setMessagePattern(Pattern.compile("b")).build();
+    assertEquals("a,b,c,d", getMessages(buffer, filter));
+  }
+
+  @Test
+  public void testFilterAfterWrapAround() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(8, Integer.MAX_VALUE);
+    for (int i = 0; i < 13; i++) {
+      buffer.addMessage(createMessage(i % 2 == 0 ? LogLevel.ERROR : LogLevel.INFO, 1, "Tag" + (i % 3), Integer.toString(i)));
+    }
+
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("test").setLogLevel(LogLevel.ERROR).build();
+    assertEquals("6,8,10,12", getMessages(buffer, filter));
+
+    filter = new DefaultAndroidLogcatFilter.Builder("test").setTagPattern(Pattern.compile("Tag1")).build();
+    assertEquals("7,10", getMessages(buffer, filter));
+  }
+
+  @Test
+  public void testFilterAfterGrowing() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(4096, Integer.MAX_VALUE);
+    for (int i = 0; i < 3000; i++) {
+      buffer.addMessage(createMessage(LogLevel.INFO, i % 1000 == 0 ? 2 : 1, "Tag", Integer.toString(i)));
+    }
+
+    assertEquals(3000, buffer.size());
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("test").setPid(2).build();
+    assertEquals("0,1000,2000", getMessages(buffer, filter));
+  }
+
+  @Test
+  public void testForgetsTagsOfDroppedMessages() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(4, Integer.MAX_VALUE);
+    for (int i = 0; i < 100; i++) {
+      buffer.addMessage(createMessage(LogLevel.INFO, 1, "Tag" + i, Integer.toString(i)));
+    }
+
+    assertEquals(4, buffer.getTagCount());
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("test").setTagPattern(Pattern.compile("Tag9[79]")).build();
+    assertEquals("97,99", getMessages(buffer, filter));
+  }
+
+  @NotNull
+  private static String getMessages(@NotNull LogcatBuffer buffer, AndroidLogcatFilter filter) {
+    List<String> messages = new ArrayList<>();
+    if (filter == null) {
+      buffer.forEach(message -> messages.add(message.getMessage()));
+    }
+    else {
+      buffer.forEach(filter, message -> messages.add(message.getMessage()));
+    }
+    return String.join(",", messages);
+  }
+
+  @NotNull
+  private static LogCatMessage createMessage(@NotNull LogLevel level, int pid, @NotNull String tag, @NotNull String message) {
+    return new LogCatMessage(new LogCatHeader(level, pid, 123, "com.example", tag, LogCatTimestamp.ZERO), message);
+  }
+}
@@ -18,6 +18,16 @@ package com.android.tools.idea.rendering;
 import com.android.ide.common.rendering.api.ViewInfo;
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 public class RenderServiceTest extends TestCase {
   public void testGetSafeBounds() {
     ViewInfo valid;
@@ -58,4 +68,45 @@ public class RenderServiceTest extends TestCase {
     invalid = new ViewInfo("", "", 0, 0, 0, +(1 << 27));
     assertNotSame(invalid, RenderService.getSafeBounds(invalid));
   }
-}
\ No newline at end of file
+
+  public void testRenderActionPriorities() throws Exception {
+    List<RenderService.RenderingPriority> order = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService callers = Executors.newCachedThreadPool();
+    try {
+      // Keep the render thread busy while the other actions get queued
+      Future<?> busy = callers.submit(() -> RenderService.runRenderAction(() -> {
+        started.countDown();
+        release.await();
+        return null;
+      }));
+      started.await();
+
+      List<Future<?>> actions = new ArrayList<>();
+      for (RenderService.RenderingPriority priority : Arrays.asList(RenderService.RenderingPriority.LOW,
+                                                                    RenderService.RenderingPriority.NORMAL,
+                                                                    RenderService.RenderingPriority.HIGH)) {
+        actions.add(callers.submit(() -> RenderService.runRenderAction(() -> order.add(priority), priority)));
+      }
+      // Wait for the callers to queue their actions
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (RenderService.getQueuedRenderActionCount() < actions.size()) {
+        assertTrue("The render actions were not queued", System.currentTimeMillis() < deadline);
+        Thread.sleep(1);
+      }
+      release.countDown();
+
+      busy.get();
+      for (Future<?> action : actions) {
+        action.get();
+      }
+      assertEquals(Arrays.asList(RenderService.RenderingPriority.HIGH,
+                                 RenderService.RenderingPriority.NORMAL,
+                                 RenderService.RenderingPriority.LOW), order);
+    }
+    finally {
+      callers.shutdownNow();
+    }
+  }
+}
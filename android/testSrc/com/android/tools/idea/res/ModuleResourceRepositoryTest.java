@@ -21,6 +21,7 @@ import com.android.ide.common.res2.ResourceItem;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.resources.ResourceType;
 import com.android.tools.lint.detector.api.LintUtils;
+import com.google.common.collect.ListMultimap;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.util.Condition;
@@ -225,6 +226,34 @@ public class ModuleResourceRepositoryTest extends AndroidTestCase {
     assertItemIsInDir(res2, layout2);
   }
 
+  public void testIncrementalMerge() {
+    final VirtualFile layoutOverlay = myFixture.copyFileToProject(LAYOUT_OVERLAY, "res2/layout/layout1.xml");
+    VirtualFile res1 = myFixture.copyFileToProject(LAYOUT, "res/layout/layout1.xml").getParent().getParent();
+    VirtualFile res2 = layoutOverlay.getParent().getParent();
+    ModuleResourceRepository resources = ModuleResourceRepository.createForTest(myFacet, Arrays.asList(res1, res2));
+    ListMultimap<String, ResourceItem> layouts = resources.getItems().get(ResourceType.LAYOUT);
+    assertItemIsInDir(res2, getSingleItem(resources, ResourceType.LAYOUT, "layout1"));
+
+    WriteCommandAction.runWriteCommandAction(null, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          layoutOverlay.rename(this, "layout2.xml");
+        }
+        catch (IOException e) {
+          fail(e.toString());
+        }
+      }
+    });
+
+    assertItemIsInDir(res1, getSingleItem(resources, ResourceType.LAYOUT, "layout1"));
+    assertItemIsInDir(res2, getSingleItem(resources, ResourceType.LAYOUT, "layout2"));
+    assertEquals(2, resources.getItems().get(ResourceType.LAYOUT).size());
+
+    // The merged map is updated in place rather than merged again from scratch
+    assertSame(layouts, resources.getItems().get(ResourceType.LAYOUT));
+  }
+
   public void testOverlayUpdates2() {
     // Like testOverlayUpdates1, but rather than testing changes to layout resources (file-based resource)
     // perform document edits in value-documents
@@ -3823,6 +3823,33 @@ public class ResourceFolderRepositoryTest extends AndroidTestCase {
     assertTrue(fromBlob.equalFilesItems(resources));
   }
 
+  public void testSerializationParallelScan() throws Exception {
+    // Enough files for the initial scan to parse them on several threads
+    for (int i = 0; i < 64; i++) {
+      if (i % 2 == 0) {
+        myFixture.copyFileToProject(LAYOUT1, "res/layout/layout" + i + ".xml");
+      }
+      else {
+        myFixture.copyFileToProject(STRINGS, "res/values-v" + i + "/strings.xml");
+      }
+    }
+    final ResourceFolderRepository resources = createRepository();
+    assertNotNull(resources);
+    assertEquals(64, resources.getInitialScanState().numXml);
+    assertEquals(64, resources.getInitialScanState().numXmlReparsed);
+    resources.saveStateToFile();
+
+    ResourceFolderRegistry.reset();
+    final ResourceFolderRepository fromBlob = createRepository();
+    assertNotNull(fromBlob);
+    assertTrue(fromBlob.hasFreshFileCache());
+    assertEquals(64, fromBlob.getInitialScanState().numXml);
+    assertEquals(0, fromBlob.getInitialScanState().numXmlReparsed);
+
+    assertNotSame(resources, fromBlob);
+    assertTrue(fromBlob.equalFilesItems(resources));
+  }
+
   public void testInvalidateCache() throws Exception {
     myFixture.copyFileToProject(LAYOUT1, "res/layout/layout.xml");
     myFixture.copyFileToProject(LAYOUT1, "res/layout-xlarge-land/layout.xml");
@@ -33,6 +33,7 @@ import java.util.concurrent.TimeUnit;
 @SuppressWarnings("StaticMethodReferencedViaSubclass")
 public class InstalledApkCacheTest extends TestCase {
   private InstalledApkCache myService;
+  private File myCacheFile;
   private IDevice myDevice1;
   private IDevice myDevice2;
   private File myFile;
@@ -61,15 +62,21 @@ public class InstalledApkCacheTest extends TestCase {
     EasyMock.expectLastCall().anyTimes();
 
     myDumpSysOutput = "Package [com.foo.bar]";
-    myService = new InstalledApkCache() {
+    myCacheFile = new File(FileUtil.createTempDirectory("installed_apks", null), "cache.dat");
+    myService = createService();
+
+    EasyMock.replay(myDevice1, myDevice2);
+  }
+
+  @NotNull
+  private InstalledApkCache createService() {
+    return new InstalledApkCache(myCacheFile) {
       @Override
       protected String executeShellCommand(@NotNull IDevice device, @NotNull String cmd, long timeout, @NotNull TimeUnit timeUnit)
         throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, InterruptedException {
         return myDumpSysOutput;
       }
     };
-
-    EasyMock.replay(myDevice1, myDevice2);
   }
 
   @Override
@@ -133,6 +140,43 @@ public class InstalledApkCacheTest extends TestCase {
     assertFalse(myService.isInstalled(myDevice1, myFile, myPkgName, 1));
   }
 
+  public void testCacheHitAfterRestart() throws Exception {
+    myDumpSysOutput = "Package [com.foo.bar]\n" +
+                      "    lastUpdateTime=2014-09-29 11:58:19\n";
+    myService.setInstalled(myDevice1, myFile, myPkgName);
+    Disposer.dispose(myService);
+
+    myService = createService();
+    assertTrue(myService.isInstalled(myDevice1, myFile, myPkgName, null));
+    assertFalse(myService.isInstalled(myDevice2, myFile, myPkgName, null));
+
+    // Reinstalled from the command line while the IDE was not running
+    myDumpSysOutput = "Package [com.foo.bar]\n" +
+                      "    lastUpdateTime=2014-09-30 09:12:45\n";
+    assertFalse(myService.isInstalled(myDevice1, myFile, myPkgName, null));
+  }
+
+  public void testUploadModifiedApkAfterRestart() throws Exception {
+    myDumpSysOutput = "Package [com.foo.bar]\n" +
+                      "    lastUpdateTime=2014-09-29 11:58:19\n";
+    myService.setInstalled(myDevice1, myFile, myPkgName);
+    Disposer.dispose(myService);
+
+    FileUtil.writeToFile(myFile, "changed!");
+    myService = createService();
+    assertFalse(myService.isInstalled(myDevice1, myFile, myPkgName, null));
+  }
+
+  public void testNoLastUpdateTimeNotRestored() throws Exception {
+    myService.setInstalled(myDevice1, myFile, myPkgName);
+    assertTrue(myService.isInstalled(myDevice1, myFile, myPkgName, null));
+    Disposer.dispose(myService);
+
+    // Without a last update time there is no telling whether the package was reinstalled in the meantime
+    myService = createService();
+    assertFalse(myService.isInstalled(myDevice1, myFile, myPkgName, null));
+  }
+
   public void testDumpsysParser() {
     myDumpSysOutput = "Packages:\n" +
                     "  Package [com.foo.bar] (423123d0):\n" +
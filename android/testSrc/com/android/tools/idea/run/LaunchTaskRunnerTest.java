@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.run;
+
+import com.android.ddmlib.IDevice;
+import com.android.tools.idea.run.tasks.LaunchTask;
+import com.android.tools.idea.run.tasks.LaunchTasksProvider;
+import com.android.tools.idea.run.util.LaunchStatus;
+import com.google.common.util.concurrent.Futures;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.intellij.execution.process.ProcessOutputTypes.STDERR;
+import static org.mockito.Mockito.*;
+
+public class LaunchTaskRunnerTest {
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private ProcessHandler myProcessHandler;
+  private LaunchTasksProvider myLaunchTasksProvider;
+  private List<String> myOutput;
+
+  @Before
+  public void setUp() throws Exception {
+    myProcessHandler = mock(ProcessHandler.class);
+    myOutput = Collections.synchronizedList(new ArrayList<>());
+    doAnswer(invocation -> myOutput.add((String)invocation.getArguments()[0])).when(myProcessHandler).notifyTextAvailable(any(), any());
+
+    myLaunchTasksProvider = mock(LaunchTasksProvider.class);
+    when(myLaunchTasksProvider.createsNewProcess()).thenReturn(true);
+  }
+
+  @Test
+  public void devicesLaunchConcurrentlyAndStreamTheirOutput() throws Exception {
+    CountDownLatch started = new CountDownLatch(2);
+    CountDownLatch finish = new CountDownLatch(1);
+    IDevice device1 = mock(IDevice.class);
+    IDevice device2 = mock(IDevice.class);
+    FakeLaunchTask task1 = new FakeLaunchTask(true, started, finish);
+    FakeLaunchTask task2 = new FakeLaunchTask(true, started, finish);
+    when(myLaunchTasksProvider.getTasks(same(device1), any(), any())).thenReturn(Collections.singletonList(task1));
+    when(myLaunchTasksProvider.getTasks(same(device2), any(), any())).thenReturn(Collections.singletonList(task2));
+
+    Thread launch = startLaunch(createDevice("Device 1", device1), createDevice("Device 2", device2));
+
+    // Both tasks are being performed at the same time, and their output so far is already in the console
+    assertThat(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+    assertThat(myOutput).containsAllOf("Device 1: Installing\n", "Device 1: Copying files\n",
+                                       "Device 2: Installing\n", "Device 2: Copying files\n");
+    assertThat(myOutput).doesNotContain("Device 1: Installed\n");
+    assertThat(myOutput).doesNotContain("Device 2: Installed\n");
+
+    finish.countDown();
+    launch.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    assertThat(launch.isAlive()).isFalse();
+    assertThat(myOutput).containsAllOf("Device 1: Installed\n", "Device 2: Installed\n");
+    assertThat(task1.myDevice).isSameAs(device1);
+    assertThat(task2.myDevice).isSameAs(device2);
+    verify(myProcessHandler, never()).destroyProcess();
+  }
+
+  @Test
+  public void failureOnOneDeviceOnlyStopsThatDevice() throws Exception {
+    IDevice device1 = mock(IDevice.class);
+    IDevice device2 = mock(IDevice.class);
+    FakeLaunchTask task1 = new FakeLaunchTask(false, null, null);
+    FakeLaunchTask task2 = new FakeLaunchTask(true, null, null);
+    when(myLaunchTasksProvider.getTasks(same(device1), any(), any())).thenReturn(Collections.singletonList(task1));
+    when(myLaunchTasksProvider.getTasks(same(device2), any(), any())).thenReturn(Collections.singletonList(task2));
+
+    Thread launch = startLaunch(createDevice("Device 1", device1), createDevice("Device 2", device2));
+    launch.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    assertThat(launch.isAlive()).isFalse();
+
+    verify(myProcessHandler).notifyTextAvailable("Device 1: Error while Installing\n", STDERR);
+    assertThat(myOutput).contains("Device 2: Installed\n");
+    verify(myProcessHandler, never()).destroyProcess();
+  }
+
+  @Test
+  public void failureOnAllDevicesStopsTheLaunch() throws Exception {
+    IDevice device1 = mock(IDevice.class);
+    IDevice device2 = mock(IDevice.class);
+    when(myLaunchTasksProvider.getTasks(any(), any(), any()))
+      .thenReturn(Collections.singletonList(new FakeLaunchTask(false, null, null)))
+      .thenReturn(Collections.singletonList(new FakeLaunchTask(false, null, null)));
+
+    Thread launch = startLaunch(createDevice("Device 1", device1), createDevice("Device 2", device2));
+    launch.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    assertThat(launch.isAlive()).isFalse();
+
+    verify(myProcessHandler).notifyTextAvailable("Device 1: Error while Installing\n", STDERR);
+    verify(myProcessHandler).notifyTextAvailable("Device 2: Error while Installing\n", STDERR);
+    verify(myProcessHandler).notifyTextAvailable("Unable to launch on any device\n", STDERR);
+    verify(myProcessHandler).destroyProcess();
+  }
+
+  @NotNull
+  private Thread startLaunch(@NotNull AndroidDevice... devices) {
+    LaunchTaskRunner runner = new LaunchTaskRunner(mock(Project.class), "app", mock(LaunchInfo.class), myProcessHandler,
+                                                   new DeviceFutures(Arrays.asList(devices)), myLaunchTasksProvider);
+    Thread launch = new Thread(() -> runner.run(mock(ProgressIndicator.class)), "LaunchTaskRunnerTest");
+    launch.start();
+    return launch;
+  }
+
+  @NotNull
+  private static AndroidDevice createDevice(@NotNull String name, @NotNull IDevice device) {
+    AndroidDevice androidDevice = mock(AndroidDevice.class);
+    when(androidDevice.getName()).thenReturn(name);
+    when(androidDevice.getLaunchedDevice()).thenReturn(Futures.immediateFuture(device));
+    return androidDevice;
+  }
+
+  /**
+   * Prints a multi-line message, optionally waits until told to finish, and then succeeds or fails.
+   */
+  private static class FakeLaunchTask implements LaunchTask {
+    private final boolean mySuccess;
+    @Nullable private final CountDownLatch myStarted;
+    @Nullable private final CountDownLatch myFinish;
+    @Nullable private volatile IDevice myDevice;
+
+    FakeLaunchTask(boolean success, @Nullable CountDownLatch started, @Nullable CountDownLatch finish) {
+      mySuccess = success;
+      myStarted = started;
+      myFinish = finish;
+    }
+
+    @NotNull
+    @Override
+    public String getDescription() {
+      return "Installing";
+    }
+
+    @Override
+    public int getDuration() {
+      return 1;
+    }
+
+    @Override
+    public boolean perform(@NotNull IDevice device, @NotNull LaunchStatus launchStatus, @NotNull ConsolePrinter printer) {
+      myDevice = device;
+      printer.stdout("Installing\nCopying files\n");
+      if (myStarted != null) {
+        myStarted.countDown();
+      }
+      try {
+        if (myFinish != null && !myFinish.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          return false;
+        }
+      }
+      catch (InterruptedException e) {
+        return false;
+      }
+      if (mySuccess) {
+        printer.stdout("Installed");
+      }
+      return mySuccess;
+    }
+
+    @Override
+    public boolean isConcurrentSafe() {
+      return true;
+    }
+  }
+}
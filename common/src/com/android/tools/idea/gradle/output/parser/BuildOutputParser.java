@@ -21,12 +21,21 @@ import com.android.ide.common.blame.parser.ToolOutputParser;
 import org.jetbrains.android.sdk.MessageBuildingSdkLog;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Parses Gradle's build output and creates the messages to be displayed in the "Messages" tool window.
+ *
+ * The output can either be parsed as a whole once the build is done, or a line at a time while the build runs (see
+ * {@link #startParsing(boolean, MessageListener)}).
  */
 public class BuildOutputParser{
+  /** Gradle prints the path of each task it runs, e.g. ":app:compileDebugJavaWithJavac" or ":app:preBuild UP-TO-DATE". */
+  private static final Pattern TASK_HEADER_PATTERN = Pattern.compile("^(:[^\\s:]+)+( [A-Z\\-]+)?$");
+  private static final String FAILURE_REPORT_PREFIX = "FAILURE: ";
+
   private final ToolOutputParser parser;
 
   public BuildOutputParser(@NotNull Iterable<PatternAwareOutputParser> parsers) {
@@ -42,4 +51,98 @@ public class BuildOutputParser{
   public List<Message> parseGradleOutput(@NotNull String output, boolean ignoreUnrecognizedText) {
     return parser.parseToolOutput(output, ignoreUnrecognizedText);
   }
+
+  /**
+   * Returns a parser to feed with Gradle's build output a line at a time, as the build produces it. The messages found in the output
+   * are passed to the given listener as soon as the lines making them up have been read, in the order {@link #parseGradleOutput} would
+   * return them.
+   */
+  @NotNull
+  public StreamingParser startParsing(boolean ignoreUnrecognizedText, @NotNull MessageListener listener) {
+    return new StreamingParser(ignoreUnrecognizedText, listener);
+  }
+
+  public interface MessageListener {
+    void messagesParsed(@NotNull List<Message> messages);
+  }
+
+  /**
+   * Parses build output a line at a time.
+   *
+   * Output parsers may read past the line they are given to find the rest of a message, so lines are buffered and parsed in chunks that
+   * no message spans: the output of each Gradle task, and the failure report at the end of the build. Very long task output is split
+   * further, before a line that is not indented once {@link #MAX_BUFFERED_LINES} lines have been buffered, which keeps memory use bounded.
+   */
+  public final class StreamingParser {
+    private static final int MAX_BUFFERED_LINES = 1000;
+
+    private final boolean myIgnoreUnrecognizedText;
+    @NotNull private final MessageListener myListener;
+    @NotNull private final List<String> myLines = new ArrayList<String>();
+    private int myLength;
+    private boolean myInFailureReport;
+    private boolean myCancelled;
+
+    private StreamingParser(boolean ignoreUnrecognizedText, @NotNull MessageListener listener) {
+      myIgnoreUnrecognizedText = ignoreUnrecognizedText;
+      myListener = listener;
+    }
+
+    /**
+     * Adds the next line of output, without its line separator.
+     */
+    public void addLine(@NotNull String line) {
+      if (myCancelled) {
+        return;
+      }
+      if (TASK_HEADER_PATTERN.matcher(line).matches()) {
+        myInFailureReport = false;
+        parseBufferedLines();
+      }
+      else if (line.startsWith(FAILURE_REPORT_PREFIX)) {
+        parseBufferedLines();
+        // The report has blank and unindented lines in it, so it is kept in one piece
+        myInFailureReport = true;
+      }
+      else if (myLines.size() >= MAX_BUFFERED_LINES && !myInFailureReport && !line.isEmpty() && !Character.isWhitespace(line.charAt(0))) {
+        parseBufferedLines();
+      }
+      myLines.add(line);
+      myLength += line.length() + 1;
+    }
+
+    /**
+     * Parses the lines that are still buffered. To be called once the build is done.
+     */
+    public void finish() {
+      if (!myCancelled) {
+        parseBufferedLines();
+      }
+    }
+
+    private void parseBufferedLines() {
+      if (myLines.isEmpty()) {
+        return;
+      }
+      StringBuilder output = new StringBuilder(myLength);
+      for (String line : myLines) {
+        output.append(line).append('\n');
+      }
+      myLines.clear();
+      myLength = 0;
+
+      List<Message> messages = parser.parseToolOutput(output.toString(), myIgnoreUnrecognizedText);
+      for (int i = 0; i < messages.size(); i++) {
+        // Like ToolOutputParser does, stop at the message telling that the build was cancelled, as whatever follows is just noise
+        if (messages.get(i).getText().contains("Build cancelled")) {
+          myCancelled = true;
+          messages = new ArrayList<Message>(messages.subList(0, i + 1));
+          break;
+        }
+      }
+      if (!messages.isEmpty()) {
+        myListener.messagesParsed(messages);
+      }
+    }
+  }
 }
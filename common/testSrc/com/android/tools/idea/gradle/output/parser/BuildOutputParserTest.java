@@ -38,6 +38,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
@@ -1114,12 +1115,60 @@ public class BuildOutputParserTest {
                  "12: Info:BUILD FAILED\n" +
                  "13: Info:Total time: 5.435 secs\n",
                  toString(parser.parseGradleOutput(output)));
+    assertEquals(toString(parser.parseGradleOutput(output)), toString(parseLineByLine(output, false)));
 
     sourceFile.delete();
     source.delete();
     tempDir.delete();
   }
 
+  @Test
+  public void parseLongTaskOutputLineByLine() {
+    StringBuilder output = new StringBuilder();
+    output.append(":app:preBuild UP-TO-DATE\n");
+    output.append(":app:compileDebugJavaWithJavac\n");
+    for (int i = 0; i < 2500; i++) {
+      output.append("output line ").append(i).append('\n');
+      if (i % 100 == 0) {
+        output.append("  indented output line ").append(i).append('\n');
+      }
+    }
+    output.append(":app:assembleDebug\n");
+    output.append("BUILD SUCCESSFUL\n");
+
+    final List<Message> messages = new ArrayList<Message>();
+    BuildOutputParser.StreamingParser streamingParser = parser.startParsing(false, new BuildOutputParser.MessageListener() {
+      @Override
+      public void messagesParsed(@NotNull List<Message> parsed) {
+        messages.addAll(parsed);
+      }
+    });
+    for (String line : output.toString().split("\n")) {
+      streamingParser.addLine(line);
+    }
+    // Everything up to the last task was reported while the "build" was still running
+    assertEquals(2 + 2500 + 25, messages.size());
+
+    streamingParser.finish();
+    assertEquals(toString(parser.parseGradleOutput(output.toString(), false)), toString(messages));
+  }
+
+  @NotNull
+  private List<Message> parseLineByLine(@NotNull String output, boolean ignoreUnrecognizedText) {
+    final List<Message> messages = new ArrayList<Message>();
+    BuildOutputParser.StreamingParser streamingParser = parser.startParsing(ignoreUnrecognizedText, new BuildOutputParser.MessageListener() {
+      @Override
+      public void messagesParsed(@NotNull List<Message> parsed) {
+        messages.addAll(parsed);
+      }
+    });
+    for (String line : output.split("\n")) {
+      streamingParser.addLine(line);
+    }
+    streamingParser.finish();
+    return messages;
+  }
+
   @Test
   public void dashes() throws Exception {
     File tempDir = Files.createTempDir();
@@ -23,12 +23,12 @@ import com.android.tools.idea.rendering.AttributeSnapshot;
 import com.android.tools.idea.rendering.RenderResult;
 import com.android.tools.idea.uibuilder.handlers.ViewEditorImpl;
 import com.android.tools.idea.uibuilder.handlers.constraint.ConstraintModel;
+import com.android.tools.idea.uibuilder.handlers.constraint.ConstraintUtilities;
 import com.android.tools.idea.uibuilder.model.ModelListener;
 import com.android.tools.idea.uibuilder.model.NlComponent;
 import com.android.tools.idea.uibuilder.model.NlModel;
 import com.android.tools.idea.uibuilder.surface.DesignSurface;
 import com.android.tools.idea.uibuilder.surface.ScreenView;
-import com.android.tools.sherpa.scout.Scout;
 import com.android.tools.sherpa.structure.WidgetsScene;
 import com.google.common.collect.Lists;
 import com.intellij.openapi.actionSystem.AnAction;
@@ -184,7 +184,11 @@ public class ConvertToConstraintLayoutAction extends AnAction implements ModelLi
         // Infer new constraints
         WidgetsScene scene = constraintModel.getScene();
         try {
-          Scout.inferConstraints(scene);
+          if (!ConstraintUtilities.inferConstraints(model.getProject(), scene)) {
+            // Keep the converted layout with its absolute positions rather than saving a partial inference
+            constraintModel.updateNlModel(null, model.getComponents(), true);
+            return;
+          }
         }
         catch (Throwable t) {
           Logger.getInstance(ConvertToConstraintLayoutAction.class).warn(t);
@@ -670,7 +670,11 @@ public class ConstraintLayoutHandler extends ViewGroupHandler {
         .logAction(LayoutEditorEvent.LayoutEditorEventType.INFER_CONSTRAINS);
       WidgetsScene scene = model.getScene();
       try {
-        Scout.inferConstraints(scene);
+        if (!ConstraintUtilities.inferConstraints(editor.getModel().getProject(), scene)) {
+          // Drop the constraints inferred before the inference was canceled
+          model.updateNlModel(null, editor.getModel().getComponents(), true);
+          return;
+        }
       }
       catch (Exception e) {
         // TODO show dialog the inference failed
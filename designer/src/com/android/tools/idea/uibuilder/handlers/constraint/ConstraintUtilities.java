@@ -37,6 +37,8 @@ import com.android.tools.sherpa.structure.WidgetsScene;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.Result;
 import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.xml.XmlFile;
 import org.jetbrains.annotations.NotNull;
@@ -45,6 +47,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.concurrent.CancellationException;
 
 import static com.android.tools.idea.res.ResourceHelper.resolveStringValue;
 
@@ -318,6 +321,36 @@ public class ConstraintUtilities {
     }
   }
 
+  /**
+   * Infers the constraints of the widgets in the given scene under a modal, cancelable progress dialog
+   *
+   * @param project the project the scene belongs to
+   * @param scene   the scene to infer constraints on
+   * @return false if the inference was canceled, in which case only some of the containers in the scene have new constraints
+   */
+  public static boolean inferConstraints(@NotNull Project project, @NotNull WidgetsScene scene) {
+    return ProgressManager.getInstance().runProcessWithProgressSynchronously(() -> {
+      ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+      indicator.setIndeterminate(false);
+      try {
+        Scout.inferConstraints(scene, new Scout.Progress() {
+          @Override
+          public void setFraction(double fraction) {
+            indicator.setFraction(fraction);
+          }
+
+          @Override
+          public boolean isCanceled() {
+            return indicator.isCanceled();
+          }
+        });
+      }
+      catch (CancellationException ignored) {
+        // The canceled indicator makes runProcessWithProgressSynchronously return false
+      }
+    }, "Inferring Constraints", true, project);
+  }
+
   /**
    * Clear all editor absolute positions
    *
@@ -365,6 +365,8 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
       myRenderTask = renderService.createTask(file, configuration, logger, mySurface);
       setupRenderTask(myRenderTask);
       if (myRenderTask != null) {
+        // The editor being rendered is the one the user is looking at
+        myRenderTask.setPriority(RenderService.RenderingPriority.HIGH);
         if (!isRenderViewPort()) {
           myRenderTask.useDesignMode(file);
         }
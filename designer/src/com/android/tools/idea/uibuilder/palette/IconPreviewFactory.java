@@ -127,6 +127,9 @@ public class IconPreviewFactory implements Disposable {
       RenderService renderService = RenderService.get(facet);
       RenderLogger logger = renderService.createLogger();
       myRenderTask = renderService.createTask(null, configuration, logger, null);
+      if (myRenderTask != null) {
+        myRenderTask.setPriority(RenderService.RenderingPriority.LOW);
+      }
     }
 
     return myRenderTask;
@@ -16,20 +16,36 @@
 package com.android.tools.idea.uibuilder.scene;
 
 import java.util.Arrays;
+import java.util.HashMap;
 
 /**
  * This class provides efficient detection of many objects
+ *
+ * Objects are indexed in a uniform grid by their bounds, so that {@link #find(int, int)} only needs to test the objects overlapping
+ * the cell under the mouse. Callers typically {@link #reset()} and re-add the same objects in the same order before every find, so
+ * the grid is kept across resets and an object is only moved to other cells when its bounds changed since the last time it was added.
  */
 public class ScenePicker {
   private final static int MAX_DATA_SIZE = 10;
   private final static int INITAL_OBJECT_STORE = 30;
   private final static double EPSILON = 0.00001;
+  private final static int CELL_SIZE = 64;
+  /**
+   * Objects spanning more cells than this (e.g. the root component) are kept in a separate list that is always tested
+   */
+  private final static int MAX_CELLS_PER_OBJECT = 16;
   private double[] mObjectData = new double[100];
   private int mObjectDataUsed = 0;
   private int[] mObjectOffset = new int[INITAL_OBJECT_STORE];
   private int[] mTypes = new int[INITAL_OBJECT_STORE];
   private int[] mRect = new int[INITAL_OBJECT_STORE * 4];
   private Object[] mObjects = new Object[INITAL_OBJECT_STORE];
+  // the bounds each object slot is currently indexed under, valid if mIndexed is set for the slot
+  private int[] mIndexedRect = new int[INITAL_OBJECT_STORE * 4];
+  private boolean[] mIndexed = new boolean[INITAL_OBJECT_STORE];
+  private final HashMap<Long, IntList> mCells = new HashMap<>();
+  private final IntList mLargeObjects = new IntList();
+  private final IntList mCandidates = new IntList();
   HitElementListener mHitElementListener;
 
   private int mObjectCount = 0;
@@ -57,7 +73,17 @@ public class ScenePicker {
    * @param y location y
    */
   public void find(int x, int y) {
-    for (int i = 0; i < mObjectCount; i++) {
+    mCandidates.clear();
+    addCandidates(mLargeObjects);
+    IntList cell = mCells.get(cellKey(Math.floorDiv(x, CELL_SIZE), Math.floorDiv(y, CELL_SIZE)));
+    if (cell != null) {
+      addCandidates(cell);
+    }
+    // objects are reported in the order they were added, which the listeners rely on to break ties
+    Arrays.sort(mCandidates.mValues, 0, mCandidates.mSize);
+
+    for (int c = 0; c < mCandidates.mSize; c++) {
+      int i = mCandidates.mValues[c];
       int p = i * 4;
       int x1 = mRect[p++];
       int y1 = mRect[p++];
@@ -72,6 +98,16 @@ public class ScenePicker {
     }
   }
 
+  private void addCandidates(IntList objects) {
+    for (int i = 0; i < objects.mSize; i++) {
+      int object = objects.mValues[i];
+      // the grid may still hold slots that were not added again since the last reset
+      if (object < mObjectCount) {
+        mCandidates.add(object);
+      }
+    }
+  }
+
   /**
    * set the listener to be notified of the objects in range
    *
@@ -128,6 +164,92 @@ public class ScenePicker {
     mTypes = Arrays.copyOf(mTypes, mTypes.length * 2);
     mObjects = Arrays.copyOf(mObjects, mObjects.length * 2);
     mRect = Arrays.copyOf(mRect, mRect.length * 2);
+    mIndexedRect = Arrays.copyOf(mIndexedRect, mIndexedRect.length * 2);
+    mIndexed = Arrays.copyOf(mIndexed, mIndexed.length * 2);
+  }
+
+  /**
+   * Updates the grid after the bounds of an object slot were set. Nothing changes if the slot was last indexed with the same bounds.
+   */
+  private void index(int object) {
+    int p = object * 4;
+    if (mIndexed[object]
+        && mIndexedRect[p] == mRect[p]
+        && mIndexedRect[p + 1] == mRect[p + 1]
+        && mIndexedRect[p + 2] == mRect[p + 2]
+        && mIndexedRect[p + 3] == mRect[p + 3]) {
+      return;
+    }
+    if (mIndexed[object]) {
+      updateCells(object, mIndexedRect, false);
+    }
+    System.arraycopy(mRect, p, mIndexedRect, p, 4);
+    mIndexed[object] = true;
+    updateCells(object, mIndexedRect, true);
+  }
+
+  private void updateCells(int object, int[] rects, boolean add) {
+    int p = object * 4;
+    int cx1 = Math.floorDiv(rects[p], CELL_SIZE);
+    int cy1 = Math.floorDiv(rects[p + 1], CELL_SIZE);
+    int cx2 = Math.floorDiv(rects[p + 2], CELL_SIZE);
+    int cy2 = Math.floorDiv(rects[p + 3], CELL_SIZE);
+    if ((long)(cx2 - cx1 + 1) * (cy2 - cy1 + 1) > MAX_CELLS_PER_OBJECT) {
+      if (add) {
+        mLargeObjects.add(object);
+      }
+      else {
+        mLargeObjects.remove(object);
+      }
+      return;
+    }
+    for (int cy = cy1; cy <= cy2; cy++) {
+      for (int cx = cx1; cx <= cx2; cx++) {
+        long key = cellKey(cx, cy);
+        if (add) {
+          mCells.computeIfAbsent(key, k -> new IntList()).add(object);
+        }
+        else {
+          IntList cell = mCells.get(key);
+          cell.remove(object);
+          if (cell.mSize == 0) {
+            mCells.remove(key);
+          }
+        }
+      }
+    }
+  }
+
+  private static long cellKey(int cx, int cy) {
+    return ((long)cx << 32) | (cy & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Minimal growable list of object slots
+   */
+  private static class IntList {
+    int[] mValues = new int[8];
+    int mSize;
+
+    void add(int value) {
+      if (mSize == mValues.length) {
+        mValues = Arrays.copyOf(mValues, mSize * 2);
+      }
+      mValues[mSize++] = value;
+    }
+
+    void remove(int value) {
+      for (int i = 0; i < mSize; i++) {
+        if (mValues[i] == value) {
+          mValues[i] = mValues[--mSize];
+          return;
+        }
+      }
+    }
+
+    void clear() {
+      mSize = 0;
+    }
   }
 
   /**
@@ -207,6 +329,7 @@ public class ScenePicker {
       mRect[off++] = y1;
       mRect[off++] = x2;
       mRect[off] = y2;
+      index(mObjectCount);
     }
 
     boolean inRange(int object, int x, int y) {
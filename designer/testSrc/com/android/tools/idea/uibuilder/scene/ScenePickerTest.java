@@ -19,6 +19,10 @@ import junit.framework.TestCase;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Test ScenePicker
@@ -257,6 +261,64 @@ public class ScenePickerTest extends TestCase {
     }
   }
 
+  public void testObjectsReportedInOrderAdded() {
+    ScenePicker scenePicker = new ScenePicker();
+    List<Object> found = new ArrayList<>();
+    scenePicker.setSelectListener((obj, dist) -> found.add(obj));
+
+    // the root rectangle spans too many cells to be put in the grid, the others are in the grid
+    scenePicker.reset();
+    scenePicker.addRect("root", 0, 0, 0, 2000, 2000);
+    scenePicker.addRect("child", 0, 100, 100, 300, 300);
+    scenePicker.addPoint("anchor", 10, 200, 200);
+    scenePicker.find(200, 200);
+    assertEquals(Arrays.asList("root", "child", "anchor"), found);
+
+    // the same objects added in a different order
+    found.clear();
+    scenePicker.reset();
+    scenePicker.addPoint("anchor", 10, 200, 200);
+    scenePicker.addRect("child", 0, 100, 100, 300, 300);
+    scenePicker.addRect("root", 0, 0, 0, 2000, 2000);
+    scenePicker.find(200, 200);
+    assertEquals(Arrays.asList("anchor", "child", "root"), found);
+  }
+
+  public void testMovingObjects() {
+    ScenePicker scenePicker = new ScenePicker();
+    List<Object> found = new ArrayList<>();
+    scenePicker.setSelectListener((obj, dist) -> found.add(obj));
+
+    scenePicker.reset();
+    scenePicker.addRect("a", 0, 10, 10, 50, 50);
+    scenePicker.addRect("b", 0, 500, 500, 550, 550);
+    scenePicker.find(20, 20);
+    assertEquals(Collections.singletonList("a"), found);
+
+    // move a next to b
+    found.clear();
+    scenePicker.reset();
+    scenePicker.addRect("a", 0, 560, 500, 600, 550);
+    scenePicker.addRect("b", 0, 500, 500, 550, 550);
+    scenePicker.find(20, 20);
+    assertEquals(Collections.emptyList(), found);
+    scenePicker.find(580, 520);
+    assertEquals(Collections.singletonList("a"), found);
+
+    // only add a, b should not be found anymore
+    found.clear();
+    scenePicker.reset();
+    scenePicker.addRect("a", 0, 560, 500, 600, 550);
+    scenePicker.find(520, 520);
+    assertEquals(Collections.emptyList(), found);
+
+    // objects can also be found at negative coordinates
+    scenePicker.reset();
+    scenePicker.addRect("a", 0, -100, -100, -50, -50);
+    scenePicker.find(-70, -70);
+    assertEquals(Collections.singletonList("a"), found);
+  }
+
   public void testEllipseCode() {
     ScenePicker scenePicker = new ScenePicker() {
       {
@@ -25,6 +25,7 @@ public class AndroidBuildDataCache {
 
   private final Map<JpsModule, MyAndroidDeps> myModule2AndroidDeps = new HashMap<JpsModule, MyAndroidDeps>();
   private final Map<String, List<ResourceEntry>> myParsedValueResourceFiles = new HashMap<String, List<ResourceEntry>>();
+  private final Map<JpsModule, String[]> myModule2SourceRootPaths = new HashMap<JpsModule, String[]>();
 
   @NotNull
   public static AndroidBuildDataCache getInstance() {
@@ -86,6 +87,17 @@ public class AndroidBuildDataCache {
     return librariesOnly ? deps.myLibAndroidDeps : deps.myAndroidDeps;
   }
 
+  @NotNull
+  public String[] getSourceRootPathsForModuleAndDependencies(@NotNull JpsModule module) {
+    String[] paths = myModule2SourceRootPaths.get(module);
+
+    if (paths == null) {
+      paths = AndroidJpsUtil.toPaths(AndroidJpsUtil.getSourceRootsForModuleAndDependencies(module));
+      myModule2SourceRootPaths.put(module, paths);
+    }
+    return paths;
+  }
+
   @NotNull
   private static MyAndroidDeps computeAndroidDependencies(@NotNull JpsModule module) {
     final MyAndroidDeps result = new MyAndroidDeps();
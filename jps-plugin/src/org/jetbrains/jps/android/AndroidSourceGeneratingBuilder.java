@@ -58,6 +58,12 @@ import org.jetbrains.jps.service.JpsServiceManager;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * @author Eugene.Kudelevsky
@@ -689,6 +695,8 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
     }
 
     boolean success = true;
+    final Map<File, String> packageMap = new HashMap<File, String>();
+    final List<MyAidlInvocation> invocations = new ArrayList<MyAidlInvocation>();
 
     for (Map.Entry<File, ModuleBuildTarget> entry : files.entrySet()) {
       final File file = entry.getKey();
@@ -718,9 +726,15 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
       final IAndroidTarget target = moduleData.getPlatform().getTarget();
 
       try {
-        final File[] sourceRoots = AndroidJpsUtil.getSourceRootsForModuleAndDependencies(buildTarget.getModule());
-        final String[] sourceRootPaths = AndroidJpsUtil.toPaths(sourceRoots);
-        final String packageName = computePackageForFile(context, file);
+        final String[] sourceRootPaths =
+          AndroidBuildDataCache.getInstance().getSourceRootPathsForModuleAndDependencies(buildTarget.getModule());
+        // The files of a directory share their package.
+        final File dir = FileUtilRt.getParentFile(file);
+        String packageName = packageMap.get(dir);
+        if (packageName == null && !packageMap.containsKey(dir)) {
+          packageName = computePackageForFile(context, file);
+          packageMap.put(dir, packageName);
+        }
 
         if (packageName == null) {
           context.processMessage(new CompilerMessage(ANDROID_IDL_COMPILER, BuildMessage.Kind.ERROR,
@@ -731,19 +745,34 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
 
         final File outputFile = new File(aidlOutputDirectory, packageName.replace('.', File.separatorChar) +
                                                               File.separator + FileUtil.getNameWithoutExtension(file) + ".java");
-        final String outputFilePath = outputFile.getPath();
-        final Map<AndroidCompilerMessageKind, List<String>> messages =
-          AndroidIdl.execute(target, filePath, outputFilePath, sourceRootPaths);
+        invocations.add(new MyAidlInvocation(file, buildTarget, target, outputFile, sourceRootPaths));
+      }
+      catch (final IOException e) {
+        AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_IDL_COMPILER);
+        success = false;
+      }
+    }
+
+    final List<Future<Map<AndroidCompilerMessageKind, List<String>>>> results = executeToolInvocations(invocations);
+
+    // Report the results in the order of the files, however the invocations were scheduled.
+    for (int i = 0; i < invocations.size(); i++) {
+      final MyAidlInvocation invocation = invocations.get(i);
+      final String filePath = invocation.mySourceFile.getPath();
+
+      try {
+        final Map<AndroidCompilerMessageKind, List<String>> messages = getToolResult(results.get(i));
 
         addMessages(context, messages, filePath, ANDROID_IDL_COMPILER);
 
         if (messages.get(AndroidCompilerMessageKind.ERROR).size() > 0) {
           success = false;
         }
-        else if (outputFile.exists()) {
-          final SourceToOutputMapping sourceToOutputMap = context.getProjectDescriptor().dataManager.getSourceToOutputMap(buildTarget);
-          sourceToOutputMap.setOutput(filePath, outputFilePath);
-          FSOperations.markDirty(context, CompilationRound.CURRENT, outputFile);
+        else if (invocation.myOutputFile.exists()) {
+          final SourceToOutputMapping sourceToOutputMap =
+            context.getProjectDescriptor().dataManager.getSourceToOutputMap(invocation.myBuildTarget);
+          sourceToOutputMap.setOutput(filePath, invocation.myOutputFile.getPath());
+          FSOperations.markDirty(context, CompilationRound.CURRENT, invocation.myOutputFile);
         }
       }
       catch (final IOException e) {
@@ -762,89 +791,156 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
     }
 
     boolean success = true;
+    final BuildDataManager dataManager = context.getProjectDescriptor().dataManager;
+    final List<MyRenderscriptInvocation> invocations = new ArrayList<MyRenderscriptInvocation>();
 
-    for (Map.Entry<File, ModuleBuildTarget> entry : files.entrySet()) {
-      final File file = entry.getKey();
-      final ModuleBuildTarget buildTarget = entry.getValue();
-
-      final MyModuleData moduleData = moduleDataMap.get(buildTarget.getModule());
-      if (!LOG.assertTrue(moduleData != null)) {
-        context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR,
-                                                   AndroidJpsBundle.message("android.jps.internal.error")));
-        success = false;
-        continue;
-      }
+    try {
+      for (Map.Entry<File, ModuleBuildTarget> entry : files.entrySet()) {
+        final File file = entry.getKey();
+        final ModuleBuildTarget buildTarget = entry.getValue();
+
+        final MyModuleData moduleData = moduleDataMap.get(buildTarget.getModule());
+        if (!LOG.assertTrue(moduleData != null)) {
+          context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR,
+                                                     AndroidJpsBundle.message("android.jps.internal.error")));
+          success = false;
+          continue;
+        }
 
-      final BuildDataManager dataManager = context.getProjectDescriptor().dataManager;
-      final File generatedSourcesDir = AndroidJpsUtil.getGeneratedSourcesStorage(buildTarget.getModule(), dataManager);
-      final File rsOutputDirectory = new File(generatedSourcesDir, AndroidJpsUtil.RENDERSCRIPT_GENERATED_SOURCE_ROOT_NAME);
-      if (!rsOutputDirectory.exists() && !rsOutputDirectory.mkdirs()) {
-        context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR, AndroidJpsBundle
-          .message("android.jps.cannot.create.directory", rsOutputDirectory.getPath())));
-        success = false;
-        continue;
-      }
+        final File generatedSourcesDir = AndroidJpsUtil.getGeneratedSourcesStorage(buildTarget.getModule(), dataManager);
+        final File rsOutputDirectory = new File(generatedSourcesDir, AndroidJpsUtil.RENDERSCRIPT_GENERATED_SOURCE_ROOT_NAME);
+        if (!rsOutputDirectory.exists() && !rsOutputDirectory.mkdirs()) {
+          context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR, AndroidJpsBundle
+            .message("android.jps.cannot.create.directory", rsOutputDirectory.getPath())));
+          success = false;
+          continue;
+        }
 
-      final File generatedResourcesDir = AndroidJpsUtil.getGeneratedResourcesStorage(buildTarget.getModule(), dataManager);
-      final File rawDir = new File(generatedResourcesDir, "raw");
+        final File generatedResourcesDir = AndroidJpsUtil.getGeneratedResourcesStorage(buildTarget.getModule(), dataManager);
+        final File rawDir = new File(generatedResourcesDir, "raw");
 
-      if (!rawDir.exists() && !rawDir.mkdirs()) {
-        context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR,
-                                                   AndroidJpsBundle.message("android.jps.cannot.create.directory", rawDir.getPath())));
-        success = false;
-        continue;
-      }
+        if (!rawDir.exists() && !rawDir.mkdirs()) {
+          context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR,
+                                                     AndroidJpsBundle.message("android.jps.cannot.create.directory", rawDir.getPath())));
+          success = false;
+          continue;
+        }
 
-      final AndroidPlatform platform = moduleData.getPlatform();
-      final IAndroidTarget target = platform.getTarget();
-      final String sdkLocation = platform.getSdk().getHomePath();
-      final String filePath = file.getPath();
+        final AndroidPlatform platform = moduleData.getPlatform();
+        final String filePath = file.getPath();
 
-      File tmpOutputDirectory = null;
+        try {
+          final File tmpOutputDirectory = FileUtil.createTempDirectory("generated-rs-temp", null);
+          final String depFolderPath = getDependencyFolder(context, file, tmpOutputDirectory);
+          invocations.add(new MyRenderscriptInvocation(file, buildTarget, platform, tmpOutputDirectory, depFolderPath, rawDir,
+                                                       rsOutputDirectory));
+        }
+        catch (IOException e) {
+          AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_RENDERSCRIPT_COMPILER);
+          success = false;
+        }
+      }
 
-      try {
-        tmpOutputDirectory = FileUtil.createTempDirectory("generated-rs-temp", null);
-        final String depFolderPath = getDependencyFolder(context, file, tmpOutputDirectory);
+      final List<Future<Map<AndroidCompilerMessageKind, List<String>>>> results = executeToolInvocations(invocations);
 
-        final Map<AndroidCompilerMessageKind, List<String>> messages =
-          AndroidRenderscript.execute(sdkLocation, target, filePath, tmpOutputDirectory.getPath(), depFolderPath, rawDir.getPath());
+      // Report the results in the order of the files, however the invocations were scheduled.
+      for (int i = 0; i < invocations.size(); i++) {
+        final MyRenderscriptInvocation invocation = invocations.get(i);
+        final File file = invocation.mySourceFile;
+        final String filePath = file.getPath();
 
-        addMessages(context, messages, filePath, ANDROID_RENDERSCRIPT_COMPILER);
+        try {
+          final Map<AndroidCompilerMessageKind, List<String>> messages = getToolResult(results.get(i));
 
-        if (messages.get(AndroidCompilerMessageKind.ERROR).size() > 0) {
-          success = false;
-        }
-        else {
-          final List<File> newFiles = new ArrayList<File>();
-          AndroidCommonUtils.moveAllFiles(tmpOutputDirectory, rsOutputDirectory, newFiles);
+          addMessages(context, messages, filePath, ANDROID_RENDERSCRIPT_COMPILER);
 
-          final File bcFile = new File(rawDir, FileUtil.getNameWithoutExtension(file) + ".bc");
-          if (bcFile.exists()) {
-            newFiles.add(bcFile);
+          if (messages.get(AndroidCompilerMessageKind.ERROR).size() > 0) {
+            success = false;
           }
-          final List<String> newFilePaths = Arrays.asList(AndroidJpsUtil.toPaths(newFiles.toArray(new File[newFiles.size()])));
+          else {
+            final List<File> newFiles = new ArrayList<File>();
+            AndroidCommonUtils.moveAllFiles(invocation.myTmpOutputDirectory, invocation.myRsOutputDirectory, newFiles);
+
+            final File bcFile = new File(invocation.myRawDir, FileUtil.getNameWithoutExtension(file) + ".bc");
+            if (bcFile.exists()) {
+              newFiles.add(bcFile);
+            }
+            final List<String> newFilePaths = Arrays.asList(AndroidJpsUtil.toPaths(newFiles.toArray(new File[newFiles.size()])));
 
-          final SourceToOutputMapping sourceToOutputMap = dataManager.getSourceToOutputMap(buildTarget);
-          sourceToOutputMap.setOutputs(filePath, newFilePaths);
+            final SourceToOutputMapping sourceToOutputMap = dataManager.getSourceToOutputMap(invocation.myBuildTarget);
+            sourceToOutputMap.setOutputs(filePath, newFilePaths);
 
-          for (File newFile : newFiles) {
-            FSOperations.markDirty(context, CompilationRound.CURRENT, newFile);
+            for (File newFile : newFiles) {
+              FSOperations.markDirty(context, CompilationRound.CURRENT, newFile);
+            }
           }
         }
-      }
-      catch (IOException e) {
-        AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_RENDERSCRIPT_COMPILER);
-        success = false;
-      }
-      finally {
-        if (tmpOutputDirectory != null) {
-          FileUtil.delete(tmpOutputDirectory);
+        catch (IOException e) {
+          AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_RENDERSCRIPT_COMPILER);
+          success = false;
         }
       }
     }
+    finally {
+      for (MyRenderscriptInvocation invocation : invocations) {
+        FileUtil.delete(invocation.myTmpOutputDirectory);
+      }
+    }
     return success;
   }
 
+  /**
+   * Runs the given invocations of external tools on a pool of at most one thread per processor, as each of them starts its own
+   * process. The results are in the same order as the invocations.
+   */
+  @NotNull
+  private static <T> List<Future<T>> executeToolInvocations(@NotNull List<? extends Callable<T>> invocations) {
+    final List<Future<T>> results = new ArrayList<Future<T>>(invocations.size());
+    if (invocations.isEmpty()) {
+      return results;
+    }
+    final int threadCount = Math.min(invocations.size(), Runtime.getRuntime().availableProcessors());
+    final ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+      @Override
+      public Thread newThread(@NotNull Runnable r) {
+        final Thread thread = new Thread(r, BUILDER_NAME + " tool invocation");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      for (Callable<T> invocation : invocations) {
+        results.add(executor.submit(invocation));
+      }
+    }
+    finally {
+      // Lets the submitted invocations complete.
+      executor.shutdown();
+    }
+    return results;
+  }
+
+  @NotNull
+  private static <T> T getToolResult(@NotNull Future<T> result) throws IOException {
+    try {
+      return result.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
   private static MyExitStatus runAaptCompiler(@NotNull final CompileContext context,
                                               @NotNull Map<JpsModule, MyModuleData> moduleDataMap)
     throws IOException {
@@ -1527,6 +1623,63 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
     return result.toString();
   }
 
+  private static class MyAidlInvocation implements Callable<Map<AndroidCompilerMessageKind, List<String>>> {
+    private final File mySourceFile;
+    private final ModuleBuildTarget myBuildTarget;
+    private final IAndroidTarget myTarget;
+    private final File myOutputFile;
+    private final String[] mySourceRootPaths;
+
+    private MyAidlInvocation(@NotNull File sourceFile,
+                             @NotNull ModuleBuildTarget buildTarget,
+                             @NotNull IAndroidTarget target,
+                             @NotNull File outputFile,
+                             @NotNull String[] sourceRootPaths) {
+      mySourceFile = sourceFile;
+      myBuildTarget = buildTarget;
+      myTarget = target;
+      myOutputFile = outputFile;
+      mySourceRootPaths = sourceRootPaths;
+    }
+
+    @Override
+    public Map<AndroidCompilerMessageKind, List<String>> call() throws IOException {
+      return AndroidIdl.execute(myTarget, mySourceFile.getPath(), myOutputFile.getPath(), mySourceRootPaths);
+    }
+  }
+
+  private static class MyRenderscriptInvocation implements Callable<Map<AndroidCompilerMessageKind, List<String>>> {
+    private final File mySourceFile;
+    private final ModuleBuildTarget myBuildTarget;
+    private final AndroidPlatform myPlatform;
+    private final File myTmpOutputDirectory;
+    private final String myDepFolderPath;
+    private final File myRawDir;
+    private final File myRsOutputDirectory;
+
+    private MyRenderscriptInvocation(@NotNull File sourceFile,
+                                     @NotNull ModuleBuildTarget buildTarget,
+                                     @NotNull AndroidPlatform platform,
+                                     @NotNull File tmpOutputDirectory,
+                                     @Nullable String depFolderPath,
+                                     @NotNull File rawDir,
+                                     @NotNull File rsOutputDirectory) {
+      mySourceFile = sourceFile;
+      myBuildTarget = buildTarget;
+      myPlatform = platform;
+      myTmpOutputDirectory = tmpOutputDirectory;
+      myDepFolderPath = depFolderPath;
+      myRawDir = rawDir;
+      myRsOutputDirectory = rsOutputDirectory;
+    }
+
+    @Override
+    public Map<AndroidCompilerMessageKind, List<String>> call() throws IOException {
+      return AndroidRenderscript.execute(myPlatform.getSdk().getHomePath(), myPlatform.getTarget(), mySourceFile.getPath(),
+                                         myTmpOutputDirectory.getPath(), myDepFolderPath, myRawDir.getPath());
+    }
+  }
+
   private static class MyModuleData {
     private final AndroidPlatform myPlatform;
     private final JpsAndroidModuleExtension myAndroidExtension;
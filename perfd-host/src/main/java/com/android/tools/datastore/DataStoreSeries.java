@@ -17,6 +17,7 @@ package com.android.tools.datastore;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.LongDataPyramid;
 import com.android.tools.adtui.model.SeriesData;
 import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
@@ -36,6 +37,35 @@ public class DataStoreSeries<E> implements DataSeries<E> {
   @Nullable
   private final Object mTarget;
 
+  /**
+   * Level-of-detail index over the data of this series, kept up to date with the data store as new samples come in. It reads the
+   * samples from the data store rather than keeping its own copy. This is dropped if the series turns out not to hold Long values,
+   * as only numeric series can be summarized.
+   */
+  @Nullable
+  private LongDataPyramid mPyramid = new LongDataPyramid(new LongDataPyramid.Samples() {
+    @Override
+    public int size() {
+      // Asking for the index after the end of time returns the size of the data.
+      return mStore.getClosestTimeIndex(mType, Long.MAX_VALUE, false, mTarget);
+    }
+
+    @Override
+    public long getX(int index) {
+      return mStore.getDataAt(mType, index, mTarget).x;
+    }
+
+    @Override
+    public long getY(int index) {
+      return mStore.<Long>getDataAt(mType, index, mTarget).value;
+    }
+  });
+
+  /**
+   * The x of the first sample the pyramid was built from, to notice the data store being reset.
+   */
+  private long mPyramidStartX;
+
   public DataStoreSeries(@NotNull SeriesDataStore store, @NotNull SeriesDataType type, @Nullable Object target) {
     mStore = store;
     mType = type;
@@ -51,4 +81,42 @@ public class DataStoreSeries<E> implements DataSeries<E> {
   public ImmutableList<SeriesData<E>> getDataForXRange(@NotNull Range xRange) {
     return mStore.getSeriesData(mType, xRange, mTarget);
   }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public ImmutableList<SeriesData<E>> getDataForXRange(@NotNull Range xRange, int maxPoints) {
+    LongDataPyramid pyramid = updatePyramid();
+    if (pyramid == null) {
+      return getDataForXRange(xRange);
+    }
+    // updatePyramid only keeps the pyramid for series of Long values, so E is Long here.
+    return (ImmutableList<SeriesData<E>>)(ImmutableList<?>)pyramid.getDataForXRange(xRange, maxPoints);
+  }
+
+  /**
+   * Adds the samples that arrived in the data store since the last call to the pyramid. This only visits new samples, unless the store
+   * was reset in which case the pyramid is rebuilt.
+   */
+  @Nullable
+  private LongDataPyramid updatePyramid() {
+    if (mPyramid == null) {
+      return null;
+    }
+    int size = mStore.getClosestTimeIndex(mType, Long.MAX_VALUE, false, mTarget);
+    if (size == 0) {
+      mPyramid.clear();
+      return mPyramid;
+    }
+    SeriesData<Object> first = mStore.getDataAt(mType, 0, mTarget);
+    if (!(first.value instanceof Long)) {
+      mPyramid = null;
+      return null;
+    }
+    if (size < mPyramid.size() || first.x != mPyramidStartX) {
+      mPyramid.clear();
+      mPyramidStartX = first.x;
+    }
+    mPyramid.update();
+    return mPyramid;
+  }
 }
@@ -16,19 +16,25 @@
 package com.android.tools.datastore;
 
 import com.android.tools.datastore.poller.*;
+import com.android.tools.datastore.session.SessionFileReader;
+import com.android.tools.datastore.session.SessionFileWriter;
+import com.android.tools.datastore.session.SessionRecordable;
+import com.android.tools.datastore.store.SampleStoreFactory;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.netty.NettyChannelBuilder;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.IOException;
+import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.RunnableFuture;
 
 /**
@@ -39,14 +45,28 @@ public class DataStoreService {
   private static final int MAX_MESSAGE_SIZE = 512 * 1024 * 1024 - 1;
   private ManagedChannel myChannel;
   private ServerBuilder myServerBuilder;
+  private Server myServer;
   private List<ServicePassThrough> myServices = new ArrayList<>();
+  /**
+   * Runners started for the current device connection, which need to finish before the services are handed new state.
+   */
+  private final List<RunnableFuture<Void>> myRunners = new ArrayList<>();
   private LegacyAllocationTracker myLegacyAllocationTracker;
+  @NotNull private final SampleStoreFactory myStoreFactory;
 
   public DataStoreService(String name) {
+    this(name, SampleStoreFactory.SEGMENTED);
+  }
+
+  /**
+   * @param storeFactory decides where the samples collected by the pollers are kept.
+   */
+  public DataStoreService(String name, @NotNull SampleStoreFactory storeFactory) {
+    myStoreFactory = storeFactory;
     try {
       myServerBuilder = InProcessServerBuilder.forName(name);
       createPollers();
-      myServerBuilder.build().start();
+      myServer = myServerBuilder.build().start();
     }
     catch (IOException ex) {
       LOG.error(ex.getMessage());
@@ -60,9 +80,9 @@ public class DataStoreService {
   public void createPollers() {
     registerService(new ProfilerService(this));
     registerService(new EventDataPoller());
-    registerService(new CpuDataPoller());
-    registerService(new MemoryDataPoller(this));
-    registerService(new NetworkDataPoller());
+    registerService(new CpuDataPoller(myStoreFactory));
+    registerService(new MemoryDataPoller(this, myStoreFactory));
+    registerService(new NetworkDataPoller(myStoreFactory));
   }
 
   /**
@@ -85,6 +105,7 @@ public class DataStoreService {
       service.connectService(myChannel);
       RunnableFuture<Void> runner = service.getRunner();
       if (runner != null) {
+        myRunners.add(runner);
         ApplicationManager.getApplication().executeOnPooledThread(runner);
       }
     }
@@ -109,16 +130,66 @@ public class DataStoreService {
   }
 
   /**
-   * Disconnect the datastore from the connected device.
+   * Disconnect the datastore from the connected device. The runners polling the device are stopped, and waited for, first.
    */
   public void disconnect() {
-    // TODO: Shutdown service connections.
+    for (RunnableFuture<Void> runner : myRunners) {
+      runner.cancel(true);
+      try {
+        runner.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      catch (ExecutionException e) {
+        LOG.warn(e);
+      }
+    }
+    myRunners.clear();
     if (myChannel != null) {
       myChannel.shutdown();
     }
     myChannel = null;
   }
 
+  /**
+   * Disconnects from the device and stops serving the datastore. The datastore cannot be used afterwards.
+   */
+  public void shutdown() {
+    disconnect();
+    if (myServer != null) {
+      myServer.shutdownNow();
+    }
+  }
+
+  /**
+   * Saves all the data collected so far by the datastore services to a session file.
+   */
+  public void exportSession(@NotNull File file) throws IOException {
+    try (SessionFileWriter writer = new SessionFileWriter(new FileOutputStream(file))) {
+      for (ServicePassThrough service : myServices) {
+        if (service instanceof SessionRecordable) {
+          ((SessionRecordable)service).exportSession(writer);
+        }
+      }
+    }
+  }
+
+  /**
+   * Disconnects from the current device and loads a session file previously saved with {@link #exportSession(File)}. The data is then
+   * served through the same services as live data, so the profilers can open it without a device attached. The runners are stopped
+   * before any service is given the imported data, so nothing polls a service whose device connection is gone.
+   */
+  public void importSession(@NotNull File file) throws IOException {
+    SessionFileReader reader = new SessionFileReader(file);
+    disconnect();
+    for (ServicePassThrough service : myServices) {
+      if (service instanceof SessionRecordable) {
+        ((SessionRecordable)service).importSession(reader);
+      }
+    }
+  }
+
   /**
    * Since older releases of Android and uninstrumented apps will not have JVMTI allocation tracking, we therefore need to support the older
    * JDWP allocation tracking functionality.
@@ -16,18 +16,25 @@
 package com.android.tools.datastore.poller;
 
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.session.SessionFileReader;
+import com.android.tools.datastore.session.SessionFileWriter;
+import com.android.tools.datastore.session.SessionRecordable;
+import com.android.tools.datastore.store.SampleStore;
+import com.android.tools.datastore.store.SampleStoreFactory;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
 import com.android.tools.profiler.proto.Profiler;
 import com.android.tools.profiler.proto.ProfilerServiceGrpc;
 import com.google.protobuf3jarjar.ByteString;
 import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
 import io.grpc.ServerServiceDefinition;
 import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.RunnableFuture;
 
@@ -35,18 +42,25 @@ import java.util.concurrent.RunnableFuture;
  * This class gathers sets up a CPUProfilerService and forward all commands to the connected channel with the exception of getData.
  * The get data command will pull data locally cached from the connected service.
  */
-public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements ServicePassThrough, PollRunner.PollingCallback {
+public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase
+  implements ServicePassThrough, SessionRecordable,
+             StreamRunner.StreamingCallback<CpuProfiler.CpuDataRequest, CpuProfiler.CpuDataResponse> {
+
+  private static final MethodDescriptor<CpuProfiler.CpuDataRequest, CpuProfiler.CpuDataResponse> STREAM_DATA_METHOD =
+    StreamRunner.createStreamDataMethod(CpuServiceGrpc.SERVICE_NAME, CpuProfiler.CpuDataRequest.parser(),
+                                        CpuProfiler.CpuDataResponse.parser());
 
   private long myDataRequestStartTimestampNs = Long.MIN_VALUE;
+  private ManagedChannel myChannel;
   private CpuServiceGrpc.CpuServiceBlockingStub myPollingService;
+  private StreamRunner<CpuProfiler.CpuDataRequest, CpuProfiler.CpuDataResponse> myRunner;
 
   /**
    * Used to get device time.
    */
   private ProfilerServiceGrpc.ProfilerServiceBlockingStub myProfilerService;
 
-  //TODO Pull this into a storage container that can read/write this to disk
-  protected final List<CpuProfiler.CpuProfilerData> myData = new ArrayList<>();
+  protected final SampleStore<CpuProfiler.CpuProfilerData> myData;
   protected final Map<Integer, CpuProfiler.GetThreadsResponse.Thread.Builder> myThreads = new TreeMap<>();
   protected final Map<Integer, TraceData> myTraces = new HashMap<>();
 
@@ -56,12 +70,14 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
 
   private long myStartTraceTimestamp = -1;
 
-  public CpuDataPoller() {
+  public CpuDataPoller(@NotNull SampleStoreFactory storeFactory) {
+    myData = storeFactory.create("cpu", CpuProfiler.CpuProfilerData.parser());
   }
 
   @Override
   public RunnableFuture<Void> getRunner() {
-    return new PollRunner(this, PollRunner.POLLING_DELAY_NS);
+    myRunner = new StreamRunner<>(myChannel, STREAM_DATA_METHOD, this, PollRunner.POLLING_DELAY_NS);
+    return myRunner;
   }
 
   @Override
@@ -71,22 +87,32 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
 
   @Override
   public void connectService(ManagedChannel channel) {
+    myChannel = channel;
     myPollingService = CpuServiceGrpc.newBlockingStub(channel);
     myProfilerService = ProfilerServiceGrpc.newBlockingStub(channel);
   }
 
   @Override
   public void poll() throws StatusRuntimeException {
-    CpuProfiler.CpuDataRequest.Builder dataRequestBuilder = CpuProfiler.CpuDataRequest.newBuilder()
+    onData(myPollingService.getData(createStreamRequest()));
+  }
+
+  @NotNull
+  @Override
+  public CpuProfiler.CpuDataRequest createStreamRequest() {
+    return CpuProfiler.CpuDataRequest.newBuilder()
       .setAppId(myProcessId)
       .setStartTimestamp(myDataRequestStartTimestampNs)
-      .setEndTimestamp(Long.MAX_VALUE);
-    CpuProfiler.CpuDataResponse response = myPollingService.getData(dataRequestBuilder.build());
+      .setEndTimestamp(Long.MAX_VALUE)
+      .build();
+  }
 
+  @Override
+  public void onData(@NotNull CpuProfiler.CpuDataResponse response) {
     synchronized (myLock) {
       for (CpuProfiler.CpuProfilerData data : response.getDataList()) {
         myDataRequestStartTimestampNs = data.getBasicInfo().getEndTimestamp();
-        myData.add(data);
+        myData.append(myDataRequestStartTimestampNs, data);
         if (data.getDataCase() == CpuProfiler.CpuProfilerData.DataCase.THREAD_ACTIVITIES) {
           CpuProfiler.ThreadActivities activities = data.getThreadActivities();
           if (activities != null) {
@@ -121,15 +147,7 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
     long startTime = request.getStartTimestamp();
     long endTime = request.getEndTimestamp();
 
-    //TODO: Optimize so we do not need to loop all the data every request, ideally binary search to start time and loop till end.
-    synchronized (myLock) {
-      for (CpuProfiler.CpuProfilerData data : myData) {
-        long current = data.getBasicInfo().getEndTimestamp();
-        if (current > startTime && current <= endTime) {
-          response.addData(data);
-        }
-      }
-    }
+    response.addAllData(myData.getRange(startTime, endTime));
     observer.onNext(response.build());
     observer.onCompleted();
   }
@@ -175,6 +193,12 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
 
   @Override
   public void startMonitoringApp(CpuProfiler.CpuStartRequest request, StreamObserver<CpuProfiler.CpuStartResponse> observer) {
+    if (myPollingService == null) {
+      // Replaying an imported session, there is no device to forward to and all the data is already here.
+      observer.onNext(CpuProfiler.CpuStartResponse.getDefaultInstance());
+      observer.onCompleted();
+      return;
+    }
     myProcessId = request.getAppId();
     synchronized (myLock) {
       myThreads.clear();
@@ -182,10 +206,19 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
     }
     observer.onNext(myPollingService.startMonitoringApp(request));
     observer.onCompleted();
+    // Subscribe again now that we know which app to ask data for.
+    if (myRunner != null) {
+      myRunner.restart();
+    }
   }
 
   @Override
   public void stopMonitoringApp(CpuProfiler.CpuStopRequest request, StreamObserver<CpuProfiler.CpuStopResponse> observer) {
+    if (myPollingService == null) {
+      observer.onNext(CpuProfiler.CpuStopResponse.getDefaultInstance());
+      observer.onCompleted();
+      return;
+    }
     myProcessId = -1;
     observer.onNext(myPollingService.stopMonitoringApp(request));
     observer.onCompleted();
@@ -227,6 +260,41 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
     observer.onCompleted();
   }
 
+  @Override
+  public void exportSession(@NotNull SessionFileWriter writer) throws IOException {
+    writer.writeSeries("cpu.data", myData.getRange(Long.MIN_VALUE, Long.MAX_VALUE), data -> data.getBasicInfo().getEndTimestamp());
+    List<CpuProfiler.TraceInfo> traceInfos = new ArrayList<>();
+    Map<Long, ByteString> traceData = new LinkedHashMap<>();
+    for (TraceData trace : myTraces.values()) {
+      traceInfos.add(trace.getTrace());
+      traceData.put((long)trace.getTrace().getTraceId(), trace.getData());
+    }
+    writer.writeSeries("cpu.traces", traceInfos, CpuProfiler.TraceInfo::getTraceId);
+    writer.writeBlobs("cpu.trace_data", traceData);
+  }
+
+  @Override
+  public void importSession(@NotNull SessionFileReader reader) throws IOException {
+    myPollingService = null;
+    myProfilerService = null;
+    myProcessId = -1;
+    synchronized (myLock) {
+      myThreads.clear();
+      myData.clear();
+    }
+    // Go through the same path as data coming from the device, so the thread states get rebuilt as well.
+    onData(CpuProfiler.CpuDataResponse.newBuilder().addAllData(reader.readSeries("cpu.data", CpuProfiler.CpuProfilerData.parser())).build());
+
+    myTraces.clear();
+    Map<Long, ByteString> traceData = reader.readBlobs("cpu.trace_data");
+    for (CpuProfiler.TraceInfo info : reader.readSeries("cpu.traces", CpuProfiler.TraceInfo.parser())) {
+      ByteString data = traceData.get((long)info.getTraceId());
+      if (data != null) {
+        myTraces.put(info.getTraceId(), new TraceData(info.getTraceId(), info.getFromTimestamp(), info.getToTimestamp(), data));
+      }
+    }
+  }
+
   private long getCurrentDeviceTimeNs() {
    return myProfilerService.getTimes(Profiler.TimesRequest.getDefaultInstance()).getTimestampNs();
   }
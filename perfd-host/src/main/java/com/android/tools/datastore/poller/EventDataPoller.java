@@ -16,13 +16,19 @@
 package com.android.tools.datastore.poller;
 
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.session.SessionFileReader;
+import com.android.tools.datastore.session.SessionFileWriter;
+import com.android.tools.datastore.session.SessionRecordable;
 import com.android.tools.profiler.proto.EventProfiler;
 import com.android.tools.profiler.proto.EventServiceGrpc;
 import io.grpc.ManagedChannel;
 import io.grpc.ServerServiceDefinition;
 import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
+import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
@@ -34,7 +40,8 @@ import java.util.concurrent.RunnableFuture;
  * This class host an EventService that will provide callers access to all cached EventData. The data is populated from polling the service
  * passed into the connectService function.
  */
-public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase implements ServicePassThrough, PollRunner.PollingCallback {
+public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase
+  implements ServicePassThrough, SessionRecordable, PollRunner.PollingCallback {
 
   private long myDataRequestStartTimestampNs = Long.MIN_VALUE;
   private EventServiceGrpc.EventServiceBlockingStub myEventPollingService;
@@ -161,6 +168,12 @@ public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase imple
 
   @Override
   public void startMonitoringApp(EventProfiler.EventStartRequest request, StreamObserver<EventProfiler.EventStartResponse> observer) {
+    if (myEventPollingService == null) {
+      // Replaying an imported session, there is no device to forward to and all the data is already here.
+      observer.onNext(EventProfiler.EventStartResponse.getDefaultInstance());
+      observer.onCompleted();
+      return;
+    }
     myProcessId = request.getAppId();
     observer.onNext(myEventPollingService.startMonitoringApp(request));
     observer.onCompleted();
@@ -168,11 +181,40 @@ public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase imple
 
   @Override
   public void stopMonitoringApp(EventProfiler.EventStopRequest request, StreamObserver<EventProfiler.EventStopResponse> observer) {
+    if (myEventPollingService == null) {
+      observer.onNext(EventProfiler.EventStopResponse.getDefaultInstance());
+      observer.onCompleted();
+      return;
+    }
     myProcessId = -1;
     observer.onNext(myEventPollingService.stopMonitoringApp(request));
     observer.onCompleted();
   }
 
+  @Override
+  public void exportSession(@NotNull SessionFileWriter writer) throws IOException {
+    synchronized (myActivityLock) {
+      writer.writeSeries("event.activities", new ArrayList<>(myActivityDataMap.values()), EventProfiler.ActivityData::getHash);
+    }
+    synchronized (mySystemDataLock) {
+      writer.writeSeries("event.system", new ArrayList<>(mySystemMap.values()), EventProfiler.SystemData::getEventId);
+    }
+  }
+
+  @Override
+  public void importSession(@NotNull SessionFileReader reader) throws IOException {
+    myEventPollingService = null;
+    myProcessId = -1;
+    synchronized (myActivityLock) {
+      myActivityDataMap.clear();
+      reader.readSeries("event.activities", EventProfiler.ActivityData.parser()).forEach(data -> myActivityDataMap.put(data.getHash(), data));
+    }
+    synchronized (mySystemDataLock) {
+      mySystemMap.clear();
+      reader.readSeries("event.system", EventProfiler.SystemData.parser()).forEach(data -> mySystemMap.put(data.getEventId(), data));
+    }
+  }
+
   @Override
   public ServerServiceDefinition getService() {
     return bindService();
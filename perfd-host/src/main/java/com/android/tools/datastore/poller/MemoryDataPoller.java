@@ -19,39 +19,58 @@ import com.android.tools.adtui.model.DurationData;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.LegacyAllocationTrackingService;
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.session.SessionFileReader;
+import com.android.tools.datastore.session.SessionFileWriter;
+import com.android.tools.datastore.session.SessionRecordable;
+import com.android.tools.datastore.store.SampleStore;
+import com.android.tools.datastore.store.SampleStoreFactory;
 import com.android.tools.profiler.proto.MemoryProfiler.*;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.AllocationEvent;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.AllocationsInfo;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.MemorySample;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.VmStatsSample;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
+import com.google.common.io.ByteStreams;
 import com.google.protobuf3jarjar.ByteString;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
 import io.grpc.ServerServiceDefinition;
 import io.grpc.stub.StreamObserver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.*;
 import java.util.*;
 import java.util.concurrent.RunnableFuture;
 
 import static com.android.tools.profiler.proto.MemoryProfiler.TrackAllocationsResponse.Status.SUCCESS;
 
-public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase implements ServicePassThrough, PollRunner.PollingCallback {
+public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase
+  implements ServicePassThrough, SessionRecordable, StreamRunner.StreamingCallback<MemoryRequest, MemoryData> {
+  private static final MethodDescriptor<MemoryRequest, MemoryData> STREAM_DATA_METHOD =
+    StreamRunner.createStreamDataMethod(MemoryServiceGrpc.SERVICE_NAME, MemoryRequest.parser(), MemoryData.parser());
+
+  private static Logger getLog() { return Logger.getInstance(MemoryDataPoller.class); }
+
   private final LegacyAllocationTrackingService myLegacyAllocationTrackingService;
 
   private long myDataRequestStartTimestampNs = Long.MIN_VALUE;
 
+  private ManagedChannel myChannel;
+
   private MemoryServiceGrpc.MemoryServiceBlockingStub myPollingService;
 
-  //TODO: Pull this into a storage container that can read/write this to disk
+  private StreamRunner<MemoryRequest, MemoryData> myRunner;
+
   //TODO: Rename MemoryData to MemoryProfilerData for consistency
   //TODO: Do these needs to be synchronized?
-  protected final List<MemorySample> myMemoryData = new ArrayList<>();
-  protected final List<VmStatsSample> myStatsData = new ArrayList<>();
+  protected final SampleStore<MemorySample> myMemoryData;
+  protected final SampleStore<VmStatsSample> myStatsData;
   protected final List<HeapDumpSample> myHeapData = new ArrayList<>();
-  protected final List<AllocationEvent> myAllocationEvents = new ArrayList<>();
+  protected final SampleStore<AllocationEvent> myAllocationEvents;
   protected final List<AllocationsInfo> myAllocationsInfos = new ArrayList<>();
   protected final Map<String, AllocatedClass> myAllocatedClasses = new HashMap<>();
   protected final Map<ByteString, AllocationStack> myAllocationStacks = new HashMap<>();
@@ -63,13 +82,17 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
 
   private int myProcessId = -1;
 
-  public MemoryDataPoller(@NotNull DataStoreService dataStoreService) {
+  public MemoryDataPoller(@NotNull DataStoreService dataStoreService, @NotNull SampleStoreFactory storeFactory) {
     myLegacyAllocationTrackingService = new LegacyAllocationTrackingService(dataStoreService::getLegacyAllocationTracker);
+    myMemoryData = storeFactory.create("memory", MemorySample.parser());
+    myStatsData = storeFactory.create("vmstats", VmStatsSample.parser());
+    myAllocationEvents = storeFactory.create("allocations", AllocationEvent.parser());
   }
 
   @Override
   public RunnableFuture<Void> getRunner() {
-    return new PollRunner(this, PollRunner.POLLING_DELAY_NS);
+    myRunner = new StreamRunner<>(myChannel, STREAM_DATA_METHOD, this, PollRunner.POLLING_DELAY_NS);
+    return myRunner;
   }
 
   @Override
@@ -79,23 +102,40 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
 
   @Override
   public void connectService(ManagedChannel channel) {
+    myChannel = channel;
     myPollingService = MemoryServiceGrpc.newBlockingStub(channel);
   }
 
   @Override
   public void startMonitoringApp(MemoryStartRequest request, StreamObserver<MemoryStartResponse> observer) {
+    if (myPollingService == null) {
+      // Replaying an imported session, there is no device to forward to and all the data is already here.
+      observer.onNext(MemoryStartResponse.getDefaultInstance());
+      observer.onCompleted();
+      return;
+    }
     synchronized (myUpdatingDataLock) {
       myMemoryData.clear();
       myStatsData.clear();
+      myHeapData.forEach(HeapDumpSample::evict);
       myHeapData.clear();
     }
     myProcessId = request.getAppId();
     observer.onNext(myPollingService.startMonitoringApp(request));
     observer.onCompleted();
+    // Subscribe again now that we know which app to ask data for.
+    if (myRunner != null) {
+      myRunner.restart();
+    }
   }
 
   @Override
   public void stopMonitoringApp(MemoryStopRequest request, StreamObserver<MemoryStopResponse> observer) {
+    if (myPollingService == null) {
+      observer.onNext(MemoryStopResponse.getDefaultInstance());
+      observer.onCompleted();
+      return;
+    }
     myProcessId = -1;
     observer.onNext(myPollingService.stopMonitoringApp(request));
     observer.onCompleted();
@@ -110,6 +150,7 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
   @Override
   public void getHeapDump(HeapDumpDataRequest request, StreamObserver<DumpDataResponse> responseObserver) {
     DumpDataResponse.Builder responseBuilder = DumpDataResponse.newBuilder();
+    File file = null;
     synchronized (myUpdatingDataLock) {
       int index = Collections
         .binarySearch(myHeapData, new HeapDumpSample(request.getDumpId()), (o1, o2) -> o1.myInfo.getDumpId() - o2.myInfo.getDumpId());
@@ -122,17 +163,24 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
           responseBuilder.setStatus(DumpDataResponse.Status.FAILURE_UNKNOWN);
         }
         else {
-          ByteString data = dump.myData;
-          if (data == null) {
+          file = dump.myFile;
+          if (file == null) {
             responseBuilder.setStatus(DumpDataResponse.Status.NOT_READY);
           }
-          else {
-            responseBuilder.setStatus(DumpDataResponse.Status.SUCCESS);
-            responseBuilder.setData(data);
-          }
         }
       }
     }
+    if (file != null) {
+      // Read the dump outside of the lock, it can be hundreds of megabytes.
+      try {
+        responseBuilder.setData(loadHeapDump(file));
+        responseBuilder.setStatus(DumpDataResponse.Status.SUCCESS);
+      }
+      catch (IOException e) {
+        getLog().warn("Failed to read heap dump " + request.getDumpId(), e);
+        responseBuilder.setStatus(DumpDataResponse.Status.FAILURE_UNKNOWN);
+      }
+    }
     responseObserver.onNext(responseBuilder.build());
     responseObserver.onCompleted();
   }
@@ -168,7 +216,7 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
             synchronized (myUpdatingDataLock) {
               classes.forEach(allocatedClass -> myAllocatedClasses.putIfAbsent(allocatedClass.getClassName(), allocatedClass));
               stacks.forEach(allocationStack -> myAllocationStacks.putIfAbsent(allocationStack.getStackId(), allocationStack));
-              allocations.forEach(myAllocationEvents::add);
+              allocations.forEach(event -> myAllocationEvents.append(event.getTimestamp(), event));
             }
           });
       }
@@ -193,19 +241,16 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
     long startTime = request.getStartTime();
     long endTime = request.getEndTime();
 
-    //TODO: Optimize so we do not need to loop over all the data every request, ideally binary search to start time and loop till end.
+    response.addAllMemSamples(myMemoryData.getRange(startTime, endTime));
+    response.addAllVmStatsSamples(myStatsData.getRange(startTime, endTime));
+    response.addAllAllocationEvents(myAllocationEvents.getRange(startTime, endTime));
     synchronized (myUpdatingDataLock) {
-      myMemoryData.stream().filter(obj -> obj.getTimestamp() > startTime && obj.getTimestamp() <= endTime).forEach(response::addMemSamples);
-      myStatsData.stream().filter(obj -> obj.getTimestamp() > startTime && obj.getTimestamp() <= endTime)
-        .forEach(response::addVmStatsSamples);
       myHeapData.stream().filter(obj -> (obj.myInfo.getStartTime() > startTime && obj.myInfo.getStartTime() <= endTime) ||
                                         (obj.myInfo.getEndTime() > startTime && obj.myInfo.getEndTime() <= endTime))
         .forEach(obj -> response.addHeapDumpInfos(obj.myInfo));
       myAllocationsInfos.stream().filter(info -> (info.getStartTime() > startTime && info.getStartTime() <= endTime) ||
                                                  (info.getEndTime() > startTime && info.getEndTime() <= endTime))
         .forEach(response::addAllocationsInfo);
-      myAllocationEvents.stream().filter(event -> event.getTimestamp() > startTime && event.getTimestamp() <= endTime)
-        .forEach(response::addAllocationEvents);
     }
     responseObserver.onNext(response.build());
     responseObserver.onCompleted();
@@ -213,16 +258,25 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
 
   @Override
   public void poll() {
-    MemoryRequest.Builder dataRequestBuilder = MemoryRequest.newBuilder()
+    onData(myPollingService.getData(createStreamRequest()));
+  }
+
+  @NotNull
+  @Override
+  public MemoryRequest createStreamRequest() {
+    return MemoryRequest.newBuilder()
       .setAppId(myProcessId)
       .setStartTime(myDataRequestStartTimestampNs)
-      .setEndTime(Long.MAX_VALUE);
-    MemoryData response = myPollingService.getData(dataRequestBuilder.build());
+      .setEndTime(Long.MAX_VALUE)
+      .build();
+  }
 
+  @Override
+  public void onData(@NotNull MemoryData response) {
     synchronized (myUpdatingDataLock) {
-      myMemoryData.addAll(response.getMemSamplesList());
-      myStatsData.addAll(response.getVmStatsSamplesList());
-      myAllocationEvents.addAll(response.getAllocationEventsList());
+      response.getMemSamplesList().forEach(sample -> myMemoryData.append(sample.getTimestamp(), sample));
+      response.getVmStatsSamplesList().forEach(sample -> myStatsData.append(sample.getTimestamp(), sample));
+      response.getAllocationEventsList().forEach(event -> myAllocationEvents.append(event.getTimestamp(), event));
 
       if (response.getAllocationsInfoCount() > 0) {
         int startAppendIndex = 0;
@@ -271,9 +325,22 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
           for (HeapDumpSample sample : dumpsToFetch) {
             DumpDataResponse dumpDataResponse = myPollingService.getHeapDump(
               HeapDumpDataRequest.newBuilder().setAppId(myProcessId).setDumpId(sample.myInfo.getDumpId()).build());
+            File file = null;
+            if (dumpDataResponse.getStatus() == DumpDataResponse.Status.SUCCESS) {
+              try {
+                file = saveHeapDump(sample.myInfo.getDumpId(), dumpDataResponse.getData().newInput());
+              }
+              catch (IOException e) {
+                getLog().warn("Failed to save heap dump " + sample.myInfo.getDumpId(), e);
+              }
+            }
             synchronized (myUpdatingDataLock) {
-              if (dumpDataResponse.getStatus() == DumpDataResponse.Status.SUCCESS) {
-                sample.myData = dumpDataResponse.getData();
+              if (file != null && sample.isEvicted) {
+                // The sample was dropped while its dump was being fetched.
+                FileUtil.delete(file);
+              }
+              else if (file != null) {
+                sample.myFile = file;
               }
               else {
                 sample.isError = true;
@@ -288,6 +355,69 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
     }
   }
 
+  @Override
+  public void exportSession(@NotNull SessionFileWriter writer) throws IOException {
+    writer.writeSeries("memory.samples", myMemoryData.getRange(Long.MIN_VALUE, Long.MAX_VALUE), MemorySample::getTimestamp);
+    writer.writeSeries("memory.vm_stats", myStatsData.getRange(Long.MIN_VALUE, Long.MAX_VALUE), VmStatsSample::getTimestamp);
+    writer.writeSeries("memory.allocation_events", myAllocationEvents.getRange(Long.MIN_VALUE, Long.MAX_VALUE),
+                       AllocationEvent::getTimestamp);
+
+    List<HeapDumpInfo> heapDumpInfos = new ArrayList<>();
+    Map<Long, File> heapDumpFiles = new LinkedHashMap<>();
+    synchronized (myUpdatingDataLock) {
+      writer.writeSeries("memory.allocations_infos", myAllocationsInfos, AllocationsInfo::getStartTime);
+      writer.writeSeries("memory.allocated_classes", myAllocatedClasses.values(), AllocatedClass::getClassId);
+      List<AllocationStack> stacks = new ArrayList<>(myAllocationStacks.values());
+      stacks.sort(Comparator.comparingLong(MemoryDataPoller::getStackKey));
+      writer.writeSeries("memory.allocation_stacks", stacks, MemoryDataPoller::getStackKey);
+      for (HeapDumpSample sample : myHeapData) {
+        heapDumpInfos.add(sample.myInfo);
+        File file = sample.myFile;
+        if (file != null) {
+          heapDumpFiles.put((long)sample.myInfo.getDumpId(), file);
+        }
+      }
+    }
+    writer.writeSeries("memory.heap_dumps", heapDumpInfos, HeapDumpInfo::getDumpId);
+    writer.writeFiles("memory.heap_dump_data", heapDumpFiles);
+  }
+
+  @Override
+  public void importSession(@NotNull SessionFileReader reader) throws IOException {
+    myPollingService = null;
+    myProcessId = -1;
+    myMemoryData.clear();
+    myStatsData.clear();
+    myAllocationEvents.clear();
+    reader.readSeries("memory.samples", MemorySample.parser()).forEach(sample -> myMemoryData.append(sample.getTimestamp(), sample));
+    reader.readSeries("memory.vm_stats", VmStatsSample.parser()).forEach(sample -> myStatsData.append(sample.getTimestamp(), sample));
+    reader.readSeries("memory.allocation_events", AllocationEvent.parser())
+      .forEach(event -> myAllocationEvents.append(event.getTimestamp(), event));
+
+    Map<Long, File> heapDumpFiles = new HashMap<>();
+    reader.readBlobs("memory.heap_dump_data", (dumpId, stream) -> heapDumpFiles.put(dumpId, saveHeapDump((int)dumpId, stream)));
+    synchronized (myUpdatingDataLock) {
+      myAllocationsInfos.clear();
+      myAllocationsInfos.addAll(reader.readSeries("memory.allocations_infos", AllocationsInfo.parser()));
+      myAllocatedClasses.clear();
+      reader.readSeries("memory.allocated_classes", AllocatedClass.parser())
+        .forEach(allocatedClass -> myAllocatedClasses.put(allocatedClass.getClassName(), allocatedClass));
+      myAllocationStacks.clear();
+      reader.readSeries("memory.allocation_stacks", AllocationStack.parser())
+        .forEach(allocationStack -> myAllocationStacks.put(allocationStack.getStackId(), allocationStack));
+      myHeapData.forEach(HeapDumpSample::evict);
+      myHeapData.clear();
+      myPendingHeapDumpSample = null;
+      for (HeapDumpInfo info : reader.readSeries("memory.heap_dumps", HeapDumpInfo.parser())) {
+        HeapDumpSample sample = new HeapDumpSample(info);
+        sample.myFile = heapDumpFiles.get((long)info.getDumpId());
+        // Dumps that were still in flight when the session was exported will never complete.
+        sample.isError = sample.myFile == null;
+        myHeapData.add(sample);
+      }
+    }
+  }
+
   private static int compareTimes(long left, long right) {
     if (left == DurationData.UNSPECIFIED_DURATION) {
       return 1;
@@ -301,10 +431,46 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
     }
   }
 
+  /**
+   * Heap dumps are kept on disk rather than in memory, they can be hundreds of megabytes each.
+   */
+  @NotNull
+  private static File saveHeapDump(int dumpId, @NotNull InputStream data) throws IOException {
+    File file = FileUtil.createTempFile("perfd-heapdump-" + dumpId, ".hprof", true);
+    try (OutputStream stream = new FileOutputStream(file)) {
+      ByteStreams.copy(data, stream);
+    }
+    catch (IOException e) {
+      FileUtil.delete(file);
+      throw e;
+    }
+    return file;
+  }
+
+  /**
+   * Returns a key for the given stack in a session file. Stack ids are hashes of the frames, so their first bytes identify the stack.
+   */
+  private static long getStackKey(@NotNull AllocationStack stack) {
+    ByteString id = stack.getStackId();
+    long key = 0;
+    for (int i = 0; i < Math.min(id.size(), Long.BYTES); i++) {
+      key = (key << 8) | (id.byteAt(i) & 0xFF);
+    }
+    return key;
+  }
+
+  @NotNull
+  private static ByteString loadHeapDump(@NotNull File file) throws IOException {
+    try (InputStream stream = new FileInputStream(file)) {
+      return ByteString.readFrom(stream);
+    }
+  }
+
   private static class HeapDumpSample {
     @NotNull public HeapDumpInfo myInfo;
-    @Nullable public volatile ByteString myData = null;
+    @Nullable public volatile File myFile = null;
     public volatile boolean isError = false;
+    private boolean isEvicted = false;
 
     private HeapDumpSample(@NotNull HeapDumpInfo info) {
       myInfo = info;
@@ -313,5 +479,16 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
     public HeapDumpSample(int id) {
       myInfo = HeapDumpInfo.newBuilder().setDumpId(id).build();
     }
+
+    /**
+     * Called when the sample is dropped, to delete its dump from the disk. A dump that is still being fetched is deleted once saved.
+     */
+    private void evict() {
+      isEvicted = true;
+      if (myFile != null) {
+        FileUtil.delete(myFile);
+        myFile = null;
+      }
+    }
   }
 }
\ No newline at end of file
@@ -16,6 +16,11 @@
 package com.android.tools.datastore.poller;
 
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.session.SessionFileReader;
+import com.android.tools.datastore.session.SessionFileWriter;
+import com.android.tools.datastore.session.SessionRecordable;
+import com.android.tools.datastore.store.SampleStore;
+import com.android.tools.datastore.store.SampleStoreFactory;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
 import io.grpc.ManagedChannel;
@@ -24,11 +29,12 @@ import io.grpc.stub.StreamObserver;
 import net.jcip.annotations.GuardedBy;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.RunnableFuture;
 
-// TODO: Implement a storage container that can read/write data to disk
-public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase implements ServicePassThrough, PollRunner.PollingCallback {
+public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
+  implements ServicePassThrough, SessionRecordable, PollRunner.PollingCallback {
   // Intentionally accessing this field out of sync block because it's OK for it to be o
   // off by a frame; we'll pick up all data eventually
   @SuppressWarnings("FieldAccessedSynchronizedAndUnsynchronized")
@@ -38,10 +44,11 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
   private int myProcessId = -1;
 
   private final Object myLock = new Object();
-  @GuardedBy("myLock") private final List<NetworkProfiler.NetworkProfilerData> myData = new ArrayList<>();
+  private final SampleStore<NetworkProfiler.NetworkProfilerData> myData;
   @GuardedBy("myLock") private final Map<Long, ConnectionData> myConnectionData = new LinkedHashMap<>();
 
-  public NetworkDataPoller() {
+  public NetworkDataPoller(@NotNull SampleStoreFactory storeFactory) {
+    myData = storeFactory.create("network", NetworkProfiler.NetworkProfilerData.parser());
   }
 
   @Override
@@ -63,39 +70,34 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
   public void getData(NetworkProfiler.NetworkDataRequest request, StreamObserver<NetworkProfiler.NetworkDataResponse> responseObserver) {
     NetworkProfiler.NetworkDataResponse.Builder response = NetworkProfiler.NetworkDataResponse.newBuilder();
 
-    //TODO: Optimize so we do not need to loop all the data every request, ideally binary search to start time and loop till end.
-    synchronized (myLock) {
-      if (myData.size() == 0) {
-        responseObserver.onNext(response.build());
-        responseObserver.onCompleted();
-        return;
-      }
-
-      long startTime = request.getStartTimestamp();
-      long endTime = request.getEndTimestamp();
+    long startTime = request.getStartTimestamp();
+    long endTime = request.getEndTimestamp();
 
-      for (NetworkProfiler.NetworkProfilerData data : myData) {
-        long current = data.getBasicInfo().getEndTimestamp();
-        if (current > startTime && current <= endTime) {
-          if ((request.getType() == NetworkProfiler.NetworkDataRequest.Type.ALL) ||
-              (request.getType() == NetworkProfiler.NetworkDataRequest.Type.SPEED &&
-               data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.SPEED_DATA) ||
-              (request.getType() == NetworkProfiler.NetworkDataRequest.Type.CONNECTIONS &&
-               data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTION_DATA) ||
-              (request.getType() == NetworkProfiler.NetworkDataRequest.Type.CONNECTIVITY &&
-               data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTIVITY_DATA)) {
-            response.addData(data);
-          }
-        }
+    // The store can be read while the poller is appending to it, so we don't need to hold myLock here.
+    for (NetworkProfiler.NetworkProfilerData data : myData.getRange(startTime, endTime)) {
+      if ((request.getType() == NetworkProfiler.NetworkDataRequest.Type.ALL) ||
+          (request.getType() == NetworkProfiler.NetworkDataRequest.Type.SPEED &&
+           data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.SPEED_DATA) ||
+          (request.getType() == NetworkProfiler.NetworkDataRequest.Type.CONNECTIONS &&
+           data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTION_DATA) ||
+          (request.getType() == NetworkProfiler.NetworkDataRequest.Type.CONNECTIVITY &&
+           data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTIVITY_DATA)) {
+        response.addData(data);
       }
-      responseObserver.onNext(response.build());
-      responseObserver.onCompleted();
     }
+    responseObserver.onNext(response.build());
+    responseObserver.onCompleted();
   }
 
   @Override
   public void startMonitoringApp(NetworkProfiler.NetworkStartRequest request,
                                  StreamObserver<NetworkProfiler.NetworkStartResponse> responseObserver) {
+    if (myPollingService == null) {
+      // Replaying an imported session, there is no device to forward to and all the data is already here.
+      responseObserver.onNext(NetworkProfiler.NetworkStartResponse.getDefaultInstance());
+      responseObserver.onCompleted();
+      return;
+    }
 
     synchronized (myLock) {
       myData.clear();
@@ -110,6 +112,11 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
   @Override
   public void stopMonitoringApp(NetworkProfiler.NetworkStopRequest request,
                                 StreamObserver<NetworkProfiler.NetworkStopResponse> responseObserver) {
+    if (myPollingService == null) {
+      responseObserver.onNext(NetworkProfiler.NetworkStopResponse.getDefaultInstance());
+      responseObserver.onCompleted();
+      return;
+    }
     myProcessId = -1;
     responseObserver.onNext(myPollingService.stopMonitoringApp(request));
     responseObserver.onCompleted();
@@ -147,13 +154,19 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
       ConnectionData details = myConnectionData.get(request.getConnId());
       switch (request.getType()) {
         case REQUEST:
-          response.setRequest(details.myRequest);
+          if (details != null && details.myRequest != null) {
+            response.setRequest(details.myRequest);
+          }
           break;
         case RESPONSE:
-          response.setResponse(details.myResponse);
+          if (details != null && details.myResponse != null) {
+            response.setResponse(details.myResponse);
+          }
           break;
         case RESPONSE_BODY:
-          response.setResponseBody(details.myResponseBody);
+          if (details != null && details.myResponseBody != null) {
+            response.setResponseBody(details.myResponseBody);
+          }
           break;
         default:
           assert false : "Unsupported request type " + request.getType();
@@ -189,10 +202,11 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
     synchronized (myLock) {
       for (NetworkProfiler.NetworkProfilerData data : response.getDataList()) {
         myDataRequestStartTimestampNs = data.getBasicInfo().getEndTimestamp();
-        myData.add(data);
+        myData.append(myDataRequestStartTimestampNs, data);
       }
-      pollHttpRange();
     }
+    // The connection details are fetched from the device without holding myLock, so that queries from studio are not blocked by them.
+    pollHttpRange();
   }
 
   private void pollHttpRange() {
@@ -202,53 +216,107 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
       .setEndTimestamp(Long.MAX_VALUE);
     NetworkProfiler.HttpRangeResponse response = myPollingService.getHttpRange(requestBuilder.build());
 
-    synchronized (myLock) {
-      for (NetworkProfiler.HttpConnectionData data : response.getDataList()) {
-        myHttpRangeRequestStartTimeNs = Math.max(myHttpRangeRequestStartTimeNs, data.getStartTimestamp() + 1);
-        myHttpRangeRequestStartTimeNs = Math.max(myHttpRangeRequestStartTimeNs, data.getEndTimestamp() + 1);
+    for (NetworkProfiler.HttpConnectionData data : response.getDataList()) {
+      myHttpRangeRequestStartTimeNs = Math.max(myHttpRangeRequestStartTimeNs, data.getStartTimestamp() + 1);
+      myHttpRangeRequestStartTimeNs = Math.max(myHttpRangeRequestStartTimeNs, data.getEndTimestamp() + 1);
 
-        if (!myConnectionData.containsKey(data.getConnId())) {
-          myConnectionData.put(data.getConnId(), new ConnectionData(data));
-          pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.REQUEST);
-        } else {
-          myConnectionData.get(data.getConnId()).myCommonData = data;
+      // Details never change once known, so only the ones still missing are fetched.
+      ConnectionData known;
+      synchronized (myLock) {
+        known = myConnectionData.get(data.getConnId());
+      }
+      ConnectionData connection = new ConnectionData(data);
+      if (known != null) {
+        connection.myRequest = known.myRequest;
+        connection.myResponse = known.myResponse;
+        connection.myResponseBody = known.myResponseBody;
+      }
+      if (connection.myRequest == null) {
+        connection.myRequest = pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.REQUEST).getRequest();
+      }
+      if (data.getEndTimestamp() != 0) {
+        if (connection.myResponse == null) {
+          connection.myResponse = pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.RESPONSE).getResponse();
         }
-
-        if (data.getEndTimestamp() != 0) {
-          pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.RESPONSE);
-          pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.RESPONSE_BODY);
+        if (connection.myResponseBody == null) {
+          connection.myResponseBody =
+            pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.RESPONSE_BODY).getResponseBody();
         }
       }
+
+      // The connection and its details are published together, so that studio never sees a connection without the details it needs.
+      synchronized (myLock) {
+        myConnectionData.put(data.getConnId(), connection);
+      }
     }
   }
 
-  private void pollHttpDetails(long connectionId, NetworkProfiler.HttpDetailsRequest.Type type) {
+  @NotNull
+  private NetworkProfiler.HttpDetailsResponse pollHttpDetails(long connectionId, @NotNull NetworkProfiler.HttpDetailsRequest.Type type) {
     NetworkProfiler.HttpDetailsRequest request = NetworkProfiler.HttpDetailsRequest.newBuilder()
       .setConnId(connectionId)
       .setType(type)
       .build();
-    NetworkProfiler.HttpDetailsResponse response = myPollingService.getHttpDetails(request);
+    return myPollingService.getHttpDetails(request);
+  }
 
+  @Override
+  public void exportSession(@NotNull SessionFileWriter writer) throws IOException {
+    writer.writeSeries("network.data", myData.getRange(Long.MIN_VALUE, Long.MAX_VALUE), data -> data.getBasicInfo().getEndTimestamp());
+    List<NetworkProfiler.HttpConnectionData> connections = new ArrayList<>();
+    Map<Long, NetworkProfiler.HttpDetailsResponse.Request> requests = new LinkedHashMap<>();
+    Map<Long, NetworkProfiler.HttpDetailsResponse.Response> responses = new LinkedHashMap<>();
+    Map<Long, NetworkProfiler.HttpDetailsResponse.Body> responseBodies = new LinkedHashMap<>();
     synchronized (myLock) {
-      ConnectionData data = myConnectionData.get(connectionId);
-      switch (type) {
-        case REQUEST:
-          data.myRequest = response.getRequest();
-          break;
-        case RESPONSE:
-          data.myResponse = response.getResponse();
-          break;
-        case RESPONSE_BODY:
-          data.myResponseBody = response.getResponseBody();
-          break;
-        default:
-          assert false : "Unsupported response type " + type;
+      for (Map.Entry<Long, ConnectionData> entry : myConnectionData.entrySet()) {
+        ConnectionData data = entry.getValue();
+        connections.add(data.myCommonData);
+        if (data.myRequest != null) {
+          requests.put(entry.getKey(), data.myRequest);
+        }
+        if (data.myResponse != null) {
+          responses.put(entry.getKey(), data.myResponse);
+        }
+        if (data.myResponseBody != null) {
+          responseBodies.put(entry.getKey(), data.myResponseBody);
+        }
+      }
+    }
+    writer.writeSeries("network.http_connections", connections, NetworkProfiler.HttpConnectionData::getStartTimestamp);
+    writer.writeSeries("network.http_requests", requests);
+    writer.writeSeries("network.http_responses", responses);
+    writer.writeSeries("network.http_response_bodies", responseBodies);
+  }
+
+  @Override
+  public void importSession(@NotNull SessionFileReader reader) throws IOException {
+    myPollingService = null;
+    myProcessId = -1;
+    Map<Long, NetworkProfiler.HttpDetailsResponse.Request> requests =
+      reader.readKeyedSeries("network.http_requests", NetworkProfiler.HttpDetailsResponse.Request.parser());
+    Map<Long, NetworkProfiler.HttpDetailsResponse.Response> responses =
+      reader.readKeyedSeries("network.http_responses", NetworkProfiler.HttpDetailsResponse.Response.parser());
+    Map<Long, NetworkProfiler.HttpDetailsResponse.Body> responseBodies =
+      reader.readKeyedSeries("network.http_response_bodies", NetworkProfiler.HttpDetailsResponse.Body.parser());
+    synchronized (myLock) {
+      myData.clear();
+      for (NetworkProfiler.NetworkProfilerData data : reader.readSeries("network.data", NetworkProfiler.NetworkProfilerData.parser())) {
+        myData.append(data.getBasicInfo().getEndTimestamp(), data);
+      }
+      myConnectionData.clear();
+      for (NetworkProfiler.HttpConnectionData connection : reader
+        .readSeries("network.http_connections", NetworkProfiler.HttpConnectionData.parser())) {
+        ConnectionData data = new ConnectionData(connection);
+        data.myRequest = requests.get(connection.getConnId());
+        data.myResponse = responses.get(connection.getConnId());
+        data.myResponseBody = responseBodies.get(connection.getConnId());
+        myConnectionData.put(connection.getConnId(), data);
       }
     }
   }
 
   private static final class ConnectionData {
-    @NotNull private NetworkProfiler.HttpConnectionData myCommonData;
+    @NotNull private final NetworkProfiler.HttpConnectionData myCommonData;
     private NetworkProfiler.HttpDetailsResponse.Body myResponseBody;
     private NetworkProfiler.HttpDetailsResponse.Request myRequest;
     private NetworkProfiler.HttpDetailsResponse.Response myResponse;
@@ -17,14 +17,22 @@ package com.android.tools.datastore.poller;
 
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.session.SessionFileReader;
+import com.android.tools.datastore.session.SessionFileWriter;
+import com.android.tools.datastore.session.SessionRecordable;
 import com.android.tools.profiler.proto.Profiler;
 import com.android.tools.profiler.proto.ProfilerServiceGrpc;
 import com.google.common.collect.Maps;
 import io.grpc.ManagedChannel;
 import io.grpc.ServerServiceDefinition;
+import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -34,7 +42,7 @@ import java.util.concurrent.RunnableFuture;
  * This class hosts an EventService that will provide callers access to all cached EventData.
  * The data is populated from polling the service passed into the connectService function.
  */
-public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase implements ServicePassThrough  {
+public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase implements ServicePassThrough, SessionRecordable {
 
   private final DataStoreService myService;
   ProfilerServiceGrpc.ProfilerServiceBlockingStub myPollingService;
@@ -42,6 +50,11 @@ public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase
   List<Profiler.Device> myDevices = new LinkedList<>();
   Map<String, List<Profiler.Process>> myProcesses = Maps.newHashMap();
 
+  /**
+   * Device time at which an imported session was exported, reported as the current time while replaying it.
+   */
+  @Nullable private Profiler.TimesResponse myImportedTimes;
+
   public ProfilerService(@NotNull DataStoreService service) {
     myService = service;
   }
@@ -50,16 +63,21 @@ public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase
   public void getTimes(Profiler.TimesRequest request, StreamObserver<Profiler.TimesResponse> observer) {
     // This function can get called before the datastore is connected to a device as such we need to check
     // if we have a connection before attempting to get the time.
-    if (myPollingService != null) {
-      observer.onNext(myPollingService.getTimes(request));
+    ProfilerServiceGrpc.ProfilerServiceBlockingStub pollingService = myPollingService;
+    if (pollingService != null) {
+      observer.onNext(pollingService.getTimes(request));
+    }
+    else if (myImportedTimes != null) {
+      observer.onNext(myImportedTimes);
     }
     observer.onCompleted();
   }
 
   @Override
   public void getVersion(Profiler.VersionRequest request, StreamObserver<Profiler.VersionResponse> observer) {
-    if (myPollingService != null) {
-      observer.onNext(myPollingService.getVersion(request));
+    ProfilerServiceGrpc.ProfilerServiceBlockingStub pollingService = myPollingService;
+    if (pollingService != null) {
+      observer.onNext(pollingService.getVersion(request));
     }
     observer.onCompleted();
   }
@@ -73,7 +91,7 @@ public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase
 
   @Override
   public void getProcesses(Profiler.GetProcessesRequest request, StreamObserver<Profiler.GetProcessesResponse> observer) {
-    List<Profiler.Process> processes = myProcesses.get(request.getSerial());
+    List<Profiler.Process> processes = myProcesses.getOrDefault(request.getSerial(), Collections.emptyList());
     Profiler.GetProcessesResponse response = Profiler.GetProcessesResponse.newBuilder().addAllProcess(processes).build();
     observer.onNext(response);
     observer.onCompleted();
@@ -108,6 +126,52 @@ public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase
     observer.onCompleted();
   }
 
+  @Override
+  public void exportSession(@NotNull SessionFileWriter writer) throws IOException {
+    // Devices have no timestamp of their own, so they are keyed by their position in the device list, which keeps them in order.
+    Map<Long, Profiler.DeviceProcesses> deviceProcesses = new LinkedHashMap<>();
+    for (Profiler.Device device : myDevices) {
+      Profiler.DeviceProcesses.Builder builder = Profiler.DeviceProcesses.newBuilder().setDevice(device);
+      List<Profiler.Process> processes = myProcesses.get(device.getSerial());
+      if (processes != null) {
+        builder.addAllProcess(processes);
+      }
+      deviceProcesses.put((long)deviceProcesses.size(), builder.build());
+    }
+    writer.writeSeries("profiler.devices", deviceProcesses);
+
+    Profiler.TimesResponse times = myImportedTimes;
+    ProfilerServiceGrpc.ProfilerServiceBlockingStub pollingService = myPollingService;
+    if (pollingService != null) {
+      try {
+        times = pollingService.getTimes(Profiler.TimesRequest.getDefaultInstance());
+      }
+      catch (StatusRuntimeException e) {
+        // The device went away; the session is still exported, without an end time.
+        times = null;
+      }
+    }
+    if (times != null) {
+      writer.writeSeries("profiler.times", Collections.singletonList(times), Profiler.TimesResponse::getTimestampNs);
+    }
+  }
+
+  /**
+   * Must only be called once the runners of the current connection are stopped, see {@link DataStoreService#importSession}.
+   */
+  @Override
+  public void importSession(@NotNull SessionFileReader reader) throws IOException {
+    myPollingService = null;
+    myProcesses.clear();
+    myDevices.clear();
+    for (Profiler.DeviceProcesses processes : reader.readKeyedSeries("profiler.devices", Profiler.DeviceProcesses.parser()).values()) {
+      myDevices.add(processes.getDevice());
+      myProcesses.put(processes.getDevice().getSerial(), processes.getProcessList());
+    }
+    List<Profiler.TimesResponse> times = reader.readSeries("profiler.times", Profiler.TimesResponse.parser());
+    myImportedTimes = times.isEmpty() ? null : times.get(0);
+  }
+
   @Override
   public ServerServiceDefinition getService() {
     return bindService();
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf3jarjar.InvalidProtocolBufferException;
+import com.google.protobuf3jarjar.MessageLite;
+import com.google.protobuf3jarjar.Parser;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import io.grpc.*;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.StreamObserver;
+import net.jcip.annotations.GuardedBy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subscribes once to a server-streaming RPC on perfd and hands every batch it pushes to the {@link StreamingCallback}, so data reaches
+ * the datastore as soon as the device produces it instead of up to {@link PollRunner#POLLING_DELAY_NS} later.
+ *
+ * While streaming, no thread is held: {@link #run()} returns as soon as the call is started, and batches are delivered on gRPC's
+ * executor. Older perfd builds that don't implement the streaming RPC fail the call with {@link Status.Code#UNIMPLEMENTED}, in which case
+ * we fall back to a {@link PollRunner} driving {@link StreamingCallback#poll()} on a pooled thread. Any other failure, e.g. the device
+ * being briefly {@link Status.Code#UNAVAILABLE} or perfd {@link Status.Code#CANCELLED cancelling} the stream, is retried with an
+ * exponential backoff. If the stream still fails after {@link #MAX_CONSECUTIVE_FAILURES} attempts, we fall back to polling as well,
+ * since a {@link PollRunner} keeps polling through failed polls.
+ */
+public class StreamRunner<Req, Resp> implements RunnableFuture<Void> {
+  interface StreamingCallback<Req, Resp> extends PollRunner.PollingCallback {
+    /**
+     * Returns the request to subscribe with. This is called every time the runner (re)subscribes, so it should only ask for data newer
+     * than what was already received.
+     */
+    @NotNull
+    Req createStreamRequest();
+
+    /**
+     * Called with every batch pushed by the device. Calls are never concurrent, but may happen on any thread.
+     */
+    void onData(@NotNull Resp response);
+  }
+
+  /**
+   * Name of the server-streaming method each service exposes next to its unary GetData method.
+   */
+  public static final String STREAM_DATA_METHOD_NAME = "StreamData";
+
+  /**
+   * Delay before resubscribing after the stream failed. It doubles after every consecutive failure, and is reset as soon as data
+   * arrives.
+   */
+  static final long INITIAL_RESUBSCRIBE_DELAY_NS = PollRunner.POLLING_DELAY_NS;
+
+  /**
+   * Number of consecutive failed subscriptions after which we give up on streaming and fall back to polling.
+   */
+  static final int MAX_CONSECUTIVE_FAILURES = 5;
+
+  private static final ScheduledExecutorService ourResubscribeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "StreamRunner resubscribe");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static Logger getLog() { return Logger.getInstance(StreamRunner.class); }
+
+  @NotNull private final Channel myChannel;
+  @NotNull private final MethodDescriptor<Req, Resp> myMethod;
+  @NotNull private final StreamingCallback<Req, Resp> myCallback;
+  private final long myFallbackPollPeriodNs;
+  @NotNull private final Executor myFallbackExecutor;
+
+  private final CountDownLatch myRunning = new CountDownLatch(1);
+  private final CountDownLatch myIsDone = new CountDownLatch(1);
+
+  private final Object myLock = new Object();
+  @GuardedBy("myLock") @Nullable private ClientCall<Req, Resp> myCall;
+  @GuardedBy("myLock") @Nullable private PollRunner myFallback;
+  @GuardedBy("myLock") @Nullable private ScheduledFuture<?> myPendingResubscribe;
+  @GuardedBy("myLock") private long myResubscribeDelayNs = INITIAL_RESUBSCRIBE_DELAY_NS;
+  @GuardedBy("myLock") private int myConsecutiveFailures;
+
+  public StreamRunner(@NotNull Channel channel,
+                      @NotNull MethodDescriptor<Req, Resp> method,
+                      @NotNull StreamingCallback<Req, Resp> callback,
+                      long fallbackPollPeriodNs) {
+    this(channel, method, callback, fallbackPollPeriodNs, runnable -> ApplicationManager.getApplication().executeOnPooledThread(runnable));
+  }
+
+  @VisibleForTesting
+  StreamRunner(@NotNull Channel channel,
+               @NotNull MethodDescriptor<Req, Resp> method,
+               @NotNull StreamingCallback<Req, Resp> callback,
+               long fallbackPollPeriodNs,
+               @NotNull Executor fallbackExecutor) {
+    myChannel = channel;
+    myMethod = method;
+    myCallback = callback;
+    myFallbackPollPeriodNs = fallbackPollPeriodNs;
+    myFallbackExecutor = fallbackExecutor;
+  }
+
+  /**
+   * Creates the descriptor of the {@link #STREAM_DATA_METHOD_NAME} method of the given service.
+   */
+  @NotNull
+  public static <Req extends MessageLite, Resp extends MessageLite> MethodDescriptor<Req, Resp> createStreamDataMethod(
+    @NotNull String serviceName, @NotNull Parser<Req> requestParser, @NotNull Parser<Resp> responseParser) {
+    return MethodDescriptor.create(MethodDescriptor.MethodType.SERVER_STREAMING,
+                                   MethodDescriptor.generateFullMethodName(serviceName, STREAM_DATA_METHOD_NAME),
+                                   new ProtoMarshaller<>(requestParser),
+                                   new ProtoMarshaller<>(responseParser));
+  }
+
+  @Override
+  public void run() {
+    subscribe();
+  }
+
+  /**
+   * Cancels the current subscription, if any, and subscribes again with a new request from the callback. This is needed whenever the
+   * request changes, e.g. when a different app starts being monitored. When polling, the next poll picks up the change by itself.
+   */
+  public void restart() {
+    synchronized (myLock) {
+      ClientCall<Req, Resp> call = myCall;
+      if (call == null) {
+        return;
+      }
+      myCall = null;
+      call.cancel("Resubscribing", null);
+    }
+    subscribe();
+  }
+
+  private void subscribe() {
+    synchronized (myLock) {
+      myPendingResubscribe = null;
+      if (isCancelled() || myFallback != null) {
+        return;
+      }
+      ClientCall<Req, Resp> call = myChannel.newCall(myMethod, CallOptions.DEFAULT);
+      myCall = call;
+      ClientCalls.asyncServerStreamingCall(call, myCallback.createStreamRequest(), new StreamObserver<Resp>() {
+        @Override
+        public void onNext(Resp value) {
+          synchronized (myLock) {
+            myResubscribeDelayNs = INITIAL_RESUBSCRIBE_DELAY_NS;
+            myConsecutiveFailures = 0;
+          }
+          myCallback.onData(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          synchronized (myLock) {
+            if (myCall != call) {
+              // Cancelled by a restart, the new call takes over.
+              return;
+            }
+            myCall = null;
+          }
+          Status.Code code = Status.fromThrowable(t).getCode();
+          if (code == Status.Code.UNIMPLEMENTED) {
+            getLog().info("Streaming is not supported by the device, falling back to polling " + myMethod.getFullMethodName());
+            startFallback();
+          }
+          else {
+            // Our own cancellations already cleared myCall, so a CANCELLED status here came from the device.
+            onStreamFailed(code);
+          }
+        }
+
+        @Override
+        public void onCompleted() {
+          synchronized (myLock) {
+            if (myCall != call) {
+              return;
+            }
+            myCall = null;
+          }
+          myIsDone.countDown();
+        }
+      });
+    }
+  }
+
+  private void onStreamFailed(@NotNull Status.Code code) {
+    synchronized (myLock) {
+      if (isCancelled()) {
+        // cancel() already completed the runner.
+        return;
+      }
+      if (++myConsecutiveFailures < MAX_CONSECUTIVE_FAILURES) {
+        long delayNs = myResubscribeDelayNs;
+        myResubscribeDelayNs = delayNs * 2;
+        getLog().debug(myMethod.getFullMethodName() + " failed with " + code + ", resubscribing in " +
+                       TimeUnit.NANOSECONDS.toMillis(delayNs) + "ms");
+        myPendingResubscribe = ourResubscribeScheduler.schedule(this::subscribe, delayNs, TimeUnit.NANOSECONDS);
+        return;
+      }
+    }
+    getLog().info(myMethod.getFullMethodName() + " failed " + MAX_CONSECUTIVE_FAILURES + " times in a row with " + code +
+                  ", falling back to polling");
+    startFallback();
+  }
+
+  private void startFallback() {
+    PollRunner fallback = new PollRunner(myCallback, myFallbackPollPeriodNs);
+    synchronized (myLock) {
+      if (isCancelled()) {
+        myIsDone.countDown();
+        return;
+      }
+      myFallback = fallback;
+    }
+    myFallbackExecutor.execute(() -> {
+      try {
+        fallback.run();
+      }
+      finally {
+        myIsDone.countDown();
+      }
+    });
+  }
+
+  public void stop() {
+    cancel(true);
+    try {
+      get();
+    }
+    catch (InterruptedException ignored) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    ClientCall<Req, Resp> call;
+    PollRunner fallback;
+    synchronized (myLock) {
+      myRunning.countDown();
+      call = myCall;
+      myCall = null;
+      fallback = myFallback;
+      if (myPendingResubscribe != null) {
+        myPendingResubscribe.cancel(false);
+        myPendingResubscribe = null;
+      }
+    }
+    if (fallback != null) {
+      fallback.cancel(mayInterruptIfRunning);
+    }
+    else {
+      if (call != null) {
+        call.cancel("Stopped", null);
+      }
+      myIsDone.countDown();
+    }
+    return true;
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return myRunning.getCount() == 0;
+  }
+
+  @Override
+  public boolean isDone() {
+    return myIsDone.getCount() == 0;
+  }
+
+  @Override
+  public Void get() throws InterruptedException {
+    myIsDone.await();
+    return null;
+  }
+
+  @Override
+  public Void get(long timeout, TimeUnit unit) throws InterruptedException {
+    myIsDone.await(timeout, unit);
+    return null;
+  }
+
+  private static final class ProtoMarshaller<T extends MessageLite> implements MethodDescriptor.Marshaller<T> {
+    @NotNull private final Parser<T> myParser;
+
+    private ProtoMarshaller(@NotNull Parser<T> parser) {
+      myParser = parser;
+    }
+
+    @Override
+    public InputStream stream(T value) {
+      return new ByteArrayInputStream(value.toByteArray());
+    }
+
+    @Override
+    public T parse(InputStream stream) {
+      try {
+        return myParser.parseFrom(stream);
+      }
+      catch (InvalidProtocolBufferException e) {
+        throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
+      }
+    }
+  }
+}
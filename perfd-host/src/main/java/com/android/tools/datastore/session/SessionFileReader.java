@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.session;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.protobuf3jarjar.ByteString;
+import com.google.protobuf3jarjar.MessageLite;
+import com.google.protobuf3jarjar.Parser;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads a profiling session file written by {@link SessionFileWriter}. Only the layout of the file is read upfront: the payloads of a
+ * series are read when it is asked for, so that large blobs such as heap dumps can be streamed to where they belong rather than held in
+ * memory. Series that are missing from the file (e.g. written by an older version) read as empty.
+ */
+public class SessionFileReader {
+
+  /**
+   * Receives the blobs of a series one by one, see {@link #readBlobs(String, BlobConsumer)}.
+   */
+  public interface BlobConsumer {
+    /**
+     * @param stream the content of the blob, which is only valid during the call
+     */
+    void accept(long key, @NotNull InputStream stream) throws IOException;
+  }
+
+  @NotNull private final File myFile;
+  @NotNull private final Map<String, Block> myBlocks = new HashMap<>();
+
+  public SessionFileReader(@NotNull File file) throws IOException {
+    myFile = file;
+    try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      DataInputStream input = new DataInputStream(counter);
+      if (input.readInt() != SessionFileWriter.MAGIC) {
+        throw new IOException("Not a profiler session file");
+      }
+      int version = input.readInt();
+      if (version > SessionFileWriter.VERSION) {
+        throw new IOException("Unsupported profiler session file version " + version);
+      }
+      for (String name = input.readUTF(); !name.isEmpty(); name = input.readUTF()) {
+        Block block = readBlockHeader(input, counter);
+        ByteStreams.skipFully(input, block.getPayloadsSize());
+        myBlocks.put(name, block);
+      }
+    }
+  }
+
+  @NotNull
+  public <T extends MessageLite> List<T> readSeries(@NotNull String name, @NotNull Parser<T> parser) throws IOException {
+    List<T> samples = new ArrayList<>();
+    readPayloads(name, (key, stream) -> samples.add(parser.parseFrom(stream)));
+    return samples;
+  }
+
+  /**
+   * Reads a series written with {@link SessionFileWriter#writeSeries(String, Map)}, in the order it was written.
+   */
+  @NotNull
+  public <T extends MessageLite> Map<Long, T> readKeyedSeries(@NotNull String name, @NotNull Parser<T> parser) throws IOException {
+    Map<Long, T> samples = new LinkedHashMap<>();
+    readPayloads(name, (key, stream) -> samples.put(key, parser.parseFrom(stream)));
+    return samples;
+  }
+
+  /**
+   * Reads blobs written with {@link SessionFileWriter#writeBlobs} into memory. Use {@link #readBlobs(String, BlobConsumer)} for blobs
+   * that may not fit there.
+   */
+  @NotNull
+  public Map<Long, ByteString> readBlobs(@NotNull String name) throws IOException {
+    Map<Long, ByteString> blobs = new LinkedHashMap<>();
+    readPayloads(name, (key, stream) -> blobs.put(key, ByteString.readFrom(stream)));
+    return blobs;
+  }
+
+  /**
+   * Streams blobs written with {@link SessionFileWriter#writeBlobs} or {@link SessionFileWriter#writeFiles}, in the order they were written.
+   */
+  public void readBlobs(@NotNull String name, @NotNull BlobConsumer consumer) throws IOException {
+    readPayloads(name, consumer);
+  }
+
+  private void readPayloads(@NotNull String name, @NotNull BlobConsumer consumer) throws IOException {
+    Block block = myBlocks.get(name);
+    if (block == null) {
+      return;
+    }
+    try (FileInputStream file = new FileInputStream(myFile)) {
+      file.getChannel().position(block.myPayloadsOffset);
+      InputStream input = new BufferedInputStream(file);
+      for (int i = 0; i < block.myKeys.length; i++) {
+        InputStream payload = ByteStreams.limit(input, block.mySizes[i]);
+        consumer.accept(block.myKeys[i], new FilterInputStream(payload) {
+          @Override
+          public void close() {
+            // The stream of the file is shared by all the payloads.
+          }
+        });
+        // Skip whatever the consumer didn't read, so the next payload starts where it should.
+        ByteStreams.exhaust(payload);
+      }
+    }
+  }
+
+  @NotNull
+  private static Block readBlockHeader(@NotNull DataInputStream input, @NotNull CountingInputStream counter) throws IOException {
+    int count = (int)readVarLong(input);
+    long[] keys = new long[count];
+    long previous = 0;
+    for (int i = 0; i < count; i++) {
+      long encoded = readVarLong(input);
+      previous += (encoded >>> 1) ^ -(encoded & 1);
+      keys[i] = previous;
+    }
+    long[] sizes = new long[count];
+    for (int i = 0; i < count; i++) {
+      sizes[i] = readVarLong(input);
+    }
+    return new Block(keys, sizes, counter.getCount());
+  }
+
+  private static long readVarLong(@NotNull DataInputStream input) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = input.readUnsignedByte();
+      value |= (long)(b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint in profiler session file");
+  }
+
+  private static final class Block {
+    @NotNull private final long[] myKeys;
+    @NotNull private final long[] mySizes;
+    private final long myPayloadsOffset;
+
+    private Block(@NotNull long[] keys, @NotNull long[] sizes, long payloadsOffset) {
+      myKeys = keys;
+      mySizes = sizes;
+      myPayloadsOffset = payloadsOffset;
+    }
+
+    private long getPayloadsSize() {
+      long size = 0;
+      for (long payloadSize : mySizes) {
+        size += payloadSize;
+      }
+      return size;
+    }
+  }
+}
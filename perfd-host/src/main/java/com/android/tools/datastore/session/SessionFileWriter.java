@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.session;
+
+import com.google.common.io.ByteStreams;
+import com.google.protobuf3jarjar.ByteString;
+import com.google.protobuf3jarjar.MessageLite;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Writes a profiling session file. A session file is a sequence of named blocks, each holding one series of samples. Within a block,
+ * data is laid out column by column so that similar values sit next to each other:
+ * <pre>
+ *   int             {@link #MAGIC}
+ *   int             {@link #VERSION}
+ *   repeated block:
+ *     UTF           series name
+ *     varint        sample count (n)
+ *     varint[n]     zig-zag encoded key deltas, where the key is usually a timestamp (and otherwise an id)
+ *     varint[n]     payload sizes
+ *     byte[]        payloads, back to back
+ *   UTF             "" (end marker)
+ * </pre>
+ * Since keys are mostly increasing timestamps a few hundred milliseconds apart, delta encoding them brings most keys down to 3-4 bytes.
+ */
+public class SessionFileWriter implements Closeable {
+
+  /**
+   * Extension of the session files saved from, and opened in, the profilers.
+   */
+  public static final String FILE_EXTENSION = "profilersession";
+
+  static final int MAGIC = 0x50524F46; // "PROF"
+
+  static final int VERSION = 1;
+
+  @NotNull private final DataOutputStream myStream;
+
+  public SessionFileWriter(@NotNull OutputStream stream) throws IOException {
+    myStream = new DataOutputStream(new BufferedOutputStream(stream));
+    myStream.writeInt(MAGIC);
+    myStream.writeInt(VERSION);
+  }
+
+  /**
+   * Writes a series of proto messages.
+   *
+   * @param key returns the key of each sample, typically its timestamp. Samples should be ordered by key.
+   */
+  public <T extends MessageLite> void writeSeries(@NotNull String name, @NotNull Collection<T> samples, @NotNull ToLongFunction<T> key)
+    throws IOException {
+    List<T> messages = new ArrayList<>(samples);
+    long[] keys = new long[messages.size()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = key.applyAsLong(messages.get(i));
+    }
+    writeMessages(name, keys, messages);
+  }
+
+  /**
+   * Writes proto messages that don't carry their own key, such as the details of a connection keyed by connection id.
+   */
+  public <T extends MessageLite> void writeSeries(@NotNull String name, @NotNull Map<Long, T> samples) throws IOException {
+    long[] keys = new long[samples.size()];
+    List<T> messages = new ArrayList<>(samples.size());
+    for (Map.Entry<Long, T> entry : samples.entrySet()) {
+      keys[messages.size()] = entry.getKey();
+      messages.add(entry.getValue());
+    }
+    writeMessages(name, keys, messages);
+  }
+
+  /**
+   * Writes raw binary data held in memory, such as method traces, keyed by id.
+   */
+  public void writeBlobs(@NotNull String name, @NotNull Map<Long, ByteString> blobs) throws IOException {
+    long[] keys = new long[blobs.size()];
+    long[] sizes = new long[blobs.size()];
+    int i = 0;
+    for (Map.Entry<Long, ByteString> entry : blobs.entrySet()) {
+      keys[i] = entry.getKey();
+      sizes[i] = entry.getValue().size();
+      i++;
+    }
+    writeBlockHeader(name, keys, sizes);
+    for (ByteString blob : blobs.values()) {
+      blob.writeTo(myStream);
+    }
+  }
+
+  /**
+   * Writes raw binary data kept on disk, such as heap dumps, keyed by id. The files are copied to the session file as they are read, so
+   * they never need to fit in memory.
+   */
+  public void writeFiles(@NotNull String name, @NotNull Map<Long, File> files) throws IOException {
+    long[] keys = new long[files.size()];
+    long[] sizes = new long[files.size()];
+    int i = 0;
+    for (Map.Entry<Long, File> entry : files.entrySet()) {
+      keys[i] = entry.getKey();
+      sizes[i] = entry.getValue().length();
+      i++;
+    }
+    writeBlockHeader(name, keys, sizes);
+    i = 0;
+    for (File file : files.values()) {
+      long copied;
+      try (InputStream input = new FileInputStream(file)) {
+        copied = ByteStreams.copy(ByteStreams.limit(input, sizes[i]), myStream);
+      }
+      if (copied != sizes[i]) {
+        throw new IOException("File " + file + " changed while being written to the session");
+      }
+      i++;
+    }
+  }
+
+  private <T extends MessageLite> void writeMessages(@NotNull String name, @NotNull long[] keys, @NotNull List<T> messages)
+    throws IOException {
+    long[] sizes = new long[messages.size()];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = messages.get(i).getSerializedSize();
+    }
+    writeBlockHeader(name, keys, sizes);
+    for (T message : messages) {
+      message.writeTo(myStream);
+    }
+  }
+
+  /**
+   * Writes everything in a block but the payloads, which the caller writes next, in order.
+   */
+  private void writeBlockHeader(@NotNull String name, @NotNull long[] keys, @NotNull long[] sizes) throws IOException {
+    assert !name.isEmpty();
+    myStream.writeUTF(name);
+    writeVarLong(keys.length);
+    long previous = 0;
+    for (long key : keys) {
+      long delta = key - previous;
+      writeVarLong((delta << 1) ^ (delta >> 63));
+      previous = key;
+    }
+    for (long size : sizes) {
+      writeVarLong(size);
+    }
+  }
+
+  private void writeVarLong(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      myStream.writeByte((int)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    myStream.writeByte((int)value);
+  }
+
+  @Override
+  public void close() throws IOException {
+    myStream.writeUTF("");
+    myStream.close();
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.session;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Implemented by the datastore services that hold data which should be saved as part of a profiling session.
+ */
+public interface SessionRecordable {
+
+  /**
+   * Writes all the data currently cached by the service.
+   */
+  void exportSession(@NotNull SessionFileWriter writer) throws IOException;
+
+  /**
+   * Replaces the data cached by the service with the data read from a session file, and detaches the service from the device so the
+   * data can be served back to the profilers without one.
+   */
+  void importSession(@NotNull SessionFileReader reader) throws IOException;
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link SampleStore} that keeps all of its samples on the heap. Like {@link SegmentedSampleStore}, range queries are binary searched and
+ * do not lock: the arrays are only ever grown by copying them, and entries are published through {@link Data#mySize}.
+ */
+public class InMemorySampleStore<T> implements SampleStore<T> {
+
+  private static final int INITIAL_CAPACITY = 128;
+
+  private volatile Data myData = new Data(INITIAL_CAPACITY);
+
+  @Override
+  public synchronized void append(long timestamp, @NotNull T sample) {
+    Data data = myData;
+    int size = data.mySize;
+    if (size > 0 && data.myTimestamps[size - 1] > timestamp) {
+      throw new IllegalArgumentException("Sample at " + timestamp + " appended after one at " + data.myTimestamps[size - 1]);
+    }
+    if (size == data.myTimestamps.length) {
+      data = data.grow();
+      myData = data;
+    }
+    data.myTimestamps[size] = timestamp;
+    data.mySamples[size] = sample;
+    data.mySize = size + 1;
+  }
+
+  @SuppressWarnings("unchecked")
+  @NotNull
+  @Override
+  public List<T> getRange(long startTimestamp, long endTimestamp) {
+    Data data = myData;
+    int size = data.mySize;
+    int index = Arrays.binarySearch(data.myTimestamps, 0, size, startTimestamp);
+    if (index < 0) {
+      index = -(index + 1);
+    }
+    else {
+      // Several samples may share the start timestamp, skip all of them as the range is exclusive at the start.
+      while (index < size && data.myTimestamps[index] <= startTimestamp) {
+        index++;
+      }
+    }
+    List<T> result = new ArrayList<>();
+    for (; index < size && data.myTimestamps[index] <= endTimestamp; index++) {
+      result.add((T)data.mySamples[index]);
+    }
+    return result;
+  }
+
+  @Override
+  public int size() {
+    return myData.mySize;
+  }
+
+  @Override
+  public synchronized void clear() {
+    myData = new Data(INITIAL_CAPACITY);
+  }
+
+  private static final class Data {
+    private final long[] myTimestamps;
+    private final Object[] mySamples;
+    private volatile int mySize;
+
+    private Data(int capacity) {
+      myTimestamps = new long[capacity];
+      mySamples = new Object[capacity];
+    }
+
+    @NotNull
+    private Data grow() {
+      Data data = new Data(myTimestamps.length * 2);
+      System.arraycopy(myTimestamps, 0, data.myTimestamps, 0, mySize);
+      System.arraycopy(mySamples, 0, data.mySamples, 0, mySize);
+      data.mySize = mySize;
+      return data;
+    }
+  }
+}
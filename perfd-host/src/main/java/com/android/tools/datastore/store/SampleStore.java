@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Append-only container of timestamped samples that the datastore pollers write through. Samples are expected to be appended in
+ * non-decreasing timestamp order, which is the order perfd hands them back to us. Implementations must allow {@link #getRange} and
+ * {@link #size} to be called from any thread while a poller is appending, without blocking it.
+ *
+ * @param <T> The type of sample being stored.
+ */
+public interface SampleStore<T> {
+
+  /**
+   * Adds a sample to the end of the store.
+   *
+   * @param timestamp the device timestamp the sample is keyed by, must not be smaller than the last appended timestamp.
+   * @throws IllegalArgumentException if timestamp is smaller than the last appended timestamp, in which case the sample is not added.
+   */
+  void append(long timestamp, @NotNull T sample);
+
+  /**
+   * Returns all samples whose timestamp falls within (startTimestamp, endTimestamp], in timestamp order.
+   */
+  @NotNull
+  List<T> getRange(long startTimestamp, long endTimestamp);
+
+  /**
+   * Returns the number of samples in the store.
+   */
+  int size();
+
+  /**
+   * Removes all samples from the store.
+   */
+  void clear();
+}
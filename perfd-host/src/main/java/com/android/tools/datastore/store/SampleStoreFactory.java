@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import com.google.protobuf3jarjar.MessageLite;
+import com.google.protobuf3jarjar.Parser;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Creates the {@link SampleStore} instances the pollers write their samples through. This allows the datastore to decide where samples
+ * live (e.g. heap only, or paged out to disk) without the pollers knowing about it.
+ */
+public interface SampleStoreFactory {
+
+  /**
+   * Keeps every sample on the heap.
+   */
+  SampleStoreFactory IN_MEMORY = new SampleStoreFactory() {
+    @NotNull
+    @Override
+    public <T extends MessageLite> SampleStore<T> create(@NotNull String name, @NotNull Parser<T> parser) {
+      return new InMemorySampleStore<>();
+    }
+  };
+
+  /**
+   * Keeps the most recent samples on the heap and pages older ones out to memory-mapped segment files.
+   */
+  SampleStoreFactory SEGMENTED = new SampleStoreFactory() {
+    @NotNull
+    @Override
+    public <T extends MessageLite> SampleStore<T> create(@NotNull String name, @NotNull Parser<T> parser) {
+      return new SegmentedSampleStore<>(name, parser);
+    }
+  };
+
+  /**
+   * @param name   a short, file-name friendly description of the samples, used to name any backing files.
+   * @param parser used to read samples back if the store serializes them.
+   */
+  @NotNull
+  <T extends MessageLite> SampleStore<T> create(@NotNull String name, @NotNull Parser<T> parser);
+}
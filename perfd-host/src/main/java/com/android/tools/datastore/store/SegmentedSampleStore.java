@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import com.google.protobuf3jarjar.InvalidProtocolBufferException;
+import com.google.protobuf3jarjar.MessageLite;
+import com.google.protobuf3jarjar.Parser;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link SampleStore} that splits its samples into fixed size segments. The most recent segments are kept on the heap, as those are the
+ * ones being appended to and queried the most by the UI. Once there are more than a fixed number of those, the oldest one is serialized
+ * to a temporary file which is then memory-mapped, so the heap usage of a store stays flat regardless of how long the session runs.
+ *
+ * Appends are serialized, but range queries are lock free and run in O(log n + k).
+ *
+ * A paged out segment file has the following layout:
+ * <pre>
+ *   int             sample count (n)
+ *   long[n]         timestamps
+ *   int[n + 1]      offset of each serialized sample, relative to the start of the payload (the last entry is the payload size)
+ *   byte[]          payload
+ * </pre>
+ */
+public class SegmentedSampleStore<T extends MessageLite> implements SampleStore<T> {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 1024;
+
+  public static final int DEFAULT_HOT_SEGMENT_COUNT = 2;
+
+  private static Logger getLog() { return Logger.getInstance(SegmentedSampleStore.class); }
+
+  @NotNull private final String myName;
+  @NotNull private final Parser<T> myParser;
+  private final int mySegmentSize;
+  private final int myMaxHotSegments;
+
+  /**
+   * All segments, in timestamp order. The last {@link #myHotSegmentCount} of these are {@link HotSegment}s. Readers work off whichever
+   * list they see without locking, so the writer never modifies a published list and instead swaps in a new one. That only happens when
+   * a segment is created or paged out, appends to the current segment are published through {@link HotSegment#mySize}.
+   */
+  private volatile List<Segment<T>> mySegments = Collections.emptyList();
+  private int myHotSegmentCount;
+  private volatile int mySize;
+
+  public SegmentedSampleStore(@NotNull String name, @NotNull Parser<T> parser) {
+    this(name, parser, DEFAULT_SEGMENT_SIZE, DEFAULT_HOT_SEGMENT_COUNT);
+  }
+
+  public SegmentedSampleStore(@NotNull String name, @NotNull Parser<T> parser, int segmentSize, int maxHotSegments) {
+    if (segmentSize <= 0 || maxHotSegments <= 0) {
+      throw new IllegalArgumentException("Segment size and hot segment count must be positive");
+    }
+    myName = name;
+    myParser = parser;
+    mySegmentSize = segmentSize;
+    myMaxHotSegments = maxHotSegments;
+  }
+
+  @Override
+  public synchronized void append(long timestamp, @NotNull T sample) {
+    List<Segment<T>> segments = mySegments;
+    Segment<T> last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    if (last != null && last.getLastTimestamp() > timestamp) {
+      throw new IllegalArgumentException(
+        "Sample at " + timestamp + " appended to " + myName + " after one at " + last.getLastTimestamp());
+    }
+    if (last != null && last.size() < mySegmentSize) {
+      ((HotSegment<T>)last).add(timestamp, sample);
+    }
+    else {
+      // Fill in the new segment before publishing it, so readers never see an empty one.
+      HotSegment<T> segment = new HotSegment<>(mySegmentSize);
+      segment.add(timestamp, sample);
+      segments = new ArrayList<>(segments);
+      segments.add(segment);
+      myHotSegmentCount++;
+      if (myHotSegmentCount > myMaxHotSegments) {
+        pageOutOldestHotSegment(segments);
+      }
+      mySegments = segments;
+    }
+    mySize++;
+  }
+
+  /**
+   * Finds the first sample after startTimestamp with a binary search over the segments and then within the segment, and walks forward
+   * from there until endTimestamp. This does not block, or get blocked by, the writer.
+   */
+  @NotNull
+  @Override
+  public List<T> getRange(long startTimestamp, long endTimestamp) {
+    List<T> result = new ArrayList<>();
+    List<Segment<T>> segments = mySegments;
+    int first = findFirstSegmentAfter(segments, startTimestamp);
+    for (int s = first; s < segments.size(); s++) {
+      Segment<T> segment = segments.get(s);
+      int size = segment.size();
+      for (int i = s == first ? findFirstIndexAfter(segment, size, startTimestamp) : 0; i < size; i++) {
+        if (segment.getTimestamp(i) > endTimestamp) {
+          return result;
+        }
+        result.add(segment.get(i));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public int size() {
+    return mySize;
+  }
+
+  @Override
+  public synchronized void clear() {
+    List<Segment<T>> segments = mySegments;
+    mySegments = Collections.emptyList();
+    myHotSegmentCount = 0;
+    mySize = 0;
+    segments.forEach(Segment::dispose);
+  }
+
+  private void pageOutOldestHotSegment(@NotNull List<Segment<T>> segments) {
+    int index = segments.size() - myHotSegmentCount;
+    HotSegment<T> segment = (HotSegment<T>)segments.get(index);
+    try {
+      segments.set(index, MappedSegment.write(myName, myParser, segment));
+      myHotSegmentCount--;
+    }
+    catch (IOException e) {
+      // Keep the segment on the heap, we will try to page it out again when the next segment is created.
+      getLog().warn("Unable to page out " + myName + " samples to disk", e);
+    }
+  }
+
+  /**
+   * Returns the index of the first segment whose last timestamp is after the given one, or segments.size() if there is none.
+   */
+  private static int findFirstSegmentAfter(@NotNull List<? extends Segment<?>> segments, long timestamp) {
+    int low = 0;
+    int high = segments.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (segments.get(mid).getLastTimestamp() <= timestamp) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the index of the first sample within the first size samples of the segment whose timestamp is after the given one, or size
+   * if there is none.
+   */
+  private static int findFirstIndexAfter(@NotNull Segment<?> segment, int size, long timestamp) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (segment.getTimestamp(mid) <= timestamp) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private interface Segment<T> {
+    int size();
+
+    long getTimestamp(int index);
+
+    @NotNull
+    T get(int index);
+
+    default long getFirstTimestamp() {
+      return getTimestamp(0);
+    }
+
+    default long getLastTimestamp() {
+      return getTimestamp(size() - 1);
+    }
+
+    default void dispose() {
+    }
+  }
+
+  private static final class HotSegment<T> implements Segment<T> {
+    private final long[] myTimestamps;
+    private final Object[] mySamples;
+    /**
+     * Entries are written before the size is incremented, so readers only ever look at fully written entries.
+     */
+    private volatile int mySize;
+
+    private HotSegment(int capacity) {
+      myTimestamps = new long[capacity];
+      mySamples = new Object[capacity];
+    }
+
+    private void add(long timestamp, @NotNull T sample) {
+      int size = mySize;
+      myTimestamps[size] = timestamp;
+      mySamples[size] = sample;
+      mySize = size + 1;
+    }
+
+    @Override
+    public int size() {
+      return mySize;
+    }
+
+    @Override
+    public long getTimestamp(int index) {
+      return myTimestamps[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    @Override
+    public T get(int index) {
+      return (T)mySamples[index];
+    }
+  }
+
+  private static final class MappedSegment<T extends MessageLite> implements Segment<T> {
+    @NotNull private final File myFile;
+    @NotNull private final Parser<T> myParser;
+    @NotNull private final MappedByteBuffer myBuffer;
+    private final int mySize;
+    private final int myOffsetsStart;
+    private final int myPayloadStart;
+    private final long myFirstTimestamp;
+    private final long myLastTimestamp;
+
+    private MappedSegment(@NotNull File file, @NotNull Parser<T> parser, @NotNull MappedByteBuffer buffer) {
+      myFile = file;
+      myParser = parser;
+      myBuffer = buffer;
+      mySize = buffer.getInt(0);
+      myOffsetsStart = Integer.BYTES + mySize * Long.BYTES;
+      myPayloadStart = myOffsetsStart + (mySize + 1) * Integer.BYTES;
+      myFirstTimestamp = getTimestamp(0);
+      myLastTimestamp = getTimestamp(mySize - 1);
+    }
+
+    @NotNull
+    private static <T extends MessageLite> MappedSegment<T> write(@NotNull String name,
+                                                                  @NotNull Parser<T> parser,
+                                                                  @NotNull HotSegment<T> segment) throws IOException {
+      int size = segment.size();
+      byte[][] payloads = new byte[size][];
+      int payloadSize = 0;
+      for (int i = 0; i < size; i++) {
+        payloads[i] = segment.get(i).toByteArray();
+        payloadSize += payloads[i].length;
+      }
+
+      ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + size * Long.BYTES + (size + 1) * Integer.BYTES);
+      header.putInt(size);
+      for (int i = 0; i < size; i++) {
+        header.putLong(segment.getTimestamp(i));
+      }
+      int offset = 0;
+      for (byte[] payload : payloads) {
+        header.putInt(offset);
+        offset += payload.length;
+      }
+      header.putInt(offset);
+      header.flip();
+
+      File file = FileUtil.createTempFile("perfd-" + name, ".segment", true);
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        FileChannel channel = raf.getChannel();
+        channel.write(header);
+        for (byte[] payload : payloads) {
+          channel.write(ByteBuffer.wrap(payload));
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, header.limit() + payloadSize);
+        return new MappedSegment<>(file, parser, buffer);
+      }
+      catch (IOException e) {
+        FileUtil.delete(file);
+        throw e;
+      }
+    }
+
+    @Override
+    public int size() {
+      return mySize;
+    }
+
+    @Override
+    public long getTimestamp(int index) {
+      return myBuffer.getLong(Integer.BYTES + index * Long.BYTES);
+    }
+
+    @Override
+    public long getFirstTimestamp() {
+      return myFirstTimestamp;
+    }
+
+    @Override
+    public long getLastTimestamp() {
+      return myLastTimestamp;
+    }
+
+    @NotNull
+    @Override
+    public T get(int index) {
+      int start = myBuffer.getInt(myOffsetsStart + index * Integer.BYTES);
+      int end = myBuffer.getInt(myOffsetsStart + (index + 1) * Integer.BYTES);
+      ByteBuffer slice = myBuffer.duplicate();
+      slice.position(myPayloadStart + start);
+      slice.limit(myPayloadStart + end);
+      byte[] bytes = new byte[end - start];
+      slice.get(bytes);
+      try {
+        return myParser.parseFrom(bytes);
+      }
+      catch (InvalidProtocolBufferException e) {
+        // We wrote this file ourselves, so this means it was modified or truncated underneath us.
+        throw new IllegalStateException("Corrupted sample segment " + myFile.getPath(), e);
+      }
+    }
+
+    @Override
+    public void dispose() {
+      // The mapping itself is released when the buffer gets garbage collected, on some platforms that means the delete below fails and we
+      // rely on the file having been marked as delete-on-exit instead.
+      FileUtil.delete(myFile);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import com.android.tools.datastore.DataStoreService;
+import com.android.tools.datastore.session.SessionFileReader;
+import com.android.tools.datastore.session.SessionFileWriter;
+import com.android.tools.datastore.store.SampleStoreFactory;
+import com.android.tools.profiler.proto.MemoryProfiler.*;
+import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.MemorySample;
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf3jarjar.ByteString;
+import com.intellij.openapi.util.io.FileUtil;
+import io.grpc.stub.StreamObserver;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MemoryDataPollerTest {
+  private static final int DUMP_ID = 3;
+
+  private DataStoreService myDataStore;
+  private File myHeapDumpFile;
+  private File mySessionFile;
+  private File myExportedSessionFile;
+
+  @Before
+  public void setUp() throws IOException {
+    myDataStore = new DataStoreService("MemoryDataPollerTest", SampleStoreFactory.IN_MEMORY);
+    myHeapDumpFile = FileUtil.createTempFile("heapdump", ".hprof", true);
+    mySessionFile = FileUtil.createTempFile("session", "." + SessionFileWriter.FILE_EXTENSION, true);
+    myExportedSessionFile = FileUtil.createTempFile("exported", "." + SessionFileWriter.FILE_EXTENSION, true);
+  }
+
+  @After
+  public void tearDown() {
+    myDataStore.shutdown();
+    FileUtil.delete(myHeapDumpFile);
+    FileUtil.delete(mySessionFile);
+    FileUtil.delete(myExportedSessionFile);
+  }
+
+  @Test
+  public void testExportedSessionImportsBack() throws IOException {
+    byte[] heapDump = new byte[100_000];
+    new Random(0).nextBytes(heapDump);
+    try (OutputStream stream = new FileOutputStream(myHeapDumpFile)) {
+      stream.write(heapDump);
+    }
+    MemorySample sample1 = MemorySample.newBuilder().setTimestamp(10).setJavaMem(100).build();
+    MemorySample sample2 = MemorySample.newBuilder().setTimestamp(20).setJavaMem(200).build();
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setDumpId(DUMP_ID).setStartTime(12).setEndTime(15).build();
+    // Stack ids are MD5 digests, these two only differ after the bytes used for their keys.
+    AllocationStack stack1 = createStack(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+    AllocationStack stack2 = createStack(new byte[]{-1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+    try (SessionFileWriter writer = new SessionFileWriter(new FileOutputStream(mySessionFile))) {
+      writer.writeSeries("memory.samples", Arrays.asList(sample1, sample2), MemorySample::getTimestamp);
+      writer.writeSeries("memory.allocation_stacks", Arrays.asList(stack1, stack2), stack -> stack.getStackId().byteAt(0));
+      writer.writeSeries("memory.heap_dumps", Collections.singletonList(dumpInfo), HeapDumpInfo::getDumpId);
+      writer.writeFiles("memory.heap_dump_data", ImmutableMap.of((long)DUMP_ID, myHeapDumpFile));
+    }
+
+    // Import the session, export it again and import the export into another poller.
+    MemoryDataPoller poller = new MemoryDataPoller(myDataStore, SampleStoreFactory.IN_MEMORY);
+    poller.importSession(new SessionFileReader(mySessionFile));
+    try (SessionFileWriter writer = new SessionFileWriter(new FileOutputStream(myExportedSessionFile))) {
+      poller.exportSession(writer);
+    }
+    MemoryDataPoller importedPoller = new MemoryDataPoller(myDataStore, SampleStoreFactory.IN_MEMORY);
+    importedPoller.importSession(new SessionFileReader(myExportedSessionFile));
+
+    FakeObserver<MemoryData> data = new FakeObserver<>();
+    importedPoller.getData(MemoryRequest.newBuilder().setStartTime(0).setEndTime(100).build(), data);
+    assertThat(data.myResponse.getMemSamplesList()).containsExactly(sample1, sample2).inOrder();
+    assertThat(data.myResponse.getHeapDumpInfosList()).containsExactly(dumpInfo);
+
+    FakeObserver<AllocationContextsResponse> contexts = new FakeObserver<>();
+    importedPoller.listAllocationContexts(AllocationContextsRequest.getDefaultInstance(), contexts);
+    assertThat(contexts.myResponse.getAllocationStacksList()).containsExactly(stack1, stack2);
+
+    FakeObserver<DumpDataResponse> dump = new FakeObserver<>();
+    importedPoller.getHeapDump(HeapDumpDataRequest.newBuilder().setDumpId(DUMP_ID).build(), dump);
+    assertThat(dump.myResponse.getStatus()).isEqualTo(DumpDataResponse.Status.SUCCESS);
+    assertThat(dump.myResponse.getData().toByteArray()).isEqualTo(heapDump);
+  }
+
+  @NotNull
+  private static AllocationStack createStack(@NotNull byte[] stackId) {
+    return AllocationStack.newBuilder().setStackId(ByteString.copyFrom(stackId)).addStackFrames(
+      AllocationStack.StackFrame.newBuilder().setClassName("Foo").setMethodName("bar" + stackId[0]).setLineNumber(stackId[0])).build();
+  }
+
+  private static class FakeObserver<T> implements StreamObserver<T> {
+    private T myResponse;
+
+    @Override
+    public void onNext(T response) {
+      myResponse = response;
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      throw new AssertionError(t);
+    }
+
+    @Override
+    public void onCompleted() {
+    }
+  }
+}
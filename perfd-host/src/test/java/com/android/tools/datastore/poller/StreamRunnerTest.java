@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import com.android.tools.profiler.proto.CpuProfiler;
+import com.android.tools.profiler.proto.CpuServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCalls;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class StreamRunnerTest {
+  private static final MethodDescriptor<CpuProfiler.CpuDataRequest, CpuProfiler.CpuDataResponse> STREAM_DATA_METHOD =
+    StreamRunner.createStreamDataMethod(CpuServiceGrpc.SERVICE_NAME, CpuProfiler.CpuDataRequest.parser(),
+                                        CpuProfiler.CpuDataResponse.parser());
+
+  private Server myServer;
+  private ManagedChannel myChannel;
+
+  @After
+  public void tearDown() {
+    if (myChannel != null) {
+      myChannel.shutdownNow();
+    }
+    if (myServer != null) {
+      myServer.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testResubscribesWhenStreamIsUnavailable() throws Exception {
+    AtomicInteger subscriptions = new AtomicInteger();
+    startServer("testResubscribesWhenStreamIsUnavailable", (request, observer) -> {
+      // The first two subscriptions fail the way a device that is briefly gone does, then the data flows.
+      if (subscriptions.incrementAndGet() <= 2) {
+        observer.onError(Status.UNAVAILABLE.asRuntimeException());
+        return;
+      }
+      observer.onNext(CpuProfiler.CpuDataResponse.newBuilder().addData(CpuProfiler.CpuProfilerData.getDefaultInstance()).build());
+      observer.onNext(CpuProfiler.CpuDataResponse.newBuilder().addData(CpuProfiler.CpuProfilerData.getDefaultInstance()).build());
+    });
+
+    FakeCallback callback = new FakeCallback(2);
+    StreamRunner<CpuProfiler.CpuDataRequest, CpuProfiler.CpuDataResponse> runner =
+      new StreamRunner<>(myChannel, STREAM_DATA_METHOD, callback, PollRunner.POLLING_DELAY_NS);
+    runner.run();
+
+    assertThat(callback.myData.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(subscriptions.get()).isEqualTo(3);
+    assertThat(runner.isDone()).isFalse();
+    assertThat(callback.myPolls.get()).isEqualTo(0);
+
+    runner.stop();
+    assertThat(runner.isDone()).isTrue();
+  }
+
+  @Test
+  public void testStopsWhileWaitingToResubscribe() throws Exception {
+    AtomicInteger subscriptions = new AtomicInteger();
+    startServer("testStopsWhileWaitingToResubscribe", (request, observer) -> {
+      subscriptions.incrementAndGet();
+      observer.onError(Status.UNAVAILABLE.asRuntimeException());
+    });
+
+    StreamRunner<CpuProfiler.CpuDataRequest, CpuProfiler.CpuDataResponse> runner =
+      new StreamRunner<>(myChannel, STREAM_DATA_METHOD, new FakeCallback(1), PollRunner.POLLING_DELAY_NS);
+    runner.run();
+    runner.stop();
+    assertThat(runner.isDone()).isTrue();
+
+    int subscriptionsWhenStopped = subscriptions.get();
+    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(StreamRunner.INITIAL_RESUBSCRIBE_DELAY_NS * 2));
+    assertThat(subscriptions.get()).isEqualTo(subscriptionsWhenStopped);
+  }
+
+  @Test
+  public void testFallsBackToPollingWhenStreamKeepsBeingCancelled() throws Exception {
+    AtomicInteger subscriptions = new AtomicInteger();
+    startServer("testFallsBackToPollingWhenStreamKeepsBeingCancelled", (request, observer) -> {
+      subscriptions.incrementAndGet();
+      observer.onError(Status.CANCELLED.asRuntimeException());
+    });
+
+    FakeCallback callback = new FakeCallback(1);
+    ExecutorService fallbackExecutor = Executors.newSingleThreadExecutor();
+    StreamRunner<CpuProfiler.CpuDataRequest, CpuProfiler.CpuDataResponse> runner =
+      new StreamRunner<>(myChannel, STREAM_DATA_METHOD, callback, PollRunner.POLLING_DELAY_NS, fallbackExecutor);
+    try {
+      runner.run();
+
+      // A cancelled stream is resubscribed like any other failed one, until the runner gives up on streaming.
+      assertThat(callback.myPolled.await(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(subscriptions.get()).isEqualTo(StreamRunner.MAX_CONSECUTIVE_FAILURES);
+      assertThat(runner.isDone()).isFalse();
+
+      runner.stop();
+      assertThat(runner.isDone()).isTrue();
+    }
+    finally {
+      fallbackExecutor.shutdownNow();
+    }
+  }
+
+  private void startServer(@NotNull String name,
+                           @NotNull ServerCalls.ServerStreamingMethod<CpuProfiler.CpuDataRequest, CpuProfiler.CpuDataResponse> method)
+    throws Exception {
+    ServerServiceDefinition service = ServerServiceDefinition.builder(CpuServiceGrpc.SERVICE_NAME)
+      .addMethod(STREAM_DATA_METHOD, ServerCalls.asyncServerStreamingCall(method))
+      .build();
+    myServer = InProcessServerBuilder.forName(name).addService(service).build().start();
+    myChannel = InProcessChannelBuilder.forName(name).usePlaintext(true).build();
+  }
+
+  private static class FakeCallback implements StreamRunner.StreamingCallback<CpuProfiler.CpuDataRequest, CpuProfiler.CpuDataResponse> {
+    private final CountDownLatch myData;
+    private final AtomicInteger myPolls = new AtomicInteger();
+    private final CountDownLatch myPolled = new CountDownLatch(1);
+
+    private FakeCallback(int expectedResponses) {
+      myData = new CountDownLatch(expectedResponses);
+    }
+
+    @NotNull
+    @Override
+    public CpuProfiler.CpuDataRequest createStreamRequest() {
+      return CpuProfiler.CpuDataRequest.getDefaultInstance();
+    }
+
+    @Override
+    public void onData(@NotNull CpuProfiler.CpuDataResponse response) {
+      myData.countDown();
+    }
+
+    @Override
+    public void poll() {
+      myPolls.incrementAndGet();
+      myPolled.countDown();
+    }
+  }
+}
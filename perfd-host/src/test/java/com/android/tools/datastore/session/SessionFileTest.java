@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.session;
+
+import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.MemorySample;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.protobuf3jarjar.ByteString;
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class SessionFileTest {
+  private File mySessionFile;
+  private File myBlobFile;
+
+  @Before
+  public void setUp() throws IOException {
+    mySessionFile = FileUtil.createTempFile("session", "." + SessionFileWriter.FILE_EXTENSION, true);
+    myBlobFile = FileUtil.createTempFile("blob", ".hprof", true);
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(mySessionFile);
+    FileUtil.delete(myBlobFile);
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    List<MemorySample> samples = Arrays.asList(createSample(-5), createSample(10), createSample(1000));
+    Map<Long, MemorySample> keyedSamples = new LinkedHashMap<>();
+    keyedSamples.put(42L, createSample(1));
+    keyedSamples.put(7L, createSample(2));
+    byte[] blobFileContent = new byte[100_000];
+    new Random(0).nextBytes(blobFileContent);
+    try (OutputStream stream = new FileOutputStream(myBlobFile)) {
+      stream.write(blobFileContent);
+    }
+
+    try (SessionFileWriter writer = new SessionFileWriter(new FileOutputStream(mySessionFile))) {
+      writer.writeSeries("samples", samples, MemorySample::getTimestamp);
+      writer.writeSeries("keyed", keyedSamples);
+      writer.writeBlobs("blobs", ImmutableMap.of(1L, ByteString.copyFromUtf8("first"), 2L, ByteString.EMPTY));
+      writer.writeFiles("files", ImmutableMap.of(3L, myBlobFile));
+      writer.writeSeries("empty", Collections.<MemorySample>emptyList(), MemorySample::getTimestamp);
+    }
+
+    SessionFileReader reader = new SessionFileReader(mySessionFile);
+    // Read the series out of order, each is read on its own when asked for.
+    Map<Long, byte[]> files = new LinkedHashMap<>();
+    reader.readBlobs("files", (key, stream) -> files.put(key, ByteStreams.toByteArray(stream)));
+    assertThat(files.keySet()).containsExactly(3L);
+    assertThat(files.get(3L)).isEqualTo(blobFileContent);
+
+    assertThat(reader.readKeyedSeries("keyed", MemorySample.parser())).containsExactlyEntriesIn(keyedSamples).inOrder();
+    assertThat(reader.readSeries("samples", MemorySample.parser())).containsExactlyElementsIn(samples).inOrder();
+    assertThat(reader.readBlobs("blobs")).containsExactly(1L, ByteString.copyFromUtf8("first"), 2L, ByteString.EMPTY).inOrder();
+    assertThat(reader.readSeries("empty", MemorySample.parser())).isEmpty();
+    assertThat(reader.readSeries("missing", MemorySample.parser())).isEmpty();
+  }
+
+  @Test
+  public void testPartiallyReadBlobsDoNotShiftTheNextOnes() throws IOException {
+    try (SessionFileWriter writer = new SessionFileWriter(new FileOutputStream(mySessionFile))) {
+      writer.writeBlobs("blobs", ImmutableMap.of(1L, ByteString.copyFromUtf8("abc"), 2L, ByteString.copyFromUtf8("def")));
+    }
+
+    List<String> firstBytes = new ArrayList<>();
+    new SessionFileReader(mySessionFile).readBlobs("blobs", (key, stream) -> firstBytes.add(key + ":" + (char)stream.read()));
+    assertThat(firstBytes).containsExactly("1:a", "2:d").inOrder();
+  }
+
+  @Test(expected = IOException.class)
+  public void testRejectsOtherFiles() throws IOException {
+    try (OutputStream stream = new FileOutputStream(mySessionFile)) {
+      stream.write("not a session".getBytes());
+    }
+    new SessionFileReader(mySessionFile);
+  }
+
+  private static MemorySample createSample(long timestamp) {
+    return MemorySample.newBuilder().setTimestamp(timestamp).setJavaMem(timestamp * 2).build();
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.MemorySample;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests that every {@link SampleStore} implementation has to pass.
+ */
+public abstract class SampleStoreTestCase {
+  private SampleStore<MemorySample> myStore;
+
+  @NotNull
+  protected abstract SampleStore<MemorySample> createStore();
+
+  @Before
+  public void setUp() {
+    myStore = createStore();
+  }
+
+  @After
+  public void tearDown() {
+    myStore.clear();
+  }
+
+  @Test
+  public void testRangeIsExclusiveAtStartAndInclusiveAtEnd() {
+    append(10, 20, 20, 30, 40);
+
+    assertThat(getTimestamps(10, 30)).containsExactly(20L, 20L, 30L).inOrder();
+    assertThat(getTimestamps(20, 40)).containsExactly(30L, 40L).inOrder();
+    assertThat(getTimestamps(15, 25)).containsExactly(20L, 20L).inOrder();
+    assertThat(getTimestamps(Long.MIN_VALUE, Long.MAX_VALUE)).containsExactly(10L, 20L, 20L, 30L, 40L).inOrder();
+    assertThat(getTimestamps(40, 100)).isEmpty();
+    assertThat(getTimestamps(-5, 5)).isEmpty();
+    assertThat(getTimestamps(30, 20)).isEmpty();
+    assertThat(myStore.size()).isEqualTo(5);
+  }
+
+  @Test
+  public void testRangesOverManySamples() {
+    int count = 5000;
+    for (int i = 0; i < count; i++) {
+      // Two samples per timestamp, so ranges start and end in the middle of runs of equal timestamps.
+      myStore.append(i / 2 * 10, createSample(i / 2 * 10, i));
+    }
+    assertThat(myStore.size()).isEqualTo(count);
+
+    Random random = new Random(0);
+    for (int query = 0; query < 200; query++) {
+      long start = random.nextInt(count * 5 + 20) - 10;
+      long end = start + random.nextInt(count);
+      List<MemorySample> expected = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        long timestamp = i / 2 * 10;
+        if (start < timestamp && timestamp <= end) {
+          expected.add(createSample(timestamp, i));
+        }
+      }
+      assertThat(myStore.getRange(start, end)).containsExactlyElementsIn(expected).inOrder();
+    }
+  }
+
+  @Test
+  public void testOutOfOrderSamplesAreRejected() {
+    append(10, 20);
+    try {
+      myStore.append(15, createSample(15, 0));
+      throw new AssertionError("Expected the out of order sample to be rejected");
+    }
+    catch (IllegalArgumentException expected) {
+    }
+
+    // Samples with the same timestamp as the last one are still accepted.
+    append(20);
+    assertThat(getTimestamps(Long.MIN_VALUE, Long.MAX_VALUE)).containsExactly(10L, 20L, 20L).inOrder();
+    assertThat(myStore.size()).isEqualTo(3);
+  }
+
+  @Test
+  public void testClear() {
+    append(10, 20, 30);
+    myStore.clear();
+    assertThat(myStore.size()).isEqualTo(0);
+    assertThat(getTimestamps(Long.MIN_VALUE, Long.MAX_VALUE)).isEmpty();
+
+    // Timestamps start over after a clear.
+    append(5);
+    assertThat(getTimestamps(Long.MIN_VALUE, Long.MAX_VALUE)).containsExactly(5L);
+  }
+
+  @Test
+  public void testReadsWhileAppending() throws Exception {
+    int count = 5000;
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread reader = new Thread(() -> {
+      try {
+        int seen = 0;
+        while (seen < count) {
+          // Whatever the reader sees must be a complete prefix of what was appended.
+          List<MemorySample> samples = myStore.getRange(Long.MIN_VALUE, Long.MAX_VALUE);
+          assertThat(samples.size()).isAtLeast(seen);
+          for (int i = 0; i < samples.size(); i++) {
+            assertThat(samples.get(i).getJavaMem()).isEqualTo(i);
+          }
+          seen = samples.size();
+        }
+      }
+      catch (Throwable t) {
+        failure.set(t);
+      }
+    });
+    reader.start();
+    for (int i = 0; i < count; i++) {
+      myStore.append(i, createSample(i, i));
+    }
+    reader.join();
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+  }
+
+  private void append(long... timestamps) {
+    for (long timestamp : timestamps) {
+      myStore.append(timestamp, createSample(timestamp, myStore.size()));
+    }
+  }
+
+  @NotNull
+  private List<Long> getTimestamps(long startTimestamp, long endTimestamp) {
+    List<Long> timestamps = new ArrayList<>();
+    myStore.getRange(startTimestamp, endTimestamp).forEach(sample -> timestamps.add(sample.getTimestamp()));
+    return timestamps;
+  }
+
+  @NotNull
+  private static MemorySample createSample(long timestamp, int index) {
+    return MemorySample.newBuilder().setTimestamp(timestamp).setJavaMem(index).build();
+  }
+}
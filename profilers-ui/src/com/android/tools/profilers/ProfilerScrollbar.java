@@ -17,6 +17,7 @@ package com.android.tools.profilers;
 
 import com.android.tools.adtui.Animatable;
 import com.android.tools.adtui.Choreographer;
+import com.android.tools.adtui.RangeChangeTracker;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profilers.timeline.AnimatedPan;
 import com.android.tools.profilers.timeline.AnimatedZoom;
@@ -58,6 +59,8 @@ public final class ProfilerScrollbar extends JBScrollBar implements Animatable {
 
   @NotNull private final ProfilerTimeline myTimeline;
 
+  @NotNull private final RangeChangeTracker myRangeTracker = new RangeChangeTracker();
+
   private boolean myScrolling;
 
   public ProfilerScrollbar(@NotNull Choreographer choreographer,
@@ -66,6 +69,7 @@ public final class ProfilerScrollbar extends JBScrollBar implements Animatable {
     super(HORIZONTAL);
 
     myTimeline = timeline;
+    myRangeTracker.track(myTimeline.getDataRange(), myTimeline.getViewRange());
 
     setUI(new ButtonlessScrollBarUI() {
       /**
@@ -121,8 +125,17 @@ public final class ProfilerScrollbar extends JBScrollBar implements Animatable {
     });
   }
 
+  /**
+   * Dirty while the thumb is being dragged, or when the data or view range moved, e.g. as data comes in while not streaming.
+   */
+  @Override
+  public boolean isDirty() {
+    return myScrolling || myRangeTracker.hasChanged();
+  }
+
   @Override
   public void animate(float frameLength) {
+    myRangeTracker.update();
     Range dataRangeUs = myTimeline.getDataRange();
     Range viewRangeUs = myTimeline.getViewRange();
     int dataExtentMs = (int)((dataRangeUs.getLength() - myTimeline.getViewBuffer()) / MS_TO_US);
@@ -43,6 +43,7 @@ import javax.swing.event.TreeExpansionListener;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import java.awt.*;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +51,7 @@ import java.util.Map;
 final class MemoryInstanceView {
   private static final int LABEL_COLUMN_WIDTH = 500;
   private static final int DEFAULT_COLUMN_WIDTH = 80;
+  private static final int INSTANCES_PAGE_SIZE = 1000;
 
   @NotNull private final MemoryProfilerStage myStage;
 
@@ -172,14 +174,26 @@ final class MemoryInstanceView {
     ensureTreeInitialized(parentPanel);
     assert myTreeRoot != null && myTreeModel != null && myClassObject != null;
     myTreeRoot.removeAll();
+    populateInstances(myClassObject.getInstances(), 0);
+    myTreeModel.nodeChanged(myTreeRoot);
+    myTreeModel.reload();
+  }
 
-    for (InstanceObject instanceObject : myClassObject.getInstances()) {
+  /**
+   * Adds a page of instances to the tree, starting at the given one. Classes can have a huge number of instances, so if there are more
+   * left, a {@link MoreInstancesObject} node is added last to load the next page when selected.
+   */
+  private void populateInstances(@NotNull List<InstanceObject> instances, int start) {
+    assert myTreeRoot != null;
+    int end = Math.min(instances.size(), start + INSTANCES_PAGE_SIZE);
+    for (InstanceObject instanceObject : instances.subList(start, end)) {
       MemoryObjectTreeNode instanceNode = new MemoryObjectTreeNode<>(instanceObject);
       myTreeRoot.add(instanceNode);
       populateFields(instanceNode);
     }
-    myTreeModel.nodeChanged(myTreeRoot);
-    myTreeModel.reload();
+    if (end < instances.size()) {
+      myTreeRoot.add(new MemoryObjectTreeNode<>(new MoreInstancesObject(instances, end)));
+    }
   }
 
   private static void populateFields(@NotNull MemoryObjectTreeNode parent) {
@@ -245,6 +259,13 @@ final class MemoryInstanceView {
       assert path.getLastPathComponent() instanceof MemoryObjectTreeNode;
       MemoryObjectTreeNode instanceObject = (MemoryObjectTreeNode)path.getLastPathComponent();
       assert instanceObject.getAdapter() instanceof InstanceObject;
+      if (instanceObject.getAdapter() instanceof MoreInstancesObject) {
+        MoreInstancesObject moreInstances = (MoreInstancesObject)instanceObject.getAdapter();
+        myTreeRoot.remove(instanceObject);
+        populateInstances(moreInstances.myInstances, moreInstances.myStart);
+        myTreeModel.nodeStructureChanged(myTreeRoot);
+        return;
+      }
       InstanceObject selectedInstanceObject = (InstanceObject)instanceObject.getAdapter();
       myStage.selectInstance(selectedInstanceObject);
     });
@@ -285,11 +306,64 @@ final class MemoryInstanceView {
       builder.addColumn(myAttributeColumns.get(attribute).getBuilder());
     }
     builder.setTreeSorter((Comparator<MemoryObjectTreeNode<InstanceObject>> comparator, SortOrder sortOrder) -> {
-      myTreeRoot.sort(comparator);
+      InstanceAttribute attribute = findAttribute(comparator);
+      List<InstanceObject> instances = myClassObject.getInstances();
+      if (attribute != null && instances.size() > INSTANCES_PAGE_SIZE) {
+        // Only some of the instances are in the tree, so sorting them would not bring the first ones of the new order to the top. Sort
+        // all of them instead, and start over from the first page.
+        myTreeRoot.removeAll();
+        populateInstances(myClassObject.getInstances(attribute, sortOrder == SortOrder.ASCENDING), 0);
+      }
+      else {
+        // Keep the node that loads more instances last, whatever the order.
+        myTreeRoot.sort((o1, o2) -> {
+          boolean more1 = o1.getAdapter() instanceof MoreInstancesObject;
+          boolean more2 = o2.getAdapter() instanceof MoreInstancesObject;
+          return more1 || more2 ? Boolean.compare(more1, more2) : comparator.compare(o1, o2);
+        });
+      }
       myTreeModel.nodeStructureChanged(myTreeRoot);
     });
     builder.setBackground(ProfilerColors.MONITOR_BACKGROUND);
     myTree = builder.build();
     parentPanel.add(myTree, BorderLayout.CENTER);
   }
+
+  /**
+   * Returns the attribute whose column sorts with the given comparator, in either order.
+   */
+  @Nullable
+  private InstanceAttribute findAttribute(@NotNull Comparator<?> comparator) {
+    for (Map.Entry<InstanceAttribute, AttributeColumn> entry : myAttributeColumns.entrySet()) {
+      Comparator<MemoryObjectTreeNode> columnComparator = entry.getValue().getComparator();
+      if (comparator.equals(columnComparator) || comparator.equals(Collections.reverseOrder(columnComparator))) {
+        return entry.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Placeholder for the instances that are not in the tree yet.
+   */
+  private static final class MoreInstancesObject extends InstanceObject {
+    @NotNull private final List<InstanceObject> myInstances;
+    private final int myStart;
+
+    private MoreInstancesObject(@NotNull List<InstanceObject> instances, int start) {
+      myInstances = instances;
+      myStart = start;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+      return String.format("%d more instances...", myInstances.size() - myStart);
+    }
+
+    @Override
+    public int getDepth() {
+      return -1;
+    }
+  }
 }
@@ -335,6 +335,11 @@ public class MemoryProfilerStageView extends StageView<MemoryProfilerStage> {
         .setInitialOrder(mySortOrder)
         .setComparator(myComparator);
     }
+
+    @NotNull
+    public Comparator<MemoryObjectTreeNode> getComparator() {
+      return myComparator;
+    }
   }
 
   static class DetailColumnRenderer extends ColoredTreeCellRenderer {
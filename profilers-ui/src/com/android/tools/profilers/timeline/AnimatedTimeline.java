@@ -33,6 +33,12 @@ public final class AnimatedTimeline implements Animatable {
     myTimeline = timeline;
   }
 
+  @Override
+  public boolean isDirty() {
+    // The view range only moves on its own while streaming.
+    return myTimeline.isStreaming();
+  }
+
   @Override
   public void animate(float frameLength) {
     if (!myTimeline.isStreaming()) {
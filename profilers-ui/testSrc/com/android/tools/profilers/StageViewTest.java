@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers;
+
+import com.android.tools.adtui.AxisComponent;
+import com.android.tools.adtui.Choreographer;
+import com.android.tools.adtui.SelectionComponent;
+import com.android.tools.adtui.chart.StateChart;
+import com.android.tools.adtui.chart.linechart.LineChart;
+import com.android.tools.adtui.common.formatter.SingleUnitAxisFormatter;
+import com.android.tools.adtui.model.DefaultDataSeries;
+import com.android.tools.adtui.model.Range;
+import com.android.tools.adtui.model.RangedContinuousSeries;
+import com.android.tools.adtui.model.RangedSeries;
+import com.android.tools.profiler.proto.ProfilerServiceGrpc;
+import com.google.common.collect.ImmutableMap;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StageViewTest {
+  /**
+   * More frames than any of the components needs to settle, plus the idle frames the {@link Choreographer} waits for before parking.
+   */
+  private static final int MAX_FRAMES = 200;
+
+  @Rule public TestGrpcChannel<ProfilerServiceGrpc.ProfilerServiceImplBase> myGrpcChannel =
+    new TestGrpcChannel<>("StageViewTestChannel", new ProfilerServiceGrpc.ProfilerServiceImplBase() {});
+
+  @Test
+  public void testParksWhenPaused() throws Exception {
+    StudioProfilers profilers = myGrpcChannel.getProfilers();
+    ProfilerTimeline timeline = profilers.getTimeline();
+    profilers.getDataRange().set(0, TimeUnit.SECONDS.toMicros(60));
+    timeline.setStreaming(true);
+
+    FakeStageView view = new FakeStageView(new FakeStage(profilers));
+    Choreographer choreographer = view.getChoreographer();
+    for (int i = 0; i < MAX_FRAMES; i++) {
+      choreographer.actionPerformed(null);
+    }
+    // The timeline needs frames as long as it streams.
+    assertFalse(choreographer.isParked());
+
+    timeline.setStreaming(false);
+    runUntilParked(choreographer);
+
+    // Selecting a range wakes it up.
+    timeline.getSelectionRange().set(TimeUnit.SECONDS.toMicros(10), TimeUnit.SECONDS.toMicros(20));
+    choreographer.actionPerformed(null);
+    assertFalse(choreographer.isParked());
+    runUntilParked(choreographer);
+  }
+
+  private static void runUntilParked(@NotNull Choreographer choreographer) {
+    for (int i = 0; i < MAX_FRAMES && !choreographer.isParked(); i++) {
+      choreographer.actionPerformed(null);
+    }
+    assertTrue(choreographer.isParked());
+  }
+
+  private enum FakeState {
+    ON,
+    OFF
+  }
+
+  private static class FakeStage extends Stage {
+    private FakeStage(@NotNull StudioProfilers profilers) {
+      super(profilers);
+    }
+
+    @Override
+    public ProfilerMode getProfilerMode() {
+      return ProfilerMode.EXPANDED;
+    }
+  }
+
+  /**
+   * Registers the same kinds of components as the profiler stages do.
+   */
+  private static class FakeStageView extends StageView<FakeStage> {
+    private FakeStageView(@NotNull FakeStage stage) {
+      super(stage);
+      StudioProfilers profilers = stage.getStudioProfilers();
+      ProfilerTimeline timeline = getTimeline();
+
+      DefaultDataSeries<Long> data = new DefaultDataSeries<>();
+      DefaultDataSeries<FakeState> states = new DefaultDataSeries<>();
+      for (long seconds = 0; seconds <= 60; seconds++) {
+        data.add(TimeUnit.SECONDS.toMicros(seconds), seconds % 10);
+        states.add(TimeUnit.SECONDS.toMicros(seconds), seconds % 2 == 0 ? FakeState.ON : FakeState.OFF);
+      }
+      Range yRange = new Range(0, 10);
+
+      LineChart lineChart = new LineChart();
+      lineChart.addLine(new RangedContinuousSeries("Data", timeline.getViewRange(), yRange, data));
+      AxisComponent leftAxis =
+        new AxisComponent.Builder(yRange, new SingleUnitAxisFormatter(1, 5, 1, ""), AxisComponent.AxisOrientation.RIGHT).build();
+      StateChart<FakeState> stateChart = new StateChart<>(ImmutableMap.of(FakeState.ON, Color.GREEN, FakeState.OFF, Color.GRAY));
+      stateChart.addSeries(new RangedSeries<>(timeline.getViewRange(), states));
+      SelectionComponent selection = new SelectionComponent(timeline.getSelectionRange(), timeline.getViewRange());
+      AxisComponent timeAxis = buildTimeAxis(profilers);
+
+      JPanel panel = new JPanel(new BorderLayout());
+      panel.add(lineChart, BorderLayout.CENTER);
+      panel.add(leftAxis, BorderLayout.WEST);
+      panel.add(stateChart, BorderLayout.NORTH);
+      panel.add(selection, BorderLayout.EAST);
+      panel.add(timeAxis, BorderLayout.SOUTH);
+      getComponent().add(panel, BorderLayout.CENTER);
+
+      getChoreographer().register(lineChart);
+      getChoreographer().register(leftAxis);
+      getChoreographer().register(stateChart);
+      getChoreographer().register(selection);
+      getChoreographer().register(timeAxis);
+    }
+
+    @Override
+    public JComponent getToolbar() {
+      return new JPanel();
+    }
+  }
+}
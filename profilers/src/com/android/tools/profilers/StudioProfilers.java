@@ -58,6 +58,8 @@ final public class StudioProfilers extends AspectModel<ProfilerAspect> {
 
   private boolean myConnected;
 
+  private volatile boolean myStopped;
+
   @Nullable
   private Stage myStage;
 
@@ -95,9 +97,8 @@ final public class StudioProfilers extends AspectModel<ProfilerAspect> {
    * TODO: Investigate a streaming notification service.
    */
   private void run() {
-    // TODO: Allow clean exit of this thread.
     try {
-      while (true) {
+      while (!myStopped) {
         try {
           Profiler.GetDevicesResponse response = myClient.getProfilerClient().getDevices(Profiler.GetDevicesRequest.getDefaultInstance());
           long nowNs = System.nanoTime();
@@ -154,6 +155,13 @@ final public class StudioProfilers extends AspectModel<ProfilerAspect> {
     }
   }
 
+  /**
+   * Stops polling for devices and processes. The profilers cannot be used afterwards.
+   */
+  public void stop() {
+    myStopped = true;
+  }
+
 
   /**
    * Chooses the given device. If the device is not known or null, the first available one will be chosen instead.
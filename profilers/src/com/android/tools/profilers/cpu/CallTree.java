@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.HNode;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The calls made by a thread during a capture, stored in flat arrays rather than as a tree of objects.
+ *
+ * Calls are numbered in pre-order: a call comes right before its callees, which are in the order they were made. The callees of call i
+ * are therefore all in (i, getSubtreeEnd(i)), the first one being i + 1 and each following one starting where the previous subtree ends.
+ * Call 0 is the root of the tree. Methods are shared by all the trees of a capture, calls only refer to them by index.
+ */
+public class CallTree {
+  @NotNull private final List<MethodModel> myMethods;
+
+  @NotNull private final TIntArrayList myParents = new TIntArrayList();
+  @NotNull private final TIntArrayList myMethodIds = new TIntArrayList();
+  @NotNull private final TIntArrayList mySubtreeEnds = new TIntArrayList();
+  @NotNull private final TLongArrayList myStarts = new TLongArrayList();
+  @NotNull private final TLongArrayList myEnds = new TLongArrayList();
+
+  public CallTree(@NotNull List<MethodModel> methods) {
+    myMethods = methods;
+  }
+
+  /**
+   * Adds a call made from the given parent call, or the root call if parent is -1. The callees of a call must all be added before
+   * {@link #endCall(int)} is called for it, and before any call that isn't one of its callees.
+   *
+   * @return the index of the new call
+   */
+  public int addCall(int parent, int methodId, long start, long end) {
+    assert parent >= 0 || myParents.isEmpty();
+    int call = myParents.size();
+    myParents.add(parent);
+    myMethodIds.add(methodId);
+    mySubtreeEnds.add(call + 1);
+    myStarts.add(start);
+    myEnds.add(end);
+    return call;
+  }
+
+  /**
+   * Marks all the callees of the given call as added.
+   */
+  public void endCall(int call) {
+    mySubtreeEnds.set(call, myParents.size());
+  }
+
+  public int size() {
+    return myParents.size();
+  }
+
+  public int getParent(int call) {
+    return myParents.get(call);
+  }
+
+  public int getMethodId(int call) {
+    return myMethodIds.get(call);
+  }
+
+  @NotNull
+  public MethodModel getMethod(int call) {
+    return myMethods.get(myMethodIds.get(call));
+  }
+
+  public long getStart(int call) {
+    return myStarts.get(call);
+  }
+
+  public long getEnd(int call) {
+    return myEnds.get(call);
+  }
+
+  public long getDuration(int call) {
+    return myEnds.get(call) - myStarts.get(call);
+  }
+
+  /**
+   * Returns the index right after the last call made, directly or not, from the given one.
+   */
+  public int getSubtreeEnd(int call) {
+    return mySubtreeEnds.get(call);
+  }
+
+  /**
+   * Builds the {@link HNode} tree that the charts work with. Each call is turned into a node, so this should only be done for the trees
+   * that are actually displayed.
+   */
+  @NotNull
+  public HNode<MethodModel> toHNode() {
+    assert size() > 0;
+    List<HNode<MethodModel>> nodes = new ArrayList<>(size());
+    for (int call = 0; call < size(); call++) {
+      HNode<MethodModel> node = new HNode<>(getMethod(call), getStart(call), getEnd(call));
+      int parent = getParent(call);
+      if (parent >= 0) {
+        HNode<MethodModel> parentNode = nodes.get(parent);
+        node.setDepth(parentNode.getDepth() + 1);
+        parentNode.addHNode(node);
+      }
+      nodes.add(node);
+    }
+    return nodes.get(0);
+  }
+}
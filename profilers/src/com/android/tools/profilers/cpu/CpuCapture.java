@@ -19,16 +19,10 @@ import com.android.tools.adtui.model.DurationData;
 import com.android.tools.adtui.model.HNode;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.perflib.vmtrace.ThreadInfo;
-import com.android.tools.perflib.vmtrace.VmTraceData;
-import com.android.tools.perflib.vmtrace.VmTraceParser;
-import com.google.protobuf3jarjar.ByteString;
-import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,47 +33,37 @@ public class CpuCapture implements DurationData {
   private final int myMainThreadId;
 
   @NotNull
-  private final Map<ThreadInfo, HNode<MethodModel>> myCaptureTrees;
+  private final Map<ThreadInfo, CallTree> myCaptureTrees;
 
+  /**
+   * Node trees built for the threads that were displayed so far, as they are much larger than the {@link CallTree} they come from.
+   */
   @NotNull
-  private final Range myRange;
+  private final Map<Integer, HNode<MethodModel>> myCaptureNodes = new HashMap<>();
 
-  public CpuCapture(@NotNull ByteString bytes) {
-
-    // TODO: Move file parsing/manipulation to another thread.
-    // TODO: Remove layers, analyze whether we can keep the whole file in memory.
-    try {
-      File trace = FileUtil.createTempFile("cpu_trace", ".trace");
-      VmTraceData data;
-      try (FileOutputStream out = new FileOutputStream(trace)) {
-        out.write(bytes.toByteArray());
-        VmTraceParser parser = new VmTraceParser(trace);
-        parser.parse();
-        data = parser.getTraceData();
-      }
+  @NotNull
+  private final Range myRange;
 
-      CpuTraceArt traceArt = new CpuTraceArt();
-      traceArt.parse(data);
-      myCaptureTrees = traceArt.getThreadsGraph();
-    }
-    catch (IOException e) {
-      throw new IllegalStateException(e);
-    }
+  /**
+   * Creates a capture from the call trees of its threads. Parsing the trace they come from is done by {@link CpuCaptureParser}.
+   */
+  public CpuCapture(@NotNull Map<ThreadInfo, CallTree> captureTrees) {
+    myCaptureTrees = captureTrees;
 
     // Try to find the main thread. The main thread is called "main" but if we fail
     // to find it we will fall back to the thread with the most information.
-    Map.Entry<ThreadInfo, HNode<MethodModel>> main = null;
+    Map.Entry<ThreadInfo, CallTree> main = null;
     boolean foundMainThread = false;
     myRange = new Range();
-    for (Map.Entry<ThreadInfo, HNode<MethodModel>> entry : myCaptureTrees.entrySet()) {
+    for (Map.Entry<ThreadInfo, CallTree> entry : myCaptureTrees.entrySet()) {
       if (entry.getKey().getName().equals(MAIN_THREAD_NAME)) {
         main = entry;
         foundMainThread = true;
       }
-      if (!foundMainThread && (main == null || main.getValue().duration() < entry.getValue().duration())) {
+      if (!foundMainThread && (main == null || main.getValue().getDuration(0) < entry.getValue().getDuration(0))) {
         main = entry;
       }
-      myRange.expand(entry.getValue().getStart(), entry.getValue().getEnd());
+      myRange.expand(entry.getValue().getStart(0), entry.getValue().getEnd(0));
     }
     if (main == null) {
       throw new IllegalArgumentException("Invalid trace");
@@ -97,8 +81,8 @@ public class CpuCapture implements DurationData {
   }
 
   @Nullable
-  public HNode<MethodModel> getCaptureNode(int threadId) {
-    for (Map.Entry<ThreadInfo, HNode<MethodModel>> entry : myCaptureTrees.entrySet()) {
+  public CallTree getCallTree(int threadId) {
+    for (Map.Entry<ThreadInfo, CallTree> entry : myCaptureTrees.entrySet()) {
       if (entry.getKey().getId() == threadId) {
         return entry.getValue();
       }
@@ -106,6 +90,20 @@ public class CpuCapture implements DurationData {
     return null;
   }
 
+  @Nullable
+  public synchronized HNode<MethodModel> getCaptureNode(int threadId) {
+    HNode<MethodModel> node = myCaptureNodes.get(threadId);
+    if (node == null) {
+      CallTree tree = getCallTree(threadId);
+      if (tree == null) {
+        return null;
+      }
+      node = tree.toHNode();
+      myCaptureNodes.put(threadId, node);
+    }
+    return node;
+  }
+
   @NotNull
   public Set<ThreadInfo> getThreads() {
     return myCaptureTrees.keySet();
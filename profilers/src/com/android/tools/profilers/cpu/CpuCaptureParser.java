@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.perflib.vmtrace.VmTraceData;
+import com.android.tools.perflib.vmtrace.VmTraceParser;
+import com.google.protobuf3jarjar.ByteString;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.*;
+
+/**
+ * Parses a trace into a {@link CpuCapture} on a background thread. Parsing reports its progress to a {@link Listener} and can be
+ * cancelled, in which case no capture is produced.
+ */
+public class CpuCaptureParser {
+
+  private static final Logger LOG = Logger.getInstance(CpuCaptureParser.class);
+
+  /**
+   * Traces are parsed one at a time, as parsing a large one already takes a lot of memory.
+   */
+  private static final ExecutorService ourExecutor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "Cpu capture parser");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // Share of the progress given to each step. Perflib doesn't report its progress, so it only moves once the trace file is parsed.
+  private static final double WRITE_PROGRESS = 0.1;
+  private static final double PERFLIB_PROGRESS = 0.5;
+
+  public interface Listener {
+    /**
+     * Called, from the parsing thread, every time {@link #getProgress()} moves by at least a percent.
+     */
+    void progressChanged(@NotNull CpuCaptureParser parser);
+
+    /**
+     * Called once parsing has succeeded, failed or was cancelled.
+     */
+    void parsingDone(@NotNull CpuCaptureParser parser);
+  }
+
+  @NotNull private final FutureTask<CpuCapture> myTask;
+  @NotNull private final Listener myListener;
+  private volatile double myProgress;
+
+  public CpuCaptureParser(@NotNull ByteString trace, @NotNull Listener listener) {
+    myListener = listener;
+    myTask = new FutureTask<CpuCapture>(() -> parse(trace)) {
+      @Override
+      protected void done() {
+        myListener.parsingDone(CpuCaptureParser.this);
+      }
+    };
+  }
+
+  public void start() {
+    ourExecutor.execute(myTask);
+  }
+
+  public void cancel() {
+    myTask.cancel(true);
+  }
+
+  public boolean isDone() {
+    return myTask.isDone();
+  }
+
+  /**
+   * Returns how far parsing went, between 0 and 1.
+   */
+  public double getProgress() {
+    return myProgress;
+  }
+
+  /**
+   * Returns the parsed capture, or null if parsing is still in progress, was cancelled or failed.
+   */
+  @Nullable
+  public CpuCapture getCapture() {
+    if (!myTask.isDone() || myTask.isCancelled()) {
+      return null;
+    }
+    try {
+      return myTask.get();
+    }
+    catch (InterruptedException | ExecutionException e) {
+      return null;
+    }
+  }
+
+  @NotNull
+  private CpuCapture parse(@NotNull ByteString bytes) throws IOException, InterruptedException {
+    File trace = FileUtil.createTempFile("cpu_trace", ".trace", true);
+    try {
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(trace))) {
+        bytes.writeTo(out);
+      }
+      setProgress(WRITE_PROGRESS);
+
+      VmTraceParser parser = new VmTraceParser(trace);
+      parser.parse();
+      VmTraceData data = parser.getTraceData();
+      setProgress(PERFLIB_PROGRESS);
+
+      CpuTraceArt traceArt = new CpuTraceArt();
+      traceArt.parse(data, progress -> setProgress(PERFLIB_PROGRESS + progress * (1 - PERFLIB_PROGRESS)));
+      return new CpuCapture(traceArt.getThreadsGraph());
+    }
+    catch (IOException | RuntimeException e) {
+      LOG.warn("Unable to parse cpu trace", e);
+      throw e;
+    }
+    finally {
+      FileUtil.delete(trace);
+    }
+  }
+
+  private void setProgress(double progress) throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    if ((int)(progress * 100) != (int)(myProgress * 100)) {
+      myProgress = progress;
+      myListener.progressChanged(this);
+    }
+  }
+}
@@ -20,4 +20,6 @@ public enum CpuProfilerAspect {
   CAPTURE,
   // The threads selection has changed.
   SELECTED_THREADS,
+  // Parsing the capture that was just recorded has progressed or ended.
+  CAPTURE_PARSING,
 }
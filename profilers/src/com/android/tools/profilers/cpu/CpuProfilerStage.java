@@ -20,6 +20,7 @@ import com.android.tools.adtui.model.*;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
 import com.android.tools.profilers.*;
+import com.google.protobuf3jarjar.ByteString;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.HashMap;
@@ -30,7 +31,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
-public class CpuProfilerStage extends Stage {
+public class CpuProfilerStage extends Stage implements CpuCaptureParser.Listener {
 
   /**
    * The thread states combined with the capture states.
@@ -69,9 +70,16 @@ public class CpuProfilerStage extends Stage {
   private int mySelectedThread;
 
   /**
-   * A cache of already parsed captures, indexed by trace_id.
+   * The parser of the capture that was just recorded, which becomes the current capture once parsed.
    */
-  private Map<Integer, CpuCapture> myTraceCaptures = new HashMap<>();
+  @Nullable
+  private volatile CpuCaptureParser myPendingCapture;
+
+  /**
+   * A cache of already parsed, or being parsed, captures, indexed by trace_id.
+   * A null value means the trace couldn't be fetched.
+   */
+  private Map<Integer, CpuCaptureParser> myTraceCaptures = new HashMap<>();
 
   public CpuProfilerStage(@NotNull StudioProfilers profiler) {
     super(profiler);
@@ -88,6 +96,18 @@ public class CpuProfilerStage extends Stage {
     return myAspect;
   }
 
+  @Override
+  public synchronized void exit() {
+    // Nothing is going to look at the captures still being parsed.
+    myPendingCapture = null;
+    for (CpuCaptureParser parser : myTraceCaptures.values()) {
+      if (parser != null && !parser.isDone()) {
+        parser.cancel();
+      }
+    }
+    myTraceCaptures.clear();
+  }
+
   public void startCapturing() {
     CpuProfiler.CpuProfilingAppStartRequest request = CpuProfiler.CpuProfilingAppStartRequest.newBuilder()
       .setAppPkgName(getStudioProfilers().getProcess().getName()) // TODO: Investigate if this is the right way of choosing the app
@@ -115,22 +135,46 @@ public class CpuProfilerStage extends Stage {
       .build();
 
     CpuProfiler.CpuProfilingAppStopResponse response = myCpuService.stopProfilingApp(request);
-    CpuCapture capture = null;
 
     if (!response.getStatus().equals(CpuProfiler.CpuProfilingAppStopResponse.Status.SUCCESS)) {
       LOG.error("Unable to stop tracing:" + response.getStatus());
       LOG.error(response.getErrorMessage());
     }
     else {
-      capture = new CpuCapture(response.getTrace());
-      // Force parsing the capture
-      getCapture(response.getTraceId());
+      // The capture is shown once parsed, see parsingDone.
+      myPendingCapture = parseCapture(response.getTraceId(), response.getTrace());
+    }
+    myCapturing = false;
+    myAspect.changed(CpuProfilerAspect.CAPTURE_PARSING);
+  }
+
+  @NotNull
+  private synchronized CpuCaptureParser parseCapture(int traceId, @NotNull ByteString trace) {
+    CpuCaptureParser parser = new CpuCaptureParser(trace, this);
+    myTraceCaptures.put(traceId, parser);
+    parser.start();
+    return parser;
+  }
+
+  @Override
+  public void progressChanged(@NotNull CpuCaptureParser parser) {
+    if (parser == myPendingCapture) {
+      myAspect.changed(CpuProfilerAspect.CAPTURE_PARSING);
     }
+  }
+
+  @Override
+  public void parsingDone(@NotNull CpuCaptureParser parser) {
+    if (parser != myPendingCapture) {
+      return;
+    }
+    myPendingCapture = null;
+    CpuCapture capture = parser.getCapture();
     if (capture != null) {
       setCapture(capture);
       setSelectedThread(capture.getMainThreadId());
     }
-    myCapturing = false;
+    myAspect.changed(CpuProfilerAspect.CAPTURE_PARSING);
   }
 
   public void setCapture(CpuCapture capture) {
@@ -165,6 +209,21 @@ public class CpuProfilerStage extends Stage {
     return myCapturing;
   }
 
+  /**
+   * Whether the capture that was just recorded is still being parsed.
+   */
+  public boolean isParsingCapture() {
+    return myPendingCapture != null;
+  }
+
+  /**
+   * How far parsing the capture that was just recorded went, between 0 and 1.
+   */
+  public double getCaptureParsingProgress() {
+    CpuCaptureParser parser = myPendingCapture;
+    return parser == null ? 1 : parser.getProgress();
+  }
+
   public DataSeries<CpuCapture> getCpuTraceDataSeries() {
     return myCpuTraceDataSeries;
   }
@@ -175,20 +234,27 @@ public class CpuProfilerStage extends Stage {
     return new CpuThreadsModel(this, getStudioProfilers().getProcessId());
   }
 
-  public CpuCapture getCapture(int traceId) {
-    CpuCapture capture = myTraceCaptures.get(traceId);
-    if (capture == null) {
+  /**
+   * Returns the capture with the given id, or null if it couldn't be fetched or parsed. Captures are parsed in the background, so this
+   * also returns null until parsing is done.
+   */
+  @Nullable
+  public synchronized CpuCapture getCapture(int traceId) {
+    if (!myTraceCaptures.containsKey(traceId)) {
       CpuProfiler.GetTraceRequest request = CpuProfiler.GetTraceRequest.newBuilder()
         .setAppId(getStudioProfilers().getProcessId())
         .setTraceId(traceId)
         .build();
       CpuProfiler.GetTraceResponse trace = myCpuService.getTrace(request);
       if (trace.getStatus() == CpuProfiler.GetTraceResponse.Status.SUCCESS) {
-        capture = new CpuCapture(trace.getData());
+        parseCapture(traceId, trace.getData());
+      }
+      else {
+        myTraceCaptures.put(traceId, null);
       }
-      myTraceCaptures.put(traceId, capture);
     }
-    return capture;
+    CpuCaptureParser parser = myTraceCaptures.get(traceId);
+    return parser == null ? null : parser.getCapture();
   }
 
 
@@ -206,6 +272,9 @@ public class CpuProfilerStage extends Stage {
       List<SeriesData<CpuCapture>> seriesData = new ArrayList<>();
       for (CpuProfiler.TraceInfo traceInfo : response.getTraceInfoList()) {
         CpuCapture capture = getCapture(traceInfo.getTraceId());
+        if (capture == null) {
+          continue;
+        }
         Range range = capture.getRange();
 
         seriesData.add(new SeriesData<>((long)range.getMin(), capture));
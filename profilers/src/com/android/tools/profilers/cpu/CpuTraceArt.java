@@ -15,58 +15,109 @@
  */
 package com.android.tools.profilers.cpu;
 
-import com.android.tools.adtui.model.HNode;
 import com.android.tools.perflib.vmtrace.Call;
 import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.perflib.vmtrace.MethodInfo;
 import com.android.tools.perflib.vmtrace.ThreadInfo;
 import com.android.tools.perflib.vmtrace.VmTraceData;
+import gnu.trove.TLongIntHashMap;
+import org.jetbrains.annotations.NotNull;
 
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleConsumer;
 
 public class CpuTraceArt {
 
+  /**
+   * Number of calls converted between two checks for cancellation.
+   */
+  private static final int CANCELLATION_CHECK_INTERVAL = 4096;
+
   /**
    * Tree representation of ART trace (generated from perflib tree).
-   * Keys are thread ids and values are their respective {@link HNode}
+   * Keys are thread ids and values are their respective {@link CallTree}
    */
-  Map<ThreadInfo, HNode<MethodModel>> myNodes;
+  Map<ThreadInfo, CallTree> myNodes;
 
-  public void parse(VmTraceData data) throws IOException {
+  /**
+   * Converts the perflib call trees of every thread.
+   *
+   * @param progress receives the fraction of threads converted so far
+   * @throws InterruptedException if the calling thread is interrupted, which is how parsing gets cancelled
+   */
+  public void parse(@NotNull VmTraceData data, @NotNull DoubleConsumer progress) throws InterruptedException {
     myNodes = new HashMap<>();
 
-    // Convert perflib tree to HNode tree.
-    for (ThreadInfo threadInfo : data.getThreads()) {
-      if (threadInfo.getTopLevelCall() == null) {
-        continue;
+    // Methods are shared by all threads, and calls only refer to them by index.
+    List<MethodModel> methods = new ArrayList<>();
+    TLongIntHashMap methodIndices = new TLongIntHashMap();
+
+    List<ThreadInfo> threads = new ArrayList<>(data.getThreads());
+    for (int i = 0; i < threads.size(); i++) {
+      ThreadInfo threadInfo = threads.get(i);
+      if (threadInfo.getTopLevelCall() != null) {
+        myNodes.put(threadInfo, convertCalls(data, threadInfo.getTopLevelCall(), methods, methodIndices));
       }
-      myNodes.put(threadInfo, convertCallsToNode(data, threadInfo.getTopLevelCall(), 0));
+      progress.accept((double)(i + 1) / threads.size());
     }
   }
 
-  private HNode<MethodModel> convertCallsToNode(VmTraceData data, Call call, int depth) {
+  /**
+   * Converts a perflib tree, using an explicit stack since call stacks can be much deeper than what recursion allows.
+   */
+  @NotNull
+  private static CallTree convertCalls(@NotNull VmTraceData data,
+                                       @NotNull Call topLevelCall,
+                                       @NotNull List<MethodModel> methods,
+                                       @NotNull TLongIntHashMap methodIndices) throws InterruptedException {
+    CallTree tree = new CallTree(methods);
+    Deque<Iterator<Call>> callees = new ArrayDeque<>();
+    Deque<Integer> calls = new ArrayDeque<>();
+    calls.push(addCall(tree, -1, data, topLevelCall, methods, methodIndices));
+    callees.push(topLevelCall.getCallees().iterator());
+    while (!calls.isEmpty()) {
+      if (tree.size() % CANCELLATION_CHECK_INTERVAL == 0 && Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      Iterator<Call> iterator = callees.peek();
+      if (iterator.hasNext()) {
+        Call callee = iterator.next();
+        calls.push(addCall(tree, calls.peek(), data, callee, methods, methodIndices));
+        callees.push(callee.getCallees().iterator());
+      }
+      else {
+        tree.endCall(calls.pop());
+        callees.pop();
+      }
+    }
+    return tree;
+  }
 
-    HNode<MethodModel> node = new HNode<>();
+  private static int addCall(@NotNull CallTree tree,
+                             int parent,
+                             @NotNull VmTraceData data,
+                             @NotNull Call call,
+                             @NotNull List<MethodModel> methods,
+                             @NotNull TLongIntHashMap methodIndices) {
+    long methodId = call.getMethodId();
+    if (!methodIndices.containsKey(methodId)) {
+      MethodInfo info = data.getMethod(methodId);
+      MethodModel method = new MethodModel();
+      method.setName(info.methodName);
+      method.setNamespace(info.className);
+      methodIndices.put(methodId, methods.size());
+      methods.add(method);
+    }
     // ART stores timestamp in a compressed fashion: All timestamp are 32 bits relative to a startTime.
     // We need to reconstruct the full timestamp by adding each of them to startTime.
-    node.setStart((call.getEntryTime(ClockType.GLOBAL, TimeUnit.MICROSECONDS) + data.getStartTimeUs()));
-    node.setEnd((call.getExitTime(ClockType.GLOBAL, TimeUnit.MICROSECONDS) + data.getStartTimeUs()));
-    node.setDepth(depth);
-
-    MethodModel method = new MethodModel();
-    method.setName(data.getMethod(call.getMethodId()).methodName);
-    method.setNamespace(data.getMethod(call.getMethodId()).className);
-    node.setData(method);
-
-    for (Call callee : call.getCallees()) {
-      node.addHNode(convertCallsToNode(data, callee, depth + 1));
-    }
-    return node;
+    return tree.addCall(parent,
+                        methodIndices.get(methodId),
+                        call.getEntryTime(ClockType.GLOBAL, TimeUnit.MICROSECONDS) + data.getStartTimeUs(),
+                        call.getExitTime(ClockType.GLOBAL, TimeUnit.MICROSECONDS) + data.getStartTimeUs());
   }
 
-  public Map<ThreadInfo, HNode<MethodModel>> getThreadsGraph() {
+  public Map<ThreadInfo, CallTree> getThreadsGraph() {
     return myNodes;
   }
 }
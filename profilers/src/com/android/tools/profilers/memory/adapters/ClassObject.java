@@ -17,7 +17,9 @@ package com.android.tools.profilers.memory.adapters;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 public abstract class ClassObject implements MemoryObject {
@@ -59,6 +61,32 @@ public abstract class ClassObject implements MemoryObject {
     return Collections.emptyList();
   }
 
+  /**
+   * Returns all the instances, sorted by the given attribute. Views that only show a page of the instances at a time should sort through
+   * this rather than sort the page they hold.
+   */
+  @NotNull
+  public List<InstanceObject> getInstances(@NotNull InstanceAttribute attribute, boolean ascending) {
+    Comparator<InstanceObject> comparator;
+    switch (attribute) {
+      case DEPTH:
+        comparator = Comparator.comparingInt(InstanceObject::getDepth);
+        break;
+      case SHALLOW_SIZE:
+        comparator = Comparator.comparingInt(InstanceObject::getShallowSize);
+        break;
+      case RETAINED_SIZE:
+        comparator = Comparator.comparingLong(InstanceObject::getRetainedSize);
+        break;
+      default:
+        comparator = Comparator.comparing(InstanceObject::getName);
+        break;
+    }
+    List<InstanceObject> instances = new ArrayList<>(getInstances());
+    instances.sort(ascending ? comparator : comparator.reversed());
+    return instances;
+  }
+
   @NotNull
   public abstract List<InstanceAttribute> getInstanceAttributes();
 }
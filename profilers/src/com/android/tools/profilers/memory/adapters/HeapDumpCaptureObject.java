@@ -16,21 +16,25 @@
 package com.android.tools.profilers.memory.adapters;
 
 import com.android.tools.perflib.heap.ProguardMap;
-import com.android.tools.perflib.heap.Snapshot;
-import com.android.tools.perflib.heap.io.InMemoryBuffer;
 import com.android.tools.profiler.proto.MemoryProfiler.DumpDataResponse;
 import com.android.tools.profiler.proto.MemoryProfiler.HeapDumpDataRequest;
 import com.android.tools.profiler.proto.MemoryProfiler.HeapDumpInfo;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 // TODO finish this class for the memory detail view
 public class HeapDumpCaptureObject extends CaptureObject {
+  private static final Logger LOG = Logger.getInstance(HeapDumpCaptureObject.class);
+
   @NotNull
   private final MemoryServiceGrpc.MemoryServiceBlockingStub myClient;
 
@@ -42,8 +46,15 @@ public class HeapDumpCaptureObject extends CaptureObject {
   @Nullable
   private final ProguardMap myProguardMap;
 
+  /**
+   * The dump is written to disk as soon as it is received and indexed from there, so that neither the raw data nor the object graph has
+   * to fit in the IDE's heap.
+   */
+  @Nullable
+  private File myDumpFile;
+
   @Nullable
-  private Snapshot mySnapshot;
+  private HprofIndex myIndex;
 
   public HeapDumpCaptureObject(@NotNull MemoryServiceGrpc.MemoryServiceBlockingStub client,
                                int appId,
@@ -57,9 +68,10 @@ public class HeapDumpCaptureObject extends CaptureObject {
 
   @Override
   public void dispose() {
-    if (mySnapshot != null) {
-      mySnapshot.dispose();
-      mySnapshot = null;
+    myIndex = null;
+    if (myDumpFile != null) {
+      FileUtil.delete(myDumpFile);
+      myDumpFile = null;
     }
   }
 
@@ -77,6 +89,29 @@ public class HeapDumpCaptureObject extends CaptureObject {
   @NotNull
   @Override
   public List<HeapObject> getHeaps() {
+    if (myIndex == null) {
+      myDumpFile = fetchDump();
+      if (myDumpFile == null) {
+        return new ArrayList<>();
+      }
+      try {
+        myIndex = new HprofIndex(myDumpFile, myProguardMap);
+      }
+      catch (IOException | RuntimeException e) {
+        LOG.warn("Failed to index heap dump " + myHeapDumpInfo.getDumpId(), e);
+        return new ArrayList<>();
+      }
+    }
+
+    HprofIndex index = myIndex;
+    return IntStream.range(0, index.getHeapCount()).mapToObj(heap -> new HeapDumpHeapObject(index, heap)).collect(Collectors.toList());
+  }
+
+  /**
+   * Waits for the dump to be ready and writes it to a temporary file, returning null if it could not be retrieved.
+   */
+  @Nullable
+  private File fetchDump() {
     DumpDataResponse response;
     while (true) {
       // TODO move this to another thread and complete before we notify
@@ -90,22 +125,27 @@ public class HeapDumpCaptureObject extends CaptureObject {
         }
         catch (InterruptedException e) {
           Thread.currentThread().interrupt();
-          return new ArrayList<>();
+          return null;
         }
         continue;
       }
-      return new ArrayList<>();
+      return null;
     }
 
-    InMemoryBuffer buffer = new InMemoryBuffer(response.getData().asReadOnlyByteBuffer());
-    if (myProguardMap != null) {
-      mySnapshot = Snapshot.createSnapshot(buffer, myProguardMap);
+    File file = null;
+    try {
+      file = FileUtil.createTempFile("heapdump-" + myHeapDumpInfo.getDumpId(), ".hprof", true);
+      try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(file))) {
+        response.getData().writeTo(stream);
+      }
+      return file;
     }
-    else {
-      mySnapshot = Snapshot.createSnapshot(buffer);
+    catch (IOException e) {
+      LOG.warn("Failed to save heap dump " + myHeapDumpInfo.getDumpId(), e);
+      if (file != null) {
+        FileUtil.delete(file);
+      }
+      return null;
     }
-    mySnapshot.computeDominators();
-
-    return mySnapshot.getHeaps().stream().map(HeapDumpHeapObject::new).collect(Collectors.toList());
   }
 }
@@ -15,26 +15,37 @@
  */
 package com.android.tools.profilers.memory.adapters;
 
-import com.android.tools.perflib.heap.ClassObj;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.AbstractList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
- * A UI representation of a {@link ClassObj}.
+ * A UI representation of a class in a heap of an {@link HprofIndex}.
  */
 class HeapDumpClassObject extends ClassObject {
-  private final ClassObj myClassObj;
+  @NotNull
+  private final HprofIndex myIndex;
+
+  private final int myClass;
+
+  private final int myHeap;
 
   @NotNull
   private String myMemoizedName;
 
-  public HeapDumpClassObject(@NotNull ClassObj classObj) {
-    myClassObj = classObj;
+  private int myShallowSize = -1;
 
-    String className = myClassObj.getClassName();
+  private long myRetainedSize = -1;
+
+  public HeapDumpClassObject(@NotNull HprofIndex index, int cls, int heap) {
+    myIndex = index;
+    myClass = cls;
+    myHeap = heap;
+
+    String className = myIndex.getClassName(myClass);
     String packageName = null;
     int i = className.lastIndexOf(".");
     if (i != -1) {
@@ -52,28 +63,103 @@ class HeapDumpClassObject extends ClassObject {
 
   @Override
   public int getChildrenCount() {
-    return myClassObj.getInstanceCount();
+    return myIndex.getInstanceCount(myClass, myHeap);
   }
 
   @Override
   public int getElementSize() {
-    return myClassObj.getSize();
+    return myIndex.getClassInstanceSize(myClass);
   }
 
   @Override
   public int getShallowSize() {
-    return myClassObj.getShallowSize();
+    if (myShallowSize < 0) {
+      computeSizes();
+    }
+    return myShallowSize;
   }
 
   @Override
   public long getRetainedSize() {
-    return myClassObj.getTotalRetainedSize();
+    if (myRetainedSize < 0) {
+      computeSizes();
+    }
+    return myRetainedSize;
   }
 
+  /**
+   * Returns a view of the instances of the class in this heap, each adapter is only created when the instance is accessed.
+   */
   @NotNull
   @Override
   public List<InstanceObject> getInstances() {
-    return myClassObj.getInstancesList().stream().map(HeapDumpInstanceObject::new).collect(Collectors.toList());
+    return new AbstractList<InstanceObject>() {
+      @Override
+      public InstanceObject get(int index) {
+        return new HeapDumpInstanceObject(myIndex, myIndex.getInstance(myClass, myHeap, index));
+      }
+
+      @Override
+      public int size() {
+        return getChildrenCount();
+      }
+    };
+  }
+
+  /**
+   * Sorts the instances on keys read from the index, so that no adapter is created while sorting. Only sorting by name needs the name
+   * of every instance.
+   */
+  @NotNull
+  @Override
+  public List<InstanceObject> getInstances(@NotNull InstanceAttribute attribute, boolean ascending) {
+    int count = getChildrenCount();
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+
+    Comparator<Integer> comparator;
+    if (attribute == InstanceAttribute.LABEL) {
+      String[] names = new String[count];
+      for (int i = 0; i < count; i++) {
+        names[i] = new HeapDumpInstanceObject(myIndex, myIndex.getInstance(myClass, myHeap, i)).getName();
+      }
+      comparator = Comparator.comparing(i -> names[i]);
+    }
+    else {
+      long[] keys = new long[count];
+      for (int i = 0; i < count; i++) {
+        int instance = myIndex.getInstance(myClass, myHeap, i);
+        switch (attribute) {
+          case DEPTH:
+            keys[i] = myIndex.getDepth(instance);
+            break;
+          case SHALLOW_SIZE:
+            keys[i] = myIndex.getShallowSize(instance);
+            break;
+          case RETAINED_SIZE:
+            keys[i] = myIndex.getRetainedSize(instance);
+            break;
+          default:
+            break;
+        }
+      }
+      comparator = Comparator.comparingLong(i -> keys[i]);
+    }
+    Arrays.sort(order, ascending ? comparator : comparator.reversed());
+
+    return new AbstractList<InstanceObject>() {
+      @Override
+      public InstanceObject get(int index) {
+        return new HeapDumpInstanceObject(myIndex, myIndex.getInstance(myClass, myHeap, order[index]));
+      }
+
+      @Override
+      public int size() {
+        return count;
+      }
+    };
   }
 
   @NotNull
@@ -81,4 +167,16 @@ class HeapDumpClassObject extends ClassObject {
   public List<InstanceAttribute> getInstanceAttributes() {
     return Arrays.asList(InstanceAttribute.LABEL, InstanceAttribute.DEPTH, InstanceAttribute.SHALLOW_SIZE, InstanceAttribute.RETAINED_SIZE);
   }
+
+  private void computeSizes() {
+    int shallowSize = 0;
+    long retainedSize = 0;
+    for (int i = 0; i < getChildrenCount(); i++) {
+      int instance = myIndex.getInstance(myClass, myHeap, i);
+      shallowSize += myIndex.getShallowSize(instance);
+      retainedSize += myIndex.getRetainedSize(instance);
+    }
+    myShallowSize = shallowSize;
+    myRetainedSize = retainedSize;
+  }
 }
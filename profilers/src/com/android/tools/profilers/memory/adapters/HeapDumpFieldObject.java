@@ -15,76 +15,65 @@
  */
 package com.android.tools.profilers.memory.adapters;
 
-import com.android.tools.perflib.heap.*;
-import com.google.common.collect.ImmutableMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+
+import static com.android.tools.profilers.memory.adapters.HprofIndex.*;
 
 /**
- * A UI representation of a {@link Field}.
+ * A UI representation of a field, array element or static field value decoded by an {@link HprofIndex}.
  */
 public class HeapDumpFieldObject extends FieldObject {
-  private static final Map<Type, ValueType> ourValueTypeMap = ImmutableMap.<Type, ValueType>builder()
-    .put(Type.BOOLEAN, ValueType.BOOLEAN)
-    .put(Type.BYTE, ValueType.BYTE)
-    .put(Type.CHAR, ValueType.CHAR)
-    .put(Type.SHORT, ValueType.SHORT)
-    .put(Type.INT, ValueType.INT)
-    .put(Type.LONG, ValueType.LONG)
-    .put(Type.FLOAT, ValueType.FLOAT)
-    .put(Type.DOUBLE, ValueType.DOUBLE)
-    .build();
-
-  @NotNull private final ClassInstance.FieldValue myField;
+  @NotNull private final HprofIndex myIndex;
+  @NotNull private final FieldValue myField;
   private final int myShallowSize;
   private final long myRetainedSize;
   private final ValueType myValueType;
 
-  public HeapDumpFieldObject(@NotNull ClassInstance.FieldValue field) {
+  HeapDumpFieldObject(@NotNull HprofIndex index, @NotNull FieldValue field) {
+    myIndex = index;
     myField = field;
-    Type type = myField.getField().getType();
-    if (type == Type.OBJECT) {
-      if (myField.getValue() == null) {
+    if (myField.myType == TYPE_OBJECT) {
+      if (myField.myValue == null) {
         myValueType = ValueType.UNKNOWN; // TODO fix this by using the parent instance's information
         myShallowSize = 0;
         myRetainedSize = 0;
       }
       else {
-        Class valueClass = myField.getValue().getClass();
-        Instance instance = (Instance)myField.getValue();
-        if (ClassObj.class.isAssignableFrom(valueClass)) {
+        int instance = (Integer)myField.myValue;
+        int valueClass = myIndex.getObjectClass(instance);
+        if (myIndex.getKind(instance) == KIND_CLASS) {
           myValueType = ValueType.CLASS;
         }
-        else if (ClassInstance.class.isAssignableFrom(valueClass) &&
-                 "java.lang.String".equals(((ClassInstance)myField.getValue()).getClassObj().getClassName())) {
+        else if (myIndex.getKind(instance) == KIND_INSTANCE && valueClass >= 0 &&
+                 "java.lang.String".equals(myIndex.getClassName(valueClass))) {
           myValueType = ValueType.STRING;
         }
         else {
           myValueType = ValueType.OBJECT;
         }
-        myShallowSize = instance.getSize();
-        myRetainedSize = instance.getTotalRetainedSize();
+        myShallowSize = myIndex.getShallowSize(instance);
+        myRetainedSize = myIndex.getRetainedSize(instance);
       }
     }
     else {
-      myValueType = ourValueTypeMap.getOrDefault(type, ValueType.UNKNOWN);
-      myShallowSize = type.getSize();
-      myRetainedSize = type.getSize();
+      myValueType = getPrimitiveValueType(myField.myType);
+      myShallowSize = getPrimitiveSize(myField.myType);
+      myRetainedSize = myShallowSize;
     }
   }
 
   @NotNull
   @Override
   public String getName() {
-    if (myField.getValue() == null) {
-      return myField.getField().getName() + "= {null}";
+    if (myField.myValue == null) {
+      return myField.myName + "= {null}";
     }
     else {
-      return myField.getField().getName() + "=" + myField.getValue().toString();
+      return myField.myName + "=" + getValueLabel();
     }
   }
 
@@ -108,10 +97,8 @@ public class HeapDumpFieldObject extends FieldObject {
   @Override
   public List<FieldObject> getFields() {
     // The field only has children if it is a non-primitive field.
-    if (myField.getField().getType() == Type.OBJECT && myField.getValue() != null) {
-      Instance instance = (Instance)myField.getValue();
-      assert instance != null;
-      return (new HeapDumpInstanceObject(instance)).getFields();
+    if (myField.myType == TYPE_OBJECT && myField.myValue != null) {
+      return (new HeapDumpInstanceObject(myIndex, (Integer)myField.myValue)).getFields();
     }
     return Collections.emptyList();
   }
@@ -119,13 +106,16 @@ public class HeapDumpFieldObject extends FieldObject {
   @NotNull
   @Override
   public String getFieldName() {
-    return myField.getField().getName();
+    return myField.myName;
   }
 
   @NotNull
   @Override
   public String getValueLabel() {
-    return myField.getValue().toString();
+    if (myField.myValue == null) {
+      return "";
+    }
+    return myField.myType == TYPE_OBJECT ? myIndex.describe((Integer)myField.myValue) : myField.myValue.toString();
   }
 
   @Override
@@ -135,6 +125,34 @@ public class HeapDumpFieldObject extends FieldObject {
 
   @Override
   public boolean getIsArray() {
-    return ArrayInstance.class.isAssignableFrom(myField.getValue().getClass());
+    if (myField.myType != TYPE_OBJECT || myField.myValue == null) {
+      return false;
+    }
+    int kind = myIndex.getKind((Integer)myField.myValue);
+    return kind == KIND_OBJECT_ARRAY || kind == KIND_PRIMITIVE_ARRAY;
+  }
+
+  @NotNull
+  private static ValueType getPrimitiveValueType(int type) {
+    switch (type) {
+      case TYPE_BOOLEAN:
+        return ValueType.BOOLEAN;
+      case TYPE_BYTE:
+        return ValueType.BYTE;
+      case TYPE_CHAR:
+        return ValueType.CHAR;
+      case TYPE_SHORT:
+        return ValueType.SHORT;
+      case TYPE_INT:
+        return ValueType.INT;
+      case TYPE_LONG:
+        return ValueType.LONG;
+      case TYPE_FLOAT:
+        return ValueType.FLOAT;
+      case TYPE_DOUBLE:
+        return ValueType.DOUBLE;
+      default:
+        return ValueType.UNKNOWN;
+    }
   }
 }
@@ -15,7 +15,6 @@
  */
 package com.android.tools.profilers.memory.adapters;
 
-import com.android.tools.perflib.heap.Heap;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
@@ -25,19 +24,17 @@ import java.util.stream.Collectors;
 import static com.android.tools.profilers.memory.adapters.HeapObject.ClassAttribute.*;
 
 /**
- * A UI representation for a {@link Heap}.
+ * A UI representation for a heap of an {@link HprofIndex}.
  */
 class HeapDumpHeapObject extends HeapObject {
   @NotNull
-  private final Heap myHeap;
+  private final HprofIndex myIndex;
 
-  public HeapDumpHeapObject(@NotNull Heap heap) {
-    myHeap = heap;
-  }
+  private final int myHeap;
 
-  @NotNull
-  public Heap getHeap() {
-    return myHeap;
+  public HeapDumpHeapObject(@NotNull HprofIndex index, int heap) {
+    myIndex = index;
+    myHeap = heap;
   }
 
   @Override
@@ -48,13 +45,14 @@ class HeapDumpHeapObject extends HeapObject {
   @NotNull
   @Override
   public String getHeapName() {
-    return myHeap.getName();
+    return myIndex.getHeapName(myHeap);
   }
 
   @NotNull
   @Override
   public List<ClassObject> getClasses() {
-    return myHeap.getClasses().stream().map(HeapDumpClassObject::new).collect(Collectors.toList());
+    return Arrays.stream(myIndex.getClasses(myHeap)).mapToObj(cls -> new HeapDumpClassObject(myIndex, cls, myHeap))
+      .collect(Collectors.toList());
   }
 
   @NotNull
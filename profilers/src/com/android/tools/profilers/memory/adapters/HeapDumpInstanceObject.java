@@ -15,7 +15,6 @@
  */
 package com.android.tools.profilers.memory.adapters;
 
-import com.android.tools.perflib.heap.*;
 import com.android.tools.profiler.proto.MemoryProfiler.AllocationStack;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -24,57 +23,51 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * A UI representation of a {@link ClassInstance}.
+ * A UI representation of an instance, array or class object of an {@link HprofIndex}.
  */
 public class HeapDumpInstanceObject extends InstanceObject {
-  @NotNull private final Instance myInstance;
+  @NotNull private final HprofIndex myIndex;
 
-  public HeapDumpInstanceObject(@NotNull Instance instance) {
+  private final int myInstance;
+
+  HeapDumpInstanceObject(@NotNull HprofIndex index, int instance) {
+    myIndex = index;
     myInstance = instance;
   }
 
   @NotNull
   @Override
   public String getName() {
-    // TODO show length of array instance
-    return String.format("@%d (0x%x)", myInstance.getUniqueId(), myInstance.getUniqueId());
+    long id = myIndex.getId(myInstance);
+    int kind = myIndex.getKind(myInstance);
+    if (kind == HprofIndex.KIND_OBJECT_ARRAY || kind == HprofIndex.KIND_PRIMITIVE_ARRAY) {
+      return String.format("@%d (0x%x) [%d]", id, id, myIndex.getArrayLength(myInstance));
+    }
+    return String.format("@%d (0x%x)", id, id);
   }
 
   @Override
   public int getDepth() {
-    return myInstance.getDistanceToGcRoot();
+    return myIndex.getDepth(myInstance);
   }
 
   @Override
   public int getShallowSize() {
-    return myInstance.getSize();
+    return myIndex.getShallowSize(myInstance);
   }
 
   @Override
   public long getRetainedSize() {
-    return myInstance.getTotalRetainedSize();
+    return myIndex.getRetainedSize(myInstance);
   }
 
   @Nullable
   @Override
   public List<FieldObject> getFields() {
     List<FieldObject> sublist = new ArrayList<>();
-    if (myInstance instanceof ClassInstance) {
-      ClassInstance classInstance = (ClassInstance)myInstance;
-      for (ClassInstance.FieldValue field : classInstance.getValues()) {
-        sublist.add(new HeapDumpFieldObject(field));
-      }
+    for (HprofIndex.FieldValue field : myIndex.getFields(myInstance)) {
+      sublist.add(new HeapDumpFieldObject(myIndex, field));
     }
-    else if (myInstance instanceof ArrayInstance) {
-      ArrayInstance arrayInstance = (ArrayInstance)myInstance;
-      Type arrayType = arrayInstance.getArrayType();
-      int arrayIndex = 0;
-      for (Object value : arrayInstance.getValues()) {
-        sublist.add(new HeapDumpFieldObject(new ClassInstance.FieldValue(new Field(arrayType, Integer.toString(arrayIndex)), value)));
-        arrayIndex++;
-      }
-    }
-
     return sublist;
   }
 
@@ -82,12 +75,10 @@ public class HeapDumpInstanceObject extends InstanceObject {
   @Override
   public AllocationStack getCallStack() {
     AllocationStack.Builder builder = AllocationStack.newBuilder();
-    for (StackFrame stackFrame : myInstance.getStack().getFrames()) {
-      String fileName = stackFrame.getFilename();
-      String guessedClassName = fileName.endsWith(".java") ? fileName.substring(0, fileName.length() - ".java".length()) : fileName;
+    for (StackTraceElement stackFrame : myIndex.getStackTrace(myInstance)) {
       builder.addStackFrames(
-        AllocationStack.StackFrame.newBuilder().setClassName(guessedClassName).setMethodName(stackFrame.getMethodName())
-          .setLineNumber(stackFrame.getLineNumber()).setFileName(fileName).build());
+        AllocationStack.StackFrame.newBuilder().setClassName(stackFrame.getClassName()).setMethodName(stackFrame.getMethodName())
+          .setLineNumber(stackFrame.getLineNumber()).setFileName(stackFrame.getFileName()).build());
     }
     return builder.build();
   }
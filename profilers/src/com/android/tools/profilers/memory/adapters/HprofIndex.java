@@ -0,0 +1,1001 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.perflib.heap.ProguardMap;
+import gnu.trove.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Index over an HPROF heap dump, built in a single pass over a memory-mapped view of the file.
+ *
+ * Unlike a perflib {@link com.android.tools.perflib.heap.Snapshot}, no Java object is created per instance. Instances (including array
+ * and class objects) are numbered in file order and described by primitive arrays: id, file offset, class, heap and sizes. References are
+ * only decoded to compute depths and retained sizes, and field values, names and stack traces are read back from the file on demand.
+ */
+final class HprofIndex {
+  static final int KIND_INSTANCE = 0;
+  static final int KIND_OBJECT_ARRAY = 1;
+  static final int KIND_PRIMITIVE_ARRAY = 2;
+  static final int KIND_CLASS = 3;
+
+  static final int TYPE_OBJECT = 2;
+  static final int TYPE_BOOLEAN = 4;
+  static final int TYPE_CHAR = 5;
+  static final int TYPE_FLOAT = 6;
+  static final int TYPE_DOUBLE = 7;
+  static final int TYPE_BYTE = 8;
+  static final int TYPE_SHORT = 9;
+  static final int TYPE_INT = 10;
+  static final int TYPE_LONG = 11;
+
+  private static final String[] PRIMITIVE_TYPE_NAMES =
+    {null, null, null, null, "boolean", "char", "float", "double", "byte", "short", "int", "long"};
+
+  private static final int TAG_STRING = 0x01;
+  private static final int TAG_LOAD_CLASS = 0x02;
+  private static final int TAG_STACK_FRAME = 0x04;
+  private static final int TAG_STACK_TRACE = 0x05;
+  private static final int TAG_HEAP_DUMP = 0x0C;
+  private static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+
+  private static final int ROOT_UNKNOWN = 0xFF;
+  private static final int ROOT_JNI_GLOBAL = 0x01;
+  private static final int ROOT_JNI_LOCAL = 0x02;
+  private static final int ROOT_JAVA_FRAME = 0x03;
+  private static final int ROOT_NATIVE_STACK = 0x04;
+  private static final int ROOT_STICKY_CLASS = 0x05;
+  private static final int ROOT_THREAD_BLOCK = 0x06;
+  private static final int ROOT_MONITOR_USED = 0x07;
+  private static final int ROOT_THREAD_OBJECT = 0x08;
+  private static final int ROOT_INTERNED_STRING = 0x89;
+  private static final int ROOT_FINALIZING = 0x8A;
+  private static final int ROOT_DEBUGGER = 0x8B;
+  private static final int ROOT_REFERENCE_CLEANUP = 0x8C;
+  private static final int ROOT_VM_INTERNAL = 0x8D;
+  private static final int ROOT_JNI_MONITOR = 0x8E;
+  private static final int ROOT_UNREACHABLE = 0x90;
+  private static final int CLASS_DUMP = 0x20;
+  private static final int INSTANCE_DUMP = 0x21;
+  private static final int OBJECT_ARRAY_DUMP = 0x22;
+  private static final int PRIMITIVE_ARRAY_DUMP = 0x23;
+  private static final int PRIMITIVE_ARRAY_NODATA_DUMP = 0xC3;
+  private static final int HEAP_DUMP_INFO = 0xFE;
+
+  @NotNull private final MappedFile myFile;
+  @Nullable private final ProguardMap myProguardMap;
+  private int myIdSize;
+
+  // Top level records, by id or serial number, pointing into the file.
+  @NotNull private final TLongLongHashMap myStringOffsets = new TLongLongHashMap();
+  @NotNull private final TLongIntHashMap myStringLengths = new TLongIntHashMap();
+  @NotNull private final TLongLongHashMap myClassNameIds = new TLongLongHashMap();
+  @NotNull private final TIntLongHashMap myClassSerialNameIds = new TIntLongHashMap();
+  @NotNull private final TLongLongHashMap myStackFrameOffsets = new TLongLongHashMap();
+  @NotNull private final TIntLongHashMap myStackTraceOffsets = new TIntLongHashMap();
+
+  @NotNull private final List<String> myHeapNames = new ArrayList<>();
+  @NotNull private final TIntIntHashMap myHeapIndices = new TIntIntHashMap();
+
+  // Classes, numbered in the order of their CLASS_DUMP records.
+  @NotNull private final TLongIntHashMap myClassIndices = new TLongIntHashMap();
+  @NotNull private final TLongArrayList myClassIds = new TLongArrayList();
+  @NotNull private final TLongArrayList mySuperClassIds = new TLongArrayList();
+  @NotNull private final TIntArrayList myClassInstanceSizes = new TIntArrayList();
+  @NotNull private final TLongArrayList myClassStaticFieldOffsets = new TLongArrayList();
+  @NotNull private final TLongArrayList myClassFieldOffsets = new TLongArrayList();
+  @NotNull private final TIntArrayList myClassHeaps = new TIntArrayList();
+  private int[] mySuperClasses;
+  private String[] myClassNames;
+  // java.lang.ref.Reference and the index of its referent among its fields, or -1 if they are not in the dump. Like perflib, the referent
+  // of a reference is not a strong reference, so it is left out of depths and retained sizes.
+  private int myReferenceClass = -1;
+  private int myReferentField = -1;
+
+  // Objects, numbered in file order. The class id of a primitive array is its element type until the classes are resolved.
+  @NotNull private final TLongArrayList myObjectIds = new TLongArrayList();
+  @NotNull private final TLongArrayList myObjectOffsets = new TLongArrayList();
+  @NotNull private final TLongArrayList myObjectClassIds = new TLongArrayList();
+  @NotNull private final TByteArrayList myObjectKinds = new TByteArrayList();
+  @NotNull private final TIntArrayList myObjectHeaps = new TIntArrayList();
+  @NotNull private final TIntArrayList myObjectSizes = new TIntArrayList();
+  @NotNull private final TLongArrayList myRootIds = new TLongArrayList();
+  private int[] myObjectClasses;
+
+  // Object lookup by id: ids in increasing order, and the object each of them belongs to.
+  private long[] mySortedIds;
+  private int[] mySortedObjects;
+
+  // Objects of each class, grouped by heap. The objects of class c in heap h are
+  // myClassObjects[myClassObjectStarts[c * heapCount + h], myClassObjectStarts[c * heapCount + h + 1]).
+  private int[] myClassObjectStarts;
+  private int[] myClassObjects;
+
+  private int[] myDepths;
+  private long[] myRetainedSizes;
+
+  HprofIndex(@NotNull File file, @Nullable ProguardMap proguardMap) throws IOException {
+    myFile = new MappedFile(file);
+    myProguardMap = proguardMap;
+    parse();
+    resolveClasses();
+    indexObjects();
+    computeGraph();
+  }
+
+  int getHeapCount() {
+    return myHeapNames.size();
+  }
+
+  @NotNull
+  String getHeapName(int heap) {
+    return myHeapNames.get(heap);
+  }
+
+  /**
+   * Returns the classes that were either dumped in the given heap or have instances in it.
+   */
+  @NotNull
+  int[] getClasses(int heap) {
+    int heapCount = getHeapCount();
+    TIntArrayList classes = new TIntArrayList();
+    for (int c = 0; c < myClassNames.length; c++) {
+      int bucket = c * heapCount + heap;
+      if (myClassHeaps.get(c) == heap || myClassObjectStarts[bucket + 1] > myClassObjectStarts[bucket]) {
+        classes.add(c);
+      }
+    }
+    return classes.toNativeArray();
+  }
+
+  @NotNull
+  String getClassName(int cls) {
+    return myClassNames[cls];
+  }
+
+  int getClassInstanceSize(int cls) {
+    return myClassInstanceSizes.get(cls);
+  }
+
+  int getInstanceCount(int cls, int heap) {
+    int bucket = cls * getHeapCount() + heap;
+    return myClassObjectStarts[bucket + 1] - myClassObjectStarts[bucket];
+  }
+
+  /**
+   * Returns the index'th object of the given class in the given heap, in file order.
+   */
+  int getInstance(int cls, int heap, int index) {
+    return myClassObjects[myClassObjectStarts[cls * getHeapCount() + heap] + index];
+  }
+
+  long getId(int object) {
+    return myObjectIds.get(object);
+  }
+
+  int getKind(int object) {
+    return myObjectKinds.get(object);
+  }
+
+  /**
+   * Returns the class of the given object, or -1 if it is unknown. For a class object, this is the class itself.
+   */
+  int getObjectClass(int object) {
+    return myObjectClasses[object];
+  }
+
+  int getShallowSize(int object) {
+    return myObjectSizes.get(object);
+  }
+
+  long getRetainedSize(int object) {
+    return myRetainedSizes[object];
+  }
+
+  /**
+   * Returns the number of references from a GC root to the given object, or -1 if it is unreachable.
+   */
+  int getDepth(int object) {
+    return myDepths[object];
+  }
+
+  /**
+   * Returns the object with the given id, or -1 if there is none.
+   */
+  int findObject(long id) {
+    int low = 0;
+    int high = mySortedIds.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (mySortedIds[mid] < id) {
+        low = mid + 1;
+      }
+      else if (mySortedIds[mid] > id) {
+        high = mid - 1;
+      }
+      else {
+        return mySortedObjects[mid];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns a short description of the given object, in the same format as perflib.
+   */
+  @NotNull
+  String describe(int object) {
+    int cls = myObjectClasses[object];
+    String className = cls < 0 ? "???" : myClassNames[cls];
+    long id = getId(object);
+    switch (getKind(object)) {
+      case KIND_CLASS:
+        return className;
+      case KIND_INSTANCE:
+        return String.format("%s@%d (0x%x)", className, id, id);
+      default:
+        String elementName = className.endsWith("[]") ? className.substring(0, className.length() - 2) : className;
+        return String.format("%s[%d]@%d (0x%x)", elementName, getArrayLength(object), id, id);
+    }
+  }
+
+  int getArrayLength(int object) {
+    int kind = getKind(object);
+    assert kind == KIND_OBJECT_ARRAY || kind == KIND_PRIMITIVE_ARRAY;
+    return myFile.getInt(myObjectOffsets.get(object) + myIdSize + 4);
+  }
+
+  /**
+   * Decodes the fields of an instance, the elements of an array or the static fields of a class.
+   */
+  @NotNull
+  List<FieldValue> getFields(int object) {
+    List<FieldValue> fields = new ArrayList<>();
+    long offset = myObjectOffsets.get(object);
+    int cls = myObjectClasses[object];
+    switch (getKind(object)) {
+      case KIND_INSTANCE:
+        long position = offset + 2 * myIdSize + 8;
+        for (int c = cls; c >= 0; c = mySuperClasses[c]) {
+          long field = myClassFieldOffsets.get(c);
+          int count = myFile.getShort(field) & 0xFFFF;
+          field += 2;
+          for (int i = 0; i < count; i++, field += myIdSize + 1) {
+            int type = myFile.getByte(field + myIdSize);
+            fields.add(new FieldValue(getFieldName(c, myFile.getId(field, myIdSize)), type, readValue(position, type)));
+            position += getTypeSize(type);
+          }
+        }
+        break;
+      case KIND_OBJECT_ARRAY: {
+        int length = getArrayLength(object);
+        long element = offset + 2 * myIdSize + 8;
+        for (int i = 0; i < length; i++, element += myIdSize) {
+          fields.add(new FieldValue(Integer.toString(i), TYPE_OBJECT, readValue(element, TYPE_OBJECT)));
+        }
+        break;
+      }
+      case KIND_PRIMITIVE_ARRAY: {
+        int length = getArrayLength(object);
+        int type = myFile.getByte(offset + myIdSize + 8);
+        long element = offset + myIdSize + 9;
+        for (int i = 0; i < length; i++, element += getTypeSize(type)) {
+          fields.add(new FieldValue(Integer.toString(i), type, readValue(element, type)));
+        }
+        break;
+      }
+      case KIND_CLASS:
+        long field = myClassStaticFieldOffsets.get(cls);
+        int count = myFile.getShort(field) & 0xFFFF;
+        field += 2;
+        for (int i = 0; i < count; i++) {
+          int type = myFile.getByte(field + myIdSize);
+          fields.add(new FieldValue(getFieldName(cls, myFile.getId(field, myIdSize)), type, readValue(field + myIdSize + 1, type)));
+          field += myIdSize + 1 + getTypeSize(type);
+        }
+        break;
+    }
+    return fields;
+  }
+
+  /**
+   * Returns the stack trace recorded for the allocation of the given object, which is empty if there is none.
+   */
+  @NotNull
+  List<StackTraceElement> getStackTrace(int object) {
+    List<StackTraceElement> frames = new ArrayList<>();
+    int serial = myFile.getInt(myObjectOffsets.get(object) + myIdSize);
+    if (!myStackTraceOffsets.containsKey(serial)) {
+      return frames;
+    }
+    long trace = myStackTraceOffsets.get(serial);
+    int count = myFile.getInt(trace + 8);
+    for (int i = 0; i < count; i++) {
+      long frameId = myFile.getId(trace + 12 + i * myIdSize, myIdSize);
+      if (!myStackFrameOffsets.containsKey(frameId)) {
+        continue;
+      }
+      long frame = myStackFrameOffsets.get(frameId);
+      String methodName = getString(myFile.getId(frame + myIdSize, myIdSize));
+      String fileName = getString(myFile.getId(frame + 3 * myIdSize, myIdSize));
+      int classSerial = myFile.getInt(frame + 4 * myIdSize);
+      String className = myClassSerialNameIds.containsKey(classSerial) ? getString(myClassSerialNameIds.get(classSerial)) : "";
+      if (myProguardMap != null) {
+        className = myProguardMap.getClassName(className);
+      }
+      frames.add(new StackTraceElement(className, methodName, fileName, myFile.getInt(frame + 4 * myIdSize + 4)));
+    }
+    return frames;
+  }
+
+  private void parse() throws IOException {
+    long position = 0;
+    while (myFile.getByte(position) != 0) {
+      position++;
+    }
+    myIdSize = myFile.getInt(position + 1);
+    if (myIdSize != 4 && myIdSize != 8) {
+      throw new IOException("Unsupported HPROF identifier size " + myIdSize);
+    }
+    // Skip the terminating zero, identifier size and timestamp.
+    position += 13;
+
+    int currentHeap = getHeapIndex(0, "default");
+    while (position < myFile.getLength()) {
+      int tag = myFile.getByte(position) & 0xFF;
+      long length = myFile.getInt(position + 5) & 0xFFFFFFFFL;
+      long body = position + 9;
+      switch (tag) {
+        case TAG_STRING: {
+          long id = myFile.getId(body, myIdSize);
+          myStringOffsets.put(id, body + myIdSize);
+          myStringLengths.put(id, (int)length - myIdSize);
+          break;
+        }
+        case TAG_LOAD_CLASS: {
+          long nameId = myFile.getId(body + 8 + myIdSize, myIdSize);
+          myClassNameIds.put(myFile.getId(body + 4, myIdSize), nameId);
+          myClassSerialNameIds.put(myFile.getInt(body), nameId);
+          break;
+        }
+        case TAG_STACK_FRAME:
+          myStackFrameOffsets.put(myFile.getId(body, myIdSize), body);
+          break;
+        case TAG_STACK_TRACE:
+          myStackTraceOffsets.put(myFile.getInt(body), body);
+          break;
+        case TAG_HEAP_DUMP:
+        case TAG_HEAP_DUMP_SEGMENT:
+          currentHeap = parseHeapDump(body, body + length, currentHeap);
+          break;
+        default:
+          break;
+      }
+      position = body + length;
+    }
+  }
+
+  /**
+   * Indexes the sub-records of a heap dump (segment), returning the heap that is current at its end.
+   */
+  private int parseHeapDump(long position, long end, int heap) throws IOException {
+    int id = myIdSize;
+    while (position < end) {
+      int tag = myFile.getByte(position++) & 0xFF;
+      switch (tag) {
+        case ROOT_UNKNOWN:
+        case ROOT_STICKY_CLASS:
+        case ROOT_MONITOR_USED:
+        case ROOT_INTERNED_STRING:
+        case ROOT_FINALIZING:
+        case ROOT_DEBUGGER:
+        case ROOT_REFERENCE_CLEANUP:
+        case ROOT_VM_INTERNAL:
+          myRootIds.add(myFile.getId(position, id));
+          position += id;
+          break;
+        case ROOT_UNREACHABLE:
+          position += id;
+          break;
+        case ROOT_JNI_GLOBAL:
+          myRootIds.add(myFile.getId(position, id));
+          position += 2 * id;
+          break;
+        case ROOT_NATIVE_STACK:
+        case ROOT_THREAD_BLOCK:
+          myRootIds.add(myFile.getId(position, id));
+          position += id + 4;
+          break;
+        case ROOT_JNI_LOCAL:
+        case ROOT_JAVA_FRAME:
+        case ROOT_THREAD_OBJECT:
+        case ROOT_JNI_MONITOR:
+          myRootIds.add(myFile.getId(position, id));
+          position += id + 8;
+          break;
+        case HEAP_DUMP_INFO:
+          heap = getHeapIndex(myFile.getInt(position), getString(myFile.getId(position + 4, id)));
+          position += 4 + id;
+          break;
+        case CLASS_DUMP:
+          position = parseClassDump(position, heap);
+          break;
+        case INSTANCE_DUMP: {
+          int length = myFile.getInt(position + 2 * id + 4);
+          addObject(position, KIND_INSTANCE, myFile.getId(position + id + 4, id), heap, length);
+          position += 2 * id + 8 + length;
+          break;
+        }
+        case OBJECT_ARRAY_DUMP: {
+          int length = myFile.getInt(position + id + 4);
+          addObject(position, KIND_OBJECT_ARRAY, myFile.getId(position + id + 8, id), heap, length * id);
+          position += 2 * id + 8 + (long)length * id;
+          break;
+        }
+        case PRIMITIVE_ARRAY_DUMP: {
+          int length = myFile.getInt(position + id + 4);
+          int type = myFile.getByte(position + id + 8);
+          addObject(position, KIND_PRIMITIVE_ARRAY, type, heap, length * getTypeSize(type));
+          position += id + 9 + (long)length * getTypeSize(type);
+          break;
+        }
+        case PRIMITIVE_ARRAY_NODATA_DUMP:
+          // Arrays whose content was left out of the dump, there is nothing to show for them.
+          position += id + 9;
+          break;
+        default:
+          throw new IOException(String.format("Unknown HPROF heap dump tag 0x%x at offset %d", tag, position - 1));
+      }
+    }
+    return heap;
+  }
+
+  private long parseClassDump(long position, int heap) {
+    long classId = myFile.getId(position, myIdSize);
+    long superClassId = myFile.getId(position + myIdSize + 4, myIdSize);
+    // Skip the class loader, signers, protection domain and two reserved ids.
+    long cursor = position + 7 * myIdSize + 4;
+    int instanceSize = myFile.getInt(cursor);
+    cursor += 4;
+
+    int constants = myFile.getShort(cursor) & 0xFFFF;
+    cursor += 2;
+    for (int i = 0; i < constants; i++) {
+      cursor += 3 + getTypeSize(myFile.getByte(cursor + 2));
+    }
+
+    long staticFields = cursor;
+    int statics = myFile.getShort(cursor) & 0xFFFF;
+    cursor += 2;
+    int staticsSize = 0;
+    for (int i = 0; i < statics; i++) {
+      int size = getTypeSize(myFile.getByte(cursor + myIdSize));
+      staticsSize += size;
+      cursor += myIdSize + 1 + size;
+    }
+
+    long instanceFields = cursor;
+    int fields = myFile.getShort(cursor) & 0xFFFF;
+    cursor += 2 + fields * (myIdSize + 1);
+
+    myClassIndices.put(classId, myClassIds.size());
+    myClassIds.add(classId);
+    mySuperClassIds.add(superClassId);
+    myClassInstanceSizes.add(instanceSize);
+    myClassStaticFieldOffsets.add(staticFields);
+    myClassFieldOffsets.add(instanceFields);
+    myClassHeaps.add(heap);
+    addObject(position, KIND_CLASS, classId, heap, staticsSize);
+    return cursor;
+  }
+
+  private void addObject(long offset, int kind, long classId, int heap, int size) {
+    myObjectIds.add(myFile.getId(offset, myIdSize));
+    myObjectOffsets.add(offset);
+    myObjectKinds.add((byte)kind);
+    myObjectClassIds.add(classId);
+    myObjectHeaps.add(heap);
+    myObjectSizes.add(size);
+  }
+
+  private int getHeapIndex(int heapId, @NotNull String name) {
+    if (!myHeapIndices.containsKey(heapId)) {
+      myHeapIndices.put(heapId, myHeapNames.size());
+      myHeapNames.add(name);
+    }
+    return myHeapIndices.get(heapId);
+  }
+
+  private void resolveClasses() {
+    int classCount = myClassIds.size();
+    mySuperClasses = new int[classCount];
+    myClassNames = new String[classCount];
+    int[] primitiveArrayClasses = new int[PRIMITIVE_TYPE_NAMES.length];
+    Arrays.fill(primitiveArrayClasses, -1);
+    for (int c = 0; c < classCount; c++) {
+      long superClassId = mySuperClassIds.get(c);
+      mySuperClasses[c] = myClassIndices.containsKey(superClassId) ? myClassIndices.get(superClassId) : -1;
+      long classId = myClassIds.get(c);
+      String name = myClassNameIds.containsKey(classId) ? getString(myClassNameIds.get(classId)) : String.format("0x%x", classId);
+      myClassNames[c] = myProguardMap != null ? myProguardMap.getClassName(name) : name;
+      for (int type = TYPE_BOOLEAN; type <= TYPE_LONG; type++) {
+        if (myClassNames[c].equals(PRIMITIVE_TYPE_NAMES[type] + "[]")) {
+          primitiveArrayClasses[type] = c;
+        }
+      }
+      if (myClassNames[c].equals("java.lang.ref.Reference")) {
+        myReferenceClass = c;
+      }
+    }
+    if (myReferenceClass >= 0) {
+      long field = myClassFieldOffsets.get(myReferenceClass);
+      int count = myFile.getShort(field) & 0xFFFF;
+      field += 2;
+      for (int i = 0; i < count; i++, field += myIdSize + 1) {
+        if (getString(myFile.getId(field, myIdSize)).equals("referent")) {
+          myReferentField = i;
+        }
+      }
+    }
+
+    int objectCount = myObjectIds.size();
+    myObjectClasses = new int[objectCount];
+    for (int i = 0; i < objectCount; i++) {
+      long classId = myObjectClassIds.get(i);
+      int kind = myObjectKinds.get(i);
+      if (kind == KIND_PRIMITIVE_ARRAY) {
+        myObjectClasses[i] = classId >= 0 && classId < primitiveArrayClasses.length ? primitiveArrayClasses[(int)classId] : -1;
+      }
+      else {
+        myObjectClasses[i] = myClassIndices.containsKey(classId) ? myClassIndices.get(classId) : -1;
+      }
+      if (kind == KIND_INSTANCE && myObjectClasses[i] >= 0) {
+        // Like perflib, use the instance size the VM reports rather than the size of the field data.
+        myObjectSizes.set(i, myClassInstanceSizes.get(myObjectClasses[i]));
+      }
+    }
+    myObjectClassIds.clear();
+  }
+
+  private void indexObjects() {
+    int objectCount = myObjectIds.size();
+    mySortedIds = myObjectIds.toNativeArray();
+    mySortedObjects = new int[objectCount];
+    for (int i = 0; i < objectCount; i++) {
+      mySortedObjects[i] = i;
+    }
+    sort(mySortedIds, mySortedObjects, 0, objectCount - 1);
+
+    // Counting sort of the objects by class, then heap. Class objects are not listed as instances.
+    int heapCount = getHeapCount();
+    myClassObjectStarts = new int[myClassNames.length * heapCount + 1];
+    for (int i = 0; i < objectCount; i++) {
+      if (myObjectClasses[i] >= 0 && getKind(i) != KIND_CLASS) {
+        myClassObjectStarts[myObjectClasses[i] * heapCount + myObjectHeaps.get(i) + 1]++;
+      }
+    }
+    for (int i = 1; i < myClassObjectStarts.length; i++) {
+      myClassObjectStarts[i] += myClassObjectStarts[i - 1];
+    }
+    myClassObjects = new int[myClassObjectStarts[myClassObjectStarts.length - 1]];
+    int[] next = myClassObjectStarts.clone();
+    for (int i = 0; i < objectCount; i++) {
+      if (myObjectClasses[i] >= 0 && getKind(i) != KIND_CLASS) {
+        myClassObjects[next[myObjectClasses[i] * heapCount + myObjectHeaps.get(i)]++] = i;
+      }
+    }
+  }
+
+  /**
+   * Builds the reference graph as compressed adjacency arrays, then computes the distance of every object to a GC root with a breadth
+   * first search and retained sizes from the dominator tree, using the iterative algorithm from Cooper, Harvey and Kennedy's
+   * "A Simple, Fast Dominance Algorithm". The graph is dropped once done, only the results are kept.
+   */
+  private void computeGraph() {
+    int objectCount = myObjectIds.size();
+    int[] edgeStarts = new int[objectCount + 1];
+    TIntArrayList edges = new TIntArrayList(objectCount * 2);
+    for (int i = 0; i < objectCount; i++) {
+      edgeStarts[i] = edges.size();
+      addReferences(i, edges);
+    }
+    edgeStarts[objectCount] = edges.size();
+    int[] targets = edges.toNativeArray();
+    edges = null;
+
+    BitSet roots = new BitSet(objectCount);
+    TIntArrayList rootList = new TIntArrayList();
+    for (int i = 0; i < myRootIds.size(); i++) {
+      int root = findObject(myRootIds.get(i));
+      if (root >= 0 && !roots.get(root)) {
+        roots.set(root);
+        rootList.add(root);
+      }
+    }
+    myRootIds.clear();
+
+    myDepths = new int[objectCount];
+    Arrays.fill(myDepths, -1);
+    int[] queue = new int[objectCount];
+    int head = 0;
+    int tail = 0;
+    for (int i = 0; i < rootList.size(); i++) {
+      queue[tail++] = rootList.get(i);
+      myDepths[rootList.get(i)] = 0;
+    }
+    while (head < tail) {
+      int object = queue[head++];
+      for (int e = edgeStarts[object]; e < edgeStarts[object + 1]; e++) {
+        if (myDepths[targets[e]] < 0) {
+          myDepths[targets[e]] = myDepths[object] + 1;
+          queue[tail++] = targets[e];
+        }
+      }
+    }
+
+    // Post-order the reachable objects with an iterative depth first search from a virtual root whose children are the GC roots.
+    int virtualRoot = objectCount;
+    int[] postOrder = new int[objectCount + 1];
+    Arrays.fill(postOrder, -1);
+    int[] order = new int[objectCount + 1];
+    int orderSize = 0;
+    BitSet visited = new BitSet(objectCount + 1);
+    int[] stack = new int[objectCount + 1];
+    int[] stackEdges = new int[objectCount + 1];
+    int depth = 0;
+    stack[0] = virtualRoot;
+    visited.set(virtualRoot);
+    while (depth >= 0) {
+      int object = stack[depth];
+      int child = -1;
+      if (object == virtualRoot) {
+        while (child < 0 && stackEdges[depth] < rootList.size()) {
+          int candidate = rootList.get(stackEdges[depth]++);
+          child = visited.get(candidate) ? -1 : candidate;
+        }
+      }
+      else {
+        while (child < 0 && edgeStarts[object] + stackEdges[depth] < edgeStarts[object + 1]) {
+          int candidate = targets[edgeStarts[object] + stackEdges[depth]++];
+          child = visited.get(candidate) ? -1 : candidate;
+        }
+      }
+      if (child >= 0) {
+        visited.set(child);
+        stack[++depth] = child;
+        stackEdges[depth] = 0;
+      }
+      else {
+        postOrder[object] = orderSize;
+        order[orderSize++] = object;
+        depth--;
+      }
+    }
+    stack = null;
+    stackEdges = null;
+
+    // Predecessors of the reachable objects, the virtual root excluded.
+    int[] predecessorStarts = new int[objectCount + 1];
+    for (int object = 0; object < objectCount; object++) {
+      if (postOrder[object] >= 0) {
+        for (int e = edgeStarts[object]; e < edgeStarts[object + 1]; e++) {
+          predecessorStarts[targets[e]]++;
+        }
+      }
+    }
+    int total = 0;
+    for (int i = 0; i <= objectCount; i++) {
+      int count = i < objectCount ? predecessorStarts[i] : 0;
+      predecessorStarts[i] = total;
+      total += count;
+    }
+    int[] predecessors = new int[total];
+    int[] next = predecessorStarts.clone();
+    for (int object = 0; object < objectCount; object++) {
+      if (postOrder[object] >= 0) {
+        for (int e = edgeStarts[object]; e < edgeStarts[object + 1]; e++) {
+          predecessors[next[targets[e]]++] = object;
+        }
+      }
+    }
+    next = null;
+    targets = null;
+
+    int[] dominators = new int[objectCount + 1];
+    Arrays.fill(dominators, -1);
+    dominators[virtualRoot] = virtualRoot;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      // Reverse post-order, skipping the virtual root which comes last.
+      for (int k = orderSize - 2; k >= 0; k--) {
+        int object = order[k];
+        int dominator = roots.get(object) ? virtualRoot : -1;
+        for (int p = predecessorStarts[object]; p < predecessorStarts[object + 1]; p++) {
+          int predecessor = predecessors[p];
+          if (dominators[predecessor] >= 0) {
+            dominator = dominator < 0 ? predecessor : intersect(dominators, postOrder, predecessor, dominator);
+          }
+        }
+        if (dominators[object] != dominator) {
+          dominators[object] = dominator;
+          changed = true;
+        }
+      }
+    }
+
+    // Dominators come after everything they dominate in post-order, so a single pass accumulates the retained sizes bottom up.
+    myRetainedSizes = new long[objectCount];
+    for (int i = 0; i < objectCount; i++) {
+      myRetainedSizes[i] = postOrder[i] >= 0 ? myObjectSizes.get(i) : 0;
+    }
+    for (int k = 0; k < orderSize - 1; k++) {
+      int object = order[k];
+      int dominator = dominators[object];
+      if (dominator >= 0 && dominator != virtualRoot) {
+        myRetainedSizes[dominator] += myRetainedSizes[object];
+      }
+    }
+  }
+
+  private static int intersect(@NotNull int[] dominators, @NotNull int[] postOrder, int left, int right) {
+    while (left != right) {
+      while (postOrder[left] < postOrder[right]) {
+        left = dominators[left];
+      }
+      while (postOrder[right] < postOrder[left]) {
+        right = dominators[right];
+      }
+    }
+    return left;
+  }
+
+  private void addReferences(int object, @NotNull TIntArrayList targets) {
+    long offset = myObjectOffsets.get(object);
+    int cls = myObjectClasses[object];
+    switch (getKind(object)) {
+      case KIND_INSTANCE:
+        long position = offset + 2 * myIdSize + 8;
+        for (int c = cls; c >= 0; c = mySuperClasses[c]) {
+          long field = myClassFieldOffsets.get(c);
+          int count = myFile.getShort(field) & 0xFFFF;
+          field += 2;
+          for (int i = 0; i < count; i++, field += myIdSize + 1) {
+            int type = myFile.getByte(field + myIdSize);
+            if (type == TYPE_OBJECT && !(c == myReferenceClass && i == myReferentField)) {
+              addReference(myFile.getId(position, myIdSize), targets);
+            }
+            position += getTypeSize(type);
+          }
+        }
+        break;
+      case KIND_OBJECT_ARRAY:
+        int length = getArrayLength(object);
+        long element = offset + 2 * myIdSize + 8;
+        for (int i = 0; i < length; i++, element += myIdSize) {
+          addReference(myFile.getId(element, myIdSize), targets);
+        }
+        break;
+      case KIND_CLASS:
+        long field = myClassStaticFieldOffsets.get(cls);
+        int count = myFile.getShort(field) & 0xFFFF;
+        field += 2;
+        for (int i = 0; i < count; i++) {
+          int type = myFile.getByte(field + myIdSize);
+          if (type == TYPE_OBJECT) {
+            addReference(myFile.getId(field + myIdSize + 1, myIdSize), targets);
+          }
+          field += myIdSize + 1 + getTypeSize(type);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void addReference(long id, @NotNull TIntArrayList targets) {
+    if (id != 0) {
+      int target = findObject(id);
+      if (target >= 0) {
+        targets.add(target);
+      }
+    }
+  }
+
+  /**
+   * Reads a value of the given type. Object references are returned as the referenced object number, or null if they don't point to an
+   * object in the dump.
+   */
+  @Nullable
+  private Object readValue(long position, int type) {
+    switch (type) {
+      case TYPE_OBJECT:
+        int object = findObject(myFile.getId(position, myIdSize));
+        return object >= 0 ? object : null;
+      case TYPE_BOOLEAN:
+        return myFile.getByte(position) != 0;
+      case TYPE_CHAR:
+        return (char)myFile.getShort(position);
+      case TYPE_FLOAT:
+        return Float.intBitsToFloat(myFile.getInt(position));
+      case TYPE_DOUBLE:
+        return Double.longBitsToDouble(myFile.getLong(position));
+      case TYPE_BYTE:
+        return myFile.getByte(position);
+      case TYPE_SHORT:
+        return myFile.getShort(position);
+      case TYPE_INT:
+        return myFile.getInt(position);
+      case TYPE_LONG:
+        return myFile.getLong(position);
+      default:
+        return null;
+    }
+  }
+
+  private int getTypeSize(int type) {
+    return type == TYPE_OBJECT ? myIdSize : getPrimitiveSize(type);
+  }
+
+  static int getPrimitiveSize(int type) {
+    switch (type) {
+      case TYPE_BOOLEAN:
+      case TYPE_BYTE:
+        return 1;
+      case TYPE_CHAR:
+      case TYPE_SHORT:
+        return 2;
+      case TYPE_FLOAT:
+      case TYPE_INT:
+        return 4;
+      case TYPE_DOUBLE:
+      case TYPE_LONG:
+        return 8;
+      default:
+        throw new IllegalArgumentException("Unknown HPROF type " + type);
+    }
+  }
+
+  @NotNull
+  private String getFieldName(int cls, long nameId) {
+    String name = getString(nameId);
+    return myProguardMap != null ? myProguardMap.getFieldName(myClassNames[cls], name) : name;
+  }
+
+  @NotNull
+  private String getString(long id) {
+    if (!myStringOffsets.containsKey(id)) {
+      return "";
+    }
+    long offset = myStringOffsets.get(id);
+    byte[] bytes = new byte[myStringLengths.get(id)];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = myFile.getByte(offset + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Sorts ids in increasing order, applying the same permutation to objects.
+   */
+  private static void sort(@NotNull long[] ids, @NotNull int[] objects, int low, int high) {
+    while (low < high) {
+      long pivot = ids[(low + high) >>> 1];
+      int i = low;
+      int j = high;
+      while (i <= j) {
+        while (ids[i] < pivot) {
+          i++;
+        }
+        while (ids[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          long id = ids[i];
+          ids[i] = ids[j];
+          ids[j] = id;
+          int object = objects[i];
+          objects[i] = objects[j];
+          objects[j] = object;
+          i++;
+          j--;
+        }
+      }
+      // Recurse into the smaller half to bound the stack depth.
+      if (j - low < high - i) {
+        sort(ids, objects, low, j);
+        low = i;
+      }
+      else {
+        sort(ids, objects, i, high);
+        high = j;
+      }
+    }
+  }
+
+  static final class FieldValue {
+    @NotNull final String myName;
+    final int myType;
+    @Nullable final Object myValue;
+
+    private FieldValue(@NotNull String name, int type, @Nullable Object value) {
+      myName = name;
+      myType = type;
+      myValue = value;
+    }
+  }
+
+  /**
+   * Read-only view of a file as big endian values, mapped in chunks since a single buffer can't exceed 2GB. Consecutive chunks overlap a
+   * little so that a value never straddles two buffers.
+   */
+  private static final class MappedFile {
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private static final int CHUNK_OVERLAP = 16;
+
+    @NotNull private final MappedByteBuffer[] myChunks;
+    private final long myLength;
+
+    private MappedFile(@NotNull File file) throws IOException {
+      try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+        FileChannel channel = randomAccessFile.getChannel();
+        myLength = channel.size();
+        myChunks = new MappedByteBuffer[(int)(myLength >> CHUNK_SHIFT) + 1];
+        for (int i = 0; i < myChunks.length; i++) {
+          long start = (long)i << CHUNK_SHIFT;
+          myChunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(myLength - start, CHUNK_MASK + 1 + CHUNK_OVERLAP));
+        }
+      }
+    }
+
+    private long getLength() {
+      return myLength;
+    }
+
+    private byte getByte(long position) {
+      return myChunks[(int)(position >>> CHUNK_SHIFT)].get((int)(position & CHUNK_MASK));
+    }
+
+    private short getShort(long position) {
+      return myChunks[(int)(position >>> CHUNK_SHIFT)].getShort((int)(position & CHUNK_MASK));
+    }
+
+    private int getInt(long position) {
+      return myChunks[(int)(position >>> CHUNK_SHIFT)].getInt((int)(position & CHUNK_MASK));
+    }
+
+    private long getLong(long position) {
+      return myChunks[(int)(position >>> CHUNK_SHIFT)].getLong((int)(position & CHUNK_MASK));
+    }
+
+    private long getId(long position, int idSize) {
+      return idSize == 4 ? getInt(position) & 0xFFFFFFFFL : getLong(position);
+    }
+  }
+}
@@ -90,11 +90,12 @@ public class NetworkProfilerStage extends Stage {
    * Sets the active connection, or clears the previously selected active connection if given data is null.
    */
   public void setConnection(@Nullable HttpData data) {
-    if (data != null && data.getResponsePayloadId() != null && data.getResponsePayloadFile() == null) {
+    // The response body is only fetched once a completed connection is opened, and is kept with its data from then on.
+    if (data != null && data.getEndTimeUs() != 0 && data.getResponsePayloadFile() == null) {
       ByteString payload = myRequestsModel.requestResponsePayload(data);
       File file = null;
       try {
-        file = FileUtil.createTempFile(data.getResponsePayloadId(), getFileSuffixFromContentType(data));
+        file = FileUtil.createTempFile("response_" + data.getId(), getFileSuffixFromContentType(data));
         FileOutputStream outputStream = new FileOutputStream(file);
         payload.writeTo(outputStream);
       } catch (IOException e) {
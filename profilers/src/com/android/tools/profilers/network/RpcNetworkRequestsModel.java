@@ -22,12 +22,16 @@ import com.google.protobuf3jarjar.ByteString;
 import com.intellij.openapi.util.text.StringUtil;
 import io.grpc.StatusRuntimeException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link NetworkRequestsModel} that uses an RPC mechanism to complete its queries.
+ *
+ * The details of a connection don't change once they are known, so they are only fetched once: the request when the connection is first
+ * seen, and the response when it completes. The response body is only fetched when its payload is requested.
  */
 public final class RpcNetworkRequestsModel implements NetworkRequestsModel {
   @NotNull
@@ -35,6 +39,16 @@ public final class RpcNetworkRequestsModel implements NetworkRequestsModel {
 
   private final int myPid;
 
+  /**
+   * The requests of the connections seen so far, by connection id.
+   */
+  private final Map<Long, NetworkProfiler.HttpDetailsResponse.Request> myRequests = new HashMap<>();
+
+  /**
+   * The data of the completed connections seen so far, by connection id.
+   */
+  private final Map<Long, HttpData> myCompletedConnections = new HashMap<>();
+
   public RpcNetworkRequestsModel(@NotNull NetworkServiceGrpc.NetworkServiceBlockingStub service, int pid) {
     myNetworkService = service;
     myPid = pid;
@@ -56,64 +70,108 @@ public final class RpcNetworkRequestsModel implements NetworkRequestsModel {
 
     List<HttpData> httpDataList = new ArrayList<>(response.getDataList().size());
     for (NetworkProfiler.HttpConnectionData connection: response.getDataList()) {
-      long startTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getStartTimestamp());
-      long endTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getEndTimestamp());
-      long downloadTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getDownloadingTimestamp());
-
-      HttpData.Builder httpBuilder = new HttpData.Builder(connection.getConnId(), startTimeUs, endTimeUs, downloadTimeUs);
-
-      requestHttpRequest(connection.getConnId(), httpBuilder);
-      if (connection.getEndTimestamp() != 0) {
-        requestHttpResponse(connection.getConnId(), httpBuilder);
-        requestHttpResponseBody(connection.getConnId(), httpBuilder);
+      HttpData data = myCompletedConnections.get(connection.getConnId());
+      if (data == null) {
+        data = createHttpData(connection);
       }
-      httpDataList.add(httpBuilder.build());
+      httpDataList.add(data);
     }
 
     return httpDataList;
   }
 
-  private void requestHttpRequest(long connectionId, @NotNull HttpData.Builder httpBuilder) {
+  @NotNull
+  private HttpData createHttpData(@NotNull NetworkProfiler.HttpConnectionData connection) {
+    long startTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getStartTimestamp());
+    long endTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getEndTimestamp());
+    long downloadTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getDownloadingTimestamp());
+
+    HttpData.Builder httpBuilder = new HttpData.Builder(connection.getConnId(), startTimeUs, endTimeUs, downloadTimeUs);
+
+    NetworkProfiler.HttpDetailsResponse.Request request = requestHttpRequest(connection.getConnId());
+    if (request != null) {
+      httpBuilder.setUrl(request.getUrl());
+      httpBuilder.setMethod(request.getMethod());
+      httpBuilder.setTrace(request.getTrace());
+    }
+    if (connection.getEndTimestamp() == 0) {
+      return httpBuilder.build();
+    }
+
+    NetworkProfiler.HttpDetailsResponse.Response response = requestHttpResponse(connection.getConnId());
+    if (response != null) {
+      httpBuilder.setResponseFields(response.getFields());
+    }
+    HttpData data = httpBuilder.build();
+    if (request != null && response != null) {
+      myCompletedConnections.put(connection.getConnId(), data);
+      myRequests.remove(connection.getConnId());
+    }
+    return data;
+  }
+
+  @Nullable
+  private NetworkProfiler.HttpDetailsResponse.Request requestHttpRequest(long connectionId) {
+    NetworkProfiler.HttpDetailsResponse.Request result = myRequests.get(connectionId);
+    if (result != null) {
+      return result;
+    }
+
     NetworkProfiler.HttpDetailsRequest request = NetworkProfiler.HttpDetailsRequest.newBuilder()
       .setConnId(connectionId)
       .setType(NetworkProfiler.HttpDetailsRequest.Type.REQUEST)
       .build();
-    NetworkProfiler.HttpDetailsResponse.Request result;
     try {
       result = myNetworkService.getHttpDetails(request).getRequest();
     } catch (StatusRuntimeException e) {
-      return;
+      return null;
+    }
+    myRequests.put(connectionId, result);
+    return result;
+  }
+
+  @Nullable
+  private NetworkProfiler.HttpDetailsResponse.Response requestHttpResponse(long connectionId) {
+    NetworkProfiler.HttpDetailsRequest request = NetworkProfiler.HttpDetailsRequest.newBuilder()
+      .setConnId(connectionId)
+      .setType(NetworkProfiler.HttpDetailsRequest.Type.RESPONSE)
+      .build();
+    try {
+      return myNetworkService.getHttpDetails(request).getResponse();
+    }
+    catch (StatusRuntimeException e) {
+      return null;
     }
-    httpBuilder.setUrl(result.getUrl());
-    httpBuilder.setMethod(result.getMethod());
-    httpBuilder.setTrace(result.getTrace());
   }
 
-  private void requestHttpResponseBody(long connectionId, @NotNull HttpData.Builder httpBuilder) {
+  @Nullable
+  private String requestHttpResponsePayloadId(long connectionId) {
     NetworkProfiler.HttpDetailsRequest request = NetworkProfiler.HttpDetailsRequest.newBuilder()
       .setConnId(connectionId)
       .setType(NetworkProfiler.HttpDetailsRequest.Type.RESPONSE_BODY)
       .build();
-    NetworkProfiler.HttpDetailsResponse response;
     try {
-      response = myNetworkService.getHttpDetails(request);
+      return myNetworkService.getHttpDetails(request).getResponseBody().getPayloadId();
     }
     catch (StatusRuntimeException e) {
-      return;
+      return null;
     }
-    String payloadId = response.getResponseBody().getPayloadId();
-    httpBuilder.setResponsePayloadId(payloadId);
   }
 
   @NotNull
   @Override
   public ByteString requestResponsePayload(@NotNull HttpData data) {
-    if (StringUtil.isEmpty(data.getResponsePayloadId())) {
+    String payloadId = data.getResponsePayloadId();
+    if (payloadId == null) {
+      // The response body is not fetched with the rest of the connection data, as it is only needed when the connection is opened.
+      payloadId = requestHttpResponsePayloadId(data.getId());
+    }
+    if (StringUtil.isEmpty(payloadId)) {
       return ByteString.EMPTY;
     }
 
     NetworkProfiler.NetworkPayloadRequest payloadRequest = NetworkProfiler.NetworkPayloadRequest.newBuilder()
-      .setPayloadId(data.getResponsePayloadId())
+      .setPayloadId(payloadId)
       .build();
     NetworkProfiler.NetworkPayloadResponse payloadResponse;
     try {
@@ -123,19 +181,4 @@ public final class RpcNetworkRequestsModel implements NetworkRequestsModel {
     }
     return payloadResponse.getContents();
   }
-
-  private void requestHttpResponse(long connectionId, @NotNull HttpData.Builder httpBuilder) {
-    NetworkProfiler.HttpDetailsRequest request = NetworkProfiler.HttpDetailsRequest.newBuilder()
-      .setConnId(connectionId)
-      .setType(NetworkProfiler.HttpDetailsRequest.Type.RESPONSE)
-      .build();
-    NetworkProfiler.HttpDetailsResponse response;
-    try {
-      response = myNetworkService.getHttpDetails(request);
-    }
-    catch (StatusRuntimeException e) {
-      return;
-    }
-    httpBuilder.setResponseFields(response.getResponse().getFields());
-  }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.HNode;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class CallTreeTest {
+
+  @Test
+  public void testStructure() throws Exception {
+    CallTree tree = createTree();
+    Assert.assertEquals(6, tree.size());
+
+    Assert.assertEquals(-1, tree.getParent(0));
+    Assert.assertEquals(6, tree.getSubtreeEnd(0));
+    Assert.assertEquals(30, tree.getDuration(0));
+
+    // B and its callees D and E
+    Assert.assertEquals(0, tree.getParent(1));
+    Assert.assertEquals(4, tree.getSubtreeEnd(1));
+    Assert.assertEquals(1, tree.getParent(2));
+    Assert.assertEquals(1, tree.getParent(3));
+    Assert.assertEquals(3, tree.getSubtreeEnd(2));
+
+    // C and its callee F
+    Assert.assertEquals(0, tree.getParent(4));
+    Assert.assertEquals(6, tree.getSubtreeEnd(4));
+    Assert.assertEquals("F", tree.getMethod(5).getName());
+  }
+
+  @Test
+  public void testToHNode() throws Exception {
+    HNode<MethodModel> root = createTree().toHNode();
+    Assert.assertEquals("A", root.getData().getName());
+    Assert.assertEquals(0, root.getDepth());
+    Assert.assertEquals(2, root.getChildren().size());
+
+    HNode<MethodModel> b = root.getChildren().get(0);
+    Assert.assertEquals("B", b.getData().getName());
+    Assert.assertEquals(1, b.getDepth());
+    Assert.assertEquals(1, b.getStart());
+    Assert.assertEquals(9, b.getEnd());
+    Assert.assertEquals(2, b.getChildren().size());
+    Assert.assertEquals("E", b.getChildren().get(1).getData().getName());
+    Assert.assertEquals(2, b.getChildren().get(1).getDepth());
+
+    HNode<MethodModel> c = root.getChildren().get(1);
+    Assert.assertEquals("C", c.getData().getName());
+    Assert.assertEquals(1, c.getChildren().size());
+    Assert.assertEquals("F", c.getChildren().get(0).getData().getName());
+  }
+
+  /**
+   * Creates a tree of the following shape:
+   *              0123456789012345678901234567890
+   *   A          |-----------------------------|
+   *   +- B        |-------|
+   *   |  +-D        |-|
+   *   |  +-E            |-|
+   *   +- C                    |-----|
+   *      +-F                  |-|
+   */
+  @NotNull
+  private static CallTree createTree() {
+    CallTree tree = new CallTree(Arrays.asList(new MethodModel("A"), new MethodModel("B"), new MethodModel("C"),
+                                               new MethodModel("D"), new MethodModel("E"), new MethodModel("F")));
+    int a = tree.addCall(-1, 0, 0, 30);
+    int b = tree.addCall(a, 1, 1, 9);
+    tree.endCall(tree.addCall(b, 3, 3, 5));
+    tree.endCall(tree.addCall(b, 4, 7, 9));
+    tree.endCall(b);
+    int c = tree.addCall(a, 2, 13, 19);
+    tree.endCall(tree.addCall(c, 5, 13, 15));
+    tree.endCall(c);
+    tree.endCall(a);
+    return tree;
+  }
+}
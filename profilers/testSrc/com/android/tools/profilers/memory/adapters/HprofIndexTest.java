@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HprofIndexTest {
+  private static final int OBJECT_CLASS_ID = 100;
+  private static final int NODE_CLASS_ID = 200;
+  private static final int BYTE_ARRAY_CLASS_ID = 300;
+  private static final int REFERENCE_CLASS_ID = 400;
+  private static final int WEAK_REFERENCE_CLASS_ID = 500;
+
+  private File myFile;
+  private HprofIndex myIndex;
+
+  /**
+   * Builds a small dump with 4-byte ids: Node instances 1001 -> 1002 -> 1003 (through Node.next), a static field of Node pointing to
+   * 1003, an unreachable instance 1004 pointing to 1001, and an unreachable byte array 1005. There is also a weak reference 1006, held by
+   * a root, whose referent is the Node instance 1007.
+   */
+  @Before
+  public void setUp() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeBytes("JAVA PROFILE 1.0.3");
+    out.writeByte(0);
+    out.writeInt(4);
+    out.writeLong(0);
+    writeString(out, 1, "java.lang.Object");
+    writeString(out, 2, "Node");
+    writeString(out, 3, "next");
+    writeString(out, 4, "value");
+    writeString(out, 5, "app");
+    writeString(out, 6, "byte[]");
+    writeString(out, 7, "sField");
+    writeString(out, 8, "java.lang.ref.Reference");
+    writeString(out, 9, "java.lang.ref.WeakReference");
+    writeString(out, 10, "referent");
+    writeLoadClass(out, 1, OBJECT_CLASS_ID, 1);
+    writeLoadClass(out, 2, NODE_CLASS_ID, 2);
+    writeLoadClass(out, 3, BYTE_ARRAY_CLASS_ID, 6);
+    writeLoadClass(out, 4, REFERENCE_CLASS_ID, 8);
+    writeLoadClass(out, 5, WEAK_REFERENCE_CLASS_ID, 9);
+
+    ByteArrayOutputStream heapBytes = new ByteArrayOutputStream();
+    DataOutputStream heap = new DataOutputStream(heapBytes);
+    // Heap dump info, switching to the "app" heap.
+    heap.writeByte(0xFE);
+    heap.writeInt('A');
+    heap.writeInt(5);
+    writeClassDump(heap, OBJECT_CLASS_ID, 0, 0, new int[0][], new int[0][]);
+    writeClassDump(heap, NODE_CLASS_ID, OBJECT_CLASS_ID, 12, new int[][]{{7, HprofIndex.TYPE_OBJECT, 1003}},
+                   new int[][]{{3, HprofIndex.TYPE_OBJECT}, {4, HprofIndex.TYPE_INT}});
+    writeClassDump(heap, BYTE_ARRAY_CLASS_ID, OBJECT_CLASS_ID, 0, new int[0][], new int[0][]);
+    writeClassDump(heap, REFERENCE_CLASS_ID, OBJECT_CLASS_ID, 4, new int[0][], new int[][]{{10, HprofIndex.TYPE_OBJECT}});
+    writeClassDump(heap, WEAK_REFERENCE_CLASS_ID, REFERENCE_CLASS_ID, 4, new int[0][], new int[0][]);
+    // Sticky class root for Node, unknown root for 1001.
+    heap.writeByte(0x05);
+    heap.writeInt(NODE_CLASS_ID);
+    heap.writeByte(0xFF);
+    heap.writeInt(1001);
+    heap.writeByte(0xFF);
+    heap.writeInt(1006);
+    writeNode(heap, 1001, 1002, 5);
+    writeNode(heap, 1002, 1003, 6);
+    writeNode(heap, 1003, 0, 7);
+    writeNode(heap, 1004, 1001, 8);
+    heap.writeByte(0x23);
+    heap.writeInt(1005);
+    heap.writeInt(0);
+    heap.writeInt(3);
+    heap.writeByte(HprofIndex.TYPE_BYTE);
+    heap.write(new byte[]{1, 2, 3});
+    heap.writeByte(0x21);
+    heap.writeInt(1006);
+    heap.writeInt(0);
+    heap.writeInt(WEAK_REFERENCE_CLASS_ID);
+    heap.writeInt(4);
+    heap.writeInt(1007);
+    writeNode(heap, 1007, 0, 9);
+
+    out.writeByte(0x1C);
+    out.writeInt(0);
+    out.writeInt(heapBytes.size());
+    out.write(heapBytes.toByteArray());
+    out.writeByte(0x2C);
+    out.writeInt(0);
+    out.writeInt(0);
+
+    myFile = FileUtil.createTempFile("test", ".hprof", true);
+    FileUtil.writeToFile(myFile, bytes.toByteArray());
+    myIndex = new HprofIndex(myFile, null);
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myFile);
+  }
+
+  @Test
+  public void testHeapsAndClasses() {
+    assertEquals(2, myIndex.getHeapCount());
+    assertEquals("default", myIndex.getHeapName(0));
+    assertEquals("app", myIndex.getHeapName(1));
+    assertEquals(0, myIndex.getClasses(0).length);
+
+    int[] classes = myIndex.getClasses(1);
+    assertEquals(5, classes.length);
+    assertEquals("Node", myIndex.getClassName(classes[1]));
+    assertEquals(5, myIndex.getInstanceCount(classes[1], 1));
+    assertEquals(12, myIndex.getClassInstanceSize(classes[1]));
+    assertEquals("byte[]", myIndex.getClassName(classes[2]));
+    assertEquals(1, myIndex.getInstanceCount(classes[2], 1));
+    assertEquals(1005, myIndex.getId(myIndex.getInstance(classes[2], 1, 0)));
+  }
+
+  @Test
+  public void testFields() {
+    List<HprofIndex.FieldValue> fields = myIndex.getFields(myIndex.findObject(1001));
+    assertEquals(2, fields.size());
+    assertEquals("next", fields.get(0).myName);
+    assertEquals(myIndex.findObject(1002), fields.get(0).myValue);
+    assertEquals("value", fields.get(1).myName);
+    assertEquals(5, fields.get(1).myValue);
+    assertNull(myIndex.getFields(myIndex.findObject(1003)).get(0).myValue);
+
+    List<HprofIndex.FieldValue> elements = myIndex.getFields(myIndex.findObject(1005));
+    assertEquals(3, elements.size());
+    assertEquals((byte)3, elements.get(2).myValue);
+    assertEquals(3, myIndex.getArrayLength(myIndex.findObject(1005)));
+
+    List<HprofIndex.FieldValue> statics = myIndex.getFields(myIndex.findObject(NODE_CLASS_ID));
+    assertEquals(1, statics.size());
+    assertEquals("sField", statics.get(0).myName);
+    assertEquals(myIndex.findObject(1003), statics.get(0).myValue);
+  }
+
+  @Test
+  public void testDepthsAndRetainedSizes() {
+    assertEquals(0, myIndex.getDepth(myIndex.findObject(1001)));
+    assertEquals(1, myIndex.getDepth(myIndex.findObject(1002)));
+    // Reachable from the Node class in one step.
+    assertEquals(1, myIndex.getDepth(myIndex.findObject(1003)));
+    assertEquals(-1, myIndex.getDepth(myIndex.findObject(1004)));
+
+    // 1001 dominates 1002 but not 1003, which is also held by the static field.
+    assertEquals(24, myIndex.getRetainedSize(myIndex.findObject(1001)));
+    assertEquals(12, myIndex.getRetainedSize(myIndex.findObject(1002)));
+    assertEquals(12, myIndex.getRetainedSize(myIndex.findObject(1003)));
+    assertEquals(0, myIndex.getRetainedSize(myIndex.findObject(1004)));
+  }
+
+  @Test
+  public void testReferentIsNotAStrongReference() {
+    // The referent is still a field of the reference.
+    assertEquals(myIndex.findObject(1007), myIndex.getFields(myIndex.findObject(1006)).get(0).myValue);
+
+    // But it is only weakly reachable, so it neither has a depth nor counts towards the retained size of the reference.
+    assertEquals(0, myIndex.getDepth(myIndex.findObject(1006)));
+    assertEquals(-1, myIndex.getDepth(myIndex.findObject(1007)));
+    assertEquals(4, myIndex.getRetainedSize(myIndex.findObject(1006)));
+  }
+
+  @Test
+  public void testDescribe() {
+    assertEquals("Node@1001 (0x3e9)", myIndex.describe(myIndex.findObject(1001)));
+    assertEquals("byte[3]@1005 (0x3ed)", myIndex.describe(myIndex.findObject(1005)));
+    assertEquals(-1, myIndex.findObject(9999));
+  }
+
+  private static void writeString(DataOutputStream out, int id, String value) throws IOException {
+    byte[] bytes = value.getBytes("UTF-8");
+    out.writeByte(0x01);
+    out.writeInt(0);
+    out.writeInt(4 + bytes.length);
+    out.writeInt(id);
+    out.write(bytes);
+  }
+
+  private static void writeLoadClass(DataOutputStream out, int serial, int classId, int nameId) throws IOException {
+    out.writeByte(0x02);
+    out.writeInt(0);
+    out.writeInt(16);
+    out.writeInt(serial);
+    out.writeInt(classId);
+    out.writeInt(0);
+    out.writeInt(nameId);
+  }
+
+  /**
+   * Writes a class dump, statics being {name id, type, value} and fields {name id, type}. Only int and object statics are supported.
+   */
+  private static void writeClassDump(DataOutputStream out, int classId, int superClassId, int instanceSize, int[][] statics,
+                                     int[][] fields) throws IOException {
+    out.writeByte(0x20);
+    out.writeInt(classId);
+    out.writeInt(0);
+    out.writeInt(superClassId);
+    for (int i = 0; i < 5; i++) {
+      out.writeInt(0);
+    }
+    out.writeInt(instanceSize);
+    out.writeShort(0);
+    out.writeShort(statics.length);
+    for (int[] field : statics) {
+      out.writeInt(field[0]);
+      out.writeByte(field[1]);
+      out.writeInt(field[2]);
+    }
+    out.writeShort(fields.length);
+    for (int[] field : fields) {
+      out.writeInt(field[0]);
+      out.writeByte(field[1]);
+    }
+  }
+
+  private static void writeNode(DataOutputStream out, int id, int next, int value) throws IOException {
+    out.writeByte(0x21);
+    out.writeInt(id);
+    out.writeInt(0);
+    out.writeInt(NODE_CLASS_ID);
+    out.writeInt(8);
+    out.writeInt(next);
+    out.writeInt(value);
+  }
+}
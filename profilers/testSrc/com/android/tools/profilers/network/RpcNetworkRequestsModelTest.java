@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.network;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.profiler.proto.NetworkProfiler;
+import com.android.tools.profiler.proto.NetworkServiceGrpc;
+import com.android.tools.profilers.TestGrpcChannel;
+import com.google.protobuf3jarjar.ByteString;
+import io.grpc.stub.StreamObserver;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RpcNetworkRequestsModelTest {
+  private static final String RESPONSE_FIELDS = "status line = HTTP/1.1 200 OK \n Content-Type = text/html;";
+
+  @Rule
+  public TestGrpcChannel<NetworkServiceMock> myGrpcChannel = new TestGrpcChannel<>("NETWORK_TEST_CHANNEL", new NetworkServiceMock());
+
+  @Test
+  public void testCompletedConnectionDetailsAreFetchedOnce() throws Exception {
+    NetworkServiceMock service = myGrpcChannel.getService();
+    service.myConnection = createConnection(1, 10, 20);
+    RpcNetworkRequestsModel model = new RpcNetworkRequestsModel(myGrpcChannel.getClient().getNetworkClient(), 1);
+
+    HttpData data = getSingleData(model);
+    assertEquals("http://example.com/index.html", data.getUrl());
+    assertEquals(200, data.getStatusCode());
+    assertSame(data, getSingleData(model));
+
+    assertEquals(1, service.getDetailsCount(NetworkProfiler.HttpDetailsRequest.Type.REQUEST));
+    assertEquals(1, service.getDetailsCount(NetworkProfiler.HttpDetailsRequest.Type.RESPONSE));
+    assertEquals(0, service.getDetailsCount(NetworkProfiler.HttpDetailsRequest.Type.RESPONSE_BODY));
+  }
+
+  @Test
+  public void testConnectionInProgress() throws Exception {
+    NetworkServiceMock service = myGrpcChannel.getService();
+    service.myConnection = createConnection(1, 10, 0);
+    RpcNetworkRequestsModel model = new RpcNetworkRequestsModel(myGrpcChannel.getClient().getNetworkClient(), 1);
+
+    assertEquals(-1, getSingleData(model).getStatusCode());
+    getSingleData(model);
+    assertEquals(0, service.getDetailsCount(NetworkProfiler.HttpDetailsRequest.Type.RESPONSE));
+
+    service.myConnection = createConnection(1, 10, 20);
+    assertEquals(200, getSingleData(model).getStatusCode());
+    getSingleData(model);
+    assertEquals(1, service.getDetailsCount(NetworkProfiler.HttpDetailsRequest.Type.REQUEST));
+    assertEquals(1, service.getDetailsCount(NetworkProfiler.HttpDetailsRequest.Type.RESPONSE));
+  }
+
+  @Test
+  public void testResponsePayloadIsFetchedOnRequest() throws Exception {
+    NetworkServiceMock service = myGrpcChannel.getService();
+    service.myConnection = createConnection(1, 10, 20);
+    RpcNetworkRequestsModel model = new RpcNetworkRequestsModel(myGrpcChannel.getClient().getNetworkClient(), 1);
+
+    HttpData data = getSingleData(model);
+    assertNull(data.getResponsePayloadId());
+    assertEquals("payload", model.requestResponsePayload(data).toStringUtf8());
+    assertEquals(1, service.getDetailsCount(NetworkProfiler.HttpDetailsRequest.Type.RESPONSE_BODY));
+  }
+
+  private static HttpData getSingleData(RpcNetworkRequestsModel model) {
+    List<HttpData> dataList = model.getData(new Range(0, TimeUnit.SECONDS.toMicros(1)));
+    assertEquals(1, dataList.size());
+    return dataList.get(0);
+  }
+
+  private static NetworkProfiler.HttpConnectionData createConnection(long id, long startTimeUs, long endTimeUs) {
+    return NetworkProfiler.HttpConnectionData.newBuilder()
+      .setConnId(id)
+      .setStartTimestamp(TimeUnit.MICROSECONDS.toNanos(startTimeUs))
+      .setEndTimestamp(TimeUnit.MICROSECONDS.toNanos(endTimeUs))
+      .build();
+  }
+
+  private static class NetworkServiceMock extends NetworkServiceGrpc.NetworkServiceImplBase {
+    private NetworkProfiler.HttpConnectionData myConnection;
+    private final Map<NetworkProfiler.HttpDetailsRequest.Type, Integer> myDetailsCounts =
+      new EnumMap<>(NetworkProfiler.HttpDetailsRequest.Type.class);
+
+    @Override
+    public void getHttpRange(NetworkProfiler.HttpRangeRequest request, StreamObserver<NetworkProfiler.HttpRangeResponse> responseObserver) {
+      responseObserver.onNext(NetworkProfiler.HttpRangeResponse.newBuilder().addData(myConnection).build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getHttpDetails(NetworkProfiler.HttpDetailsRequest request,
+                               StreamObserver<NetworkProfiler.HttpDetailsResponse> responseObserver) {
+      myDetailsCounts.merge(request.getType(), 1, Integer::sum);
+      NetworkProfiler.HttpDetailsResponse.Builder response = NetworkProfiler.HttpDetailsResponse.newBuilder();
+      switch (request.getType()) {
+        case REQUEST:
+          response.setRequest(NetworkProfiler.HttpDetailsResponse.Request.newBuilder()
+                                .setUrl("http://example.com/index.html").setMethod("GET").setTrace(""));
+          break;
+        case RESPONSE:
+          response.setResponse(NetworkProfiler.HttpDetailsResponse.Response.newBuilder().setFields(RESPONSE_FIELDS));
+          break;
+        case RESPONSE_BODY:
+          response.setResponseBody(NetworkProfiler.HttpDetailsResponse.Body.newBuilder().setPayloadId("payloadId"));
+          break;
+        default:
+          break;
+      }
+      responseObserver.onNext(response.build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getPayload(NetworkProfiler.NetworkPayloadRequest request,
+                           StreamObserver<NetworkProfiler.NetworkPayloadResponse> responseObserver) {
+      responseObserver.onNext(NetworkProfiler.NetworkPayloadResponse.newBuilder().setContents(ByteString.copyFromUtf8("payload")).build());
+      responseObserver.onCompleted();
+    }
+
+    private int getDetailsCount(NetworkProfiler.HttpDetailsRequest.Type type) {
+      return myDetailsCounts.getOrDefault(type, 0);
+    }
+  }
+}
@@ -23,6 +23,7 @@ import android.support.constraint.solver.widgets.WidgetContainer;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
 
 /**
  * Main entry for the Scout Inference engine.
@@ -75,6 +76,22 @@ public class Scout {
         root.setHeight(all.height);
     }
 
+    /**
+     * Receives the progress of {@link #inferConstraints(WidgetsScene, Progress)}.
+     * Inference runs on several threads, so both methods may be called from any of them.
+     */
+    public interface Progress {
+        /**
+         * @param fraction the fraction of the inference done, between 0 and 1
+         */
+        void setFraction(double fraction);
+
+        /**
+         * @return true to stop the inference with a {@link CancellationException}
+         */
+        boolean isCanceled();
+    }
+
     /**
      * Given a collection of widgets evaluates probability of a connection
      * and makes connections
@@ -82,41 +99,135 @@ public class Scout {
      * @param list collection of widgets to connect
      */
     public static void inferConstraints(WidgetsScene list) {
-        inferConstraints(list.getRoot());
+        inferConstraints(list, null);
+    }
+
+    /**
+     * Given a collection of widgets evaluates probability of a connection
+     * and makes connections
+     * Containers are inferred inner most first; if the inference is canceled the
+     * constraints of the containers already done are kept.
+     *
+     * @param list     collection of widgets to connect
+     * @param progress notified as the inference progresses, may be null
+     * @throws CancellationException if progress reports that the inference was canceled
+     */
+    public static void inferConstraints(WidgetsScene list, Progress progress) {
+        WidgetContainer root = list.getRoot();
+        inferConstraints(root, (progress == null) ? null : new ContainerProgress(progress, getWork(root)));
     }
 
     /**
      * Recursive decent of widget tree inferring constraints on ConstraintWidgetContainer
      *
      * @param base
+     * @param progress
      */
-    private static void inferConstraints(WidgetContainer base) {
-        if (base == null) {
-            return;
-        }
-        if (base instanceof ConstraintWidgetContainer && ((ConstraintWidgetContainer) base).handlesInternalConstraints()) {
+    private static void inferConstraints(WidgetContainer base, ContainerProgress progress) {
+        if (!isInferred(base)) {
             return;
         }
         int preX = base.getX();
         int preY = base.getY();
         base.setX(0);
         base.setY(0);
+        try {
+            for (ConstraintWidget constraintWidget : base.getChildren()) {
+                if (constraintWidget instanceof ConstraintWidgetContainer) {
+                    ConstraintWidgetContainer container = (ConstraintWidgetContainer) constraintWidget;
+                    if (!container.getChildren().isEmpty()) {
+                        inferConstraints(container, progress);
+                    }
+                }
+            }
+
+            ArrayList<ConstraintWidget> list = new ArrayList<>(base.getChildren());
+            list.add(0, base);
+
+            ConstraintWidget[] widgets = list.toArray(new ConstraintWidget[list.size()]);
+            if (progress != null) {
+                progress.start(getWork(widgets.length));
+            }
+            ScoutWidget.computeConstraints(ScoutWidget.create(widgets), progress);
+            if (progress != null) {
+                progress.finish();
+            }
+        } finally {
+            base.setX(preX);
+            base.setY(preY);
+        }
+    }
+
+    private static boolean isInferred(WidgetContainer base) {
+        if (base == null) {
+            return false;
+        }
+        return !(base instanceof ConstraintWidgetContainer
+                && ((ConstraintWidgetContainer) base).handlesInternalConstraints());
+    }
+
+    /**
+     * Estimates the work of inferring a container and the containers inside it
+     * The probability tables of a container with n children take O(n^3) to compute.
+     *
+     * @param base
+     * @return
+     */
+    private static double getWork(WidgetContainer base) {
+        if (!isInferred(base)) {
+            return 0;
+        }
+        double work = getWork(base.getChildren().size() + 1);
         for (ConstraintWidget constraintWidget : base.getChildren()) {
             if (constraintWidget instanceof ConstraintWidgetContainer) {
-                ConstraintWidgetContainer container = (ConstraintWidgetContainer)constraintWidget;
+                ConstraintWidgetContainer container = (ConstraintWidgetContainer) constraintWidget;
                 if (!container.getChildren().isEmpty()) {
-                    inferConstraints(container);
+                    work += getWork(container);
                 }
             }
         }
+        return work;
+    }
 
-        ArrayList<ConstraintWidget> list = new ArrayList<>(base.getChildren());
-        list.add(0, base);
+    private static double getWork(int widgetCount) {
+        return (double) widgetCount * widgetCount * widgetCount;
+    }
 
-        ConstraintWidget[] widgets = list.toArray(new ConstraintWidget[list.size()]);
-        ScoutWidget.computeConstraints(ScoutWidget.create(widgets));
-        base.setX(preX);
-        base.setY(preY);
+    /**
+     * Maps the progress of the container being inferred onto the progress of the whole tree
+     */
+    private static class ContainerProgress implements Progress {
+        private final Progress mProgress;
+        private final double mTotalWork;
+        private double mDoneWork;
+        private double mCurrentWork;
+
+        ContainerProgress(Progress progress, double totalWork) {
+            mProgress = progress;
+            mTotalWork = totalWork;
+        }
+
+        void start(double work) {
+            mCurrentWork = work;
+        }
+
+        void finish() {
+            mDoneWork += mCurrentWork;
+            mCurrentWork = 0;
+            setFraction(0);
+        }
+
+        @Override
+        public void setFraction(double fraction) {
+            if (mTotalWork > 0) {
+                mProgress.setFraction(Math.min(1, (mDoneWork + fraction * mCurrentWork) / mTotalWork));
+            }
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mProgress.isCanceled();
+        }
     }
 
     /**
@@ -144,7 +255,7 @@ public class Scout {
 
         for (ConstraintWidget constraintWidget : base.getChildren()) {
             if (constraintWidget instanceof ConstraintWidgetContainer) {
-                inferConstraints((ConstraintWidgetContainer) constraintWidget);
+                inferConstraints((ConstraintWidgetContainer) constraintWidget, null);
             }
         }
 
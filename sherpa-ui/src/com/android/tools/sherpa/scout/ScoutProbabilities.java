@@ -20,6 +20,9 @@ import java.awt.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * Inference Probability tables
@@ -56,6 +59,19 @@ public class ScoutProbabilities {
      * @param list ordered list of widgets root must be list[0]
      */
     public void computeConstraints(ScoutWidget[] list) {
+        computeConstraints(list, null);
+    }
+
+    /**
+     * This calculates a constraint tables
+     * The rows of the tables (one per widget and direction) are independent of each other,
+     * so they are filled in parallel.
+     *
+     * @param list     ordered list of widgets root must be list[0]
+     * @param progress notified as rows are filled in, may be null
+     * @throws CancellationException if progress reports that the inference was canceled
+     */
+    public void computeConstraints(ScoutWidget[] list, Scout.Progress progress) {
         if (list.length < 2) {
             throw new IllegalArgumentException("list must contain more than 1 widget");
         }
@@ -68,70 +84,89 @@ public class ScoutProbabilities {
         mProbability = new float[len][][];
         mMargin = new float[len][][];
 
-        // calculate probability for normal connections
-        float[] result = new float[2]; // estimation function return 2 values probability & margin
+        // one row per non root widget for normal connections and two for centered ones
+        RowProgress rows = new RowProgress(progress, 3 * (len - 1));
 
-        for (int i = 1; i < len; i++) { // for all non root widgets
+        // calculate probability for normal connections
+        IntStream.range(1, len).parallel().forEach(i -> { // for all non root widgets
+            rows.checkCanceled();
             Direction[] all = Direction.getAllDirections();
             if (list[i].isGuideline()) {
-                continue;
+                rows.done();
+                return;
             }
-            mProbability[i] = new float[all.length][];
-            mMargin[i] = new float[all.length][];
+            // estimation function return 2 values probability & margin
+            float[] result = new float[2];
+            float[][] probability = new float[all.length][];
+            float[][] margin = new float[all.length][];
             for (int dir = 0; dir < all.length; dir++) { // for all possible connections
                 Direction direction = Direction.get(dir);
                 int connectTypes = direction.connectTypes();
 
                 // create the multidimensional array on the fly
                 // to account for the variying size of the probability space
-                mProbability[i][dir] = new float[len * connectTypes];
-                mMargin[i][dir] = new float[len * connectTypes];
+                probability[dir] = new float[len * connectTypes];
+                margin[dir] = new float[len * connectTypes];
 
                 // fill in all candidate connections
-                for (int candidate = 0; candidate < mMargin[i][dir].length; candidate++) {
+                for (int candidate = 0; candidate < margin[dir].length; candidate++) {
                     int widgetNumber = candidate / connectTypes;
                     int opposite = candidate % connectTypes;
                     Direction connectTo = (opposite == 0) ? direction : direction.getOpposite();
 
                     estimateProbability(list[i], direction, list[widgetNumber],
                             connectTo, list, result);
-                    mProbability[i][dir][candidate] = result[RESULT_PROBABILITY];
-                    mMargin[i][dir][candidate] = result[RESULT_MARGIN];
+                    probability[dir][candidate] = result[RESULT_PROBABILITY];
+                    margin[dir][candidate] = result[RESULT_MARGIN];
                 }
             }
-        }
+            mProbability[i] = probability;
+            mMargin[i] = margin;
+            rows.done();
+        });
 
         // calculate probability for "centered" connections
         mBinaryProbability = new float[len][2][len * 2][len * 2];
         mBinaryBias = new float[len][2][len * 2][len * 2];
         Direction[][] directions =
                 { { Direction.NORTH, Direction.SOUTH }, { Direction.WEST, Direction.EAST } };
-        for (int i = 1; i < len; i++) {
-            for (int horizontal = 0; horizontal < 2; horizontal++) { // vert=0 or horizantal=1
-                Direction[] sides = directions[horizontal];
-                for (int candidate1 = 0; candidate1 < len * 2; candidate1++) {
-                    for (int candidate2 = 0; candidate2 < len * 2; candidate2++) {
-
-                        // candidates are 2 per widget (left/right or above/below)
-                        int widget1Number = candidate1 / 2;
-                        int widget2Number = candidate2 / 2;
-
-                        // pick the sides to connect
-                        Direction widget1Side = sides[candidate1 & 0x1];
-                        Direction widget2Side = sides[candidate2 & 0x1];
-
-                        estimateBinaryProbability(list[i], horizontal,
-                                list[widget1Number], widget1Side,
-                                list[widget2Number], widget2Side,
-                                list, result);
-                        mBinaryProbability[i][horizontal][candidate1][candidate2] =
-                                result[RESULT_PROBABILITY];
-                        mBinaryBias[i][horizontal][candidate1][candidate2] =
-                                result[RESULT_MARGIN];
-                    }
+        // one task per non root widget and orientation (vert=0 or horizantal=1)
+        IntStream.range(2, len * 2).parallel().forEach(row -> {
+            rows.checkCanceled();
+            int i = row / 2;
+            int horizontal = row % 2;
+            Direction[] sides = directions[horizontal];
+            float[][] probability = mBinaryProbability[i][horizontal];
+            float[][] bias = mBinaryBias[i][horizontal];
+            float[] result = new float[2];
+
+            // the distance to each widget is shared by all the candidate pairs it is part of
+            float[] distances = new float[len];
+            for (int w = 0; w < len; w++) {
+                distances[w] = ScoutWidget.distance(list[i], list[w]);
+            }
+
+            for (int candidate1 = 0; candidate1 < len * 2; candidate1++) {
+                for (int candidate2 = 0; candidate2 < len * 2; candidate2++) {
+
+                    // candidates are 2 per widget (left/right or above/below)
+                    int widget1Number = candidate1 / 2;
+                    int widget2Number = candidate2 / 2;
+
+                    // pick the sides to connect
+                    Direction widget1Side = sides[candidate1 & 0x1];
+                    Direction widget2Side = sides[candidate2 & 0x1];
+
+                    estimateBinaryProbability(list[i], horizontal,
+                            list[widget1Number], widget1Side, distances[widget1Number],
+                            list[widget2Number], widget2Side, distances[widget2Number],
+                            result);
+                    probability[candidate1][candidate2] = result[RESULT_PROBABILITY];
+                    bias[candidate1][candidate2] = result[RESULT_MARGIN];
                 }
             }
-        }
+            rows.done();
+        });
         if (DEBUG) {
             printTable(list);
         }
@@ -423,7 +458,6 @@ public class ScoutProbabilities {
     private void pickCenteredConnections(ScoutWidget[] list, boolean checkResizeable) {
         Direction[][] side =
                 { { Direction.NORTH, Direction.SOUTH }, { Direction.WEST, Direction.EAST } };
-        int[] dualIndex = new int[2];
         for (int i = 1; i < len; i++) {
             float[][][] widgetBinaryProbability = mBinaryProbability[i];
             float[][][] widgetBinaryBias = mBinaryBias[i];
@@ -435,38 +469,65 @@ public class ScoutProbabilities {
                 if (pmatrix == null) {
                     continue;
                 }
-                boolean worked = false;
-                while (!worked) {
-                    Utils.max(pmatrix, dualIndex);
-                    int max1 = dualIndex[0];
-                    int max2 = dualIndex[1];
+                // try the likely candidates from the most probable down, until one works
+                long[] candidates = sortCenteredCandidates(pmatrix);
+                for (long candidate : candidates) {
+                    int max1 = (int) candidate / pmatrix[0].length;
+                    int max2 = (int) candidate % pmatrix[0].length;
                     int wNo1 = max1 / 2;
                     int wNo2 = max2 / 2;
                     Direction widget1Side = side[horizontal][max1 & 0x1];
                     Direction widget2Side = side[horizontal][max2 & 0x1];
 
-                    // pick the sides to connect
-                    float centerProbability = pmatrix[max1][max2];
-                    worked = true;
-                    if (centerProbability > .9) {
-                        if (checkResizeable && !list[i].isCandidateResizable(horizontal)) {
-                            continue;
-                        }
+                    if (checkResizeable && !list[i].isCandidateResizable(horizontal)) {
+                        break;
+                    }
 
-                        worked = list[i].setCentered(horizontal * 2, list[wNo1], list[wNo2],
-                                widget1Side,
-                                widget2Side,
-                                bias[max1][max2]);
-                        if (worked) {
-                            mProbability[i][horizontal * 2] = null;
-                            mProbability[i][horizontal * 2 + 1] = null;
-                        } else {
-                            pmatrix[max1][max2] = 0;
-                        }
+                    boolean worked = list[i].setCentered(horizontal * 2, list[wNo1], list[wNo2],
+                            widget1Side,
+                            widget2Side,
+                            bias[max1][max2]);
+                    if (worked) {
+                        mProbability[i][horizontal * 2] = null;
+                        mProbability[i][horizontal * 2 + 1] = null;
+                        break;
                     }
+                    pmatrix[max1][max2] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the centered connections likely enough to be made,
+     * ordered by decreasing probability then by position in the matrix
+     *
+     * @param pmatrix probability of each pair of candidates
+     * @return the candidates, as sort keys whose low 32 bits are the index in the flattened matrix
+     */
+    private static long[] sortCenteredCandidates(float[][] pmatrix) {
+        int count = 0;
+        for (float[] row : pmatrix) {
+            for (float probability : row) {
+                if (probability > .9) {
+                    count++;
+                }
+            }
+        }
+        long[] candidates = new long[count];
+        count = 0;
+        for (int i = 0; i < pmatrix.length; i++) {
+            for (int j = 0; j < pmatrix[i].length; j++) {
+                float probability = pmatrix[i][j];
+                if (probability > .9) {
+                    // the bits of positive floats sort like the floats themselves
+                    long order = Integer.MAX_VALUE - Float.floatToIntBits(probability);
+                    candidates[count++] = (order << 32) | (i * pmatrix[i].length + j);
                 }
             }
         }
+        Arrays.sort(candidates);
+        return candidates;
     }
 
     /**
@@ -770,15 +831,16 @@ public class ScoutProbabilities {
      * @param orientation horizontal or vertical connections (1 is horizontal)
      * @param to1         connect to on one side
      * @param toDir1      direction on that widget
+     * @param toDistance1 distance between from and to1
      * @param to2         connect to on other side
      * @param toDir2      direction on that widget
+     * @param toDistance2 distance between from and to2
      * @param result      populates results with probability and offset
      */
     private static void estimateBinaryProbability(
             ScoutWidget from, int orientation, // 0 = north/south 1 = east/west
-            ScoutWidget to1, Direction toDir1,
-            ScoutWidget to2, Direction toDir2,
-            ScoutWidget[] list,
+            ScoutWidget to1, Direction toDir1, float toDistance1,
+            ScoutWidget to2, Direction toDir2, float toDistance2,
             float[] result) {
 
         result[RESULT_PROBABILITY] = 0;
@@ -825,8 +887,8 @@ public class ScoutProbabilities {
             }
         }
 
-        float distance1 = ScoutWidget.distance(from, to1) / scale;
-        float distance2 = ScoutWidget.distance(from, to2) / scale;
+        float distance1 = toDistance1 / scale;
+        float distance2 = toDistance2 / scale;
         float diff = Math.abs(positionDiff1 - positionDiff2);
         float probability = ((diff < SLOPE_CENTER_CONNECTION) ? 1 : 0); // favor close distance
         probability = probability / (1+ distance1 + distance2);
@@ -937,4 +999,32 @@ public class ScoutProbabilities {
             }
         }
     }
+
+    /**
+     * Counts the rows of the tables filled in so far, which may happen on several threads,
+     * and passes the fraction done on to a {@link Scout.Progress}
+     */
+    private static class RowProgress {
+        private final Scout.Progress mProgress;
+        private final int mRows;
+        private final AtomicInteger mDone = new AtomicInteger();
+
+        RowProgress(Scout.Progress progress, int rows) {
+            mProgress = progress;
+            mRows = rows;
+        }
+
+        void checkCanceled() {
+            if (mProgress != null && mProgress.isCanceled()) {
+                throw new CancellationException();
+            }
+        }
+
+        void done() {
+            int done = mDone.incrementAndGet();
+            if (mProgress != null) {
+                mProgress.setFraction(done / (double) mRows);
+            }
+        }
+    }
 }
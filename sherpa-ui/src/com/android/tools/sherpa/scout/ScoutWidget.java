@@ -213,8 +213,19 @@ public class ScoutWidget implements Comparable<ScoutWidget> {
      * @param list ordered list of widgets root must be list[0]
      */
     public static void computeConstraints(ScoutWidget[] list) {
+        computeConstraints(list, null);
+    }
+
+    /**
+     * This calculates a constraint tables and applies them to the widgets
+     * Nothing is applied if the inference is canceled while the tables are computed.
+     *
+     * @param list     ordered list of widgets root must be list[0]
+     * @param progress notified as the tables are computed, may be null
+     */
+    public static void computeConstraints(ScoutWidget[] list, Scout.Progress progress) {
         ScoutProbabilities table = new ScoutProbabilities();
-        table.computeConstraints(list);
+        table.computeConstraints(list, progress);
         table.applyConstraints(list);
     }
 